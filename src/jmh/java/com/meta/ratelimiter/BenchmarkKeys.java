@@ -0,0 +1,64 @@
+package com.meta.ratelimiter;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Per-thread stream of client ids drawn from a fixed key space.
+ *
+ * Ids are pre-built and the access pattern is pre-drawn into a ring of
+ * indices, so a benchmark pays one array read per request instead of string
+ * building or random number generation.
+ */
+@State(Scope.Thread)
+public class BenchmarkKeys {
+    static final int KEY_SPACE = 100_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final String[] CLIENT_IDS = new String[KEY_SPACE];
+
+    static {
+        for (int i = 0; i < KEY_SPACE; i++) {
+            CLIENT_IDS[i] = "client-" + i;
+        }
+    }
+
+    /** HOT: one shared key; UNIFORM: all keys equally; ZIPF: skewed, exponent 1.1. */
+    @Param({"HOT", "UNIFORM", "ZIPF"})
+    public String distribution;
+
+    private final int[] sequence = new int[SEQUENCE_LENGTH];
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(Thread.currentThread().getId());
+        ZipfDistribution zipf = "ZIPF".equals(distribution) ? new ZipfDistribution(KEY_SPACE, 1.1) : null;
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            switch (distribution) {
+                case "HOT":
+                    sequence[i] = 0;
+                    break;
+                case "UNIFORM":
+                    sequence[i] = random.nextInt(KEY_SPACE);
+                    break;
+                case "ZIPF":
+                    sequence[i] = zipf.sample(random);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown distribution " + distribution);
+            }
+        }
+    }
+
+    public String next() {
+        return CLIENT_IDS[sequence[cursor++ & (SEQUENCE_LENGTH - 1)]];
+    }
+
+    static String clientId(int index) {
+        return CLIENT_IDS[index];
+    }
+}
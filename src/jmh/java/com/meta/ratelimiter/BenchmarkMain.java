@@ -0,0 +1,43 @@
+package com.meta.ratelimiter;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per thread count with the GC profiler
+ * enabled, writing one JSON result file per thread count under target/.
+ *
+ * Usage: {@code java -jar target/benchmarks.jar [includeRegex] [threads,...]}
+ */
+public class BenchmarkMain {
+    private static final int[] DEFAULT_THREAD_COUNTS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        int[] threadCounts = args.length > 1 ? parseThreadCounts(args[1]) : DEFAULT_THREAD_COUNTS;
+
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-threads-" + threads + ".json")
+                .build();
+            new Runner(options).run();
+        }
+    }
+
+    private static int[] parseThreadCounts(String value) {
+        String[] parts = value.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            counts[i] = Integer.parseInt(parts[i].trim());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,91 @@
+package com.meta.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tier and endpoint dispatch layers. With {@code UNLIMITED} leaves the score
+ * is the dispatch overhead alone; with {@code DISTRIBUTED} leaves it is the
+ * full per-request cost of the service's limiter tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private static final String[] ENDPOINTS = {"/api/search", "/api/users", "/api/orders", "/api/health"};
+
+    @Param({"UNLIMITED", "DISTRIBUTED"})
+    public String leaves;
+
+    private TieredRateLimiter tieredLimiter;
+    private EndpointTieredRateLimiter endpointLimiter;
+
+    @State(Scope.Thread)
+    public static class EndpointCursor {
+        private int position;
+
+        String next() {
+            return ENDPOINTS[position++ & (ENDPOINTS.length - 1)];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        InMemoryClientTierResolver resolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        for (int i = 0; i < BenchmarkKeys.KEY_SPACE; i += 10) {
+            resolver.setTier(BenchmarkKeys.clientId(i), i % 100 == 0 ? ClientTier.ENTERPRISE : ClientTier.PREMIUM);
+        }
+
+        DistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        tieredLimiter = buildTiered(resolver, store, "default:");
+
+        Map<String, TieredRateLimiter> endpointLimiters = new HashMap<>();
+        for (String endpoint : ENDPOINTS) {
+            endpointLimiters.put(endpoint, buildTiered(resolver, store, endpoint + ":"));
+        }
+        endpointLimiter = new EndpointTieredRateLimiter(endpointLimiters, tieredLimiter);
+    }
+
+    @Benchmark
+    public boolean tiered(BenchmarkKeys keys) {
+        return tieredLimiter.allowRequest(keys.next());
+    }
+
+    @Benchmark
+    public boolean endpointTiered(BenchmarkKeys keys, EndpointCursor endpoints) {
+        return endpointLimiter.allowRequest(keys.next(), endpoints.next());
+    }
+
+    private TieredRateLimiter buildTiered(ClientTierResolver resolver, DistributedRateLimitStore store, String prefix) {
+        Map<ClientTier, RateLimiter> limiters = new EnumMap<>(ClientTier.class);
+        int base = 10;
+        for (ClientTier tier : ClientTier.values()) {
+            if ("UNLIMITED".equals(leaves)) {
+                limiters.put(tier, new UnlimitedRateLimiter());
+            } else {
+                RateLimitConfig config = new RateLimitConfig(base, 1000, RateLimitStrategy.TOKEN_BUCKET);
+                limiters.put(tier, new DistributedTokenBucketRateLimiter(
+                    config, store, new UnlimitedRateLimiter(), "token-bucket:" + prefix + tier.name().toLowerCase() + ":"));
+            }
+            base *= 10;
+        }
+        return new TieredRateLimiter(resolver, limiters);
+    }
+}
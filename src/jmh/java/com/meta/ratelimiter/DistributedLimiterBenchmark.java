@@ -0,0 +1,56 @@
+package com.meta.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distributed limiters over {@link InMemoryDistributedRateLimitStore}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DistributedLimiterBenchmark {
+    @Param({"TOKEN_BUCKET", "SLIDING_WINDOW", "FIXED_WINDOW"})
+    public RateLimitStrategy strategy;
+
+    private RateLimiter limiter;
+
+    @Setup
+    public void setUp() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, strategy);
+        DistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        RateLimiter fallback = new UnlimitedRateLimiter();
+        switch (strategy) {
+            case TOKEN_BUCKET:
+                limiter = new DistributedTokenBucketRateLimiter(config, store, fallback);
+                break;
+            case SLIDING_WINDOW:
+                limiter = new DistributedSlidingWindowRateLimiter(config, store, fallback);
+                break;
+            case FIXED_WINDOW:
+                limiter = new DistributedFixedWindowRateLimiter(config, store, fallback);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + strategy);
+        }
+    }
+
+    @Benchmark
+    public boolean allowRequest(BenchmarkKeys keys) {
+        return limiter.allowRequest(keys.next());
+    }
+}
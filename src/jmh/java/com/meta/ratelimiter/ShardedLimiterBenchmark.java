@@ -0,0 +1,64 @@
+package com.meta.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locked per-client token buckets against single-writer shards. Run with
+ * several thread counts: the sharded limiter trades a queue hand-off per
+ * request for no lock or cache-line contention on hot keys.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedLimiterBenchmark {
+    @Param({"LOCKED", "SHARDED"})
+    public String engine;
+
+    @Param({"4"})
+    public int shards;
+
+    private RateLimiter limiter;
+
+    @Setup
+    public void setUp() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        switch (engine) {
+            case "LOCKED":
+                limiter = new TokenBucketRateLimiter(config, new ClientRateLimitStore());
+                break;
+            case "SHARDED":
+                limiter = new ShardedRateLimiter(config, shards);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (limiter instanceof AutoCloseable) {
+            ((AutoCloseable) limiter).close();
+        }
+    }
+
+    @Benchmark
+    public boolean allowRequest(BenchmarkKeys keys) {
+        return limiter.allowRequest(keys.next());
+    }
+}
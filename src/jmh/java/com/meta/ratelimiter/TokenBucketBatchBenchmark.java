@@ -0,0 +1,78 @@
+package com.meta.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of token bucket decisions over {@link BenchmarkKeys#KEY_SPACE}
+ * clients: {@code TokenBucketRateLimiter.allowRequest} per key against
+ * {@link TokenBucketTable#refillAndConsume}, scalar and vectorized. Scores
+ * are per decision.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class TokenBucketBatchBenchmark {
+    private static final int BATCH = 4096;
+
+    @Param({"PER_KEY", "SCALAR", "VECTOR"})
+    public String engine;
+
+    private TokenBucketRateLimiter limiter;
+    private TokenBucketTable table;
+    private final String[] clientIds = new String[BATCH];
+    private final int[] slots = new int[BATCH];
+    private final int[] costs = new int[BATCH];
+    private final boolean[] out = new boolean[BATCH];
+
+    @Setup
+    public void setUp() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        limiter = new TokenBucketRateLimiter(config, new ClientRateLimitStore());
+        table = new TokenBucketTable(config, TimeSource.SYSTEM, "VECTOR".equals(engine));
+        if ("VECTOR".equals(engine) && !table.isVectorized()) {
+            throw new IllegalStateException("Vector kernel unavailable; build with -Pbenchmarks,vector");
+        }
+        for (int i = 0; i < BenchmarkKeys.KEY_SPACE; i++) {
+            table.slotFor(BenchmarkKeys.clientId(i));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH; i++) {
+            int client = random.nextInt(BenchmarkKeys.KEY_SPACE);
+            clientIds[i] = BenchmarkKeys.clientId(client);
+            slots[i] = client;
+        }
+        Arrays.fill(costs, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void decideBatch(Blackhole blackhole) {
+        if ("PER_KEY".equals(engine)) {
+            for (int i = 0; i < BATCH; i++) {
+                out[i] = limiter.allowRequest(clientIds[i]);
+            }
+        } else {
+            table.refillAndConsume(slots, costs, out);
+        }
+        blackhole.consume(out);
+    }
+}
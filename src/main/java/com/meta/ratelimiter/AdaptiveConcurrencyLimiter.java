@@ -0,0 +1,233 @@
+package com.meta.ratelimiter;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Caps requests in flight, either per client or shared by all clients, with
+ * a limit that a {@link ConcurrencyLimit} algorithm adapts from observed
+ * latency.
+ *
+ * Unlike a rate limit this tracks the backend's actual capacity: when it
+ * slows down, latency rises and the limit falls, so excess requests are
+ * rejected up front instead of queueing. Callers hold the returned
+ * {@link ConcurrencyPermit} for the duration of the request.
+ *
+ * Per-client limits of clients with nothing in flight for
+ * {@code idleMillis} are forgotten by an incremental sweep that examines a
+ * few clients each time one is added, so the map holds recently active
+ * clients rather than every client ever seen.
+ */
+public class AdaptiveConcurrencyLimiter {
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String SHARED_KEY = "";
+    private static final int SWEEP_BATCH = 2;
+    /** In-flight count of a swept state; acquirers holding it look the client up again. */
+    private static final int RETIRED = -1;
+
+    private static class State {
+        private final ConcurrencyLimit limit;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private State(ConcurrencyLimit limit) {
+            this.limit = limit;
+        }
+    }
+
+    private final Supplier<ConcurrencyLimit> limitFactory;
+    private final boolean perClient;
+    private final long idleNanos;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    // Guarded by sweepLock
+    private Iterator<Map.Entry<String, State>> sweepCursor;
+
+    /**
+     * @param limitFactory creates the algorithm instance for each key
+     * @param perClient    true for a separate limit per client, false for one
+     *                     limit shared by every client
+     */
+    public AdaptiveConcurrencyLimiter(Supplier<ConcurrencyLimit> limitFactory, boolean perClient) {
+        this(limitFactory, perClient, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * @param idleMillis how long a client's limit is kept with nothing in
+     *                   flight; ignored for a shared limit
+     */
+    public AdaptiveConcurrencyLimiter(Supplier<ConcurrencyLimit> limitFactory, boolean perClient, long idleMillis) {
+        this.limitFactory = limitFactory;
+        this.perClient = perClient;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * Admits a request if fewer than the current limit are in flight.
+     */
+    public Optional<ConcurrencyPermit> acquire(String clientId) {
+        while (true) {
+            State state = stateFor(clientId);
+            int current = state.inFlight.get();
+            if (current == RETIRED) {
+                // Swept after the lookup; take its replacement
+                continue;
+            }
+            if (current >= state.limit.getLimit()) {
+                return Optional.empty();
+            }
+            if (state.inFlight.compareAndSet(current, current + 1)) {
+                return Optional.of(new Permit(state, current + 1, System.nanoTime()));
+            }
+        }
+    }
+
+    public int getLimit(String clientId) {
+        return stateFor(clientId).limit.getLimit();
+    }
+
+    public int getInFlight(String clientId) {
+        State state = states.get(key(clientId));
+        return state == null ? 0 : Math.max(0, state.inFlight.get());
+    }
+
+    /**
+     * Number of keys with a tracked limit.
+     */
+    public int getTrackedCount() {
+        return states.size();
+    }
+
+    /**
+     * Forgets a client's learned limit; permits already issued stay valid.
+     */
+    public void reset(String clientId) {
+        states.remove(key(clientId));
+    }
+
+    /**
+     * Registers {@code ratelimiter_concurrency_limit} and
+     * {@code ratelimiter_concurrency_in_flight} gauges for this limiter.
+     * With per-client limits the limit gauge is the mean over tracked
+     * clients and the in-flight gauge the total.
+     */
+    public void registerMetrics(MetricsRegistry registry, String endpoint) {
+        registry.gauge("ratelimiter_concurrency_limit", "Adaptive concurrency limit per endpoint",
+            this::meanLimit, "endpoint", endpoint);
+        registry.gauge("ratelimiter_concurrency_in_flight", "Requests in flight per endpoint",
+            this::totalInFlight, "endpoint", endpoint);
+    }
+
+    private double meanLimit() {
+        if (!perClient) {
+            return getLimit(SHARED_KEY);
+        }
+        long sum = 0;
+        int count = 0;
+        for (State state : states.values()) {
+            sum += state.limit.getLimit();
+            count++;
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    private double totalInFlight() {
+        long total = 0;
+        for (State state : states.values()) {
+            total += Math.max(0, state.inFlight.get());
+        }
+        return total;
+    }
+
+    private State stateFor(String clientId) {
+        String key = key(clientId);
+        State state = states.get(key);
+        if (state != null) {
+            return state;
+        }
+        if (perClient) {
+            sweepIdle();
+        }
+        return states.computeIfAbsent(key, k -> new State(limitFactory.get()));
+    }
+
+    /**
+     * Forgets idle clients among the next {@link #SWEEP_BATCH}, resuming
+     * where the last sweep stopped. Skipped if another thread is sweeping.
+     */
+    private void sweepIdle() {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            for (int examined = 0; examined < SWEEP_BATCH; examined++) {
+                if (sweepCursor == null || !sweepCursor.hasNext()) {
+                    sweepCursor = states.entrySet().iterator();
+                    if (!sweepCursor.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, State> next = sweepCursor.next();
+                State state = next.getValue();
+                if (now - state.lastUsedNanos >= idleNanos && state.inFlight.compareAndSet(0, RETIRED)) {
+                    states.remove(next.getKey(), state);
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private String key(String clientId) {
+        return perClient ? clientId : SHARED_KEY;
+    }
+
+    private static final class Permit implements ConcurrencyPermit {
+        private final State state;
+        private final int inFlight;
+        private final long startNanos;
+        private final AtomicInteger done = new AtomicInteger();
+
+        private Permit(State state, int inFlight, long startNanos) {
+            this.state = state;
+            this.inFlight = inFlight;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void release() {
+            complete(false, true);
+        }
+
+        @Override
+        public void drop() {
+            complete(true, true);
+        }
+
+        @Override
+        public void ignore() {
+            complete(false, false);
+        }
+
+        private void complete(boolean dropped, boolean sample) {
+            if (!done.compareAndSet(0, 1)) {
+                return;
+            }
+            long now = System.nanoTime();
+            long rttNanos = now - startNanos;
+            state.lastUsedNanos = now;
+            state.inFlight.decrementAndGet();
+            if (sample) {
+                state.limit.onSample(rttNanos, inFlight, dropped);
+            }
+        }
+    }
+}
@@ -1,16 +1,24 @@
 package com.meta.ratelimiter;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * In-memory storage for client rate limit state
  * 
  * WARNING: This implementation has concurrency issues!
  * Find and fix them.
+ *
+ * Limiters mutate states after fetching them, so a change notification is
+ * sent on every access rather than after the mutation; a journaled value can
+ * lag by the access in flight, which the next access or snapshot corrects.
  */
-public class ClientRateLimitStore {
+public class ClientRateLimitStore implements PersistableStore, InspectableStore {
     
     // Storage for token bucket state
     public static class TokenBucketState {
@@ -21,6 +29,11 @@ public class ClientRateLimitStore {
             this.tokens = tokens;
             this.lastRefillTimestamp = lastRefillTimestamp;
         }
+
+        @Override
+        public synchronized String toString() {
+            return "tokens=" + tokens + " lastRefill=" + lastRefillTimestamp;
+        }
     }
 
     // Storage for sliding window state
@@ -30,25 +43,111 @@ public class ClientRateLimitStore {
         public SlidingWindowState() {
             this.requestTimestamps = new java.util.ArrayList<>();
         }
+
+        @Override
+        public synchronized String toString() {
+            return "count=" + requestTimestamps.size();
+        }
     }
 
-    private Map<String, TokenBucketState> tokenBucketStates = new ConcurrentHashMap<>();
-    private Map<String, SlidingWindowState> slidingWindowStates = new ConcurrentHashMap<>();
+    public static final StateCodec<TokenBucketState> TOKEN_BUCKET_CODEC = new StateCodec<TokenBucketState>() {
+        @Override
+        public int typeId() {
+            return 5;
+        }
+
+        @Override
+        public Class<TokenBucketState> type() {
+            return TokenBucketState.class;
+        }
+
+        @Override
+        public void encode(TokenBucketState state, ByteBuffer out) {
+            out.putDouble(state.tokens).putLong(state.lastRefillTimestamp);
+        }
+
+        @Override
+        public TokenBucketState decode(ByteBuffer in) {
+            return new TokenBucketState(in.getDouble(), in.getLong());
+        }
+    };
+
+    public static final StateCodec<SlidingWindowState> SLIDING_WINDOW_CODEC = new StateCodec<SlidingWindowState>() {
+        @Override
+        public int typeId() {
+            return 6;
+        }
+
+        @Override
+        public Class<SlidingWindowState> type() {
+            return SlidingWindowState.class;
+        }
+
+        @Override
+        public void encode(SlidingWindowState state, ByteBuffer out) {
+            out.putInt(state.requestTimestamps.size());
+            for (long timestamp : state.requestTimestamps) {
+                out.putLong(timestamp);
+            }
+        }
+
+        @Override
+        public SlidingWindowState decode(ByteBuffer in) {
+            SlidingWindowState state = new SlidingWindowState();
+            int size = in.getInt();
+            for (int i = 0; i < size; i++) {
+                state.requestTimestamps.add(in.getLong());
+            }
+            return state;
+        }
+    };
+
+    // Keyed by RateLimitKey. The String overloads wrap the id with RateLimitKey.of
+    // on every call; the limiters pass keys from a KeyCache instead
+    private Map<RateLimitKey, TokenBucketState> tokenBucketStates = new ConcurrentHashMap<>();
+    private Map<RateLimitKey, SlidingWindowState> slidingWindowStates = new ConcurrentHashMap<>();
+    private volatile Consumer<RateLimitKey> changeListener;
+    private final TimeSource clock;
+
+    public ClientRateLimitStore() {
+        this(TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time source for new states and for limiters using this store
+     */
+    public ClientRateLimitStore(TimeSource clock) {
+        this.clock = clock;
+    }
+
+    public TimeSource getClock() {
+        return clock;
+    }
 
     /**
      * Get or create token bucket state for a client
      * Uses putIfAbsent to avoid race condition
      */
     public TokenBucketState getOrCreateTokenBucketState(String clientId, double initialTokens) {
-        return tokenBucketStates.computeIfAbsent(clientId, 
-            k -> new TokenBucketState(initialTokens, System.currentTimeMillis()));
+        return getOrCreateTokenBucketState(RateLimitKey.of(clientId), initialTokens);
+    }
+
+    public TokenBucketState getOrCreateTokenBucketState(RateLimitKey key, double initialTokens) {
+        notifyChanged(key);
+        return tokenBucketStates.computeIfAbsent(key, 
+            k -> new TokenBucketState(initialTokens, clock.currentTimeMillis()));
     }
 
     /**
      * Update token bucket state for a client
      */
     public void updateTokenBucketState(String clientId, double tokens, long timestamp) {
-        TokenBucketState state = tokenBucketStates.get(clientId);
+        updateTokenBucketState(RateLimitKey.of(clientId), tokens, timestamp);
+    }
+
+    public void updateTokenBucketState(RateLimitKey key, double tokens, long timestamp) {
+        notifyChanged(key);
+        TokenBucketState state = tokenBucketStates.get(key);
         if (state != null) {
             state.tokens = tokens;
             state.lastRefillTimestamp = timestamp;
@@ -60,14 +159,23 @@ public class ClientRateLimitStore {
      * Uses computeIfAbsent to avoid race condition
      */
     public SlidingWindowState getOrCreateSlidingWindowState(String clientId) {
-        return slidingWindowStates.computeIfAbsent(clientId, k -> new SlidingWindowState());
+        return getOrCreateSlidingWindowState(RateLimitKey.of(clientId));
+    }
+
+    public SlidingWindowState getOrCreateSlidingWindowState(RateLimitKey key) {
+        notifyChanged(key);
+        return slidingWindowStates.computeIfAbsent(key, k -> new SlidingWindowState());
     }
 
     /**
      * Add a request timestamp to sliding window
      */
     public void addRequestTimestamp(String clientId, long timestamp) {
-        SlidingWindowState state = getOrCreateSlidingWindowState(clientId);
+        addRequestTimestamp(RateLimitKey.of(clientId), timestamp);
+    }
+
+    public void addRequestTimestamp(RateLimitKey key, long timestamp) {
+        SlidingWindowState state = getOrCreateSlidingWindowState(key);
         state.requestTimestamps.add(timestamp);
     }
 
@@ -75,8 +183,13 @@ public class ClientRateLimitStore {
      * Reset state for a specific client
      */
     public void reset(String clientId) {
-        tokenBucketStates.remove(clientId);
-        slidingWindowStates.remove(clientId);
+        reset(RateLimitKey.of(clientId));
+    }
+
+    public void reset(RateLimitKey key) {
+        tokenBucketStates.remove(key);
+        slidingWindowStates.remove(key);
+        notifyChanged(key);
     }
 
     /**
@@ -86,4 +199,71 @@ public class ClientRateLimitStore {
         tokenBucketStates.clear();
         slidingWindowStates.clear();
     }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        for (Map.Entry<RateLimitKey, TokenBucketState> entry : tokenBucketStates.entrySet()) {
+            visitState(entry.getKey(), entry.getValue(), visitor);
+        }
+        for (Map.Entry<RateLimitKey, SlidingWindowState> entry : slidingWindowStates.entrySet()) {
+            visitState(entry.getKey(), entry.getValue(), visitor);
+        }
+    }
+
+    @Override
+    public boolean visitEntry(RateLimitKey key, EntryVisitor visitor) {
+        TokenBucketState tokenBucket = tokenBucketStates.get(key);
+        SlidingWindowState slidingWindow = slidingWindowStates.get(key);
+        if (tokenBucket != null) {
+            visitState(key, tokenBucket, visitor);
+        }
+        if (slidingWindow != null) {
+            visitState(key, slidingWindow, visitor);
+        }
+        return tokenBucket != null || slidingWindow != null;
+    }
+
+    @Override
+    public void restoreEntry(RateLimitKey key, Object value, long expiresAtMillis) {
+        if (value instanceof TokenBucketState) {
+            tokenBucketStates.put(key, (TokenBucketState) value);
+        } else if (value instanceof SlidingWindowState) {
+            slidingWindowStates.put(key, (SlidingWindowState) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported state type " + value.getClass().getName());
+        }
+    }
+
+    @Override
+    public void restoreRemoval(RateLimitKey key) {
+        tokenBucketStates.remove(key);
+        slidingWindowStates.remove(key);
+    }
+
+    @Override
+    public void setChangeListener(Consumer<RateLimitKey> listener) {
+        this.changeListener = listener;
+    }
+
+    @Override
+    public Iterator<StateEntry> inspect(String keyPrefix) {
+        return Stream.concat(tokenBucketStates.entrySet().stream(), slidingWindowStates.entrySet().stream())
+            .filter(entry -> entry.getKey().toString().startsWith(keyPrefix))
+            .map(entry -> new StateEntry(entry.getKey().toString(), entry.getValue().toString(), 0))
+            .iterator();
+    }
+
+    private static void visitState(RateLimitKey key, Object state, EntryVisitor visitor) {
+        // Limiters mutate states under their monitor
+        synchronized (state) {
+            visitor.visit(key, state, Long.MAX_VALUE);
+        }
+    }
+
+    private void notifyChanged(RateLimitKey key) {
+        Consumer<RateLimitKey> listener = changeListener;
+        if (listener != null) {
+            listener.accept(key);
+        }
+    }
 }
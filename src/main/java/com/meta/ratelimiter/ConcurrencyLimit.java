@@ -0,0 +1,21 @@
+package com.meta.ratelimiter;
+
+/**
+ * Algorithm that adjusts a concurrency limit from completed-request samples.
+ * Implementations must be thread-safe.
+ */
+public interface ConcurrencyLimit {
+    /**
+     * Current maximum number of requests allowed in flight.
+     */
+    int getLimit();
+
+    /**
+     * Records a completed request.
+     *
+     * @param rttNanos time from acquire to release
+     * @param inFlight requests in flight when this one was admitted, including it
+     * @param dropped true if the request timed out or was rejected by the backend
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+}
@@ -0,0 +1,38 @@
+package com.meta.ratelimiter;
+
+/**
+ * An admitted in-flight request. Exactly one of {@link #release()},
+ * {@link #drop()} or {@link #ignore()} must be called when it completes.
+ */
+public interface ConcurrencyPermit {
+    /** Permit for requests that are not concurrency limited. */
+    ConcurrencyPermit NONE = new ConcurrencyPermit() {
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public void drop() {
+        }
+
+        @Override
+        public void ignore() {
+        }
+    };
+
+    /**
+     * The request succeeded; its latency is fed to the limit algorithm.
+     */
+    void release();
+
+    /**
+     * The request timed out or the backend rejected it for overload.
+     */
+    void drop();
+
+    /**
+     * The request ended without reaching the backend (for example it failed
+     * validation); frees the slot without a latency sample.
+     */
+    void ignore();
+}
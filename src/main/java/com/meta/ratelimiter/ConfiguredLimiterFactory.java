@@ -0,0 +1,123 @@
+package com.meta.ratelimiter;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds the endpoint/tier limiter tree for a {@link LimitConfiguration}
+ * over a shared distributed store.
+ *
+ * Store namespaces depend only on strategy, endpoint and tier, never on the
+ * limit values, so a tree built for a new configuration reads the buckets
+ * and windows of the tree it replaces: live state carries over and is
+ * simply evaluated against the new limits. Changing an endpoint's strategy
+ * starts it from fresh state. Each tree gets its own local fallback state,
+ * exposed for inspection by {@link #getFallbackStores()}.
+ */
+public class ConfiguredLimiterFactory {
+    private final DistributedRateLimitStore store;
+    private final ClientTierResolver tierResolver;
+    private final TimeSource clock;
+    private volatile Map<String, InspectableStore> fallbackStores = Collections.emptyMap();
+
+    public ConfiguredLimiterFactory(DistributedRateLimitStore store, ClientTierResolver tierResolver) {
+        this(store, tierResolver, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time source for the local limiters; should match the
+     *              store's clock
+     */
+    public ConfiguredLimiterFactory(DistributedRateLimitStore store, ClientTierResolver tierResolver, TimeSource clock) {
+        this.store = store;
+        this.tierResolver = tierResolver;
+        this.clock = clock;
+    }
+
+    public EndpointRateLimiter build(LimitConfiguration configuration) {
+        Map<String, InspectableStore> localStores = new LinkedHashMap<>();
+        Map<String, TieredRateLimiter> endpointLimiters = new HashMap<>();
+        for (Map.Entry<String, TieredRateLimitConfig> endpoint : configuration.getEndpoints().entrySet()) {
+            endpointLimiters.put(endpoint.getKey(), buildTiered(endpoint.getValue(), endpoint.getKey(), localStores));
+        }
+        for (String endpoint : configuration.getUnlimitedEndpoints()) {
+            Map<ClientTier, RateLimiter> unlimited = new EnumMap<>(ClientTier.class);
+            for (ClientTier tier : ClientTier.values()) {
+                unlimited.put(tier, new UnlimitedRateLimiter());
+            }
+            endpointLimiters.put(endpoint, new TieredRateLimiter(tierResolver, unlimited));
+        }
+        EndpointRateLimiter built = new EndpointTieredRateLimiter(
+            endpointLimiters, buildTiered(configuration.getDefaults(), null, localStores));
+        fallbackStores = Collections.unmodifiableMap(localStores);
+        return built;
+    }
+
+    /**
+     * Local fallback state of the most recently built tree, by the store
+     * namespace of the limiter it backs.
+     */
+    public Map<String, InspectableStore> getFallbackStores() {
+        return fallbackStores;
+    }
+
+    /**
+     * Store namespace for a tier's limiter; {@code endpoint} is null for the
+     * default limits.
+     */
+    static String namespaceFor(RateLimitStrategy strategy, String endpoint, ClientTier tier) {
+        String prefix = strategy.name().toLowerCase(Locale.ROOT).replace('_', '-') + ":";
+        String scope = endpoint == null ? "" : "endpoint:" + endpoint + ":";
+        return prefix + scope + tier.name().toLowerCase(Locale.ROOT) + ":";
+    }
+
+    private TieredRateLimiter buildTiered(
+        TieredRateLimitConfig tieredConfig,
+        String endpoint,
+        Map<String, InspectableStore> localStores
+    ) {
+        Map<ClientTier, RateLimiter> limiters = new EnumMap<>(ClientTier.class);
+        for (ClientTier tier : ClientTier.values()) {
+            RateLimitConfig config = tieredConfig.getConfigFor(tier);
+            limiters.put(tier, buildLimiter(config, namespaceFor(config.getStrategy(), endpoint, tier), localStores));
+        }
+        return new TieredRateLimiter(tierResolver, limiters);
+    }
+
+    private RateLimiter buildLimiter(
+        RateLimitConfig config,
+        String namespace,
+        Map<String, InspectableStore> localStores
+    ) {
+        switch (config.getStrategy()) {
+            case TOKEN_BUCKET: {
+                ClientRateLimitStore localStore = new ClientRateLimitStore(clock);
+                localStores.put(namespace, localStore);
+                return new DistributedTokenBucketRateLimiter(
+                    config, store, new TokenBucketRateLimiter(config, localStore), namespace, clock);
+            }
+            case FIXED_WINDOW: {
+                FixedWindowRateLimiter fallback = new FixedWindowRateLimiter(config, clock);
+                localStores.put(namespace, fallback);
+                return new DistributedFixedWindowRateLimiter(config, store, fallback, namespace, clock);
+            }
+            case EPOCH_FIXED_WINDOW: {
+                FixedWindowRateLimiter fallback = new FixedWindowRateLimiter(config, clock);
+                localStores.put(namespace, fallback);
+                return new DistributedEpochWindowRateLimiter(config, store, fallback, namespace, clock);
+            }
+            case SLIDING_WINDOW: {
+                ClientRateLimitStore localStore = new ClientRateLimitStore(clock);
+                localStores.put(namespace, localStore);
+                return new DistributedSlidingWindowRateLimiter(
+                    config, store, new SlidingWindowRateLimiter(config, localStore), namespace, clock);
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported strategy " + config.getStrategy());
+        }
+    }
+}
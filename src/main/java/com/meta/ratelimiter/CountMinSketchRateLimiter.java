@@ -0,0 +1,207 @@
+package com.meta.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-memory approximate limiter for unbounded key spaces such as
+ * anonymous per-IP traffic.
+ *
+ * Counts live in a count-min sketch per epoch-aligned window instead of a
+ * per-client map: {@code depth = ceil(ln(1 / delta))} rows of
+ * {@code width = ceil(e / epsilon)} counters. A client's count is the
+ * minimum of its counters in every row, which never under-counts and, with
+ * probability {@code 1 - delta}, over-counts by at most {@code epsilon} times
+ * the requests seen in the window. Over-counting only makes the limiter
+ * stricter.
+ *
+ * Two sketches rotate: the current window and the previous one, weighted by
+ * the part of it still inside a sliding window, as in
+ * {@link SlidingWindowRateLimiter}. Memory is {@link #getMemoryBytes()}
+ * however many clients appear.
+ *
+ * Updates are conservative (only a client's minimum counters are raised)
+ * and lock-free: the minimum counters are advanced by CAS from the value
+ * the limit was checked against, and the check is retried if any of them
+ * moved, so concurrent requests cannot push a client past its limit.
+ */
+public class CountMinSketchRateLimiter implements RateLimiter {
+    private static final class Sketch {
+        private final long windowIndex;
+        private final AtomicLongArray counters;
+
+        private Sketch(long windowIndex, int size) {
+            this.windowIndex = windowIndex;
+            this.counters = new AtomicLongArray(size);
+        }
+    }
+
+    private final RateLimitConfig config;
+    private final TimeSource clock;
+    private final int width;
+    private final int depth;
+    private final AtomicReferenceArray<Sketch> sketches = new AtomicReferenceArray<>(2);
+
+    /**
+     * @param epsilon over-count bound as a fraction of the window's requests
+     * @param delta   probability that a client exceeds that bound
+     */
+    public CountMinSketchRateLimiter(RateLimitConfig config, double epsilon, double delta) {
+        this(config, epsilon, delta, TimeSource.SYSTEM);
+    }
+
+    public CountMinSketchRateLimiter(RateLimitConfig config, double epsilon, double delta, TimeSource clock) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be in (0, 1)");
+        }
+        this.config = config;
+        this.clock = clock;
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        if (depth > Long.SIZE) {
+            throw new IllegalArgumentException("delta too small: more than 64 rows");
+        }
+        for (int i = 0; i < 2; i++) {
+            sketches.set(i, new Sketch(Long.MIN_VALUE, width * depth));
+        }
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        long now = clock.currentTimeMillis();
+        long windowIndex = now / config.getWindowSizeMillis();
+        Sketch current = sketchFor(windowIndex);
+        if (current == null) {
+            // Clock behind the newest window; treat as over the limit
+            return false;
+        }
+        long hash = RateLimitKey.hashString(clientId);
+        long previous = previousWeighted(hash, windowIndex, now);
+        AtomicLongArray counters = current.counters;
+
+        while (true) {
+            long min = Long.MAX_VALUE;
+            long minRows = 0;
+            for (int row = 0; row < depth; row++) {
+                long value = counters.get(index(hash, row));
+                if (value < min) {
+                    min = value;
+                    minRows = 1L << row;
+                } else if (value == min) {
+                    minRows |= 1L << row;
+                }
+            }
+            if (min + previous >= config.getMaxRequests()) {
+                return false;
+            }
+            boolean raised = true;
+            for (int row = 0; row < depth && raised; row++) {
+                if ((minRows & (1L << row)) != 0) {
+                    raised = counters.compareAndSet(index(hash, row), min, min + 1);
+                }
+            }
+            if (raised) {
+                return true;
+            }
+            // A concurrent request moved one of our counters; rows already raised stay raised
+        }
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        return (int) Math.max(0, config.getMaxRequests() - getEstimate(clientId));
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    /**
+     * Sketch counters are shared between clients and cannot be decreased
+     * without under-counting others, so reset is not supported and does nothing.
+     */
+    @Override
+    public void reset(String clientId) {
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        if (getRemainingRequests(clientId) > 0) {
+            return 0;
+        }
+        long now = clock.currentTimeMillis();
+        return config.getWindowSizeMillis() - now % config.getWindowSizeMillis();
+    }
+
+    /**
+     * Estimated requests of the client in the sliding window; never below
+     * the true count.
+     */
+    public long getEstimate(String clientId) {
+        long now = clock.currentTimeMillis();
+        long windowIndex = now / config.getWindowSizeMillis();
+        long hash = RateLimitKey.hashString(clientId);
+        Sketch current = sketches.get((int) (windowIndex & 1));
+        long count = current.windowIndex == windowIndex ? estimate(current, hash) : 0;
+        return count + previousWeighted(hash, windowIndex, now);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Counter memory of the two live sketches.
+     */
+    public long getMemoryBytes() {
+        return 2L * width * depth * Long.BYTES;
+    }
+
+    private long previousWeighted(long hash, long windowIndex, long now) {
+        Sketch previous = sketches.get((int) ((windowIndex - 1) & 1));
+        if (previous.windowIndex != windowIndex - 1) {
+            return 0;
+        }
+        long windowSize = config.getWindowSizeMillis();
+        double remaining = 1.0 - (double) (now % windowSize) / windowSize;
+        return (long) Math.ceil(estimate(previous, hash) * remaining);
+    }
+
+    private long estimate(Sketch sketch, long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, sketch.counters.get(index(hash, row)));
+        }
+        return min;
+    }
+
+    private Sketch sketchFor(long windowIndex) {
+        int slot = (int) (windowIndex & 1);
+        while (true) {
+            Sketch sketch = sketches.get(slot);
+            if (sketch.windowIndex == windowIndex) {
+                return sketch;
+            }
+            if (sketch.windowIndex > windowIndex) {
+                return null;
+            }
+            // Rotate: the slot held the window before last, which no longer counts
+            Sketch fresh = new Sketch(windowIndex, width * depth);
+            if (sketches.compareAndSet(slot, sketch, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long hash, int row) {
+        // Kirsch-Mitzenmacher: row hashes derived from two halves of one 64-bit hash
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + Math.floorMod(h1 + row * h2, width);
+    }
+}
@@ -0,0 +1,314 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log of rate limit decisions in rolling memory-mapped
+ * segment files, read back with {@link DecisionEventReader}.
+ *
+ * Request threads encode a fixed-size record straight into a slot of a
+ * lock-free multi-producer ring buffer: one CAS to claim the slot, a few
+ * absolute stores and an ordered store to publish it. When the ring is full
+ * the event is dropped and counted; producers never block. A single
+ * consumer thread copies published records, in claim order, into the
+ * current segment and rolls to a new segment when it is full, keeping the
+ * newest {@code maxSegments}.
+ *
+ * Allowed and denied decisions are sampled independently; the rates are
+ * recorded in each segment header so readers can scale counts.
+ *
+ * Record layout ({@value #RECORD_BYTES} bytes, big-endian): timestamp
+ * millis, cost, tier ordinal, allowed flag, client id and endpoint as
+ * length-prefixed UTF-8 truncated to {@value #TEXT_BYTES} bytes. A zero
+ * timestamp marks the unwritten tail of a segment.
+ */
+public class DecisionEventLog implements DecisionListener, AutoCloseable {
+    static final int MAGIC = 0x524c4445;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 128;
+    static final int TEXT_BYTES = 55;
+    static final int COST_OFFSET = 8;
+    static final int TIER_OFFSET = 12;
+    static final int ALLOWED_OFFSET = 13;
+    static final int CLIENT_OFFSET = 14;
+    static final int ENDPOINT_OFFSET = CLIENT_OFFSET + 1 + TEXT_BYTES;
+    static final String SEGMENT_PREFIX = "decisions-";
+    static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final Path directory;
+    private final int mask;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final double allowedSampleRate;
+    private final double deniedSampleRate;
+    private final ByteBuffer ring;
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder written;
+    private final LongAdder dropped;
+    private final LongAdder sampledOut;
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    private long segmentIndex;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private int segmentPosition;
+
+    public DecisionEventLog(Path directory, MetricsRegistry registry) throws IOException {
+        this(directory, 1 << 16, 64L << 20, 16, 1.0, 1.0, registry);
+    }
+
+    /**
+     * @param ringSlots          ring buffer capacity in records; a power of two
+     * @param segmentBytes       size of each segment file
+     * @param maxSegments        segments kept; older ones are deleted
+     * @param allowedSampleRate  fraction of allowed decisions recorded
+     * @param deniedSampleRate   fraction of denied decisions recorded
+     */
+    public DecisionEventLog(
+        Path directory,
+        int ringSlots,
+        long segmentBytes,
+        int maxSegments,
+        double allowedSampleRate,
+        double deniedSampleRate,
+        MetricsRegistry registry
+    ) throws IOException {
+        if (Integer.bitCount(ringSlots) != 1) {
+            throw new IllegalArgumentException("ringSlots must be a power of two");
+        }
+        if (segmentBytes < HEADER_BYTES + RECORD_BYTES || segmentBytes > Integer.MAX_VALUE || maxSegments <= 0) {
+            throw new IllegalArgumentException("Invalid segment size or count");
+        }
+        this.directory = directory;
+        this.mask = ringSlots - 1;
+        this.segmentBytes = HEADER_BYTES + (segmentBytes - HEADER_BYTES) / RECORD_BYTES * RECORD_BYTES;
+        this.maxSegments = maxSegments;
+        this.allowedSampleRate = allowedSampleRate;
+        this.deniedSampleRate = deniedSampleRate;
+        this.ring = ByteBuffer.allocateDirect(ringSlots * RECORD_BYTES);
+        this.published = new AtomicLongArray(ringSlots);
+        this.written = registry.counter("ratelimiter_decision_events_total",
+            "Decision events by outcome in the decision log", "result", "written");
+        this.dropped = registry.counter("ratelimiter_decision_events_total",
+            "Decision events by outcome in the decision log", "result", "dropped");
+        this.sampledOut = registry.counter("ratelimiter_decision_events_total",
+            "Decision events by outcome in the decision log", "result", "sampled_out");
+
+        Files.createDirectories(directory);
+        List<Path> existing = DecisionEventReader.segments(directory);
+        segmentIndex = existing.isEmpty() ? 0 : DecisionEventReader.segmentIndex(existing.get(existing.size() - 1));
+        openSegment();
+
+        consumer = new Thread(this::consume, "decision-log-writer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void onDecision(String clientId, String endpoint, ClientTier tier, boolean allowed) {
+        publish(clientId, endpoint, tier, allowed, 1);
+    }
+
+    /**
+     * Records a decision unless it is sampled out or the ring is full.
+     * Returns true if the event was queued.
+     */
+    public boolean publish(String clientId, String endpoint, ClientTier tier, boolean allowed, int cost) {
+        double rate = allowed ? allowedSampleRate : deniedSampleRate;
+        if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            sampledOut.increment();
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        int offset = slot * RECORD_BYTES;
+        ring.putLong(offset, System.currentTimeMillis());
+        ring.putInt(offset + COST_OFFSET, cost);
+        ring.put(offset + TIER_OFFSET, (byte) tier.ordinal());
+        ring.put(offset + ALLOWED_OFFSET, (byte) (allowed ? 1 : 0));
+        putText(offset + CLIENT_OFFSET, clientId);
+        putText(offset + ENDPOINT_OFFSET, endpoint);
+        // Ordered store publishes the record to the consumer
+        published.lazySet(slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Waits until every event queued before this call is in a segment.
+     */
+    public void flush() throws InterruptedException {
+        long target = tail.get();
+        while (head < target) {
+            if (!consumer.isAlive()) {
+                throw new IllegalStateException("Decision log writer stopped");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes everything already queued, then stops the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        try {
+            while (true) {
+                int batch = drain();
+                if (batch == 0) {
+                    if (!running && head == tail.get()) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            segment.force();
+            segmentChannel.close();
+        } catch (IOException ex) {
+            System.err.println("Decision log writer failed: " + ex);
+        }
+    }
+
+    private int drain() throws IOException {
+        long next = head;
+        int batch = 0;
+        while (batch < MAX_BATCH) {
+            int slot = (int) (next & mask);
+            if (published.get(slot) != next + 1) {
+                break;
+            }
+            if (segmentPosition + RECORD_BYTES > segmentBytes) {
+                rollSegment();
+            }
+            // Timestamp last, so a concurrent reader never sees a half-copied record as written
+            int offset = slot * RECORD_BYTES;
+            segment.put(segmentPosition + COST_OFFSET, ring, offset + COST_OFFSET, RECORD_BYTES - COST_OFFSET);
+            segment.putLong(segmentPosition, ring.getLong(offset));
+            segmentPosition += RECORD_BYTES;
+            next++;
+            batch++;
+        }
+        if (batch > 0) {
+            head = next;
+            written.add(batch);
+        }
+        return batch;
+    }
+
+    private void rollSegment() throws IOException {
+        segment.force();
+        segmentChannel.close();
+        openSegment();
+        List<Path> segments = DecisionEventReader.segments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentIndex++;
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        segmentChannel = FileChannel.open(file,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(0, MAGIC)
+            .putInt(4, FORMAT_VERSION)
+            .putInt(8, RECORD_BYTES)
+            .putDouble(16, allowedSampleRate)
+            .putDouble(24, deniedSampleRate);
+        segmentPosition = HEADER_BYTES;
+    }
+
+    /**
+     * Writes {@code text} as a length byte plus UTF-8, truncated at a
+     * character boundary; each surrogate char becomes '?'.
+     */
+    private void putText(int offset, String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int position = offset + 1 + length;
+            if (c < 0x80) {
+                if (length + 1 > TEXT_BYTES) {
+                    break;
+                }
+                ring.put(position, (byte) c);
+                length += 1;
+            } else if (c < 0x800) {
+                if (length + 2 > TEXT_BYTES) {
+                    break;
+                }
+                ring.put(position, (byte) (0xc0 | c >> 6));
+                ring.put(position + 1, (byte) (0x80 | c & 0x3f));
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (length + 1 > TEXT_BYTES) {
+                    break;
+                }
+                ring.put(position, (byte) '?');
+                length += 1;
+            } else {
+                if (length + 3 > TEXT_BYTES) {
+                    break;
+                }
+                ring.put(position, (byte) (0xe0 | c >> 12));
+                ring.put(position + 1, (byte) (0x80 | c >> 6 & 0x3f));
+                ring.put(position + 2, (byte) (0x80 | c & 0x3f));
+                length += 3;
+            }
+        }
+        ring.put(offset, (byte) length);
+    }
+}
@@ -0,0 +1,182 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads the segments written by {@link DecisionEventLog}, oldest first.
+ * Run {@link #main} with the log directory to print events as CSV.
+ */
+public final class DecisionEventReader {
+    /** One recorded decision. */
+    public static final class DecisionEvent {
+        private final long timestampMillis;
+        private final String clientId;
+        private final String endpoint;
+        private final ClientTier tier;
+        private final boolean allowed;
+        private final int cost;
+        private final double sampleRate;
+
+        private DecisionEvent(
+            long timestampMillis,
+            String clientId,
+            String endpoint,
+            ClientTier tier,
+            boolean allowed,
+            int cost,
+            double sampleRate
+        ) {
+            this.timestampMillis = timestampMillis;
+            this.clientId = clientId;
+            this.endpoint = endpoint;
+            this.tier = tier;
+            this.allowed = allowed;
+            this.cost = cost;
+            this.sampleRate = sampleRate;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        /** Client id, truncated to the record's text field. */
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public ClientTier getTier() {
+            return tier;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        /** Rate this kind of decision was sampled at; scale counts by its inverse. */
+        public double getSampleRate() {
+            return sampleRate;
+        }
+    }
+
+    private DecisionEventReader() {
+    }
+
+    /**
+     * Feeds every event in {@code directory} to {@code consumer} and returns
+     * the number read. Segments still being written are read up to their
+     * last complete record.
+     */
+    public static long read(Path directory, Consumer<DecisionEvent> consumer) throws IOException {
+        long count = 0;
+        ClientTier[] tiers = ClientTier.values();
+        byte[] text = new byte[DecisionEventLog.TEXT_BYTES];
+        for (Path file : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < DecisionEventLog.HEADER_BYTES) {
+                    continue;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt(0) != DecisionEventLog.MAGIC
+                    || buffer.getInt(4) != DecisionEventLog.FORMAT_VERSION
+                    || buffer.getInt(8) != DecisionEventLog.RECORD_BYTES) {
+                    throw new IOException("Not a decision log segment: " + file);
+                }
+                double allowedRate = buffer.getDouble(16);
+                double deniedRate = buffer.getDouble(24);
+                for (long offset = DecisionEventLog.HEADER_BYTES;
+                     offset + DecisionEventLog.RECORD_BYTES <= channel.size();
+                     offset += DecisionEventLog.RECORD_BYTES) {
+                    int position = (int) offset;
+                    long timestamp = buffer.getLong(position);
+                    if (timestamp == 0) {
+                        break;
+                    }
+                    boolean allowed = buffer.get(position + DecisionEventLog.ALLOWED_OFFSET) != 0;
+                    consumer.accept(new DecisionEvent(
+                        timestamp,
+                        getText(buffer, position + DecisionEventLog.CLIENT_OFFSET, text),
+                        getText(buffer, position + DecisionEventLog.ENDPOINT_OFFSET, text),
+                        tiers[buffer.get(position + DecisionEventLog.TIER_OFFSET)],
+                        allowed,
+                        buffer.getInt(position + DecisionEventLog.COST_OFFSET),
+                        allowed ? allowedRate : deniedRate));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Prints the events in the directory given as the only argument as CSV.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: DecisionEventReader <decision-log-directory>");
+            System.exit(2);
+        }
+        StringBuilder line = new StringBuilder();
+        System.out.println("timestamp_ms,client_id,endpoint,tier,allowed,cost,sample_rate");
+        read(Paths.get(args[0]), event -> {
+            line.setLength(0);
+            line.append(event.getTimestampMillis()).append(',')
+                .append(event.getClientId()).append(',')
+                .append(event.getEndpoint()).append(',')
+                .append(event.getTier()).append(',')
+                .append(event.isAllowed()).append(',')
+                .append(event.getCost()).append(',')
+                .append(event.getSampleRate());
+            System.out.println(line);
+        });
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(DecisionEventReader::isSegment).forEach(segments::add);
+        }
+        // Zero-padded indexes sort lexically
+        Collections.sort(segments);
+        return segments;
+    }
+
+    static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(
+            DecisionEventLog.SEGMENT_PREFIX.length(), name.length() - DecisionEventLog.SEGMENT_SUFFIX.length()));
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(DecisionEventLog.SEGMENT_PREFIX) && name.endsWith(DecisionEventLog.SEGMENT_SUFFIX);
+    }
+
+    private static String getText(MappedByteBuffer buffer, int offset, byte[] scratch) {
+        int length = buffer.get(offset) & 0xff;
+        buffer.get(offset + 1, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,21 @@
+package com.meta.ratelimiter;
+
+/**
+ * Receives every rate limit decision made through an
+ * {@link InstrumentedEndpointRateLimiter}. Called on the request path, so
+ * implementations must be cheap and thread-safe.
+ */
+@FunctionalInterface
+public interface DecisionListener {
+    void onDecision(String clientId, String endpoint, ClientTier tier, boolean allowed);
+
+    /**
+     * Listener that notifies this one, then {@code next}.
+     */
+    default DecisionListener andThen(DecisionListener next) {
+        return (clientId, endpoint, tier, allowed) -> {
+            onDecision(clientId, endpoint, tier, allowed);
+            next.onDecision(clientId, endpoint, tier, allowed);
+        };
+    }
+}
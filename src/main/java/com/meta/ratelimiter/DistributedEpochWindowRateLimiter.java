@@ -0,0 +1,128 @@
+package com.meta.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed window limiter on epoch-aligned windows, using nothing but the
+ * store's {@link DistributedRateLimitStore#incrementAndGet} counter.
+ *
+ * Window {@code i} covers {@code [i * window, (i + 1) * window)}, so every
+ * node derives the same boundaries from its clock alone, and each window
+ * is its own key, {@code namespace + clientId + ":" + i}. A decision is one
+ * counter bump: the request is admitted if the new count is within the
+ * limit. Windows never roll over in place, so there is no snapshot to read
+ * and rewrite; a window's key expires after it ends, and stores reclaim it
+ * (the in-memory store sweeps expired entries as new ones are created).
+ *
+ * Each client's current window key is cached, with the window index hashed
+ * as a numeric suffix, so a decision builds no string or key.
+ *
+ * Denied requests still count, which only matters for the remaining count
+ * reported within the window. Unlike {@link DistributedFixedWindowRateLimiter},
+ * whose windows start at each client's first request, all clients' windows
+ * reset at the same instants.
+ */
+public class DistributedEpochWindowRateLimiter implements RateLimiter {
+    private static final String KEY_PREFIX = "epoch-fixed-window:";
+
+    private final RateLimitConfig config;
+    private final DistributedRateLimitStore store;
+    private final RateLimiter fallbackLimiter;
+    private final KeyCache keys;
+    private final TimeSource clock;
+
+    public DistributedEpochWindowRateLimiter(
+        RateLimitConfig config,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter
+    ) {
+        this(config, store, fallbackLimiter, KEY_PREFIX, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time from which window indexes are derived; should match
+     *              the store's clock
+     */
+    public DistributedEpochWindowRateLimiter(
+        RateLimitConfig config,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        TimeSource clock
+    ) {
+        this.config = config;
+        this.store = store;
+        this.fallbackLimiter = fallbackLimiter;
+        this.keys = new KeyCache(keyNamespace);
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        try {
+            long now = clock.currentTimeMillis();
+            long windowIndex = now / config.getWindowSizeMillis();
+            long count = store.incrementAndGet(keyFor(clientId, windowIndex), 1, ttlMillis(windowIndex, now));
+            return count <= config.getMaxRequests();
+        } catch (Exception ex) {
+            return fallbackLimiter.allowRequest(clientId);
+        }
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        try {
+            long count = currentCount(clientId, clock.currentTimeMillis());
+            return (int) Math.max(0, config.getMaxRequests() - count);
+        } catch (Exception ex) {
+            return fallbackLimiter.getRemainingRequests(clientId);
+        }
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    @Override
+    public void reset(String clientId) {
+        long windowIndex = clock.currentTimeMillis() / config.getWindowSizeMillis();
+        store.remove(keyFor(clientId, windowIndex));
+        keys.evict(clientId);
+        fallbackLimiter.reset(clientId);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        try {
+            long now = clock.currentTimeMillis();
+            if (currentCount(clientId, now) < config.getMaxRequests()) {
+                return 0;
+            }
+            return windowEnd(now / config.getWindowSizeMillis()) - now;
+        } catch (Exception ex) {
+            return fallbackLimiter.getResetTimeMillis(clientId);
+        }
+    }
+
+    private long currentCount(String clientId, long now) {
+        AtomicLong counter = store.get(keyFor(clientId, now / config.getWindowSizeMillis()), AtomicLong.class);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private RateLimitKey keyFor(String clientId, long windowIndex) {
+        return keys.keyFor(clientId, windowIndex);
+    }
+
+    /**
+     * Keeps the counter one window past its end, so a node whose clock lags
+     * the store's still finds it rather than starting the window over.
+     */
+    private long ttlMillis(long windowIndex, long now) {
+        return windowEnd(windowIndex) - now + config.getWindowSizeMillis();
+    }
+
+    private long windowEnd(long windowIndex) {
+        return (windowIndex + 1) * config.getWindowSizeMillis();
+    }
+}
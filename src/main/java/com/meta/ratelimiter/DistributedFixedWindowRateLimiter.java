@@ -1,39 +1,118 @@
 package com.meta.ratelimiter;
 
-import java.util.function.Supplier;
+import java.nio.ByteBuffer;
 
 /**
  * Fixed Window Rate Limiter backed by a distributed store.
+ *
+ * Decisions are {@link StateUpdater}s built once per limiter, so a
+ * steady-state check allocates nothing. Remaining and reset queries only
+ * read the snapshot: they never write, create entries or extend the TTL.
  */
 public class DistributedFixedWindowRateLimiter implements RateLimiter {
     private static final String KEY_PREFIX = "fixed-window:";
-    private final String keyNamespace;
 
     private static class FixedWindowSnapshot {
         private int count;
         private long windowStartMillis;
-        private boolean lastRequestAllowed;
 
-        private FixedWindowSnapshot(int count, long windowStartMillis, boolean lastRequestAllowed) {
+        private FixedWindowSnapshot(int count, long windowStartMillis) {
             this.count = count;
             this.windowStartMillis = windowStartMillis;
-            this.lastRequestAllowed = lastRequestAllowed;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " windowStart=" + windowStartMillis;
         }
     }
 
+    static final StateCodec<?> STATE_CODEC = new StateCodec<FixedWindowSnapshot>() {
+        @Override
+        public int typeId() {
+            return 2;
+        }
+
+        @Override
+        public Class<FixedWindowSnapshot> type() {
+            return FixedWindowSnapshot.class;
+        }
+
+        @Override
+        public void encode(FixedWindowSnapshot state, ByteBuffer out) {
+            out.putInt(state.count).putLong(state.windowStartMillis);
+        }
+
+        @Override
+        public FixedWindowSnapshot decode(ByteBuffer in) {
+            return new FixedWindowSnapshot(in.getInt(), in.getLong());
+        }
+    };
+
+    /**
+     * Base updater: rolls the window over if needed, then applies the operation.
+     */
+    private abstract class WindowUpdater implements StateUpdater<FixedWindowSnapshot> {
+        @Override
+        public FixedWindowSnapshot initialState(FixedWindowSnapshot previous, long nowMillis) {
+            if (previous == null) {
+                return new FixedWindowSnapshot(0, nowMillis);
+            }
+            previous.count = 0;
+            previous.windowStartMillis = nowMillis;
+            return previous;
+        }
+
+        @Override
+        public long apply(FixedWindowSnapshot state, long nowMillis) {
+            refreshWindowIfNeeded(state, nowMillis);
+            return applyRefreshed(state, nowMillis);
+        }
+
+        abstract long applyRefreshed(FixedWindowSnapshot state, long nowMillis);
+    }
+
+    private final WindowUpdater consume = new WindowUpdater() {
+        @Override
+        long applyRefreshed(FixedWindowSnapshot state, long nowMillis) {
+            if (state.count < config.getMaxRequests()) {
+                state.count++;
+                return 1;
+            }
+            return 0;
+        }
+    };
+
+    private final StateReader<FixedWindowSnapshot> remaining = new StateReader<FixedWindowSnapshot>() {
+        @Override
+        public long read(FixedWindowSnapshot state) {
+            return Math.max(0, config.getMaxRequests() - currentCount(state, clock.currentTimeMillis()));
+        }
+    };
+
+    private final StateReader<FixedWindowSnapshot> resetAfter = new StateReader<FixedWindowSnapshot>() {
+        @Override
+        public long read(FixedWindowSnapshot state) {
+            long now = clock.currentTimeMillis();
+            if (currentCount(state, now) < config.getMaxRequests()) {
+                return 0;
+            }
+            return Math.max(0, state.windowStartMillis + config.getWindowSizeMillis() - now);
+        }
+    };
+
     private final RateLimitConfig config;
     private final DistributedRateLimitStore store;
     private final RateLimiter fallbackLimiter;
+    private final KeyCache keys;
+    private final TimeSource clock;
 
     public DistributedFixedWindowRateLimiter(
         RateLimitConfig config,
         DistributedRateLimitStore store,
         RateLimiter fallbackLimiter
     ) {
-        this.config = config;
-        this.store = store;
-        this.fallbackLimiter = fallbackLimiter;
-        this.keyNamespace = KEY_PREFIX;
+        this(config, store, fallbackLimiter, KEY_PREFIX);
     }
 
     public DistributedFixedWindowRateLimiter(
@@ -41,28 +120,32 @@ public class DistributedFixedWindowRateLimiter implements RateLimiter {
         DistributedRateLimitStore store,
         RateLimiter fallbackLimiter,
         String keyNamespace
+    ) {
+        this(config, store, fallbackLimiter, keyNamespace, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time at which remaining and reset queries are evaluated;
+     *              should match the store's clock
+     */
+    public DistributedFixedWindowRateLimiter(
+        RateLimitConfig config,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        TimeSource clock
     ) {
         this.config = config;
         this.store = store;
         this.fallbackLimiter = fallbackLimiter;
-        this.keyNamespace = keyNamespace;
+        this.keys = new KeyCache(keyNamespace);
+        this.clock = clock;
     }
 
     @Override
     public boolean allowRequest(String clientId) {
         try {
-            FixedWindowSnapshot snapshot = updateState(clientId, state -> {
-                refreshWindowIfNeeded(state);
-                if (state.count < config.getMaxRequests()) {
-                    state.count++;
-                    state.lastRequestAllowed = true;
-                } else {
-                    state.lastRequestAllowed = false;
-                }
-                return state;
-            });
-
-            return snapshot.lastRequestAllowed;
+            return updateState(clientId, consume) == 1;
         } catch (Exception ex) {
             return fallbackLimiter.allowRequest(clientId);
         }
@@ -71,13 +154,7 @@ public class DistributedFixedWindowRateLimiter implements RateLimiter {
     @Override
     public int getRemainingRequests(String clientId) {
         try {
-            FixedWindowSnapshot snapshot = updateState(clientId, state -> {
-                refreshWindowIfNeeded(state);
-                state.lastRequestAllowed = false;
-                return state;
-            });
-
-            return Math.max(0, config.getMaxRequests() - snapshot.count);
+            return (int) store.read(keys.keyFor(clientId), FixedWindowSnapshot.class, remaining);
         } catch (Exception ex) {
             return fallbackLimiter.getRemainingRequests(clientId);
         }
@@ -90,51 +167,38 @@ public class DistributedFixedWindowRateLimiter implements RateLimiter {
 
     @Override
     public void reset(String clientId) {
-        store.remove(keyFor(clientId));
+        store.remove(keys.keyFor(clientId));
+        keys.evict(clientId);
         fallbackLimiter.reset(clientId);
     }
 
     @Override
     public long getResetTimeMillis(String clientId) {
         try {
-            FixedWindowSnapshot snapshot = updateState(clientId, state -> {
-                refreshWindowIfNeeded(state);
-                state.lastRequestAllowed = false;
-                return state;
-            });
-
-            if (snapshot.count < config.getMaxRequests()) {
-                return 0;
-            }
-
-            long currentTime = System.currentTimeMillis();
-            return Math.max(0, snapshot.windowStartMillis + config.getWindowSizeMillis() - currentTime);
+            return store.read(keys.keyFor(clientId), FixedWindowSnapshot.class, resetAfter);
         } catch (Exception ex) {
             return fallbackLimiter.getResetTimeMillis(clientId);
         }
     }
 
-    private FixedWindowSnapshot updateState(
-        String clientId,
-        java.util.function.Function<FixedWindowSnapshot, FixedWindowSnapshot> updater
-    ) {
-        String key = keyFor(clientId);
-        long ttlMillis = config.getWindowSizeMillis();
-        Supplier<FixedWindowSnapshot> initializer = () ->
-            new FixedWindowSnapshot(0, System.currentTimeMillis(), false);
+    private long updateState(String clientId, WindowUpdater updater) {
+        return store.update(keys.keyFor(clientId), config.getWindowSizeMillis(), updater);
+    }
 
-        return store.compute(key, ttlMillis, FixedWindowSnapshot.class, updater, initializer);
+    /**
+     * Count of the stored window, 0 if it is missing or has ended.
+     */
+    private int currentCount(FixedWindowSnapshot state, long now) {
+        if (state == null || now - state.windowStartMillis >= config.getWindowSizeMillis()) {
+            return 0;
+        }
+        return state.count;
     }
 
-    private void refreshWindowIfNeeded(FixedWindowSnapshot state) {
-        long currentTime = System.currentTimeMillis();
+    private void refreshWindowIfNeeded(FixedWindowSnapshot state, long currentTime) {
         if (currentTime - state.windowStartMillis >= config.getWindowSizeMillis()) {
             state.count = 0;
             state.windowStartMillis = currentTime;
         }
     }
-
-    private String keyFor(String clientId) {
-        return keyNamespace + clientId;
-    }
-}
\ No newline at end of file
+}
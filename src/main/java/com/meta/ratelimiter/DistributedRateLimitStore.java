@@ -1,11 +1,18 @@
 package com.meta.ratelimiter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
  * Abstraction for a distributed rate limit store (e.g., Redis).
  * Provides atomic compute semantics to update state per key.
+ *
+ * Keys are either plain strings or structured {@link RateLimitKey}s; a
+ * {@code RateLimitKey} addresses the same entry as its string form. The
+ * {@code RateLimitKey} overloads default to that string form, and stores
+ * that can key natively (such as the in-memory store) override them.
  */
 public interface DistributedRateLimitStore {
     <T> T get(String key, Class<T> type);
@@ -20,7 +27,139 @@ public interface DistributedRateLimitStore {
         Supplier<T> initializer
     );
 
+    /**
+     * Atomically updates several keys in a single store interaction (the
+     * equivalent of a multi-key Redis script). The update function receives
+     * the current values in the order of {@code keys} and must return the new
+     * values in the same order; no other operation observes a partial update.
+     */
+    <T> List<T> computeAll(
+        List<String> keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    );
+
+    /**
+     * Atomically applies {@code updater} to the state under {@code key},
+     * creating it with {@link StateUpdater#initialState} if missing or
+     * expired, and returns the updater's result. Unlike {@link #compute},
+     * the state is mutated in place and nothing is allocated on a hit.
+     */
+    <T> long update(String key, long ttlMillis, StateUpdater<T> updater);
+
+    /**
+     * Executes a declarative operation atomically in one store interaction
+     * and returns its packed result. Remote stores run it server-side;
+     * in-process stores run {@link StoreOperation#apply} under their lock.
+     */
+    long execute(String key, StoreOperation operation);
+
+    /**
+     * Evaluates {@code reader} against the live state under {@code key}
+     * without writing: no entry is created and the TTL is not extended. The
+     * state cannot change while the reader runs, so it sees one consistent
+     * snapshot. The default applies the reader to {@link #get}, which is
+     * only safe for stores whose {@code get} returns a copy.
+     */
+    default <T> long read(String key, Class<T> type, StateReader<T> reader) {
+        return reader.read(get(key, type));
+    }
+
+    /**
+     * Atomically adds {@code delta} to the counter under {@code key} and
+     * returns the new value, the equivalent of Redis {@code INCRBY}. A
+     * missing or expired counter starts from 0 and expires {@code ttlMillis}
+     * after it is created; later increments do not extend it. The counter
+     * reads back through {@link #get} as an {@code AtomicLong}.
+     */
+    long incrementAndGet(String key, long delta, long ttlMillis);
+
+    /**
+     * The live value under {@code key} with its version stamp, or null if it
+     * is missing or expired. Every write changes the version, so the value
+     * can be replaced optimistically with {@link #compareAndSet}.
+     * Backends that execute operations server-side need not support this.
+     */
+    default <T> VersionedValue<T> getWithVersion(String key, Class<T> type) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versioned access");
+    }
+
+    /**
+     * Stores {@code value} only if the key's version is still
+     * {@code expectedVersion}, where 0 means missing or expired. The value
+     * must not be modified once stored.
+     */
+    default <T> boolean compareAndSet(String key, long expectedVersion, T value, long ttlMillis) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versioned access");
+    }
+
     void remove(String key);
 
+    default <T> T get(RateLimitKey key, Class<T> type) {
+        return get(key.toString(), type);
+    }
+
+    default <T> void set(RateLimitKey key, T value, long ttlMillis) {
+        set(key.toString(), value, ttlMillis);
+    }
+
+    default <T> T compute(
+        RateLimitKey key,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        return compute(key.toString(), ttlMillis, type, updateFunction, initializer);
+    }
+
+    /**
+     * {@link #computeAll(List, long, Class, Function, Supplier)} over
+     * structured keys.
+     */
+    default <T> List<T> computeAll(
+        RateLimitKey[] keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        List<String> names = new ArrayList<>(keys.length);
+        for (RateLimitKey key : keys) {
+            names.add(key.toString());
+        }
+        return computeAll(names, ttlMillis, type, updateFunction, initializer);
+    }
+
+    default <T> long update(RateLimitKey key, long ttlMillis, StateUpdater<T> updater) {
+        return update(key.toString(), ttlMillis, updater);
+    }
+
+    default long execute(RateLimitKey key, StoreOperation operation) {
+        return execute(key.toString(), operation);
+    }
+
+    default <T> long read(RateLimitKey key, Class<T> type, StateReader<T> reader) {
+        return read(key.toString(), type, reader);
+    }
+
+    default long incrementAndGet(RateLimitKey key, long delta, long ttlMillis) {
+        return incrementAndGet(key.toString(), delta, ttlMillis);
+    }
+
+    default <T> VersionedValue<T> getWithVersion(RateLimitKey key, Class<T> type) {
+        return getWithVersion(key.toString(), type);
+    }
+
+    default <T> boolean compareAndSet(RateLimitKey key, long expectedVersion, T value, long ttlMillis) {
+        return compareAndSet(key.toString(), expectedVersion, value, ttlMillis);
+    }
+
+    default void remove(RateLimitKey key) {
+        remove(key.toString());
+    }
+
     void clear();
-}
\ No newline at end of file
+}
@@ -1,39 +1,183 @@
 package com.meta.ratelimiter;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Supplier;
+import java.nio.ByteBuffer;
 
 /**
  * Sliding Window Rate Limiter backed by a distributed store.
+ *
+ * Request timestamps are kept in a primitive ring buffer that grows up to
+ * {@code maxRequests}, so steady-state checks neither box timestamps nor
+ * allocate list nodes. Remaining and reset queries only read the
+ * snapshot: they never write, create entries or extend the TTL.
  */
 public class DistributedSlidingWindowRateLimiter implements RateLimiter {
     private static final String KEY_PREFIX = "sliding-window:";
-    private final String keyNamespace;
+    private static final int INITIAL_CAPACITY = 8;
 
     private static class SlidingWindowSnapshot {
-        private List<Long> requestTimestamps;
-        private boolean lastRequestAllowed;
+        private long[] requestTimestamps;
+        private int head;
+        private int size;
 
-        private SlidingWindowSnapshot(List<Long> requestTimestamps, boolean lastRequestAllowed) {
-            this.requestTimestamps = requestTimestamps;
-            this.lastRequestAllowed = lastRequestAllowed;
+        private SlidingWindowSnapshot(int capacity) {
+            this.requestTimestamps = new long[capacity];
+        }
+
+        private long oldest() {
+            return requestTimestamps[head];
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + size + (size > 0 ? " oldest=" + oldest() : "");
+        }
+
+        private void add(long timestamp, int maxCapacity) {
+            if (size == requestTimestamps.length) {
+                grow(maxCapacity);
+            }
+            requestTimestamps[(head + size) % requestTimestamps.length] = timestamp;
+            size++;
+        }
+
+        private void grow(int maxCapacity) {
+            long[] grown = new long[Math.min(maxCapacity, requestTimestamps.length * 2)];
+            for (int i = 0; i < size; i++) {
+                grown[i] = requestTimestamps[(head + i) % requestTimestamps.length];
+            }
+            requestTimestamps = grown;
+            head = 0;
+        }
+
+        /**
+         * Timestamps at or after {@code windowStart}, without purging.
+         */
+        private int countSince(long windowStart) {
+            int inWindow = 0;
+            for (int i = 0; i < size; i++) {
+                if (requestTimestamps[(head + i) % requestTimestamps.length] >= windowStart) {
+                    inWindow++;
+                }
+            }
+            return inWindow;
+        }
+
+        /**
+         * The oldest timestamp at or after {@code windowStart}, or
+         * {@code Long.MAX_VALUE} if there is none; timestamps are in order.
+         */
+        private long oldestSince(long windowStart) {
+            for (int i = 0; i < size; i++) {
+                long timestamp = requestTimestamps[(head + i) % requestTimestamps.length];
+                if (timestamp >= windowStart) {
+                    return timestamp;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private void purgeBefore(long windowStart) {
+            while (size > 0 && requestTimestamps[head] < windowStart) {
+                head = (head + 1) % requestTimestamps.length;
+                size--;
+            }
         }
     }
 
+    static final StateCodec<?> STATE_CODEC = new StateCodec<SlidingWindowSnapshot>() {
+        @Override
+        public int typeId() {
+            return 3;
+        }
+
+        @Override
+        public Class<SlidingWindowSnapshot> type() {
+            return SlidingWindowSnapshot.class;
+        }
+
+        @Override
+        public void encode(SlidingWindowSnapshot state, ByteBuffer out) {
+            out.putInt(state.size);
+            for (int i = 0; i < state.size; i++) {
+                out.putLong(state.requestTimestamps[(state.head + i) % state.requestTimestamps.length]);
+            }
+        }
+
+        @Override
+        public SlidingWindowSnapshot decode(ByteBuffer in) {
+            int size = in.getInt();
+            SlidingWindowSnapshot state = new SlidingWindowSnapshot(Math.max(INITIAL_CAPACITY, size));
+            for (int i = 0; i < size; i++) {
+                state.requestTimestamps[i] = in.getLong();
+            }
+            state.size = size;
+            return state;
+        }
+    };
+
+    /**
+     * Base updater: drops timestamps that left the window, then applies the operation.
+     */
+    private abstract class WindowUpdater implements StateUpdater<SlidingWindowSnapshot> {
+        @Override
+        public SlidingWindowSnapshot initialState(SlidingWindowSnapshot previous, long nowMillis) {
+            if (previous == null) {
+                return new SlidingWindowSnapshot(Math.min(INITIAL_CAPACITY, Math.max(1, config.getMaxRequests())));
+            }
+            previous.head = 0;
+            previous.size = 0;
+            return previous;
+        }
+
+        @Override
+        public long apply(SlidingWindowSnapshot state, long nowMillis) {
+            state.purgeBefore(nowMillis - config.getWindowSizeMillis());
+            return applyPurged(state, nowMillis);
+        }
+
+        abstract long applyPurged(SlidingWindowSnapshot state, long nowMillis);
+    }
+
+    private final WindowUpdater consume = new WindowUpdater() {
+        @Override
+        long applyPurged(SlidingWindowSnapshot state, long nowMillis) {
+            if (state.size < config.getMaxRequests()) {
+                state.add(nowMillis, config.getMaxRequests());
+                return 1;
+            }
+            return 0;
+        }
+    };
+
+    private final StateReader<SlidingWindowSnapshot> remaining = new StateReader<SlidingWindowSnapshot>() {
+        @Override
+        public long read(SlidingWindowSnapshot state) {
+            long windowStart = clock.currentTimeMillis() - config.getWindowSizeMillis();
+            return Math.max(0, config.getMaxRequests() - (state == null ? 0 : state.countSince(windowStart)));
+        }
+    };
+
+    private final StateReader<SlidingWindowSnapshot> resetAfter = new StateReader<SlidingWindowSnapshot>() {
+        @Override
+        public long read(SlidingWindowSnapshot state) {
+            long now = clock.currentTimeMillis();
+            long oldest = state == null ? Long.MAX_VALUE : state.oldestSince(now - config.getWindowSizeMillis());
+            return oldest == Long.MAX_VALUE ? 0 : Math.max(0, oldest + config.getWindowSizeMillis() - now);
+        }
+    };
+
     private final RateLimitConfig config;
     private final DistributedRateLimitStore store;
     private final RateLimiter fallbackLimiter;
+    private final KeyCache keys;
+    private final TimeSource clock;
 
     public DistributedSlidingWindowRateLimiter(
         RateLimitConfig config,
         DistributedRateLimitStore store,
         RateLimiter fallbackLimiter
     ) {
-        this.config = config;
-        this.store = store;
-        this.fallbackLimiter = fallbackLimiter;
-        this.keyNamespace = KEY_PREFIX;
+        this(config, store, fallbackLimiter, KEY_PREFIX);
     }
 
     public DistributedSlidingWindowRateLimiter(
@@ -41,28 +185,32 @@ public class DistributedSlidingWindowRateLimiter implements RateLimiter {
         DistributedRateLimitStore store,
         RateLimiter fallbackLimiter,
         String keyNamespace
+    ) {
+        this(config, store, fallbackLimiter, keyNamespace, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time at which remaining and reset queries are evaluated;
+     *              should match the store's clock
+     */
+    public DistributedSlidingWindowRateLimiter(
+        RateLimitConfig config,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        TimeSource clock
     ) {
         this.config = config;
         this.store = store;
         this.fallbackLimiter = fallbackLimiter;
-        this.keyNamespace = keyNamespace;
+        this.keys = new KeyCache(keyNamespace);
+        this.clock = clock;
     }
 
     @Override
     public boolean allowRequest(String clientId) {
         try {
-            SlidingWindowSnapshot snapshot = updateState(clientId, state -> {
-                purgeOldEntries(state.requestTimestamps);
-                if (state.requestTimestamps.size() < config.getMaxRequests()) {
-                    state.requestTimestamps.add(System.currentTimeMillis());
-                    state.lastRequestAllowed = true;
-                } else {
-                    state.lastRequestAllowed = false;
-                }
-                return state;
-            });
-
-            return snapshot.lastRequestAllowed;
+            return updateState(clientId, consume) == 1;
         } catch (Exception ex) {
             return fallbackLimiter.allowRequest(clientId);
         }
@@ -71,13 +219,7 @@ public class DistributedSlidingWindowRateLimiter implements RateLimiter {
     @Override
     public int getRemainingRequests(String clientId) {
         try {
-            SlidingWindowSnapshot snapshot = updateState(clientId, state -> {
-                purgeOldEntries(state.requestTimestamps);
-                state.lastRequestAllowed = false;
-                return state;
-            });
-
-            return Math.max(0, config.getMaxRequests() - snapshot.requestTimestamps.size());
+            return (int) store.read(keys.keyFor(clientId), SlidingWindowSnapshot.class, remaining);
         } catch (Exception ex) {
             return fallbackLimiter.getRemainingRequests(clientId);
         }
@@ -90,55 +232,21 @@ public class DistributedSlidingWindowRateLimiter implements RateLimiter {
 
     @Override
     public void reset(String clientId) {
-        store.remove(keyFor(clientId));
+        store.remove(keys.keyFor(clientId));
+        keys.evict(clientId);
         fallbackLimiter.reset(clientId);
     }
 
     @Override
     public long getResetTimeMillis(String clientId) {
         try {
-            SlidingWindowSnapshot snapshot = updateState(clientId, state -> {
-                purgeOldEntries(state.requestTimestamps);
-                state.lastRequestAllowed = false;
-                return state;
-            });
-
-            if (snapshot.requestTimestamps.isEmpty()) {
-                return 0;
-            }
-
-            long oldest = snapshot.requestTimestamps.get(0);
-            for (Long timestamp : snapshot.requestTimestamps) {
-                if (timestamp < oldest) {
-                    oldest = timestamp;
-                }
-            }
-
-            long currentTime = System.currentTimeMillis();
-            return Math.max(0, oldest + config.getWindowSizeMillis() - currentTime);
+            return store.read(keys.keyFor(clientId), SlidingWindowSnapshot.class, resetAfter);
         } catch (Exception ex) {
             return fallbackLimiter.getResetTimeMillis(clientId);
         }
     }
 
-    private SlidingWindowSnapshot updateState(
-        String clientId,
-        java.util.function.Function<SlidingWindowSnapshot, SlidingWindowSnapshot> updater
-    ) {
-        String key = keyFor(clientId);
-        long ttlMillis = config.getWindowSizeMillis();
-        Supplier<SlidingWindowSnapshot> initializer = () ->
-            new SlidingWindowSnapshot(new ArrayList<>(), false);
-
-        return store.compute(key, ttlMillis, SlidingWindowSnapshot.class, updater, initializer);
-    }
-
-    private void purgeOldEntries(List<Long> timestamps) {
-        long windowStart = System.currentTimeMillis() - config.getWindowSizeMillis();
-        timestamps.removeIf(timestamp -> timestamp < windowStart);
-    }
-
-    private String keyFor(String clientId) {
-        return keyNamespace + clientId;
+    private long updateState(String clientId, WindowUpdater updater) {
+        return store.update(keys.keyFor(clientId), config.getWindowSizeMillis(), updater);
     }
-}
\ No newline at end of file
+}
@@ -1,41 +1,121 @@
 package com.meta.ratelimiter;
 
-import java.util.function.Function;
-import java.util.function.Supplier;
+import java.nio.ByteBuffer;
 
 /**
  * Token Bucket Rate Limiter backed by a distributed store.
- * Uses atomic compute operations on the store to update token state.
+ * Uses atomic update operations on the store to update token state.
+ *
+ * Each decision is a {@link StateUpdater} built once per limiter that
+ * mutates the stored snapshot in place and returns a primitive result, so a
+ * steady-state check allocates nothing. Remaining and reset queries only
+ * read the snapshot: they never write, create entries or extend the TTL.
  */
 public class DistributedTokenBucketRateLimiter implements RateLimiter {
     private static final String KEY_PREFIX = "token-bucket:";
-    private final String keyNamespace;
 
     private static class TokenBucketSnapshot {
         private double tokens;
         private long lastRefillTimestamp;
-        private boolean lastRequestAllowed;
 
-        private TokenBucketSnapshot(double tokens, long lastRefillTimestamp, boolean lastRequestAllowed) {
+        private TokenBucketSnapshot(double tokens, long lastRefillTimestamp) {
             this.tokens = tokens;
             this.lastRefillTimestamp = lastRefillTimestamp;
-            this.lastRequestAllowed = lastRequestAllowed;
         }
+
+        @Override
+        public String toString() {
+            return "tokens=" + tokens + " lastRefill=" + lastRefillTimestamp;
+        }
+    }
+
+    static final StateCodec<?> STATE_CODEC = new StateCodec<TokenBucketSnapshot>() {
+        @Override
+        public int typeId() {
+            return 1;
+        }
+
+        @Override
+        public Class<TokenBucketSnapshot> type() {
+            return TokenBucketSnapshot.class;
+        }
+
+        @Override
+        public void encode(TokenBucketSnapshot state, ByteBuffer out) {
+            out.putDouble(state.tokens).putLong(state.lastRefillTimestamp);
+        }
+
+        @Override
+        public TokenBucketSnapshot decode(ByteBuffer in) {
+            return new TokenBucketSnapshot(in.getDouble(), in.getLong());
+        }
+    };
+
+    /**
+     * Base updater: refills the bucket, then applies the operation.
+     */
+    private abstract class BucketUpdater implements StateUpdater<TokenBucketSnapshot> {
+        @Override
+        public TokenBucketSnapshot initialState(TokenBucketSnapshot previous, long nowMillis) {
+            if (previous == null) {
+                return new TokenBucketSnapshot(config.getBurstCapacity(), nowMillis);
+            }
+            previous.tokens = config.getBurstCapacity();
+            previous.lastRefillTimestamp = nowMillis;
+            return previous;
+        }
+
+        @Override
+        public long apply(TokenBucketSnapshot state, long nowMillis) {
+            refillTokens(state, nowMillis);
+            return applyRefilled(state);
+        }
+
+        abstract long applyRefilled(TokenBucketSnapshot state);
     }
 
+    private final BucketUpdater consume = new BucketUpdater() {
+        @Override
+        long applyRefilled(TokenBucketSnapshot state) {
+            if (state.tokens >= 1.0) {
+                state.tokens -= 1.0;
+                return 1;
+            }
+            return 0;
+        }
+    };
+
+    private final StateReader<TokenBucketSnapshot> remaining = new StateReader<TokenBucketSnapshot>() {
+        @Override
+        public long read(TokenBucketSnapshot state) {
+            return (long) Math.floor(tokensNow(state));
+        }
+    };
+
+    private final StateReader<TokenBucketSnapshot> resetAfter = new StateReader<TokenBucketSnapshot>() {
+        @Override
+        public long read(TokenBucketSnapshot state) {
+            double tokens = tokensNow(state);
+            if (tokens >= 1.0) {
+                return 0;
+            }
+            double refillRate = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+            return (long) Math.ceil((1.0 - tokens) / refillRate);
+        }
+    };
+
     private final RateLimitConfig config;
     private final DistributedRateLimitStore store;
     private final RateLimiter fallbackLimiter;
+    private final KeyCache keys;
+    private final TimeSource clock;
 
     public DistributedTokenBucketRateLimiter(
         RateLimitConfig config,
         DistributedRateLimitStore store,
         RateLimiter fallbackLimiter
     ) {
-        this.config = config;
-        this.store = store;
-        this.fallbackLimiter = fallbackLimiter;
-        this.keyNamespace = KEY_PREFIX;
+        this(config, store, fallbackLimiter, KEY_PREFIX);
     }
 
     public DistributedTokenBucketRateLimiter(
@@ -43,28 +123,32 @@ public class DistributedTokenBucketRateLimiter implements RateLimiter {
         DistributedRateLimitStore store,
         RateLimiter fallbackLimiter,
         String keyNamespace
+    ) {
+        this(config, store, fallbackLimiter, keyNamespace, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time at which remaining and reset queries are evaluated;
+     *              should match the store's clock
+     */
+    public DistributedTokenBucketRateLimiter(
+        RateLimitConfig config,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        TimeSource clock
     ) {
         this.config = config;
         this.store = store;
         this.fallbackLimiter = fallbackLimiter;
-        this.keyNamespace = keyNamespace;
+        this.keys = new KeyCache(keyNamespace);
+        this.clock = clock;
     }
 
     @Override
     public boolean allowRequest(String clientId) {
         try {
-            TokenBucketSnapshot snapshot = updateState(clientId, state -> {
-                refillTokens(state, System.currentTimeMillis());
-                if (state.tokens >= 1.0) {
-                    state.tokens -= 1.0;
-                    state.lastRequestAllowed = true;
-                } else {
-                    state.lastRequestAllowed = false;
-                }
-                return state;
-            });
-
-            return snapshot.lastRequestAllowed;
+            return updateState(clientId, consume) == 1;
         } catch (Exception ex) {
             return fallbackLimiter.allowRequest(clientId);
         }
@@ -73,12 +157,7 @@ public class DistributedTokenBucketRateLimiter implements RateLimiter {
     @Override
     public int getRemainingRequests(String clientId) {
         try {
-            TokenBucketSnapshot snapshot = updateState(clientId, state -> {
-                refillTokens(state, System.currentTimeMillis());
-                state.lastRequestAllowed = false;
-                return state;
-            });
-            return (int) Math.floor(snapshot.tokens);
+            return (int) store.read(keys.keyFor(clientId), TokenBucketSnapshot.class, remaining);
         } catch (Exception ex) {
             return fallbackLimiter.getRemainingRequests(clientId);
         }
@@ -91,38 +170,39 @@ public class DistributedTokenBucketRateLimiter implements RateLimiter {
 
     @Override
     public void reset(String clientId) {
-        store.remove(keyFor(clientId));
+        store.remove(keys.keyFor(clientId));
+        keys.evict(clientId);
         fallbackLimiter.reset(clientId);
     }
 
     @Override
     public long getResetTimeMillis(String clientId) {
         try {
-            TokenBucketSnapshot snapshot = updateState(clientId, state -> {
-                refillTokens(state, System.currentTimeMillis());
-                state.lastRequestAllowed = false;
-                return state;
-            });
-
-            if (snapshot.tokens >= 1.0) {
-                return 0;
-            }
-
-            double refillRate = (double) config.getMaxRequests() / config.getWindowSizeMillis();
-            double tokensNeeded = 1.0 - snapshot.tokens;
-            return (long) Math.ceil(tokensNeeded / refillRate);
+            return store.read(keys.keyFor(clientId), TokenBucketSnapshot.class, resetAfter);
         } catch (Exception ex) {
             return fallbackLimiter.getResetTimeMillis(clientId);
         }
     }
 
-    private TokenBucketSnapshot updateState(String clientId, Function<TokenBucketSnapshot, TokenBucketSnapshot> updater) {
-        String key = keyFor(clientId);
-        long ttlMillis = config.getWindowSizeMillis();
-        Supplier<TokenBucketSnapshot> initializer = () ->
-            new TokenBucketSnapshot(config.getBurstCapacity(), System.currentTimeMillis(), false);
+    private long updateState(String clientId, BucketUpdater updater) {
+        return store.update(keys.keyFor(clientId), config.getWindowSizeMillis(), updater);
+    }
 
-        return store.compute(key, ttlMillis, TokenBucketSnapshot.class, updater, initializer);
+    /**
+     * Tokens in {@code state} as of now, without refilling it; a missing
+     * bucket is full.
+     */
+    private double tokensNow(TokenBucketSnapshot state) {
+        if (state == null) {
+            return config.getBurstCapacity();
+        }
+        double tokens = state.tokens;
+        long elapsedTime = clock.currentTimeMillis() - state.lastRefillTimestamp;
+        if (elapsedTime > 0) {
+            double refillRate = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+            tokens = Math.min(config.getBurstCapacity(), tokens + elapsedTime * refillRate);
+        }
+        return tokens;
     }
 
     private void refillTokens(TokenBucketSnapshot state, long currentTime) {
@@ -136,8 +216,4 @@ public class DistributedTokenBucketRateLimiter implements RateLimiter {
         state.tokens = Math.min(config.getBurstCapacity(), state.tokens + tokensToAdd);
         state.lastRefillTimestamp = currentTime;
     }
-
-    private String keyFor(String clientId) {
-        return keyNamespace + clientId;
-    }
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package com.meta.ratelimiter;
 
+import java.util.Optional;
+
 /**
  * Endpoint-aware rate limiter interface.
  */
@@ -13,4 +15,12 @@ public interface EndpointRateLimiter {
     void reset(String clientId, String endpoint);
 
     long getResetTimeMillis(String clientId, String endpoint);
+
+    /**
+     * Admits a request under both the rate limit and any concurrency limit
+     * of the endpoint. The permit must be completed when the request ends.
+     */
+    default Optional<ConcurrencyPermit> acquire(String clientId, String endpoint) {
+        return allowRequest(clientId, endpoint) ? Optional.of(ConcurrencyPermit.NONE) : Optional.empty();
+    }
 }
\ No newline at end of file
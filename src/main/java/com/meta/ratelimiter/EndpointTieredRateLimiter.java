@@ -1,7 +1,9 @@
 package com.meta.ratelimiter;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Endpoint-aware, tiered rate limiter that dispatches per endpoint + tier.
@@ -9,13 +11,27 @@ import java.util.Map;
 public class EndpointTieredRateLimiter implements EndpointRateLimiter {
     private final Map<String, TieredRateLimiter> endpointLimiters;
     private final TieredRateLimiter defaultLimiter;
+    private final Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters;
 
     public EndpointTieredRateLimiter(
         Map<String, TieredRateLimiter> endpointLimiters,
         TieredRateLimiter defaultLimiter
+    ) {
+        this(endpointLimiters, defaultLimiter, Collections.emptyMap());
+    }
+
+    /**
+     * @param concurrencyLimiters adaptive in-flight caps applied by
+     *                            {@link #acquire} on top of the rate limits
+     */
+    public EndpointTieredRateLimiter(
+        Map<String, TieredRateLimiter> endpointLimiters,
+        TieredRateLimiter defaultLimiter,
+        Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters
     ) {
         this.endpointLimiters = new HashMap<>(endpointLimiters);
         this.defaultLimiter = defaultLimiter;
+        this.concurrencyLimiters = new HashMap<>(concurrencyLimiters);
     }
 
     @Override
@@ -43,6 +59,21 @@ public class EndpointTieredRateLimiter implements EndpointRateLimiter {
         return limiterFor(endpoint).getResetTimeMillis(clientId);
     }
 
+    @Override
+    public Optional<ConcurrencyPermit> acquire(String clientId, String endpoint) {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = concurrencyLimiters.get(endpoint);
+        if (concurrencyLimiter == null) {
+            return allowRequest(clientId, endpoint) ? Optional.of(ConcurrencyPermit.NONE) : Optional.empty();
+        }
+        // Take the in-flight slot first so a request rejected for concurrency keeps its token
+        Optional<ConcurrencyPermit> permit = concurrencyLimiter.acquire(clientId);
+        if (permit.isPresent() && !allowRequest(clientId, endpoint)) {
+            permit.get().ignore();
+            return Optional.empty();
+        }
+        return permit;
+    }
+
     private TieredRateLimiter limiterFor(String endpoint) {
         return endpointLimiters.getOrDefault(endpoint, defaultLimiter);
     }
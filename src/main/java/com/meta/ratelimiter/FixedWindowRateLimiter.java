@@ -1,12 +1,13 @@
 package com.meta.ratelimiter;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Fixed Window Rate Limiter Implementation
  */
-public class FixedWindowRateLimiter implements RateLimiter {
+public class FixedWindowRateLimiter implements RateLimiter, InspectableStore {
     private static class FixedWindowState {
         private int count;
         private long windowStartMillis;
@@ -15,19 +16,30 @@ public class FixedWindowRateLimiter implements RateLimiter {
             this.count = 0;
             this.windowStartMillis = windowStartMillis;
         }
+
+        @Override
+        public synchronized String toString() {
+            return "count=" + count + " windowStart=" + windowStartMillis;
+        }
     }
 
     private final RateLimitConfig config;
+    private final TimeSource clock;
     private final Map<String, FixedWindowState> states = new ConcurrentHashMap<>();
 
     public FixedWindowRateLimiter(RateLimitConfig config) {
+        this(config, TimeSource.SYSTEM);
+    }
+
+    public FixedWindowRateLimiter(RateLimitConfig config, TimeSource clock) {
         this.config = config;
+        this.clock = clock;
     }
 
     @Override
     public boolean allowRequest(String clientId) {
         FixedWindowState state = states.computeIfAbsent(
-            clientId, key -> new FixedWindowState(System.currentTimeMillis()));
+            clientId, key -> new FixedWindowState(clock.currentTimeMillis()));
 
         synchronized (state) {
             refreshWindowIfNeeded(state);
@@ -42,7 +54,7 @@ public class FixedWindowRateLimiter implements RateLimiter {
     @Override
     public int getRemainingRequests(String clientId) {
         FixedWindowState state = states.computeIfAbsent(
-            clientId, key -> new FixedWindowState(System.currentTimeMillis()));
+            clientId, key -> new FixedWindowState(clock.currentTimeMillis()));
 
         synchronized (state) {
             refreshWindowIfNeeded(state);
@@ -50,6 +62,18 @@ public class FixedWindowRateLimiter implements RateLimiter {
         }
     }
 
+    /**
+     * Lists client windows; entries stay until reset, so ended windows are
+     * included with their last count.
+     */
+    @Override
+    public Iterator<StateEntry> inspect(String keyPrefix) {
+        return states.entrySet().stream()
+            .filter(entry -> entry.getKey().startsWith(keyPrefix))
+            .map(entry -> new StateEntry(entry.getKey(), entry.getValue().toString(), 0))
+            .iterator();
+    }
+
     @Override
     public int getLimit(String clientId) {
         return config.getMaxRequests();
@@ -63,20 +87,20 @@ public class FixedWindowRateLimiter implements RateLimiter {
     @Override
     public long getResetTimeMillis(String clientId) {
         FixedWindowState state = states.computeIfAbsent(
-            clientId, key -> new FixedWindowState(System.currentTimeMillis()));
+            clientId, key -> new FixedWindowState(clock.currentTimeMillis()));
 
         synchronized (state) {
             refreshWindowIfNeeded(state);
             if (state.count < config.getMaxRequests()) {
                 return 0;
             }
-            long currentTime = System.currentTimeMillis();
+            long currentTime = clock.currentTimeMillis();
             return Math.max(0, state.windowStartMillis + config.getWindowSizeMillis() - currentTime);
         }
     }
 
     private void refreshWindowIfNeeded(FixedWindowState state) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = clock.currentTimeMillis();
         if (currentTime - state.windowStartMillis >= config.getWindowSizeMillis()) {
             state.count = 0;
             state.windowStartMillis = currentTime;
@@ -0,0 +1,72 @@
+package com.meta.ratelimiter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adds client-independent per-endpoint budgets (e.g. "/api/search at most
+ * 50k/s in total") in front of a per-client {@link EndpointRateLimiter}.
+ *
+ * The global token is taken first because it can be handed back cheaply;
+ * if the per-client limiter then denies, the token is released so the
+ * global budget only counts requests that were actually admitted.
+ */
+public class GlobalLimitEndpointRateLimiter implements EndpointRateLimiter {
+    private final EndpointRateLimiter delegate;
+    private final Map<String, StripedGlobalRateLimiter> globalLimiters;
+
+    public GlobalLimitEndpointRateLimiter(
+        EndpointRateLimiter delegate,
+        Map<String, StripedGlobalRateLimiter> globalLimiters
+    ) {
+        this.delegate = delegate;
+        this.globalLimiters = new HashMap<>(globalLimiters);
+    }
+
+    @Override
+    public boolean allowRequest(String clientId, String endpoint) {
+        StripedGlobalRateLimiter global = globalLimiters.get(endpoint);
+        if (global == null) {
+            return delegate.allowRequest(clientId, endpoint);
+        }
+
+        if (!global.tryAcquire(1)) {
+            return false;
+        }
+        if (delegate.allowRequest(clientId, endpoint)) {
+            return true;
+        }
+        global.release(1);
+        return false;
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId, String endpoint) {
+        int remaining = delegate.getRemainingRequests(clientId, endpoint);
+        StripedGlobalRateLimiter global = globalLimiters.get(endpoint);
+        if (global == null) {
+            return remaining;
+        }
+        return Math.min(remaining, global.getRemainingRequests(clientId));
+    }
+
+    @Override
+    public int getLimit(String clientId, String endpoint) {
+        return delegate.getLimit(clientId, endpoint);
+    }
+
+    @Override
+    public void reset(String clientId, String endpoint) {
+        delegate.reset(clientId, endpoint);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId, String endpoint) {
+        long resetTime = delegate.getResetTimeMillis(clientId, endpoint);
+        StripedGlobalRateLimiter global = globalLimiters.get(endpoint);
+        if (global == null) {
+            return resetTime;
+        }
+        return Math.max(resetTime, global.getResetTimeMillis(clientId));
+    }
+}
@@ -0,0 +1,65 @@
+package com.meta.ratelimiter;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries counter deltas between {@link ReplicatedRateLimiter} nodes.
+ *
+ * Delivery may be lossy, delayed, duplicated or reordered: messages carry
+ * absolute per-node counts that are merged by maximum, so any of these only
+ * delay convergence.
+ */
+public interface GossipTransport {
+    /**
+     * One node's counts for a set of clients, each for a given window.
+     */
+    class GossipMessage {
+        private final String senderId;
+        private final List<String> clientIds;
+        private final long[] windowIndexes;
+        private final long[] counts;
+
+        public GossipMessage(String senderId, List<String> clientIds, long[] windowIndexes, long[] counts) {
+            if (clientIds.size() != windowIndexes.length || clientIds.size() != counts.length) {
+                throw new IllegalArgumentException("Entry arrays must have equal length");
+            }
+            this.senderId = senderId;
+            this.clientIds = clientIds;
+            this.windowIndexes = windowIndexes;
+            this.counts = counts;
+        }
+
+        public String getSenderId() {
+            return senderId;
+        }
+
+        public int size() {
+            return counts.length;
+        }
+
+        public String getClientId(int entry) {
+            return clientIds.get(entry);
+        }
+
+        public long getWindowIndex(int entry) {
+            return windowIndexes[entry];
+        }
+
+        public long getCount(int entry) {
+            return counts[entry];
+        }
+    }
+
+    /**
+     * Registers the receiver for messages addressed to {@code nodeId}.
+     */
+    void register(String nodeId, Consumer<GossipMessage> receiver);
+
+    void unregister(String nodeId);
+
+    /**
+     * Sends {@code message} to every other registered node.
+     */
+    void broadcast(GossipMessage message);
+}
@@ -0,0 +1,213 @@
+package com.meta.ratelimiter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming top-K tracker of the busiest clients per endpoint and tier,
+ * fed by rate limit decisions.
+ *
+ * Each endpoint/tier pair keeps a Space-Saving summary split into stripes
+ * by client hash, each holding at most {@code capacityPerStripe} counters
+ * under its own lock. When a stripe is full, a new client takes over the
+ * smallest counter and inherits its count as error, so any client with
+ * more than {@code 1 / capacityPerStripe} of its stripe's requests is
+ * always tracked and counts are over-estimated by at most the reported
+ * error. Memory is bounded by endpoints x tiers x stripes x capacity.
+ *
+ * Counts cover the current and previous {@code windowMillis} window, so
+ * clients that stopped sending drop out.
+ */
+public class HeavyHitterTracker implements DecisionListener {
+    /** Tracked client with counts over the last one to two windows. */
+    public static final class HeavyHitter {
+        private final String clientId;
+        private final long count;
+        private final long denied;
+        private final long error;
+
+        private HeavyHitter(String clientId, long count, long denied, long error) {
+            this.clientId = clientId;
+            this.count = count;
+            this.denied = denied;
+            this.error = error;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        /** Decisions, over-estimated by at most {@link #getError()}. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Denied decisions since the client was last tracked; a lower bound. */
+        public long getDenied() {
+            return denied;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+
+    private static final class Counter {
+        private String clientId;
+        private long count;
+        private long denied;
+        private long error;
+    }
+
+    private static final class Stripe {
+        private long windowIndex;
+        private Map<String, Counter> current = new HashMap<>();
+        private Map<String, Counter> previous = new HashMap<>();
+    }
+
+    private final int stripes;
+    private final int capacityPerStripe;
+    private final long windowMillis;
+    private final int maxEndpoints;
+    private final Map<String, Stripe[][]> summaries = new ConcurrentHashMap<>();
+
+    public HeavyHitterTracker() {
+        this(16, 64, 60_000, 256);
+    }
+
+    public HeavyHitterTracker(int stripes, int capacityPerStripe, long windowMillis, int maxEndpoints) {
+        if (stripes <= 0 || capacityPerStripe <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("stripes, capacityPerStripe and windowMillis must be positive");
+        }
+        this.stripes = stripes;
+        this.capacityPerStripe = capacityPerStripe;
+        this.windowMillis = windowMillis;
+        this.maxEndpoints = maxEndpoints;
+    }
+
+    @Override
+    public void onDecision(String clientId, String endpoint, ClientTier tier, boolean allowed) {
+        Stripe[] tierStripes = summaryFor(endpoint)[tier.ordinal()];
+        Stripe stripe = tierStripes[Math.floorMod(clientId.hashCode(), stripes)];
+        long windowIndex = System.currentTimeMillis() / windowMillis;
+        synchronized (stripe) {
+            rotate(stripe, windowIndex);
+            Counter counter = stripe.current.get(clientId);
+            if (counter == null) {
+                counter = admit(stripe.current, clientId);
+            }
+            counter.count++;
+            if (!allowed) {
+                counter.denied++;
+            }
+        }
+    }
+
+    /**
+     * The {@code k} clients with the most decisions (or denials if
+     * {@code byDenied}) for an endpoint and tier, busiest first.
+     */
+    public List<HeavyHitter> topClients(String endpoint, ClientTier tier, int k, boolean byDenied) {
+        Stripe[][] summary = summaries.get(endpoint);
+        List<HeavyHitter> result = new ArrayList<>();
+        if (summary == null) {
+            return result;
+        }
+        long windowIndex = System.currentTimeMillis() / windowMillis;
+        for (Stripe stripe : summary[tier.ordinal()]) {
+            synchronized (stripe) {
+                rotate(stripe, windowIndex);
+                collect(stripe, result);
+            }
+        }
+        Comparator<HeavyHitter> order = byDenied
+            ? Comparator.comparingLong(HeavyHitter::getDenied)
+            : Comparator.comparingLong(HeavyHitter::getCount);
+        result.sort(order.reversed());
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    /**
+     * Endpoints with tracked decisions; beyond the cap, endpoints are
+     * tracked together as {@code "other"}.
+     */
+    public List<String> getEndpoints() {
+        return new ArrayList<>(summaries.keySet());
+    }
+
+    private void collect(Stripe stripe, List<HeavyHitter> result) {
+        Map<String, Counter> previous = stripe.previous;
+        for (Counter counter : stripe.current.values()) {
+            Counter old = previous.get(counter.clientId);
+            long count = counter.count + (old != null ? old.count : 0);
+            long denied = counter.denied + (old != null ? old.denied : 0);
+            long error = counter.error + (old != null ? old.error : 0);
+            result.add(new HeavyHitter(counter.clientId, count, denied, error));
+        }
+        for (Counter old : previous.values()) {
+            if (!stripe.current.containsKey(old.clientId)) {
+                result.add(new HeavyHitter(old.clientId, old.count, old.denied, old.error));
+            }
+        }
+    }
+
+    private Counter admit(Map<String, Counter> counters, String clientId) {
+        Counter counter;
+        if (counters.size() < capacityPerStripe) {
+            counter = new Counter();
+        } else {
+            // Space-Saving: replace the smallest counter; its count bounds the newcomer's error
+            counter = null;
+            for (Counter candidate : counters.values()) {
+                if (counter == null || candidate.count < counter.count) {
+                    counter = candidate;
+                }
+            }
+            counters.remove(counter.clientId);
+            counter.error = counter.count;
+            counter.denied = 0;
+        }
+        counter.clientId = clientId;
+        counters.put(clientId, counter);
+        return counter;
+    }
+
+    private static void rotate(Stripe stripe, long windowIndex) {
+        if (stripe.windowIndex == windowIndex) {
+            return;
+        }
+        if (windowIndex == stripe.windowIndex + 1) {
+            Map<String, Counter> recycled = stripe.previous;
+            stripe.previous = stripe.current;
+            recycled.clear();
+            stripe.current = recycled;
+        } else {
+            stripe.previous.clear();
+            stripe.current.clear();
+        }
+        stripe.windowIndex = windowIndex;
+    }
+
+    private Stripe[][] summaryFor(String endpoint) {
+        Stripe[][] summary = summaries.get(endpoint);
+        if (summary != null) {
+            return summary;
+        }
+        String label = summaries.size() < maxEndpoints ? endpoint : InstrumentedEndpointRateLimiter.OVERFLOW_ENDPOINT;
+        return summaries.computeIfAbsent(label, k -> newSummary());
+    }
+
+    private Stripe[][] newSummary() {
+        Stripe[][] summary = new Stripe[ClientTier.values().length][stripes];
+        for (Stripe[] tierStripes : summary) {
+            for (int i = 0; i < stripes; i++) {
+                tierStripes[i] = new Stripe();
+            }
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,87 @@
+package com.meta.ratelimiter;
+
+import java.util.Set;
+
+/**
+ * One level of a {@link HierarchicalRateLimiter}: a token bucket scoped to the
+ * whole client, to a single endpoint, or to a named group of endpoints.
+ */
+public class HierarchicalLimit {
+    public enum Scope {
+        CLIENT,
+        ENDPOINT,
+        ENDPOINT_GROUP
+    }
+
+    private final String name;
+    private final Scope scope;
+    private final Set<String> endpoints;
+    private final RateLimitConfig config;
+
+    private HierarchicalLimit(String name, Scope scope, Set<String> endpoints, RateLimitConfig config) {
+        if (config.getStrategy() != RateLimitStrategy.TOKEN_BUCKET) {
+            throw new IllegalArgumentException("Hierarchical limits require TOKEN_BUCKET, got " + config.getStrategy());
+        }
+        this.name = name;
+        this.scope = scope;
+        this.endpoints = Set.copyOf(endpoints);
+        this.config = config;
+    }
+
+    /**
+     * Limit shared by every endpoint a client calls.
+     */
+    public static HierarchicalLimit clientGlobal(String name, RateLimitConfig config) {
+        return new HierarchicalLimit(name, Scope.CLIENT, Set.of(), config);
+    }
+
+    /**
+     * Limit applied separately to each endpoint a client calls.
+     */
+    public static HierarchicalLimit perEndpoint(String name, RateLimitConfig config) {
+        return new HierarchicalLimit(name, Scope.ENDPOINT, Set.of(), config);
+    }
+
+    /**
+     * Limit shared by the given endpoints; other endpoints are not affected.
+     */
+    public static HierarchicalLimit endpointGroup(String name, Set<String> endpoints, RateLimitConfig config) {
+        return new HierarchicalLimit(name, Scope.ENDPOINT_GROUP, endpoints, config);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public RateLimitConfig getConfig() {
+        return config;
+    }
+
+    public boolean appliesTo(String endpoint) {
+        return scope != Scope.ENDPOINT_GROUP || endpoints.contains(endpoint);
+    }
+
+    /**
+     * Prefix of this level's store keys, relative to the limiter's
+     * namespace; the client id follows it. Only per-endpoint levels use
+     * {@code endpoint}.
+     */
+    String namespaceFor(String endpoint) {
+        if (scope == Scope.ENDPOINT) {
+            return name + ":" + endpoint + ":";
+        }
+        return name + ":";
+    }
+
+    /**
+     * Time for an empty bucket to refill completely; used as the key TTL.
+     */
+    long refillTimeMillis() {
+        return (long) Math.ceil(
+            (double) config.getBurstCapacity() * config.getWindowSizeMillis() / config.getMaxRequests());
+    }
+}
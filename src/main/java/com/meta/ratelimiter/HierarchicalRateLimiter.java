@@ -0,0 +1,285 @@
+package com.meta.ratelimiter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enforces an ordered list of token-bucket limits (e.g. client-global,
+ * per-endpoint, endpoint group) as a single decision.
+ *
+ * All applicable buckets are refilled and checked inside one multi-key store
+ * operation; a token is taken from every bucket or from none, so a denial at
+ * one level never leaks tokens from the levels that would have allowed it.
+ * Remaining and reset queries read each level with {@code store.read}: they
+ * never lock several levels, write, create entries or extend the TTL.
+ */
+public class HierarchicalRateLimiter implements EndpointRateLimiter {
+    private static final String KEY_PREFIX = "hierarchical:";
+
+    private static class BucketState {
+        private double tokens;
+        private long lastRefillTimestamp;
+
+        private BucketState(double tokens, long lastRefillTimestamp) {
+            this.tokens = tokens;
+            this.lastRefillTimestamp = lastRefillTimestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "tokens=" + tokens + " lastRefill=" + lastRefillTimestamp;
+        }
+    }
+
+    static final StateCodec<?> STATE_CODEC = new StateCodec<BucketState>() {
+        @Override
+        public int typeId() {
+            return 4;
+        }
+
+        @Override
+        public Class<BucketState> type() {
+            return BucketState.class;
+        }
+
+        @Override
+        public void encode(BucketState state, ByteBuffer out) {
+            out.putDouble(state.tokens).putLong(state.lastRefillTimestamp);
+        }
+
+        @Override
+        public BucketState decode(ByteBuffer in) {
+            return new BucketState(in.getDouble(), in.getLong());
+        }
+    };
+
+    /**
+     * One level with its cached store keys and query readers. A per-endpoint
+     * level has a namespace, and so a key cache, per endpoint; those are
+     * smaller, as a client's traffic is spread across them.
+     */
+    private static class Level {
+        private static final int ENDPOINT_CACHE_SIZE = KeyCache.DEFAULT_MAX_SIZE / 16;
+
+        private final HierarchicalLimit limit;
+        private final String keyNamespace;
+        private final KeyCache clientKeys;
+        private final Map<String, KeyCache> endpointKeys = new ConcurrentHashMap<>();
+
+        private final StateReader<BucketState> remaining = new StateReader<BucketState>() {
+            @Override
+            public long read(BucketState state) {
+                return (long) Math.floor(tokensNow(state));
+            }
+        };
+
+        private final StateReader<BucketState> resetAfter = new StateReader<BucketState>() {
+            @Override
+            public long read(BucketState state) {
+                double tokens = tokensNow(state);
+                if (tokens >= 1.0) {
+                    return 0;
+                }
+                RateLimitConfig config = limit.getConfig();
+                double refillRate = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+                return (long) Math.ceil((1.0 - tokens) / refillRate);
+            }
+        };
+
+        private Level(HierarchicalLimit limit, String keyNamespace) {
+            this.limit = limit;
+            this.keyNamespace = keyNamespace;
+            this.clientKeys = limit.getScope() == HierarchicalLimit.Scope.ENDPOINT
+                ? null
+                : new KeyCache(keyNamespace + limit.namespaceFor(null));
+        }
+
+        private KeyCache cacheFor(String endpoint) {
+            if (clientKeys != null) {
+                return clientKeys;
+            }
+            KeyCache cache = endpointKeys.get(endpoint);
+            if (cache != null) {
+                return cache;
+            }
+            return endpointKeys.computeIfAbsent(
+                endpoint, e -> new KeyCache(keyNamespace + limit.namespaceFor(e), ENDPOINT_CACHE_SIZE));
+        }
+
+        /**
+         * Tokens in {@code state} as of now, without refilling it; a missing
+         * bucket is full.
+         */
+        private double tokensNow(BucketState state) {
+            RateLimitConfig config = limit.getConfig();
+            if (state == null || Double.isNaN(state.tokens)) {
+                return config.getBurstCapacity();
+            }
+            long elapsedTime = System.currentTimeMillis() - state.lastRefillTimestamp;
+            if (elapsedTime <= 0) {
+                return state.tokens;
+            }
+            double refillRate = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+            return Math.min(config.getBurstCapacity(), state.tokens + elapsedTime * refillRate);
+        }
+    }
+
+    private final List<HierarchicalLimit> limits;
+    private final List<Level> levels;
+    private final DistributedRateLimitStore store;
+    private final EndpointRateLimiter fallbackLimiter;
+
+    public HierarchicalRateLimiter(
+        List<HierarchicalLimit> limits,
+        DistributedRateLimitStore store,
+        EndpointRateLimiter fallbackLimiter
+    ) {
+        this(limits, store, fallbackLimiter, KEY_PREFIX);
+    }
+
+    public HierarchicalRateLimiter(
+        List<HierarchicalLimit> limits,
+        DistributedRateLimitStore store,
+        EndpointRateLimiter fallbackLimiter,
+        String keyNamespace
+    ) {
+        if (limits.isEmpty()) {
+            throw new IllegalArgumentException("At least one limit is required");
+        }
+        this.limits = List.copyOf(limits);
+        this.store = store;
+        this.fallbackLimiter = fallbackLimiter;
+        List<Level> levels = new ArrayList<>(limits.size());
+        for (HierarchicalLimit limit : this.limits) {
+            levels.add(new Level(limit, keyNamespace));
+        }
+        this.levels = List.copyOf(levels);
+    }
+
+    @Override
+    public boolean allowRequest(String clientId, String endpoint) {
+        try {
+            return tryConsume(clientId, endpoint);
+        } catch (Exception ex) {
+            return fallbackLimiter.allowRequest(clientId, endpoint);
+        }
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId, String endpoint) {
+        try {
+            long remaining = Integer.MAX_VALUE;
+            for (Level level : levels) {
+                if (level.limit.appliesTo(endpoint)) {
+                    RateLimitKey key = level.cacheFor(endpoint).keyFor(clientId);
+                    remaining = Math.min(remaining, store.read(key, BucketState.class, level.remaining));
+                }
+            }
+            return (int) remaining;
+        } catch (Exception ex) {
+            return fallbackLimiter.getRemainingRequests(clientId, endpoint);
+        }
+    }
+
+    @Override
+    public int getLimit(String clientId, String endpoint) {
+        int limit = Integer.MAX_VALUE;
+        for (HierarchicalLimit level : limits) {
+            if (level.appliesTo(endpoint)) {
+                limit = Math.min(limit, level.getConfig().getMaxRequests());
+            }
+        }
+        return limit;
+    }
+
+    @Override
+    public void reset(String clientId, String endpoint) {
+        for (Level level : levels) {
+            if (level.limit.appliesTo(endpoint)) {
+                KeyCache cache = level.cacheFor(endpoint);
+                store.remove(cache.keyFor(clientId));
+                cache.evict(clientId);
+            }
+        }
+        fallbackLimiter.reset(clientId, endpoint);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId, String endpoint) {
+        try {
+            long resetAfterMillis = 0;
+            for (Level level : levels) {
+                if (level.limit.appliesTo(endpoint)) {
+                    RateLimitKey key = level.cacheFor(endpoint).keyFor(clientId);
+                    resetAfterMillis = Math.max(resetAfterMillis, store.read(key, BucketState.class, level.resetAfter));
+                }
+            }
+            return resetAfterMillis;
+        } catch (Exception ex) {
+            return fallbackLimiter.getResetTimeMillis(clientId, endpoint);
+        }
+    }
+
+    private boolean tryConsume(String clientId, String endpoint) {
+        List<HierarchicalLimit> applicable = new ArrayList<>(limits.size());
+        long ttlMillis = 0;
+        for (HierarchicalLimit level : limits) {
+            if (level.appliesTo(endpoint)) {
+                applicable.add(level);
+                ttlMillis = Math.max(ttlMillis, level.refillTimeMillis());
+            }
+        }
+        if (applicable.isEmpty()) {
+            return true;
+        }
+
+        RateLimitKey[] keys = new RateLimitKey[applicable.size()];
+        int next = 0;
+        for (Level level : levels) {
+            if (level.limit.appliesTo(endpoint)) {
+                keys[next++] = level.cacheFor(endpoint).keyFor(clientId);
+            }
+        }
+
+        boolean[] allowed = new boolean[1];
+        store.computeAll(keys, ttlMillis, BucketState.class, states -> {
+            long currentTime = System.currentTimeMillis();
+            boolean available = true;
+            for (int i = 0; i < states.size(); i++) {
+                BucketState state = states.get(i);
+                refillTokens(state, applicable.get(i).getConfig(), currentTime);
+                available &= state.tokens >= 1.0;
+            }
+
+            allowed[0] = available;
+            if (available) {
+                for (BucketState state : states) {
+                    state.tokens -= 1.0;
+                }
+            }
+            return states;
+        }, () -> new BucketState(Double.NaN, System.currentTimeMillis()));
+
+        return allowed[0];
+    }
+
+    private void refillTokens(BucketState state, RateLimitConfig config, long currentTime) {
+        if (Double.isNaN(state.tokens)) {
+            // Freshly initialized: the bucket size depends on the level
+            state.tokens = config.getBurstCapacity();
+            return;
+        }
+
+        long elapsedTime = currentTime - state.lastRefillTimestamp;
+        if (elapsedTime <= 0) {
+            return;
+        }
+
+        double refillRate = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+        state.tokens = Math.min(config.getBurstCapacity(), state.tokens + elapsedTime * refillRate);
+        state.lastRefillTimestamp = currentTime;
+    }
+}
@@ -1,46 +1,161 @@
 package com.meta.ratelimiter;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
  * In-memory simulation of a distributed store (e.g., Redis).
  * Provides atomic compute semantics per key with TTL support.
+ *
+ * Each key maps to a long-lived {@link Entry} whose monitor guards its value.
+ * Single-key and multi-key updates both lock entries, so a multi-key update
+ * is atomic with respect to every other operation on the same keys.
+ *
+ * Entries are keyed by {@link RateLimitKey}; string keys are wrapped, so
+ * both forms of the same logical key share one entry.
+ *
+ * Expired entries are unlinked when read, and by an incremental sweep that
+ * examines a few entries each time one is created. The sweep walks the map
+ * faster than it grows, so keys that are never read again, such as
+ * per-window counters, do not accumulate.
  */
-public class InMemoryDistributedRateLimitStore implements DistributedRateLimitStore {
+public class InMemoryDistributedRateLimitStore
+    implements DistributedRateLimitStore, PersistableStore, InspectableStore {
     private static class Entry {
         private Object value;
         private long expiresAtMillis;
+        private boolean removed;
+        private long version;
 
-        private Entry(Object value, long expiresAtMillis) {
-            this.value = value;
-            this.expiresAtMillis = expiresAtMillis;
+        private Entry(long version) {
+            this.version = version;
         }
     }
 
-    private final Map<String, Entry> store = new ConcurrentHashMap<>();
+    /**
+     * Codec for the counters written by {@link #incrementAndGet}.
+     */
+    static final StateCodec<AtomicLong> COUNTER_CODEC = new StateCodec<AtomicLong>() {
+        @Override
+        public int typeId() {
+            return 8;
+        }
+
+        @Override
+        public Class<AtomicLong> type() {
+            return AtomicLong.class;
+        }
+
+        @Override
+        public void encode(AtomicLong state, ByteBuffer out) {
+            out.putLong(state.get());
+        }
+
+        @Override
+        public AtomicLong decode(ByteBuffer in) {
+            return new AtomicLong(in.getLong());
+        }
+    };
+
+    private static final int SWEEP_BATCH = 2;
+
+    private final Map<RateLimitKey, Entry> store = new ConcurrentHashMap<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    // Guarded by sweepLock
+    private Iterator<Map.Entry<RateLimitKey, Entry>> sweepCursor;
+    // Entries draw the high bits of their versions from here, so a removed
+    // and recreated key never reuses a version
+    private final AtomicLong generations = new AtomicLong();
+    private final TimeSource clock;
+    private volatile Consumer<RateLimitKey> changeListener;
+
+    public InMemoryDistributedRateLimitStore() {
+        this(TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time source for TTLs and for the {@code nowMillis} passed
+     *              to updaters
+     */
+    public InMemoryDistributedRateLimitStore(TimeSource clock) {
+        this.clock = clock;
+    }
 
     @Override
     public <T> T get(String key, Class<T> type) {
+        return get(RateLimitKey.of(key), type);
+    }
+
+    @Override
+    public <T> T get(RateLimitKey key, Class<T> type) {
         Entry entry = store.get(key);
         if (entry == null) {
             return null;
         }
 
-        if (isExpired(entry)) {
-            store.remove(key);
-            return null;
+        synchronized (entry) {
+            if (entry.removed || entry.value == null) {
+                return null;
+            }
+            if (isExpired(entry)) {
+                unlink(key, entry);
+                return null;
+            }
+            return type.cast(entry.value);
         }
+    }
 
-        return type.cast(entry.value);
+    @Override
+    public <T> long read(String key, Class<T> type, StateReader<T> reader) {
+        return read(RateLimitKey.of(key), type, reader);
+    }
+
+    @Override
+    public <T> long read(RateLimitKey key, Class<T> type, StateReader<T> reader) {
+        Entry entry = store.get(key);
+        if (entry == null) {
+            return reader.read(null);
+        }
+        // Values are mutated in place under the entry lock, so read under it too
+        synchronized (entry) {
+            if (entry.removed || entry.value == null || isExpired(entry)) {
+                return reader.read(null);
+            }
+            return reader.read(type.cast(entry.value));
+        }
     }
 
     @Override
     public <T> void set(String key, T value, long ttlMillis) {
-        long expiresAt = computeExpiry(ttlMillis);
-        store.put(key, new Entry(value, expiresAt));
+        set(RateLimitKey.of(key), value, ttlMillis);
+    }
+
+    @Override
+    public <T> void set(RateLimitKey key, T value, long ttlMillis) {
+        while (true) {
+            Entry entry = entryFor(key);
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
+                }
+                entry.value = value;
+                entry.expiresAtMillis = computeExpiry(ttlMillis);
+                stamp(entry);
+                notifyChanged(key);
+                return;
+            }
+        }
     }
 
     @Override
@@ -51,44 +166,455 @@ public class InMemoryDistributedRateLimitStore implements DistributedRateLimitSt
         Function<T, T> updateFunction,
         Supplier<T> initializer
     ) {
-        return type.cast(
-            store.compute(key, (k, existing) -> {
-                long now = System.currentTimeMillis();
-                Entry entry = existing;
-                T currentValue;
-                if (entry == null || entry.expiresAtMillis <= now) {
-                    currentValue = initializer.get();
-                    entry = new Entry(currentValue, computeExpiry(ttlMillis));
-                } else {
-                    currentValue = type.cast(entry.value);
+        return compute(RateLimitKey.of(key), ttlMillis, type, updateFunction, initializer);
+    }
+
+    @Override
+    public <T> T compute(
+        RateLimitKey key,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        while (true) {
+            Entry entry = entryFor(key);
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
                 }
+                T updated = apply(entry, ttlMillis, type, updateFunction, initializer);
+                notifyChanged(key);
+                return updated;
+            }
+        }
+    }
 
-                T updated = updateFunction.apply(currentValue);
-                entry.value = updated;
-                entry.expiresAtMillis = computeExpiry(ttlMillis);
-                return entry;
-            }).value
-        );
+    @Override
+    public <T> List<T> computeAll(
+        List<String> keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        RateLimitKey[] storeKeys = new RateLimitKey[keys.size()];
+        for (int i = 0; i < storeKeys.length; i++) {
+            storeKeys[i] = RateLimitKey.of(keys.get(i));
+        }
+        return computeAll(storeKeys, ttlMillis, type, updateFunction, initializer);
+    }
+
+    @Override
+    public <T> List<T> computeAll(
+        RateLimitKey[] keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        if (keys.length == 0) {
+            return updateFunction.apply(new ArrayList<>());
+        }
+
+        // Lock entries in key order so concurrent multi-key updates cannot deadlock
+        Integer[] lockOrder = new Integer[keys.length];
+        for (int i = 0; i < lockOrder.length; i++) {
+            lockOrder[i] = i;
+        }
+        Arrays.sort(lockOrder, (a, b) -> compareKeys(keys[a], keys[b]));
+
+        while (true) {
+            Entry[] entries = new Entry[keys.length];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = entryFor(keys[i]);
+            }
+
+            List<T> result = lockAndApply(entries, lockOrder, 0, ttlMillis, type, updateFunction, initializer);
+            if (result != null) {
+                for (RateLimitKey key : keys) {
+                    notifyChanged(key);
+                }
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public <T> long update(String key, long ttlMillis, StateUpdater<T> updater) {
+        return update(RateLimitKey.of(key), ttlMillis, updater);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> long update(RateLimitKey key, long ttlMillis, StateUpdater<T> updater) {
+        while (true) {
+            Entry entry = entryFor(key);
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
+                }
+                long now = clock.currentTimeMillis();
+                if (entry.value == null || entry.expiresAtMillis <= now) {
+                    entry.value = updater.initialState((T) entry.value, now);
+                }
+                long result = updater.apply((T) entry.value, now);
+                entry.expiresAtMillis = computeExpiry(ttlMillis, now);
+                stamp(entry);
+                notifyChanged(key);
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public <T> VersionedValue<T> getWithVersion(String key, Class<T> type) {
+        return getWithVersion(RateLimitKey.of(key), type);
+    }
+
+    @Override
+    public <T> VersionedValue<T> getWithVersion(RateLimitKey key, Class<T> type) {
+        Entry entry = store.get(key);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            if (entry.removed || entry.value == null || isExpired(entry)) {
+                return null;
+            }
+            return new VersionedValue<>(type.cast(entry.value), entry.version);
+        }
+    }
+
+    @Override
+    public <T> boolean compareAndSet(String key, long expectedVersion, T value, long ttlMillis) {
+        return compareAndSet(RateLimitKey.of(key), expectedVersion, value, ttlMillis);
+    }
+
+    @Override
+    public <T> boolean compareAndSet(RateLimitKey key, long expectedVersion, T value, long ttlMillis) {
+        while (true) {
+            Entry entry = expectedVersion == 0 ? entryFor(key) : store.get(key);
+            if (entry == null) {
+                return false;
+            }
+            synchronized (entry) {
+                if (entry.removed) {
+                    if (expectedVersion == 0) {
+                        continue;
+                    }
+                    return false;
+                }
+                long now = clock.currentTimeMillis();
+                boolean live = entry.value != null && entry.expiresAtMillis > now;
+                if ((live ? entry.version : 0) != expectedVersion) {
+                    return false;
+                }
+                entry.value = value;
+                entry.expiresAtMillis = computeExpiry(ttlMillis, now);
+                stamp(entry);
+                notifyChanged(key);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public long execute(String key, StoreOperation operation) {
+        return execute(RateLimitKey.of(key), operation);
+    }
+
+    @Override
+    public long execute(RateLimitKey key, StoreOperation operation) {
+        return update(key, operation.getTtlMillis(), operation);
+    }
+
+    @Override
+    public long incrementAndGet(String key, long delta, long ttlMillis) {
+        return incrementAndGet(RateLimitKey.of(key), delta, ttlMillis);
+    }
+
+    @Override
+    public long incrementAndGet(RateLimitKey key, long delta, long ttlMillis) {
+        while (true) {
+            Entry entry = entryFor(key);
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
+                }
+                long now = clock.currentTimeMillis();
+                if (entry.value == null || entry.expiresAtMillis <= now) {
+                    // A fresh counter, not a reset of a shared one: readers may still hold the old
+                    entry.value = new AtomicLong();
+                    entry.expiresAtMillis = computeExpiry(ttlMillis, now);
+                }
+                long count = ((AtomicLong) entry.value).addAndGet(delta);
+                stamp(entry);
+                notifyChanged(key);
+                return count;
+            }
+        }
     }
 
     @Override
     public void remove(String key) {
-        store.remove(key);
+        remove(RateLimitKey.of(key));
+    }
+
+    @Override
+    public void remove(RateLimitKey key) {
+        Entry entry = store.remove(key);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.removed = true;
+            }
+            notifyChanged(key);
+        }
     }
 
     @Override
     public void clear() {
-        store.clear();
+        for (RateLimitKey key : store.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        for (Map.Entry<RateLimitKey, Entry> mapEntry : store.entrySet()) {
+            visitLive(mapEntry.getKey(), mapEntry.getValue(), visitor);
+        }
+    }
+
+    @Override
+    public boolean visitEntry(RateLimitKey key, EntryVisitor visitor) {
+        Entry entry = store.get(key);
+        return entry != null && visitLive(key, entry, visitor);
+    }
+
+    @Override
+    public void restoreEntry(RateLimitKey key, Object value, long expiresAtMillis) {
+        // Restores mostly insert new keys: publish a filled entry in one step
+        Entry fresh = newEntry();
+        fresh.value = value;
+        fresh.expiresAtMillis = expiresAtMillis;
+        stamp(fresh);
+        if (store.putIfAbsent(key, fresh) == null) {
+            return;
+        }
+        while (true) {
+            Entry entry = entryFor(key);
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
+                }
+                entry.value = value;
+                entry.expiresAtMillis = expiresAtMillis;
+                stamp(entry);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void restoreRemoval(RateLimitKey key) {
+        Entry entry = store.remove(key);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.removed = true;
+            }
+        }
+    }
+
+    @Override
+    public void setChangeListener(Consumer<RateLimitKey> listener) {
+        this.changeListener = listener;
+    }
+
+    @Override
+    public Iterator<StateEntry> inspect(String keyPrefix) {
+        return store.entrySet().stream()
+            .filter(mapEntry -> mapEntry.getKey().toString().startsWith(keyPrefix))
+            .map(mapEntry -> describe(mapEntry.getKey(), mapEntry.getValue()))
+            .filter(Objects::nonNull)
+            .iterator();
+    }
+
+    private StateEntry describe(RateLimitKey key, Entry entry) {
+        synchronized (entry) {
+            if (entry.removed || entry.value == null || isExpired(entry)) {
+                return null;
+            }
+            long expiresAt = entry.expiresAtMillis == Long.MAX_VALUE ? 0 : entry.expiresAtMillis;
+            return new StateEntry(key.toString(), String.valueOf(entry.value), expiresAt);
+        }
+    }
+
+    private boolean visitLive(RateLimitKey key, Entry entry, EntryVisitor visitor) {
+        synchronized (entry) {
+            if (entry.removed || entry.value == null || isExpired(entry)) {
+                return false;
+            }
+            visitor.visit(key, entry.value, entry.expiresAtMillis);
+            return true;
+        }
+    }
+
+    private Entry newEntry() {
+        return new Entry(generations.incrementAndGet() << 32);
+    }
+
+    private void stamp(Entry entry) {
+        entry.version++;
+    }
+
+    private void notifyChanged(RateLimitKey key) {
+        Consumer<RateLimitKey> listener = changeListener;
+        if (listener != null) {
+            listener.accept(key);
+        }
+    }
+
+    private Entry entryFor(RateLimitKey key) {
+        // Plain get first: computeIfAbsent may lock the bin even when the key exists
+        Entry entry = store.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        sweepExpired();
+        return store.computeIfAbsent(key, k -> newEntry());
+    }
+
+    /**
+     * Unlinks expired entries among the next {@link #SWEEP_BATCH}, resuming
+     * where the last sweep stopped. Skipped if another thread is sweeping.
+     * Entries not yet filled by their creator are left alone.
+     */
+    private void sweepExpired() {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            for (int examined = 0; examined < SWEEP_BATCH; examined++) {
+                if (sweepCursor == null || !sweepCursor.hasNext()) {
+                    sweepCursor = store.entrySet().iterator();
+                    if (!sweepCursor.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<RateLimitKey, Entry> next = sweepCursor.next();
+                Entry entry = next.getValue();
+                synchronized (entry) {
+                    if (!entry.removed && entry.value != null && isExpired(entry)) {
+                        unlink(next.getKey(), entry);
+                    }
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Entries held, including expired ones not yet reclaimed.
+     */
+    int entryCount() {
+        return store.size();
+    }
+
+    /**
+     * Total order for multi-key locking: by hash, then by string form, which
+     * is only built on a hash collision.
+     */
+    private static int compareKeys(RateLimitKey a, RateLimitKey b) {
+        int order = Long.compare(a.hash64(), b.hash64());
+        return order != 0 ? order : a.toString().compareTo(b.toString());
+    }
+
+    /**
+     * Recursively locks entries in {@code lockOrder}; the innermost frame runs
+     * the update. Returns null if any entry was removed concurrently, in which
+     * case the caller retries with freshly resolved entries.
+     */
+    private <T> List<T> lockAndApply(
+        Entry[] entries,
+        Integer[] lockOrder,
+        int depth,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        if (depth == lockOrder.length) {
+            long now = clock.currentTimeMillis();
+            List<T> current = new ArrayList<>(entries.length);
+            for (Entry entry : entries) {
+                if (entry.removed) {
+                    return null;
+                }
+                current.add(currentValue(entry, now, type, initializer));
+            }
+
+            List<T> updated = updateFunction.apply(current);
+            if (updated.size() != entries.length) {
+                throw new IllegalStateException(
+                    "Update returned " + updated.size() + " values for " + entries.length + " keys");
+            }
+
+            long expiresAt = computeExpiry(ttlMillis);
+            for (int i = 0; i < entries.length; i++) {
+                entries[i].value = updated.get(i);
+                entries[i].expiresAtMillis = expiresAt;
+                stamp(entries[i]);
+            }
+            return updated;
+        }
+
+        synchronized (entries[lockOrder[depth]]) {
+            return lockAndApply(entries, lockOrder, depth + 1, ttlMillis, type, updateFunction, initializer);
+        }
+    }
+
+    private <T> T apply(
+        Entry entry,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        T currentValue = currentValue(entry, clock.currentTimeMillis(), type, initializer);
+        T updated = updateFunction.apply(currentValue);
+        entry.value = updated;
+        entry.expiresAtMillis = computeExpiry(ttlMillis);
+        stamp(entry);
+        return updated;
+    }
+
+    private <T> T currentValue(Entry entry, long now, Class<T> type, Supplier<T> initializer) {
+        if (entry.value == null || entry.expiresAtMillis <= now) {
+            return initializer.get();
+        }
+        return type.cast(entry.value);
+    }
+
+    private void unlink(RateLimitKey key, Entry entry) {
+        if (store.remove(key, entry)) {
+            entry.removed = true;
+        }
     }
 
     private boolean isExpired(Entry entry) {
-        return entry.expiresAtMillis <= System.currentTimeMillis();
+        return entry.expiresAtMillis <= clock.currentTimeMillis();
     }
 
     private long computeExpiry(long ttlMillis) {
+        return computeExpiry(ttlMillis, clock.currentTimeMillis());
+    }
+
+    private long computeExpiry(long ttlMillis, long now) {
         if (ttlMillis <= 0) {
             return Long.MAX_VALUE;
         }
-        return System.currentTimeMillis() + ttlMillis;
+        return now + ttlMillis;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package com.meta.ratelimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * {@link GossipTransport} connecting nodes in one JVM, for tests and
+ * simulations. Each delivery to each peer is dropped independently with the
+ * configured loss probability; surviving messages are delivered
+ * synchronously on the sender's thread.
+ */
+public class InProcessGossipNetwork implements GossipTransport {
+    private final Map<String, Consumer<GossipMessage>> receivers = new ConcurrentHashMap<>();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile double lossProbability;
+
+    public InProcessGossipNetwork() {
+        this(0.0);
+    }
+
+    public InProcessGossipNetwork(double lossProbability) {
+        setLossProbability(lossProbability);
+    }
+
+    public void setLossProbability(double lossProbability) {
+        if (lossProbability < 0.0 || lossProbability > 1.0) {
+            throw new IllegalArgumentException("Loss probability must be within [0, 1]");
+        }
+        this.lossProbability = lossProbability;
+    }
+
+    @Override
+    public void register(String nodeId, Consumer<GossipMessage> receiver) {
+        if (receivers.putIfAbsent(nodeId, receiver) != null) {
+            throw new IllegalArgumentException("Node already registered: " + nodeId);
+        }
+    }
+
+    @Override
+    public void unregister(String nodeId) {
+        receivers.remove(nodeId);
+    }
+
+    @Override
+    public void broadcast(GossipMessage message) {
+        for (Map.Entry<String, Consumer<GossipMessage>> receiver : receivers.entrySet()) {
+            if (receiver.getKey().equals(message.getSenderId())) {
+                continue;
+            }
+            if (lossProbability > 0 && ThreadLocalRandom.current().nextDouble() < lossProbability) {
+                dropped.increment();
+                continue;
+            }
+            receiver.getValue().accept(message);
+            delivered.increment();
+        }
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
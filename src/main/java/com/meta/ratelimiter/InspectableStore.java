@@ -0,0 +1,45 @@
+package com.meta.ratelimiter;
+
+import java.util.Iterator;
+
+/**
+ * Store whose live entries can be listed without stopping traffic.
+ */
+public interface InspectableStore {
+    /**
+     * Lazily lists live entries whose key starts with {@code keyPrefix}.
+     *
+     * The iterator is weakly consistent: it never locks or copies the whole
+     * store, returns each entry at most once, and may or may not reflect
+     * changes made after it was created. Each entry's state is read when the
+     * iterator reaches it.
+     */
+    Iterator<StateEntry> inspect(String keyPrefix);
+
+    /** One entry as seen by {@link #inspect}. */
+    final class StateEntry {
+        private final String key;
+        private final String state;
+        private final long expiresAtMillis;
+
+        public StateEntry(String key, String state, long expiresAtMillis) {
+            this.key = key;
+            this.state = state;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /** Human-readable state, e.g. {@code tokens=3.0 lastRefill=...}. */
+        public String getState() {
+            return state;
+        }
+
+        /** Expiry time, or 0 if the entry does not expire. */
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+    }
+}
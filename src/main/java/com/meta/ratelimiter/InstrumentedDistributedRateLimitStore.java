@@ -0,0 +1,372 @@
+package com.meta.ratelimiter;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decorator recording latency and failures of every store operation.
+ */
+public class InstrumentedDistributedRateLimitStore implements DistributedRateLimitStore {
+    private static class Operation {
+        private final LatencyHistogram latency;
+        private final LongAdder errors;
+
+        private Operation(MetricsRegistry registry, String store, String operation) {
+            this.latency = registry.histogram(
+                "ratelimiter_store_operation_seconds", "Distributed store operation latency",
+                "store", store, "operation", operation);
+            this.errors = registry.counter(
+                "ratelimiter_store_errors_total", "Distributed store operations that threw",
+                "store", store, "operation", operation);
+        }
+    }
+
+    private final DistributedRateLimitStore delegate;
+    private final Operation get;
+    private final Operation read;
+    private final Operation set;
+    private final Operation compute;
+    private final Operation computeAll;
+    private final Operation update;
+    private final Operation execute;
+    private final Operation increment;
+    private final Operation getWithVersion;
+    private final Operation compareAndSet;
+    private final Operation remove;
+
+    public InstrumentedDistributedRateLimitStore(
+        DistributedRateLimitStore delegate,
+        MetricsRegistry registry,
+        String name
+    ) {
+        this.delegate = delegate;
+        this.get = new Operation(registry, name, "get");
+        this.read = new Operation(registry, name, "read");
+        this.set = new Operation(registry, name, "set");
+        this.compute = new Operation(registry, name, "compute");
+        this.computeAll = new Operation(registry, name, "compute_all");
+        this.update = new Operation(registry, name, "update");
+        this.execute = new Operation(registry, name, "execute");
+        this.increment = new Operation(registry, name, "increment");
+        this.getWithVersion = new Operation(registry, name, "get_with_version");
+        this.compareAndSet = new Operation(registry, name, "compare_and_set");
+        this.remove = new Operation(registry, name, "remove");
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> type) {
+        long start = System.nanoTime();
+        try {
+            return delegate.get(key, type);
+        } catch (RuntimeException ex) {
+            get.errors.increment();
+            throw ex;
+        } finally {
+            get.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> long read(String key, Class<T> type, StateReader<T> reader) {
+        long start = System.nanoTime();
+        try {
+            return delegate.read(key, type, reader);
+        } catch (RuntimeException ex) {
+            read.errors.increment();
+            throw ex;
+        } finally {
+            read.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> void set(String key, T value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            delegate.set(key, value, ttlMillis);
+        } catch (RuntimeException ex) {
+            set.errors.increment();
+            throw ex;
+        } finally {
+            set.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> T compute(
+        String key,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        long start = System.nanoTime();
+        try {
+            return delegate.compute(key, ttlMillis, type, updateFunction, initializer);
+        } catch (RuntimeException ex) {
+            compute.errors.increment();
+            throw ex;
+        } finally {
+            compute.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> List<T> computeAll(
+        List<String> keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        long start = System.nanoTime();
+        try {
+            return delegate.computeAll(keys, ttlMillis, type, updateFunction, initializer);
+        } catch (RuntimeException ex) {
+            computeAll.errors.increment();
+            throw ex;
+        } finally {
+            computeAll.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> long update(String key, long ttlMillis, StateUpdater<T> updater) {
+        long start = System.nanoTime();
+        try {
+            return delegate.update(key, ttlMillis, updater);
+        } catch (RuntimeException ex) {
+            update.errors.increment();
+            throw ex;
+        } finally {
+            update.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long execute(String key, StoreOperation operation) {
+        long start = System.nanoTime();
+        try {
+            return delegate.execute(key, operation);
+        } catch (RuntimeException ex) {
+            execute.errors.increment();
+            throw ex;
+        } finally {
+            execute.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long incrementAndGet(String key, long delta, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.incrementAndGet(key, delta, ttlMillis);
+        } catch (RuntimeException ex) {
+            increment.errors.increment();
+            throw ex;
+        } finally {
+            increment.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> VersionedValue<T> getWithVersion(String key, Class<T> type) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWithVersion(key, type);
+        } catch (RuntimeException ex) {
+            getWithVersion.errors.increment();
+            throw ex;
+        } finally {
+            getWithVersion.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> boolean compareAndSet(String key, long expectedVersion, T value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.compareAndSet(key, expectedVersion, value, ttlMillis);
+        } catch (RuntimeException ex) {
+            compareAndSet.errors.increment();
+            throw ex;
+        } finally {
+            compareAndSet.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        long start = System.nanoTime();
+        try {
+            delegate.remove(key);
+        } catch (RuntimeException ex) {
+            remove.errors.increment();
+            throw ex;
+        } finally {
+            remove.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> T get(RateLimitKey key, Class<T> type) {
+        long start = System.nanoTime();
+        try {
+            return delegate.get(key, type);
+        } catch (RuntimeException ex) {
+            get.errors.increment();
+            throw ex;
+        } finally {
+            get.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> long read(RateLimitKey key, Class<T> type, StateReader<T> reader) {
+        long start = System.nanoTime();
+        try {
+            return delegate.read(key, type, reader);
+        } catch (RuntimeException ex) {
+            read.errors.increment();
+            throw ex;
+        } finally {
+            read.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> void set(RateLimitKey key, T value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            delegate.set(key, value, ttlMillis);
+        } catch (RuntimeException ex) {
+            set.errors.increment();
+            throw ex;
+        } finally {
+            set.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> T compute(
+        RateLimitKey key,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        long start = System.nanoTime();
+        try {
+            return delegate.compute(key, ttlMillis, type, updateFunction, initializer);
+        } catch (RuntimeException ex) {
+            compute.errors.increment();
+            throw ex;
+        } finally {
+            compute.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> List<T> computeAll(
+        RateLimitKey[] keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        long start = System.nanoTime();
+        try {
+            return delegate.computeAll(keys, ttlMillis, type, updateFunction, initializer);
+        } catch (RuntimeException ex) {
+            computeAll.errors.increment();
+            throw ex;
+        } finally {
+            computeAll.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> long update(RateLimitKey key, long ttlMillis, StateUpdater<T> updater) {
+        long start = System.nanoTime();
+        try {
+            return delegate.update(key, ttlMillis, updater);
+        } catch (RuntimeException ex) {
+            update.errors.increment();
+            throw ex;
+        } finally {
+            update.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long execute(RateLimitKey key, StoreOperation operation) {
+        long start = System.nanoTime();
+        try {
+            return delegate.execute(key, operation);
+        } catch (RuntimeException ex) {
+            execute.errors.increment();
+            throw ex;
+        } finally {
+            execute.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long incrementAndGet(RateLimitKey key, long delta, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.incrementAndGet(key, delta, ttlMillis);
+        } catch (RuntimeException ex) {
+            increment.errors.increment();
+            throw ex;
+        } finally {
+            increment.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> VersionedValue<T> getWithVersion(RateLimitKey key, Class<T> type) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWithVersion(key, type);
+        } catch (RuntimeException ex) {
+            getWithVersion.errors.increment();
+            throw ex;
+        } finally {
+            getWithVersion.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> boolean compareAndSet(RateLimitKey key, long expectedVersion, T value, long ttlMillis) {
+        long start = System.nanoTime();
+        try {
+            return delegate.compareAndSet(key, expectedVersion, value, ttlMillis);
+        } catch (RuntimeException ex) {
+            compareAndSet.errors.increment();
+            throw ex;
+        } finally {
+            compareAndSet.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(RateLimitKey key) {
+        long start = System.nanoTime();
+        try {
+            delegate.remove(key);
+        } catch (RuntimeException ex) {
+            remove.errors.increment();
+            throw ex;
+        } finally {
+            remove.latency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+}
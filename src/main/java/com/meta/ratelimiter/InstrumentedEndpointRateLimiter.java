@@ -0,0 +1,152 @@
+package com.meta.ratelimiter;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator recording allow/deny counts and decision latency of an
+ * {@link EndpointRateLimiter} per endpoint and client tier.
+ *
+ * Endpoints come from request bodies, so the number of distinct endpoint
+ * labels is capped; endpoints beyond the cap are reported as "other".
+ * An optional {@link DecisionListener} sees every decision with its tier.
+ */
+public class InstrumentedEndpointRateLimiter implements EndpointRateLimiter {
+    static final String OVERFLOW_ENDPOINT = "other";
+
+    private static class Series {
+        private final LongAdder allowed;
+        private final LongAdder denied;
+        private final LatencyHistogram latency;
+
+        private Series(MetricsRegistry registry, String endpoint, ClientTier tier) {
+            String tierLabel = tier.name().toLowerCase();
+            this.allowed = registry.counter(
+                "ratelimiter_decisions_total", "Rate limit decisions per endpoint and tier",
+                "endpoint", endpoint, "tier", tierLabel, "result", "allowed");
+            this.denied = registry.counter(
+                "ratelimiter_decisions_total", "Rate limit decisions per endpoint and tier",
+                "endpoint", endpoint, "tier", tierLabel, "result", "denied");
+            this.latency = registry.histogram(
+                "ratelimiter_decision_seconds", "Rate limit decision latency per endpoint and tier",
+                "endpoint", endpoint, "tier", tierLabel);
+        }
+    }
+
+    private final EndpointRateLimiter delegate;
+    private final ClientTierResolver tierResolver;
+    private final MetricsRegistry registry;
+    private final int maxEndpoints;
+    private final DecisionListener listener;
+    private final Map<String, Series[]> seriesByEndpoint = new ConcurrentHashMap<>();
+
+    public InstrumentedEndpointRateLimiter(
+        EndpointRateLimiter delegate,
+        ClientTierResolver tierResolver,
+        MetricsRegistry registry
+    ) {
+        this(delegate, tierResolver, registry, 256, null);
+    }
+
+    public InstrumentedEndpointRateLimiter(
+        EndpointRateLimiter delegate,
+        ClientTierResolver tierResolver,
+        MetricsRegistry registry,
+        DecisionListener listener
+    ) {
+        this(delegate, tierResolver, registry, 256, listener);
+    }
+
+    public InstrumentedEndpointRateLimiter(
+        EndpointRateLimiter delegate,
+        ClientTierResolver tierResolver,
+        MetricsRegistry registry,
+        int maxEndpoints
+    ) {
+        this(delegate, tierResolver, registry, maxEndpoints, null);
+    }
+
+    public InstrumentedEndpointRateLimiter(
+        EndpointRateLimiter delegate,
+        ClientTierResolver tierResolver,
+        MetricsRegistry registry,
+        int maxEndpoints,
+        DecisionListener listener
+    ) {
+        this.delegate = delegate;
+        this.tierResolver = tierResolver;
+        this.registry = registry;
+        this.maxEndpoints = maxEndpoints;
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean allowRequest(String clientId, String endpoint) {
+        long start = System.nanoTime();
+        boolean result = delegate.allowRequest(clientId, endpoint);
+        long elapsed = System.nanoTime() - start;
+
+        record(clientId, endpoint, elapsed, result);
+        return result;
+    }
+
+    @Override
+    public Optional<ConcurrencyPermit> acquire(String clientId, String endpoint) {
+        long start = System.nanoTime();
+        Optional<ConcurrencyPermit> permit = delegate.acquire(clientId, endpoint);
+        long elapsed = System.nanoTime() - start;
+
+        record(clientId, endpoint, elapsed, permit.isPresent());
+        return permit;
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId, String endpoint) {
+        return delegate.getRemainingRequests(clientId, endpoint);
+    }
+
+    @Override
+    public int getLimit(String clientId, String endpoint) {
+        return delegate.getLimit(clientId, endpoint);
+    }
+
+    @Override
+    public void reset(String clientId, String endpoint) {
+        delegate.reset(clientId, endpoint);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId, String endpoint) {
+        return delegate.getResetTimeMillis(clientId, endpoint);
+    }
+
+    private void record(String clientId, String endpoint, long elapsedNanos, boolean allowed) {
+        ClientTier tier = tierResolver.resolveTier(clientId);
+        Series series = seriesFor(endpoint)[tier.ordinal()];
+        series.latency.recordNanos(elapsedNanos);
+        (allowed ? series.allowed : series.denied).increment();
+        if (listener != null) {
+            listener.onDecision(clientId, endpoint, tier, allowed);
+        }
+    }
+
+    private Series[] seriesFor(String endpoint) {
+        Series[] series = seriesByEndpoint.get(endpoint);
+        if (series != null) {
+            return series;
+        }
+        String label = seriesByEndpoint.size() < maxEndpoints ? endpoint : OVERFLOW_ENDPOINT;
+        return seriesByEndpoint.computeIfAbsent(label, this::newSeries);
+    }
+
+    private Series[] newSeries(String endpoint) {
+        ClientTier[] tiers = ClientTier.values();
+        Series[] series = new Series[tiers.length];
+        for (ClientTier tier : tiers) {
+            series[tier.ordinal()] = new Series(registry, endpoint, tier);
+        }
+        return series;
+    }
+}
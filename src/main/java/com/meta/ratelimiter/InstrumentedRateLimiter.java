@@ -0,0 +1,56 @@
+package com.meta.ratelimiter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator recording allow/deny counts and decision latency of a
+ * {@link RateLimiter} under a {@code limiter} label.
+ */
+public class InstrumentedRateLimiter implements RateLimiter {
+    private final RateLimiter delegate;
+    private final LongAdder allowed;
+    private final LongAdder denied;
+    private final LatencyHistogram latency;
+
+    public InstrumentedRateLimiter(RateLimiter delegate, MetricsRegistry registry, String name) {
+        this.delegate = delegate;
+        this.allowed = registry.counter(
+            "ratelimiter_limiter_decisions_total", "Rate limit decisions per limiter",
+            "limiter", name, "result", "allowed");
+        this.denied = registry.counter(
+            "ratelimiter_limiter_decisions_total", "Rate limit decisions per limiter",
+            "limiter", name, "result", "denied");
+        this.latency = registry.histogram(
+            "ratelimiter_limiter_decision_seconds", "Rate limit decision latency per limiter",
+            "limiter", name);
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        long start = System.nanoTime();
+        boolean result = delegate.allowRequest(clientId);
+        latency.recordNanos(System.nanoTime() - start);
+        (result ? allowed : denied).increment();
+        return result;
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        return delegate.getRemainingRequests(clientId);
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return delegate.getLimit(clientId);
+    }
+
+    @Override
+    public void reset(String clientId) {
+        delegate.reset(clientId);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        return delegate.getResetTimeMillis(clientId);
+    }
+}
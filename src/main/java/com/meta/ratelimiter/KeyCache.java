@@ -0,0 +1,128 @@
+package com.meta.ratelimiter;
+
+/**
+ * Caches the {@link RateLimitKey} of recently seen clients in a namespace so
+ * that repeat calls for a client neither allocate nor rehash a key.
+ *
+ * The cache is a fixed-size, two-way set-associative table with a
+ * second-chance bit per way (CLOCK within each set): a hit marks its way,
+ * and a miss replaces an unmarked way and clears the other's mark. Keys of
+ * clients that stop calling are therefore displaced by active ones, so the
+ * current working set stays cached however many clients came before it.
+ *
+ * A cache can instead hold suffixed keys, one per client, such as the key
+ * of the client's current window: a lookup with a new suffix replaces the
+ * client's old key in place.
+ *
+ * Reads and writes race benignly: keys are immutable, so a reader sees
+ * either a complete key or a stale one it rejects by client id. The table
+ * is allocated on first use, as most limiters in a tree never see traffic.
+ */
+class KeyCache {
+    static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    private static final class Table {
+        private final RateLimitKey[] keys;
+        private final boolean[] referenced;
+
+        private Table(int size) {
+            this.keys = new RateLimitKey[size];
+            this.referenced = new boolean[size];
+        }
+    }
+
+    private final RateLimitKey.Namespace namespace;
+    private final int size;
+    private volatile Table table;
+
+    KeyCache(String namespace) {
+        this(namespace, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize keys held at most; rounded up to a power of two
+     */
+    KeyCache(String namespace, int maxSize) {
+        this.namespace = RateLimitKey.Namespace.of(namespace);
+        this.size = Math.max(2, Integer.highestOneBit(Math.max(1, maxSize - 1)) << 1);
+    }
+
+    RateLimitKey keyFor(String clientId) {
+        return keyFor(clientId, RateLimitKey.NO_SUFFIX);
+    }
+
+    /**
+     * The client's key with {@code suffix} (see {@link RateLimitKey.Namespace#key(String, long)}),
+     * or its plain key for {@link RateLimitKey#NO_SUFFIX}.
+     */
+    RateLimitKey keyFor(String clientId, long suffix) {
+        Table current = table();
+        int first = setOf(clientId);
+        int stale = -1;
+        for (int way = first; way <= first + 1; way++) {
+            RateLimitKey key = current.keys[way];
+            if (key != null && key.hasClientId(clientId)) {
+                if (key.getSuffix() == suffix) {
+                    mark(current, way);
+                    return key;
+                }
+                stale = way;
+            }
+        }
+
+        RateLimitKey created = suffix == RateLimitKey.NO_SUFFIX
+            ? namespace.key(clientId)
+            : namespace.key(clientId, suffix);
+        if (stale >= 0) {
+            // Same client, new suffix: it is in use, so keep its way
+            current.keys[stale] = created;
+            mark(current, stale);
+            return created;
+        }
+        int victim = current.keys[first] == null || !current.referenced[first] ? first : first + 1;
+        // Age the way we keep: it must be hit again to survive the next miss
+        current.referenced[victim ^ 1] = false;
+        current.referenced[victim] = false;
+        current.keys[victim] = created;
+        return created;
+    }
+
+    void evict(String clientId) {
+        Table current = table;
+        if (current == null) {
+            return;
+        }
+        int first = setOf(clientId);
+        for (int way = first; way <= first + 1; way++) {
+            RateLimitKey key = current.keys[way];
+            if (key != null && key.hasClientId(clientId)) {
+                current.keys[way] = null;
+                current.referenced[way] = false;
+            }
+        }
+    }
+
+    private Table table() {
+        Table current = table;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (table == null) {
+                table = new Table(size);
+            }
+            return table;
+        }
+    }
+
+    private int setOf(String clientId) {
+        return (int) RateLimitKey.mix(clientId.hashCode()) & (size - 1) & ~1;
+    }
+
+    private static void mark(Table table, int way) {
+        // Only write when clear, so hot keys do not keep dirtying a shared line
+        if (!table.referenced[way]) {
+            table.referenced[way] = true;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a limit configuration file with a {@link WatchService} and hands
+ * every valid new version to a listener.
+ *
+ * The parent directory is watched, so editors that save by writing a
+ * temporary file and renaming it are picked up. Events are debounced, files
+ * whose content is unchanged are ignored, and an invalid file is reported
+ * and skipped, leaving the previous configuration in force.
+ */
+public class LimitConfigWatcher implements AutoCloseable {
+    static final long DEBOUNCE_MILLIS = 100;
+
+    private final Path file;
+    private final Consumer<LimitConfiguration> listener;
+    private final WatchService watchService;
+    private final Thread thread;
+    private String lastContent;
+    private volatile String lastError;
+
+    /**
+     * Starts watching {@code file}; the listener runs on the watcher thread.
+     */
+    public LimitConfigWatcher(Path file, Consumer<LimitConfiguration> listener) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.lastContent = readQuietly();
+        this.thread = new Thread(this::watch, "limit-config-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Loads the file now, notifying the listener if it changed and is valid.
+     * Returns false if the file could not be read or parsed.
+     */
+    public synchronized boolean reload() {
+        String content = readQuietly();
+        if (content == null) {
+            return false;
+        }
+        if (content.equals(lastContent)) {
+            return true;
+        }
+        LimitConfiguration configuration;
+        try {
+            configuration = LimitConfiguration.parse(content);
+        } catch (IllegalArgumentException ex) {
+            lastError = ex.getMessage();
+            System.err.println("Ignoring invalid limit configuration " + file + ": " + ex.getMessage());
+            return false;
+        }
+        lastContent = content;
+        lastError = null;
+        listener.accept(configuration);
+        System.out.println("Reloaded limit configuration from " + file);
+        return true;
+    }
+
+    /**
+     * Message of the last rejected file, or null if the latest one applied.
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || (context instanceof Path && file.getFileName().equals(context))) {
+                        relevant = true;
+                    }
+                }
+                key.reset();
+                if (relevant) {
+                    // Let the writer finish, then coalesce the burst of events it caused
+                    TimeUnit.MILLISECONDS.sleep(DEBOUNCE_MILLIS);
+                    drain();
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // Closed
+        }
+    }
+
+    private void drain() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private String readQuietly() {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
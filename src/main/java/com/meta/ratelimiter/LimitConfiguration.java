@@ -0,0 +1,220 @@
+package com.meta.ratelimiter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Complete, validated limit configuration: per-tier defaults plus
+ * per-endpoint overrides, loaded from a JSON file such as
+ *
+ * <pre>
+ * {
+ *   "tiers": {
+ *     "free":       {"maxRequests": 10,   "windowMillis": 1000},
+ *     "premium":    {"maxRequests": 100,  "windowMillis": 1000, "burst": 150},
+ *     "enterprise": {"maxRequests": 1000, "windowMillis": 1000}
+ *   },
+ *   "endpoints": {
+ *     "/api/search": {"tiers": {"free": {"maxRequests": 5, "strategy": "SLIDING_WINDOW"}}},
+ *     "/api/health": {"unlimited": true}
+ *   }
+ * }
+ * </pre>
+ *
+ * Every tier needs a default. An endpoint tier entry inherits unset fields
+ * from the tier default, and tiers an endpoint omits use the default.
+ * {@code strategy} defaults to {@code TOKEN_BUCKET} and {@code burst} to
+ * {@code maxRequests}.
+ */
+public class LimitConfiguration {
+    private static final Gson GSON = new Gson();
+
+    private final TieredRateLimitConfig defaults;
+    private final Map<String, TieredRateLimitConfig> endpoints;
+    private final Set<String> unlimitedEndpoints;
+
+    public LimitConfiguration(
+        TieredRateLimitConfig defaults,
+        Map<String, TieredRateLimitConfig> endpoints,
+        Set<String> unlimitedEndpoints
+    ) {
+        this.defaults = defaults;
+        this.endpoints = Collections.unmodifiableMap(new LinkedHashMap<>(endpoints));
+        this.unlimitedEndpoints = Collections.unmodifiableSet(new HashSet<>(unlimitedEndpoints));
+    }
+
+    public TieredRateLimitConfig getDefaults() {
+        return defaults;
+    }
+
+    public Map<String, TieredRateLimitConfig> getEndpoints() {
+        return endpoints;
+    }
+
+    public Set<String> getUnlimitedEndpoints() {
+        return unlimitedEndpoints;
+    }
+
+    /**
+     * This configuration with every limit switched to {@code strategy},
+     * e.g. to compare algorithms on the same limits.
+     */
+    public LimitConfiguration withStrategy(RateLimitStrategy strategy) {
+        Map<String, TieredRateLimitConfig> switched = new LinkedHashMap<>();
+        for (Map.Entry<String, TieredRateLimitConfig> endpoint : endpoints.entrySet()) {
+            switched.put(endpoint.getKey(), withStrategy(endpoint.getValue(), strategy));
+        }
+        return new LimitConfiguration(withStrategy(defaults, strategy), switched, unlimitedEndpoints);
+    }
+
+    /**
+     * The limits the service used before configuration files existed.
+     */
+    public static LimitConfiguration defaultConfiguration() {
+        Map<String, TieredRateLimitConfig> endpoints = new LinkedHashMap<>();
+        endpoints.put("/api/search", perSecond(5));
+        endpoints.put("/api/users", perSecond(20));
+        return new LimitConfiguration(
+            TieredRateLimitConfig.defaultPerSecond(), endpoints, Collections.singleton("/api/health"));
+    }
+
+    public static LimitConfiguration load(Path file) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses and validates a configuration; throws
+     * {@link IllegalArgumentException} describing the first problem found.
+     */
+    public static LimitConfiguration parse(String json) {
+        FileJson file;
+        try {
+            file = GSON.fromJson(json, FileJson.class);
+        } catch (JsonParseException ex) {
+            throw new IllegalArgumentException("Malformed limit configuration: " + ex.getMessage(), ex);
+        }
+        if (file == null || file.tiers == null) {
+            throw new IllegalArgumentException("Limit configuration needs a \"tiers\" section");
+        }
+
+        Map<ClientTier, RateLimitConfig> defaults = new EnumMap<>(ClientTier.class);
+        for (Map.Entry<String, LimitJson> entry : file.tiers.entrySet()) {
+            ClientTier tier = tier(entry.getKey(), "tiers");
+            defaults.put(tier, entry.getValue().toConfig(null, "tiers." + entry.getKey()));
+        }
+        for (ClientTier tier : ClientTier.values()) {
+            if (!defaults.containsKey(tier)) {
+                throw new IllegalArgumentException("Missing default limit for tier " + tier);
+            }
+        }
+
+        Map<String, TieredRateLimitConfig> endpoints = new LinkedHashMap<>();
+        Set<String> unlimited = new HashSet<>();
+        if (file.endpoints != null) {
+            for (Map.Entry<String, EndpointJson> entry : file.endpoints.entrySet()) {
+                String endpoint = entry.getKey();
+                EndpointJson endpointJson = entry.getValue();
+                if (endpointJson != null && Boolean.TRUE.equals(endpointJson.unlimited)) {
+                    unlimited.add(endpoint);
+                    continue;
+                }
+                Map<ClientTier, RateLimitConfig> tiers = new EnumMap<>(defaults);
+                if (endpointJson != null && endpointJson.tiers != null) {
+                    for (Map.Entry<String, LimitJson> tierEntry : endpointJson.tiers.entrySet()) {
+                        String path = "endpoints." + endpoint + ".tiers." + tierEntry.getKey();
+                        ClientTier tier = tier(tierEntry.getKey(), path);
+                        tiers.put(tier, tierEntry.getValue().toConfig(defaults.get(tier), path));
+                    }
+                }
+                endpoints.put(endpoint, new TieredRateLimitConfig(tiers));
+            }
+        }
+        return new LimitConfiguration(new TieredRateLimitConfig(defaults), endpoints, unlimited);
+    }
+
+    private static TieredRateLimitConfig perSecond(int freePerSecond) {
+        Map<ClientTier, RateLimitConfig> configs = new EnumMap<>(ClientTier.class);
+        configs.put(ClientTier.FREE, new RateLimitConfig(freePerSecond, 1000, RateLimitStrategy.TOKEN_BUCKET));
+        configs.put(ClientTier.PREMIUM, new RateLimitConfig(freePerSecond * 10, 1000, RateLimitStrategy.TOKEN_BUCKET));
+        configs.put(ClientTier.ENTERPRISE, new RateLimitConfig(freePerSecond * 100, 1000, RateLimitStrategy.TOKEN_BUCKET));
+        return new TieredRateLimitConfig(configs);
+    }
+
+    private static TieredRateLimitConfig withStrategy(TieredRateLimitConfig tiered, RateLimitStrategy strategy) {
+        Map<ClientTier, RateLimitConfig> configs = new EnumMap<>(ClientTier.class);
+        for (ClientTier tier : ClientTier.values()) {
+            RateLimitConfig config = tiered.getConfigFor(tier);
+            configs.put(tier, new RateLimitConfig(
+                config.getMaxRequests(), config.getWindowSizeMillis(), strategy, config.getBurstCapacity()));
+        }
+        return new TieredRateLimitConfig(configs);
+    }
+
+    private static ClientTier tier(String name, String path) {
+        try {
+            return ClientTier.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown tier \"" + name + "\" in " + path);
+        }
+    }
+
+    private static class FileJson {
+        private Map<String, LimitJson> tiers;
+        private Map<String, EndpointJson> endpoints;
+    }
+
+    private static class EndpointJson {
+        private Boolean unlimited;
+        private Map<String, LimitJson> tiers;
+    }
+
+    private static class LimitJson {
+        private Integer maxRequests;
+        private Long windowMillis;
+        private String strategy;
+        private Integer burst;
+
+        private RateLimitConfig toConfig(RateLimitConfig inherited, String path) {
+            int max = maxRequests != null ? maxRequests : require(inherited, path, "maxRequests").getMaxRequests();
+            long window = windowMillis != null
+                ? windowMillis : require(inherited, path, "windowMillis").getWindowSizeMillis();
+            RateLimitStrategy parsedStrategy = strategy != null
+                ? strategy(strategy, path) : inherited != null ? inherited.getStrategy() : RateLimitStrategy.TOKEN_BUCKET;
+            // An overridden rate without an explicit burst gets a burst equal to the rate
+            int burstCapacity = burst != null ? burst
+                : maxRequests == null && inherited != null ? inherited.getBurstCapacity() : max;
+
+            if (max <= 0 || window <= 0 || burstCapacity <= 0) {
+                throw new IllegalArgumentException(path + ": maxRequests, windowMillis and burst must be positive");
+            }
+            return new RateLimitConfig(max, window, parsedStrategy, burstCapacity);
+        }
+
+        private static RateLimitConfig require(RateLimitConfig inherited, String path, String field) {
+            if (inherited == null) {
+                throw new IllegalArgumentException(path + ": missing " + field);
+            }
+            return inherited;
+        }
+
+        private static RateLimitStrategy strategy(String name, String path) {
+            try {
+                return RateLimitStrategy.valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(path + ": unknown strategy \"" + name + "\"");
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator for {@code POST /api/check-limit}.
+ *
+ * Requests are scheduled at a fixed arrival rate regardless of how fast the
+ * service answers, and each latency is measured from the request's intended
+ * start time rather than from when a connection became free. A stalled
+ * service therefore shows up as queueing delay in the percentiles instead of
+ * silently lowering the offered load (coordinated omission).
+ *
+ * Usage:
+ * <pre>
+ * mvn exec:java -Dexec.mainClass=com.meta.ratelimiter.LoadGenerator \
+ *   -Dexec.args="--rate=5000 --duration=30 --connections=64 --clients=10000 \
+ *                --distribution=zipf --endpoints=/api/search:5,/api/users:3,/api/health:2"
+ * </pre>
+ */
+public class LoadGenerator {
+
+    /**
+     * Load generator settings; every field has a default usable against a
+     * locally started {@link RateLimiterApp}.
+     */
+    public static class Options {
+        private String url = "http://localhost:4567/api/check-limit";
+        private int ratePerSecond = 1000;
+        private int durationSeconds = 10;
+        private int warmupSeconds = 2;
+        private int connections = 32;
+        private int clients = 1000;
+        private String distribution = "uniform";
+        private double zipfExponent = 1.1;
+        private Map<String, Double> endpointWeights = Map.of("/api/check-limit", 1.0);
+        private long seed = 42;
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "url":
+                        options.url = value;
+                        break;
+                    case "rate":
+                        options.ratePerSecond = Integer.parseInt(value);
+                        break;
+                    case "duration":
+                        options.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "warmup":
+                        options.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "connections":
+                        options.connections = Integer.parseInt(value);
+                        break;
+                    case "clients":
+                        options.clients = Integer.parseInt(value);
+                        break;
+                    case "distribution":
+                        options.distribution = value;
+                        break;
+                    case "zipf-exponent":
+                        options.zipfExponent = Double.parseDouble(value);
+                        break;
+                    case "endpoints":
+                        options.endpointWeights = parseEndpointWeights(value);
+                        break;
+                    case "seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option --" + name);
+                }
+            }
+            return options;
+        }
+
+        public Options url(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Options ratePerSecond(int ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            return this;
+        }
+
+        public Options durationSeconds(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        public Options warmupSeconds(int warmupSeconds) {
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        public Options connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        public Options clients(int clients) {
+            this.clients = clients;
+            return this;
+        }
+
+        public Options distribution(String distribution) {
+            this.distribution = distribution;
+            return this;
+        }
+
+        public Options endpointWeights(Map<String, Double> endpointWeights) {
+            this.endpointWeights = new LinkedHashMap<>(endpointWeights);
+            return this;
+        }
+
+        private static Map<String, Double> parseEndpointWeights(String value) {
+            Map<String, Double> weights = new LinkedHashMap<>();
+            for (String part : value.split(",")) {
+                int separator = part.lastIndexOf(':');
+                if (separator < 0) {
+                    weights.put(part.trim(), 1.0);
+                } else {
+                    weights.put(part.substring(0, separator).trim(), Double.parseDouble(part.substring(separator + 1)));
+                }
+            }
+            return weights;
+        }
+    }
+
+    /**
+     * Outcome of a run. Latencies are corrected for coordinated omission;
+     * service times exclude the time a request waited for a connection.
+     * Warmup requests are excluded from every figure, including the count
+     * of requests sent.
+     */
+    public static class Report {
+        private final long sent;
+        private final double durationSeconds;
+        private final Map<Integer, Long> statusCounts;
+        private final long errors;
+        private final LatencyHistogram.Snapshot latency;
+        private final LatencyHistogram.Snapshot serviceTime;
+
+        private Report(
+            long sent,
+            double durationSeconds,
+            Map<Integer, Long> statusCounts,
+            long errors,
+            LatencyHistogram.Snapshot latency,
+            LatencyHistogram.Snapshot serviceTime
+        ) {
+            this.sent = sent;
+            this.durationSeconds = durationSeconds;
+            this.statusCounts = statusCounts;
+            this.errors = errors;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getCompleted() {
+            return latency.getCount();
+        }
+
+        public double getThroughput() {
+            return getCompleted() / durationSeconds;
+        }
+
+        public long getStatusCount(int status) {
+            return statusCounts.getOrDefault(status, 0L);
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram.Snapshot getServiceTime() {
+            return serviceTime;
+        }
+
+        public String format() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("Requests sent:      %d%n", sent));
+            out.append(String.format("Requests completed: %d (%d errors)%n", getCompleted(), errors));
+            out.append(String.format("Throughput:         %.1f req/s%n", getThroughput()));
+            out.append(String.format("Status 200/429/500: %d / %d / %d (other %d)%n",
+                getStatusCount(200), getStatusCount(429), getStatusCount(500),
+                getCompleted() - errors - getStatusCount(200) - getStatusCount(429) - getStatusCount(500)));
+            out.append("Latency (ms, from intended start) | service time (ms)\n");
+            for (double percentile : new double[] {50, 90, 99, 99.9, 100}) {
+                out.append(String.format("  p%-6s %10.3f | %10.3f%n",
+                    percentile == 100 ? "max" : String.valueOf(percentile),
+                    latency.getValueAtPercentile(percentile) / 1_000_000.0,
+                    serviceTime.getValueAtPercentile(percentile) / 1_000_000.0));
+            }
+            return out.toString();
+        }
+    }
+
+    private static class Task {
+        private final long intendedStartNanos;
+        private final boolean measured;
+        private final String body;
+
+        private Task(long intendedStartNanos, boolean measured, String body) {
+            this.intendedStartNanos = intendedStartNanos;
+            this.measured = measured;
+            this.body = body;
+        }
+    }
+
+    private static final Task POISON = new Task(0, false, null);
+
+    private final Options options;
+    private final HttpClient httpClient;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private final Map<Integer, LongAdder> statusCounts = new HashMap<>();
+    private final LongAdder errors = new LongAdder();
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        for (int status : new int[] {200, 429, 500}) {
+            statusCounts.put(status, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        System.out.printf("Driving %s at %d req/s for %ds (+%ds warmup) over %d connections%n",
+            options.url, options.ratePerSecond, options.durationSeconds, options.warmupSeconds, options.connections);
+        Report report = new LoadGenerator(options).run();
+        System.out.print(report.format());
+    }
+
+    public Report run() throws InterruptedException {
+        BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+        CountDownLatch done = new CountDownLatch(options.connections);
+        URI uri = URI.create(options.url);
+        for (int i = 0; i < options.connections; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    drain(queue, uri);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-connection-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long sent = dispatch(queue);
+        for (int i = 0; i < options.connections; i++) {
+            queue.add(POISON);
+        }
+        done.await();
+
+        Map<Integer, Long> counts = new HashMap<>();
+        statusCounts.forEach((status, count) -> counts.put(status, count.sum()));
+        return new Report(sent, options.durationSeconds, counts, errors.sum(),
+            latency.snapshot(), serviceTime.snapshot());
+    }
+
+    /**
+     * Enqueues requests at their scheduled times; falls behind gracefully by
+     * enqueueing every overdue request at once. Returns the number of
+     * measured (post-warmup) requests sent.
+     */
+    private long dispatch(BlockingQueue<Task> queue) {
+        Random random = new Random(options.seed);
+        ClientPicker clients = new ClientPicker(options, random);
+        EndpointPicker endpoints = new EndpointPicker(options.endpointWeights);
+
+        long intervalNanos = 1_000_000_000L / options.ratePerSecond;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        long dispatched = 0;
+        long measured = 0;
+        for (long intended = start; intended < end; intended = start + dispatched * intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            String body = "{\"clientId\":\"client-" + clients.next() + "\",\"endpoint\":\""
+                + endpoints.next(random) + "\"}";
+            boolean measuredTask = intended >= measureFrom;
+            queue.add(new Task(intended, measuredTask, body));
+            dispatched++;
+            if (measuredTask) {
+                measured++;
+            }
+        }
+        return measured;
+    }
+
+    private void drain(BlockingQueue<Task> queue, URI uri) {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == POISON) {
+                return;
+            }
+            send(task, uri);
+        }
+    }
+
+    private void send(Task task, URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(30))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(task.body))
+            .build();
+
+        long sendStart = System.nanoTime();
+        int status;
+        try {
+            status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long finished = System.nanoTime();
+
+        if (!task.measured) {
+            return;
+        }
+        latency.recordNanos(finished - task.intendedStartNanos);
+        serviceTime.recordNanos(finished - sendStart);
+        if (status < 0) {
+            errors.increment();
+            return;
+        }
+        LongAdder counter = statusCounts.get(status);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static class ClientPicker {
+        private final Random random;
+        private final int clients;
+        private final ZipfDistribution zipf;
+
+        private ClientPicker(Options options, Random random) {
+            this.random = random;
+            this.clients = options.clients;
+            switch (options.distribution) {
+                case "uniform":
+                    this.zipf = null;
+                    break;
+                case "zipf":
+                    this.zipf = new ZipfDistribution(options.clients, options.zipfExponent);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown distribution " + options.distribution);
+            }
+        }
+
+        private int next() {
+            return zipf == null ? random.nextInt(clients) : zipf.sample(random);
+        }
+    }
+
+    private static class EndpointPicker {
+        private final List<String> endpoints = new ArrayList<>();
+        private final double[] cumulative;
+
+        private EndpointPicker(Map<String, Double> weights) {
+            cumulative = new double[weights.size()];
+            double total = 0;
+            int i = 0;
+            for (Map.Entry<String, Double> entry : weights.entrySet()) {
+                endpoints.add(entry.getKey());
+                total += entry.getValue();
+                cumulative[i++] = total;
+            }
+            for (i = 0; i < cumulative.length; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        private String next(Random random) {
+            double u = random.nextDouble();
+            for (int i = 0; i < cumulative.length; i++) {
+                if (u < cumulative[i]) {
+                    return endpoints.get(i);
+                }
+            }
+            return endpoints.get(endpoints.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.meta.ratelimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of counters, gauges and latency histograms, rendered in the
+ * Prometheus text exposition format.
+ *
+ * Series are resolved once (typically when a decorator is built) and then
+ * updated directly; the registry itself is only consulted on scrape.
+ */
+public class MetricsRegistry {
+    /** Histogram bucket bounds exported to Prometheus, in nanoseconds. */
+    private static final long[] EXPORTED_BOUNDS_NANOS = {
+        1_000, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000,
+        100_000_000, 250_000_000, 500_000_000, 1_000_000_000, 2_500_000_000L,
+        5_000_000_000L, 10_000_000_000L
+    };
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        HISTOGRAM("histogram");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private static class Family {
+        private final String help;
+        private final Type type;
+        private final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        private Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the counter for {@code name} and the given label key/value pairs.
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, Type.COUNTER).series
+            .computeIfAbsent(renderLabels(labels), k -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, Type.HISTOGRAM).series
+            .computeIfAbsent(renderLabels(labels), k -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a gauge sampled on every scrape; re-registering replaces it.
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, Type.GAUGE).series.put(renderLabels(labels), supplier);
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        writePrometheus(out);
+        return out.toString();
+    }
+
+    public void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Family> familyEntry : families.entrySet()) {
+            String name = familyEntry.getKey();
+            Family family = familyEntry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.text).append('\n');
+
+            for (Map.Entry<String, Object> seriesEntry : family.series.entrySet()) {
+                String labels = seriesEntry.getKey();
+                Object series = seriesEntry.getValue();
+                switch (family.type) {
+                    case COUNTER:
+                        writeSample(out, name, labels, ((LongAdder) series).sum());
+                        break;
+                    case GAUGE:
+                        writeSample(out, name, labels, ((DoubleSupplier) series).getAsDouble());
+                        break;
+                    case HISTOGRAM:
+                        writeHistogram(out, name, labels, ((LatencyHistogram) series).snapshot());
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown metric type " + family.type);
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, k -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type.text);
+        }
+        return family;
+    }
+
+    private void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        for (long bound : EXPORTED_BOUNDS_NANOS) {
+            String le = "le=\"" + formatSeconds(bound) + "\"";
+            writeSample(out, name + "_bucket", withLabel(labels, le), snapshot.getCountAtOrBelow(bound));
+        }
+        writeSample(out, name + "_bucket", withLabel(labels, "le=\"+Inf\""), snapshot.getCount());
+        writeSample(out, name + "_sum", labels, snapshot.getSumNanos() / 1_000_000_000.0);
+        writeSample(out, name + "_count", labels, snapshot.getCount());
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String withLabel(String labels, String label) {
+        if (labels.isEmpty()) {
+            return "{" + label + "}";
+        }
+        return labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String formatSeconds(long nanos) {
+        return Double.toString(nanos / 1_000_000_000.0);
+    }
+
+    static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key/value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder rendered = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    rendered.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    rendered.append("\\n");
+                } else {
+                    rendered.append(ch);
+                }
+            }
+            rendered.append('"');
+        }
+        return rendered.append('}').toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.meta.ratelimiter;
+
+/**
+ * Per-client rate limiter that runs one declarative {@link StoreOperation}
+ * per request through {@link DistributedRateLimitStore#execute}, so it
+ * needs a single store round trip on any backend that executes operations
+ * server-side.
+ *
+ * Remaining and reset queries evaluate the cost-0 variant of the
+ * operation on a copy of the state taken by {@code read}, so they never
+ * write, create entries or extend the TTL.
+ */
+public class OperationRateLimiter implements RateLimiter {
+    private final RateLimitConfig config;
+    private final DistributedRateLimitStore store;
+    private final RateLimiter fallbackLimiter;
+    private final StoreOperation consume;
+    private final StoreOperation peek;
+    private final KeyCache keys;
+    private final TimeSource clock;
+    // Copies under the store's read, as peek rolls windows and refills in place
+    private final StateReader<StoreOperation.State> evaluate = new StateReader<StoreOperation.State>() {
+        @Override
+        public long read(StoreOperation.State state) {
+            long now = clock.currentTimeMillis();
+            return peek.apply(state != null ? state.copy() : peek.initialState(null, now), now);
+        }
+    };
+
+    public OperationRateLimiter(
+        RateLimitConfig config,
+        StoreOperation.Type type,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace
+    ) {
+        this(config, type, store, fallbackLimiter, keyNamespace, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param clock time at which remaining and reset queries are evaluated;
+     *              should match the store's clock
+     */
+    public OperationRateLimiter(
+        RateLimitConfig config,
+        StoreOperation.Type type,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        TimeSource clock
+    ) {
+        this.config = config;
+        this.store = store;
+        this.fallbackLimiter = fallbackLimiter;
+        this.consume = StoreOperation.of(type, config, 1);
+        this.peek = StoreOperation.of(type, config, 0);
+        this.keys = new KeyCache(keyNamespace);
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        try {
+            return StoreOperation.isAllowed(store.execute(keys.keyFor(clientId), consume));
+        } catch (Exception ex) {
+            return fallbackLimiter.allowRequest(clientId);
+        }
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        try {
+            return StoreOperation.getRemaining(evaluate(clientId));
+        } catch (Exception ex) {
+            return fallbackLimiter.getRemainingRequests(clientId);
+        }
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    @Override
+    public void reset(String clientId) {
+        store.remove(keys.keyFor(clientId));
+        keys.evict(clientId);
+        fallbackLimiter.reset(clientId);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        try {
+            return StoreOperation.getRetryAfterMillis(evaluate(clientId));
+        } catch (Exception ex) {
+            return fallbackLimiter.getResetTimeMillis(clientId);
+        }
+    }
+
+    private long evaluate(String clientId) {
+        return store.read(keys.keyFor(clientId), StoreOperation.State.class, evaluate);
+    }
+}
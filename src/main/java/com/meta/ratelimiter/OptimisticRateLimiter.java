@@ -0,0 +1,192 @@
+package com.meta.ratelimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-client rate limiter for stores without server-side execution: it
+ * reads the state with {@link DistributedRateLimitStore#getWithVersion},
+ * applies a {@link StoreOperation} to a copy locally and writes it back
+ * with {@link DistributedRateLimitStore#compareAndSet}, retrying with
+ * jittered exponential backoff when another writer got there first.
+ *
+ * Denials write nothing: the decision holds for the version that was read,
+ * so clients hammering an exhausted key cause no write contention. After
+ * {@code maxRetries} failed attempts the decision goes to the fallback.
+ *
+ * Contention is exported per limiter namespace: decisions, retries, CAS
+ * successes and failures, and decisions that exhausted their retries.
+ */
+public class OptimisticRateLimiter implements RateLimiter {
+    private static final long BASE_BACKOFF_NANOS = 1_000;
+
+    private final RateLimitConfig config;
+    private final DistributedRateLimitStore store;
+    private final RateLimiter fallbackLimiter;
+    private final StoreOperation consume;
+    private final StoreOperation peek;
+    private final KeyCache keys;
+    private final TimeSource clock;
+    private final int maxRetries;
+    private final long maxBackoffNanos;
+    private final LongAdder decisions;
+    private final LongAdder retries;
+    private final LongAdder casSuccesses;
+    private final LongAdder casFailures;
+    private final LongAdder exhausted;
+
+    public OptimisticRateLimiter(
+        RateLimitConfig config,
+        StoreOperation.Type type,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        MetricsRegistry registry
+    ) {
+        this(config, type, store, fallbackLimiter, keyNamespace, 16, 1_000_000, TimeSource.SYSTEM, registry);
+    }
+
+    /**
+     * @param maxRetries      failed compare-and-sets before using the fallback
+     * @param maxBackoffNanos cap of the randomized pause between attempts
+     * @param clock           time at which operations are evaluated
+     */
+    public OptimisticRateLimiter(
+        RateLimitConfig config,
+        StoreOperation.Type type,
+        DistributedRateLimitStore store,
+        RateLimiter fallbackLimiter,
+        String keyNamespace,
+        int maxRetries,
+        long maxBackoffNanos,
+        TimeSource clock,
+        MetricsRegistry registry
+    ) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        this.config = config;
+        this.store = store;
+        this.fallbackLimiter = fallbackLimiter;
+        this.consume = StoreOperation.of(type, config, 1);
+        this.peek = StoreOperation.of(type, config, 0);
+        this.keys = new KeyCache(keyNamespace);
+        this.clock = clock;
+        this.maxRetries = maxRetries;
+        this.maxBackoffNanos = maxBackoffNanos;
+        this.decisions = registry.counter(
+            "ratelimiter_optimistic_decisions_total", "Decisions made by optimistic limiters",
+            "limiter", keyNamespace);
+        this.retries = registry.counter(
+            "ratelimiter_optimistic_retries_total", "Optimistic attempts repeated after a lost compare-and-set",
+            "limiter", keyNamespace);
+        this.casSuccesses = registry.counter(
+            "ratelimiter_cas_total", "Compare-and-set attempts of optimistic limiters",
+            "limiter", keyNamespace, "result", "success");
+        this.casFailures = registry.counter(
+            "ratelimiter_cas_total", "Compare-and-set attempts of optimistic limiters",
+            "limiter", keyNamespace, "result", "failure");
+        this.exhausted = registry.counter(
+            "ratelimiter_optimistic_exhausted_total", "Optimistic decisions that ran out of retries",
+            "limiter", keyNamespace);
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        decisions.increment();
+        try {
+            RateLimitKey key = keys.keyFor(clientId);
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                if (attempt > 0) {
+                    retries.increment();
+                    backoff(attempt);
+                }
+                long now = clock.currentTimeMillis();
+                VersionedValue<StoreOperation.State> current = store.getWithVersion(key, StoreOperation.State.class);
+                StoreOperation.State state = current != null
+                    ? current.getValue().copy() : consume.initialState(null, now);
+                if (!StoreOperation.isAllowed(consume.apply(state, now))) {
+                    return false;
+                }
+                long version = current != null ? current.getVersion() : 0;
+                if (store.compareAndSet(key, version, state, consume.getTtlMillis())) {
+                    casSuccesses.increment();
+                    return true;
+                }
+                casFailures.increment();
+            }
+            exhausted.increment();
+        } catch (Exception ex) {
+            // Fall through to the fallback
+        }
+        return fallbackLimiter.allowRequest(clientId);
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        try {
+            return StoreOperation.getRemaining(evaluate(clientId));
+        } catch (Exception ex) {
+            return fallbackLimiter.getRemainingRequests(clientId);
+        }
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    @Override
+    public void reset(String clientId) {
+        store.remove(keys.keyFor(clientId));
+        keys.evict(clientId);
+        fallbackLimiter.reset(clientId);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        try {
+            return StoreOperation.getRetryAfterMillis(evaluate(clientId));
+        } catch (Exception ex) {
+            return fallbackLimiter.getResetTimeMillis(clientId);
+        }
+    }
+
+    public long getDecisionCount() {
+        return decisions.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getCasFailureCount() {
+        return casFailures.sum();
+    }
+
+    public long getCasSuccessCount() {
+        return casSuccesses.sum();
+    }
+
+    /**
+     * Runs the cost-0 operation on a copy of the state; writes nothing.
+     */
+    private long evaluate(String clientId) {
+        long now = clock.currentTimeMillis();
+        VersionedValue<StoreOperation.State> current =
+            store.getWithVersion(keys.keyFor(clientId), StoreOperation.State.class);
+        StoreOperation.State state = current != null ? current.getValue().copy() : peek.initialState(null, now);
+        return peek.apply(state, now);
+    }
+
+    private void backoff(int attempt) {
+        if (attempt == 1) {
+            // The first retry is usually enough; yield instead of sleeping
+            Thread.onSpinWait();
+            return;
+        }
+        long bound = Math.min(maxBackoffNanos, BASE_BACKOFF_NANOS << Math.min(attempt - 2, 20));
+        LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(bound + 1));
+    }
+}
@@ -0,0 +1,36 @@
+package com.meta.ratelimiter;
+
+import java.util.function.Consumer;
+
+/**
+ * A store whose entries can be snapshotted, journaled and restored by
+ * {@link StatePersistence}.
+ *
+ * Visitors are called while the entry is locked, so a value is encoded in a
+ * consistent state; they must not call back into the store.
+ */
+public interface PersistableStore {
+    interface EntryVisitor {
+        void visit(RateLimitKey key, Object value, long expiresAtMillis);
+    }
+
+    /**
+     * Visits every live entry. A key may be visited once per value it holds.
+     */
+    void forEachEntry(EntryVisitor visitor);
+
+    /**
+     * Visits the live values of {@code key}; returns false if it has none.
+     */
+    boolean visitEntry(RateLimitKey key, EntryVisitor visitor);
+
+    void restoreEntry(RateLimitKey key, Object value, long expiresAtMillis);
+
+    void restoreRemoval(RateLimitKey key);
+
+    /**
+     * Registers a listener called with the key of every mutated entry, or
+     * null to stop notifications. Listeners must be cheap and non-blocking.
+     */
+    void setChangeListener(Consumer<RateLimitKey> listener);
+}
@@ -0,0 +1,252 @@
+package com.meta.ratelimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Structured store key: an interned {@link Namespace} plus a client id,
+ * either a {@code String} or a {@code long}, with a cached 64-bit hash. A
+ * string client id may carry a numeric suffix, such as a window index,
+ * which is hashed without being formatted.
+ *
+ * The namespace prefix is shared by every key in it rather than copied into
+ * each key string, and only the client id is hashed per key. Keys compare
+ * by their logical string form ({@code namespace + clientId}), so a
+ * {@code RateLimitKey} and the equivalent plain string key address the same
+ * store entry.
+ */
+public final class RateLimitKey {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static final long NO_SUFFIX = -1;
+
+    private final Namespace namespace;
+    private final String clientId;
+    private final long numericClientId;
+    private final long suffix;
+    private final long hash;
+
+    private RateLimitKey(Namespace namespace, String clientId, long numericClientId, long suffix, long hash) {
+        this.namespace = namespace;
+        this.clientId = clientId;
+        this.numericClientId = numericClientId;
+        this.suffix = suffix;
+        this.hash = hash;
+    }
+
+    public static RateLimitKey of(String namespace, String clientId) {
+        return Namespace.of(namespace).key(clientId);
+    }
+
+    public static RateLimitKey of(String namespace, long clientId) {
+        return Namespace.of(namespace).key(clientId);
+    }
+
+    /**
+     * Wraps an unstructured string key, as used by the string-keyed store API.
+     */
+    public static RateLimitKey of(String key) {
+        return Namespace.EMPTY.key(key);
+    }
+
+    public Namespace getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * The client id as a string, including any suffix; formats numeric ids
+     * and suffixes on every call.
+     */
+    public String getClientId() {
+        if (clientId == null) {
+            return Long.toString(numericClientId);
+        }
+        return suffix == NO_SUFFIX ? clientId : clientId + ":" + suffix;
+    }
+
+    /**
+     * The client id without its suffix, or null for numeric ids.
+     */
+    String getBaseClientId() {
+        return clientId;
+    }
+
+    /**
+     * Whether this key was built for {@code clientId}, ignoring any suffix.
+     */
+    boolean hasClientId(String clientId) {
+        return this.clientId != null && this.clientId.equals(clientId);
+    }
+
+    /**
+     * The suffix, or {@link #NO_SUFFIX}.
+     */
+    long getSuffix() {
+        return suffix;
+    }
+
+    public boolean isNumeric() {
+        return clientId == null;
+    }
+
+    public long getNumericClientId() {
+        if (clientId != null) {
+            throw new IllegalStateException("Client id is not numeric: " + clientId);
+        }
+        return numericClientId;
+    }
+
+    public long hash64() {
+        return hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateLimitKey)) {
+            return false;
+        }
+        RateLimitKey other = (RateLimitKey) o;
+        if (hash != other.hash) {
+            return false;
+        }
+        if (namespace == other.namespace) {
+            if (clientId != null && other.clientId != null && suffix == other.suffix) {
+                return clientId.equals(other.clientId);
+            }
+            if (clientId == null && other.clientId == null) {
+                return numericClientId == other.numericClientId;
+            }
+        }
+        // Same logical key split differently, e.g. a plain string key
+        return toString().equals(other.toString());
+    }
+
+    /**
+     * The logical key, {@code namespace + clientId}.
+     */
+    @Override
+    public String toString() {
+        return namespace.name + getClientId();
+    }
+
+    /**
+     * The 64-bit hash a key with an empty namespace would have, computed
+     * without building the key.
+     */
+    static long hashString(String text) {
+        return mix(hashChars(FNV_OFFSET, text));
+    }
+
+    static long mix(long h) {
+        // Murmur3 finalizer: FNV alone clusters on the low bits HashMap uses
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hashChars(long h, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            h = (h ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Hashes the decimal digits of {@code value} without formatting it.
+     */
+    private static long hashDigits(long h, long value) {
+        if (value == Long.MIN_VALUE) {
+            return hashChars(h, Long.toString(value));
+        }
+        if (value < 0) {
+            h = (h ^ '-') * FNV_PRIME;
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            h = (h ^ ('0' + (value / divisor) % 10)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * An interned key prefix. The hash state over its characters is computed
+     * once, so building a key only hashes the client id.
+     */
+    public static final class Namespace {
+        private static final Map<String, Namespace> INTERNED = new ConcurrentHashMap<>();
+        private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+        static final Namespace EMPTY = of("");
+
+        private final String name;
+        private final int id;
+        private final long prefixHash;
+
+        private Namespace(String name) {
+            this.name = name;
+            this.id = NEXT_ID.getAndIncrement();
+            this.prefixHash = hashChars(FNV_OFFSET, name);
+        }
+
+        public static Namespace of(String name) {
+            Namespace namespace = INTERNED.get(name);
+            if (namespace != null) {
+                return namespace;
+            }
+            return INTERNED.computeIfAbsent(name, Namespace::new);
+        }
+
+        public RateLimitKey key(String clientId) {
+            return new RateLimitKey(this, clientId, 0, NO_SUFFIX, mix(hashChars(prefixHash, clientId)));
+        }
+
+        public RateLimitKey key(long clientId) {
+            return new RateLimitKey(this, null, clientId, NO_SUFFIX, mix(hashDigits(prefixHash, clientId)));
+        }
+
+        /**
+         * The key {@code clientId + ":" + suffix}, e.g. a client's key for one
+         * window; the suffix digits are hashed without building the string.
+         */
+        public RateLimitKey key(String clientId, long suffix) {
+            if (suffix < 0) {
+                throw new IllegalArgumentException("Suffix must be non-negative, got " + suffix);
+            }
+            long h = (hashChars(prefixHash, clientId) ^ ':') * FNV_PRIME;
+            return new RateLimitKey(this, clientId, 0, suffix, mix(hashDigits(h, suffix)));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Process-local id, stable for the lifetime of the JVM.
+         */
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
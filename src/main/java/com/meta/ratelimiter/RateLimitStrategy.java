@@ -6,5 +6,7 @@ package com.meta.ratelimiter;
 public enum RateLimitStrategy {
     TOKEN_BUCKET,
     SLIDING_WINDOW,
-    FIXED_WINDOW
+    FIXED_WINDOW,
+    /** Fixed windows aligned to the epoch, counted with a store increment. */
+    EPOCH_FIXED_WINDOW
 }
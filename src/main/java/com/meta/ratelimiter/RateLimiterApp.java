@@ -6,8 +6,16 @@ import spark.Response;
 
 import static spark.Spark.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Main application with REST API for rate limiting
@@ -16,6 +24,14 @@ public class RateLimiterApp {
     private static final Gson gson = new Gson();
     private static RateLimiter rateLimiter;
     private static EndpointRateLimiter endpointRateLimiter;
+    private static final MetricsRegistry metrics = new MetricsRegistry();
+    private static final HeavyHitterTracker heavyHitters = new HeavyHitterTracker();
+    private static final StateInspector stateInspector = new StateInspector();
+    private static final String DEFAULT_ENDPOINT = "/api/check-limit";
+    private static final String ADMITTED_ATTRIBUTE = "ratelimiter.admitted";
+    private static ClientTierResolver tierResolver;
+    private static TierAdmissionController admission;
+    private static Set<String> fallbackStoreNames = Set.of();
 
     public static void main(String[] args) {
         System.out.println("=================================");
@@ -23,15 +39,27 @@ public class RateLimiterApp {
         System.out.println("=================================");
 
         // Initialize tiered, distributed rate limiter
-        DistributedRateLimitStore distributedStore = new InMemoryDistributedRateLimitStore();
-        InMemoryClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
-        TieredRateLimitConfig tieredConfig = TieredRateLimitConfig.defaultPerSecond();
-        rateLimiter = buildTieredLimiter(tieredConfig, distributedStore, tierResolver);
-        endpointRateLimiter = buildEndpointTieredLimiter(tierResolver, distributedStore);
-
-        System.out.println("Tiered Config: FREE/PREMIUM/ENTERPRISE per second");
-        System.out.println("Strategy: TOKEN_BUCKET (distributed)");
-        System.out.println("Endpoint limits: /api/search=5/s, /api/users=20/s, /api/health=unlimited");
+        InMemoryDistributedRateLimitStore inMemoryStore = new InMemoryDistributedRateLimitStore();
+        restoreState(inMemoryStore, System.getProperty("ratelimiter.state.dir"));
+        stateInspector.register("distributed", inMemoryStore);
+        DistributedRateLimitStore distributedStore = new InstrumentedDistributedRateLimitStore(
+            inMemoryStore, metrics, "in-memory");
+        tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        admission = new TierAdmissionController(
+            Integer.getInteger("ratelimiter.maxInFlight", 200), TimeUnit.MILLISECONDS.toNanos(50), 0.85, metrics);
+        ReloadableEndpointRateLimiter configuredLimiter = buildConfiguredLimiter(
+            new ConfiguredLimiterFactory(distributedStore, tierResolver),
+            System.getProperty("ratelimiter.config"));
+        rateLimiter = new InstrumentedRateLimiter(
+            configuredLimiter.forEndpoint(DEFAULT_ENDPOINT), metrics, "tiered");
+        endpointRateLimiter = new InstrumentedEndpointRateLimiter(
+            withShadow(configuredLimiter, System.getProperty("ratelimiter.shadow.config")), tierResolver, metrics,
+            withDecisionLog(heavyHitters, System.getProperty("ratelimiter.decision.log.dir")));
+
+        System.out.println("Tiered Config: FREE/PREMIUM/ENTERPRISE, endpoint overrides: "
+            + configuredLimiter.getConfiguration().getEndpoints().keySet()
+            + ", unlimited: " + configuredLimiter.getConfiguration().getUnlimitedEndpoints());
+        System.out.println("Strategy: distributed, hot-reloaded from -Dratelimiter.config if set");
         System.out.println("\nAPI running on http://localhost:4567");
         System.out.println("=================================\n");
 
@@ -47,12 +75,32 @@ public class RateLimiterApp {
             return gson.toJson(health);
         });
 
+        // Prometheus scrape endpoint
+        get("/metrics", (req, res) -> {
+            res.type("text/plain; version=0.0.4");
+            return metrics.scrape();
+        });
+
+        // Node-level admission control: queue delay is measured from Jetty's arrival timestamp
+        before("/api/*", (req, res) -> admission.recordQueueDelay(queueDelayNanos(req)));
+        afterAfter(DEFAULT_ENDPOINT, (req, res) -> {
+            if (req.attribute(ADMITTED_ATTRIBUTE) != null) {
+                admission.exit();
+            }
+        });
+
         // Check rate limit endpoint
         post("/api/check-limit", RateLimiterApp::checkRateLimit);
 
         // Get remaining requests endpoint
         get("/api/remaining/:clientId", RateLimiterApp::getRemainingRequests);
 
+        // Busiest clients per endpoint and tier
+        get("/api/top-clients", RateLimiterApp::getTopClients);
+
+        // Paged, weakly consistent listing of limiter state
+        get("/api/state", RateLimiterApp::getState);
+
         // Reset rate limit for a client (useful for testing)
         delete("/api/reset/:clientId", RateLimiterApp::resetClient);
 
@@ -71,13 +119,24 @@ public class RateLimiterApp {
             // Parse request body
             Map<String, String> body = gson.fromJson(request.body(), Map.class);
             String clientId = body.get("clientId");
-            String endpoint = body.getOrDefault("endpoint", "/api/check-limit");
+            String endpoint = body.getOrDefault("endpoint", DEFAULT_ENDPOINT);
 
             if (clientId == null || clientId.isEmpty()) {
                 response.status(400);
                 return gson.toJson(Map.of("error", "clientId is required"));
             }
 
+            // Shed lower tiers when this node is saturated, before touching the store
+            if (!admission.tryEnter(tierResolver.resolveTier(clientId))) {
+                response.status(503);
+                response.header("Retry-After", "1");
+                return gson.toJson(Map.of(
+                    "allowed", false,
+                    "message", "Service overloaded"
+                ));
+            }
+            request.attribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+
             // Check rate limit
             boolean allowed = endpointRateLimiter.allowRequest(clientId, endpoint);
             int remaining = endpointRateLimiter.getRemainingRequests(clientId, endpoint);
@@ -129,6 +188,94 @@ public class RateLimiterApp {
         ));
     }
 
+    /**
+     * Heavy hitters, optionally filtered by {@code endpoint} and {@code tier};
+     * {@code by=denied} ranks by denials instead of decisions.
+     */
+    private static Object getTopClients(Request request, Response response) {
+        response.type("application/json");
+        int limit;
+        ClientTier tierFilter = null;
+        try {
+            limit = request.queryParams("limit") != null ? Integer.parseInt(request.queryParams("limit")) : 10;
+            if (request.queryParams("tier") != null) {
+                tierFilter = ClientTier.valueOf(request.queryParams("tier").toUpperCase());
+            }
+        } catch (IllegalArgumentException ex) {
+            response.status(400);
+            return gson.toJson(Map.of("error", "Invalid limit or tier"));
+        }
+        String endpointFilter = request.queryParams("endpoint");
+        boolean byDenied = "denied".equals(request.queryParams("by"));
+
+        List<Map<String, Object>> groups = new ArrayList<>();
+        for (String endpoint : heavyHitters.getEndpoints()) {
+            if (endpointFilter != null && !endpointFilter.equals(endpoint)) {
+                continue;
+            }
+            for (ClientTier tier : ClientTier.values()) {
+                if (tierFilter != null && tierFilter != tier) {
+                    continue;
+                }
+                List<HeavyHitterTracker.HeavyHitter> top =
+                    heavyHitters.topClients(endpoint, tier, limit, byDenied);
+                if (top.isEmpty()) {
+                    continue;
+                }
+                List<Map<String, Object>> clients = new ArrayList<>();
+                for (HeavyHitterTracker.HeavyHitter hitter : top) {
+                    clients.add(Map.of(
+                        "clientId", hitter.getClientId(),
+                        "count", hitter.getCount(),
+                        "denied", hitter.getDenied(),
+                        "error", hitter.getError()
+                    ));
+                }
+                groups.add(Map.of(
+                    "endpoint", endpoint,
+                    "tier", tier.name(),
+                    "clients", clients
+                ));
+            }
+        }
+        return gson.toJson(Map.of("topClients", groups));
+    }
+
+    /**
+     * One page of store entries; pass the returned {@code nextCursor} back
+     * as {@code cursor} to continue.
+     */
+    private static Object getState(Request request, Response response) {
+        response.type("application/json");
+        StateInspector.Page page;
+        try {
+            int limit = request.queryParams("limit") != null ? Integer.parseInt(request.queryParams("limit")) : 100;
+            page = stateInspector.page(request.queryParams("cursor"), request.queryParams("store"),
+                request.queryParams("namespace"), limit);
+        } catch (IllegalArgumentException ex) {
+            response.status(400);
+            return gson.toJson(Map.of("error", ex.getMessage()));
+        }
+
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (InspectableStore.StateEntry entry : page.getEntries()) {
+            Map<String, Object> json = new HashMap<>();
+            json.put("key", entry.getKey());
+            json.put("state", entry.getState());
+            if (entry.getExpiresAtMillis() > 0) {
+                json.put("expiresAtMillis", entry.getExpiresAtMillis());
+                json.put("ttlMillis", Math.max(0, entry.getExpiresAtMillis() - now));
+            }
+            entries.add(json);
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("store", page.getStore());
+        body.put("entries", entries);
+        body.put("nextCursor", page.getNextCursor());
+        return gson.toJson(body);
+    }
+
     /**
      * Reset rate limit for a client
      */
@@ -144,6 +291,89 @@ public class RateLimiterApp {
         ));
     }
 
+    private static long queueDelayNanos(Request request) {
+        org.eclipse.jetty.server.Request jettyRequest = org.eclipse.jetty.server.Request.getBaseRequest(request.raw());
+        if (jettyRequest == null || jettyRequest.getTimeStamp() == 0) {
+            return 0;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - jettyRequest.getTimeStamp());
+    }
+
+    /**
+     * Adds an asynchronous decision log in {@code directory}, if configured,
+     * to the decision listeners; the allowed-decision sample rate comes from
+     * {@code -Dratelimiter.decision.log.sample}.
+     */
+    private static DecisionListener withDecisionLog(DecisionListener listener, String directory) {
+        if (directory == null || directory.isEmpty()) {
+            return listener;
+        }
+        double sampleRate = Double.parseDouble(System.getProperty("ratelimiter.decision.log.sample", "1.0"));
+        DecisionEventLog log;
+        try {
+            log = new DecisionEventLog(Paths.get(directory), 1 << 16, 64L << 20, 16, sampleRate, 1.0, metrics);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open decision log in " + directory, ex);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                log.close();
+            } catch (IOException ex) {
+                System.err.println("Failed to close decision log: " + ex);
+            }
+        }));
+        System.out.println("Decision log: " + directory + " (allowed sample rate " + sampleRate + ")");
+        return listener.andThen(log);
+    }
+
+    /**
+     * Shadows {@code active} with the candidate configuration at
+     * {@code path}, if configured; the sampled fraction of clients comes
+     * from {@code -Dratelimiter.shadow.sample}.
+     */
+    private static EndpointRateLimiter withShadow(EndpointRateLimiter active, String path) {
+        if (path == null || path.isEmpty()) {
+            return active;
+        }
+        LimitConfiguration candidate;
+        try {
+            candidate = LimitConfiguration.load(Paths.get(path));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot load shadow configuration " + path, ex);
+        }
+        double sampleRate = Double.parseDouble(System.getProperty("ratelimiter.shadow.sample", "0.1"));
+        System.out.println("Shadow limits: " + path + " (client sample rate " + sampleRate + ")");
+        return new ShadowEndpointRateLimiter(
+            active, TraceReplay.configured(candidate, tierResolver), tierResolver, sampleRate, metrics);
+    }
+
+    /**
+     * Restores store state from {@code directory} and keeps persisting it
+     * there until shutdown; does nothing if no directory is configured.
+     */
+    private static void restoreState(InMemoryDistributedRateLimitStore store, String directory) {
+        if (directory == null || directory.isEmpty()) {
+            return;
+        }
+        StatePersistence persistence = new StatePersistence(store, Paths.get(directory));
+        try {
+            long start = System.currentTimeMillis();
+            long restored = persistence.restore();
+            System.out.println("Restored " + restored + " state records from " + directory
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+            persistence.start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot restore state from " + directory, ex);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                persistence.close();
+            } catch (IOException ex) {
+                System.err.println("Failed to flush state to " + directory + ": " + ex);
+            }
+        }));
+    }
+
     // Expose rate limiter for testing
     public static RateLimiter getRateLimiter() {
         return rateLimiter;
@@ -159,91 +389,43 @@ public class RateLimiterApp {
         return currentSeconds + Math.max(0, resetAfterSeconds);
     }
 
-    private static TieredRateLimiter buildTieredLimiter(
-        TieredRateLimitConfig tieredConfig,
-        DistributedRateLimitStore store,
-        ClientTierResolver tierResolver
+    /**
+     * Limiter tree for the configuration file at {@code path}, reloaded on
+     * every change, or for the built-in defaults if no path is given. Each
+     * tree's fallback stores are offered to the state inspector by namespace.
+     */
+    private static ReloadableEndpointRateLimiter buildConfiguredLimiter(
+        ConfiguredLimiterFactory factory,
+        String path
     ) {
-        java.util.Map<ClientTier, RateLimiter> limiters = new java.util.EnumMap<>(ClientTier.class);
-
-        for (ClientTier tier : ClientTier.values()) {
-            RateLimitConfig config = tieredConfig.getConfigFor(tier);
-            ClientRateLimitStore localStore = new ClientRateLimitStore();
-            RateLimiter fallbackLimiter = new TokenBucketRateLimiter(config, localStore);
-            String namespace = "token-bucket:" + tier.name().toLowerCase() + ":";
-
-            RateLimiter limiter = new DistributedTokenBucketRateLimiter(
-                config,
-                store,
-                fallbackLimiter,
-                namespace
-            );
-            limiters.put(tier, limiter);
+        Function<LimitConfiguration, EndpointRateLimiter> build = configuration -> {
+            EndpointRateLimiter built = factory.build(configuration);
+            registerFallbackStores(factory.getFallbackStores());
+            return built;
+        };
+        if (path == null || path.isEmpty()) {
+            return new ReloadableEndpointRateLimiter(build, LimitConfiguration.defaultConfiguration());
+        }
+        try {
+            ReloadableEndpointRateLimiter limiter = new ReloadableEndpointRateLimiter(
+                build, LimitConfiguration.load(Paths.get(path)));
+            new LimitConfigWatcher(Paths.get(path), limiter::apply);
+            return limiter;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot load limit configuration " + path, ex);
         }
-
-        return new TieredRateLimiter(tierResolver, limiters);
-    }
-
-    private static EndpointRateLimiter buildEndpointTieredLimiter(
-        ClientTierResolver tierResolver,
-        DistributedRateLimitStore store
-    ) {
-        TieredRateLimiter defaultLimiter = buildTieredLimiter(
-            TieredRateLimitConfig.defaultPerSecond(),
-            store,
-            tierResolver
-        );
-
-        TieredRateLimiter searchLimiter = buildEndpointLimiter(
-            tierResolver,
-            store,
-            5
-        );
-        TieredRateLimiter usersLimiter = buildEndpointLimiter(
-            tierResolver,
-            store,
-            20
-        );
-
-        java.util.Map<String, TieredRateLimiter> endpointLimiters = new java.util.HashMap<>();
-        endpointLimiters.put("/api/search", searchLimiter);
-        endpointLimiters.put("/api/users", usersLimiter);
-        endpointLimiters.put("/api/health", new TieredRateLimiter(
-            tierResolver,
-            java.util.Map.of(
-                ClientTier.FREE, new UnlimitedRateLimiter(),
-                ClientTier.PREMIUM, new UnlimitedRateLimiter(),
-                ClientTier.ENTERPRISE, new UnlimitedRateLimiter()
-            )
-        ));
-
-        return new EndpointTieredRateLimiter(endpointLimiters, defaultLimiter);
-    }
-
-    private static TieredRateLimiter buildEndpointLimiter(
-        ClientTierResolver tierResolver,
-        DistributedRateLimitStore store,
-        int basePerSecond
-    ) {
-        java.util.Map<ClientTier, RateLimiter> limiters = new java.util.EnumMap<>(ClientTier.class);
-        limiters.put(ClientTier.FREE, buildDistributedLimiter(store, basePerSecond, "endpoint:free:"));
-        limiters.put(ClientTier.PREMIUM, buildDistributedLimiter(store, basePerSecond * 10, "endpoint:premium:"));
-        limiters.put(ClientTier.ENTERPRISE, buildDistributedLimiter(store, basePerSecond * 100, "endpoint:enterprise:"));
-        return new TieredRateLimiter(tierResolver, limiters);
     }
 
-    private static RateLimiter buildDistributedLimiter(
-        DistributedRateLimitStore store,
-        int maxRequestsPerSecond,
-        String namespacePrefix
-    ) {
-        RateLimitConfig config = new RateLimitConfig(maxRequestsPerSecond, 1000, RateLimitStrategy.TOKEN_BUCKET);
-        RateLimiter fallbackLimiter = new TokenBucketRateLimiter(config, new ClientRateLimitStore());
-        return new DistributedTokenBucketRateLimiter(
-            config,
-            store,
-            fallbackLimiter,
-            "token-bucket:" + namespacePrefix
-        );
+    /**
+     * Replaces the previous tree's fallback stores in the state inspector.
+     */
+    private static synchronized void registerFallbackStores(Map<String, InspectableStore> stores) {
+        for (String name : fallbackStoreNames) {
+            if (!stores.containsKey(name)) {
+                stateInspector.unregister(name);
+            }
+        }
+        stores.forEach(stateInspector::register);
+        fallbackStoreNames = stores.keySet();
     }
 }
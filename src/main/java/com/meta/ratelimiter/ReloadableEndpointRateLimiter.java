@@ -0,0 +1,101 @@
+package com.meta.ratelimiter;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * {@link EndpointRateLimiter} whose limiter tree can be replaced at runtime.
+ *
+ * A new tree is built by the caller of {@link #apply} and published with a
+ * single volatile write, so requests never wait on a reload; each call sees
+ * either the old tree or the new one. State carries over because trees built
+ * by {@link ConfiguredLimiterFactory} share store namespaces.
+ */
+public class ReloadableEndpointRateLimiter implements EndpointRateLimiter {
+    private final Function<LimitConfiguration, EndpointRateLimiter> factory;
+    private volatile EndpointRateLimiter current;
+    private volatile LimitConfiguration configuration;
+
+    public ReloadableEndpointRateLimiter(
+        Function<LimitConfiguration, EndpointRateLimiter> factory,
+        LimitConfiguration initial
+    ) {
+        this.factory = factory;
+        apply(initial);
+    }
+
+    /**
+     * Builds the tree for {@code newConfiguration} and swaps it in.
+     */
+    public synchronized void apply(LimitConfiguration newConfiguration) {
+        EndpointRateLimiter built = factory.apply(newConfiguration);
+        configuration = newConfiguration;
+        current = built;
+    }
+
+    public LimitConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * A client-only view of one endpoint that always uses the current tree.
+     */
+    public RateLimiter forEndpoint(String endpoint) {
+        return new RateLimiter() {
+            @Override
+            public boolean allowRequest(String clientId) {
+                return current.allowRequest(clientId, endpoint);
+            }
+
+            @Override
+            public int getRemainingRequests(String clientId) {
+                return current.getRemainingRequests(clientId, endpoint);
+            }
+
+            @Override
+            public int getLimit(String clientId) {
+                return current.getLimit(clientId, endpoint);
+            }
+
+            @Override
+            public void reset(String clientId) {
+                current.reset(clientId, endpoint);
+            }
+
+            @Override
+            public long getResetTimeMillis(String clientId) {
+                return current.getResetTimeMillis(clientId, endpoint);
+            }
+        };
+    }
+
+    @Override
+    public boolean allowRequest(String clientId, String endpoint) {
+        return current.allowRequest(clientId, endpoint);
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId, String endpoint) {
+        return current.getRemainingRequests(clientId, endpoint);
+    }
+
+    @Override
+    public int getLimit(String clientId, String endpoint) {
+        return current.getLimit(clientId, endpoint);
+    }
+
+    @Override
+    public void reset(String clientId, String endpoint) {
+        current.reset(clientId, endpoint);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId, String endpoint) {
+        return current.getResetTimeMillis(clientId, endpoint);
+    }
+
+    @Override
+    public Optional<ConcurrencyPermit> acquire(String clientId, String endpoint) {
+        return current.acquire(clientId, endpoint);
+    }
+}
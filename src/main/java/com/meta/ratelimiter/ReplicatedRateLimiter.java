@@ -0,0 +1,395 @@
+package com.meta.ratelimiter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store-less fixed-window limiter replicated across a fixed set of nodes.
+ *
+ * Each client's window holds a grow-only counter (G-counter) per node:
+ * a node only increments its own slot and merges peers' slots by maximum,
+ * so replicas converge regardless of message loss, duplication or order.
+ * Windows are aligned to the epoch ({@code now / windowSize}), so every node
+ * agrees on window boundaries without coordination. Decisions are local:
+ * a request is admitted while the merged total is under the limit. Only the
+ * local clock advances a window: counts gossiped by a peer whose clock runs
+ * ahead are held until this node reaches that window.
+ *
+ * Every gossip interval a node broadcasts its own counts for the clients it
+ * admitted since the previous round, and every {@link #ANTI_ENTROPY_ROUNDS}
+ * rounds all of its counts for live windows, which repairs lost messages.
+ *
+ * Over-admission comes only from admissions peers have not seen yet. With
+ * {@code maxUnsyncedPerClient} set, a node admits at most that many
+ * requests per client between gossip rounds, so a window admits at most
+ * {@code limit + (nodes - 1) * maxUnsyncedPerClient} requests while
+ * messages are delivered; see {@link #getOverAdmissionBound()}.
+ */
+public class ReplicatedRateLimiter implements RateLimiter, AutoCloseable {
+    static final int ANTI_ENTROPY_ROUNDS = 10;
+
+    private static class ClientWindow {
+        private long windowIndex;
+        private final long[] counts;
+        private long sentCount;
+        /** Peers' counts for the nearest window ahead of ours, or null. */
+        private long[] heldCounts;
+        private long heldWindowIndex;
+        /** Unlinked from the map; callers holding it must look the client up again. */
+        private boolean retired;
+
+        private ClientWindow(long windowIndex, int nodes) {
+            this.windowIndex = windowIndex;
+            this.counts = new long[nodes];
+        }
+
+        private void rollTo(long newWindowIndex) {
+            if (newWindowIndex > windowIndex) {
+                windowIndex = newWindowIndex;
+                Arrays.fill(counts, 0);
+                sentCount = 0;
+                if (heldCounts != null && heldWindowIndex <= newWindowIndex) {
+                    if (heldWindowIndex == newWindowIndex) {
+                        System.arraycopy(heldCounts, 0, counts, 0, counts.length);
+                    }
+                    heldCounts = null;
+                }
+            }
+        }
+
+        /**
+         * Keeps a peer's count for a window this node has not reached. Only
+         * the nearest such window is kept; counts for later ones are dropped
+         * and arrive again with the peer's anti-entropy rounds.
+         */
+        private void hold(int node, long futureWindowIndex, long count) {
+            if (heldCounts == null || futureWindowIndex < heldWindowIndex) {
+                heldCounts = new long[counts.length];
+                heldWindowIndex = futureWindowIndex;
+            }
+            if (futureWindowIndex == heldWindowIndex) {
+                heldCounts[node] = Math.max(heldCounts[node], count);
+            }
+        }
+
+        private long total() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    private final RateLimitConfig config;
+    private final String nodeId;
+    private final int nodeIndex;
+    private final Map<String, Integer> nodeIndexes = new ConcurrentHashMap<>();
+    private final GossipTransport transport;
+    private final long gossipIntervalMillis;
+    private final long maxUnsyncedPerClient;
+    private final Map<String, ClientWindow> windows = new ConcurrentHashMap<>();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final TimeSource clock;
+    private long rounds;
+
+    public ReplicatedRateLimiter(
+        RateLimitConfig config,
+        String nodeId,
+        List<String> nodeIds,
+        GossipTransport transport,
+        long gossipIntervalMillis
+    ) {
+        this(config, nodeId, nodeIds, transport, gossipIntervalMillis, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param nodeIds every node in the cluster, including this one; all nodes
+     *                must use the same list
+     * @param gossipIntervalMillis broadcast period, or 0 to gossip only via
+     *                             {@link #gossip()}
+     * @param maxUnsyncedPerClient admissions per client allowed between
+     *                             gossip rounds
+     */
+    public ReplicatedRateLimiter(
+        RateLimitConfig config,
+        String nodeId,
+        List<String> nodeIds,
+        GossipTransport transport,
+        long gossipIntervalMillis,
+        long maxUnsyncedPerClient
+    ) {
+        this(config, nodeId, nodeIds, transport, gossipIntervalMillis, maxUnsyncedPerClient, TimeSource.SYSTEM);
+    }
+
+    public ReplicatedRateLimiter(
+        RateLimitConfig config,
+        String nodeId,
+        List<String> nodeIds,
+        GossipTransport transport,
+        long gossipIntervalMillis,
+        long maxUnsyncedPerClient,
+        TimeSource clock
+    ) {
+        for (int i = 0; i < nodeIds.size(); i++) {
+            if (nodeIndexes.putIfAbsent(nodeIds.get(i), i) != null) {
+                throw new IllegalArgumentException("Duplicate node id " + nodeIds.get(i));
+            }
+        }
+        Integer index = nodeIndexes.get(nodeId);
+        if (index == null) {
+            throw new IllegalArgumentException("Node " + nodeId + " is not in the node list");
+        }
+        if (maxUnsyncedPerClient <= 0) {
+            throw new IllegalArgumentException("maxUnsyncedPerClient must be positive");
+        }
+        this.config = config;
+        this.nodeId = nodeId;
+        this.nodeIndex = index;
+        this.transport = transport;
+        this.gossipIntervalMillis = gossipIntervalMillis;
+        this.maxUnsyncedPerClient = maxUnsyncedPerClient;
+        this.clock = clock;
+
+        transport.register(nodeId, this::receive);
+        if (gossipIntervalMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gossip-" + nodeId);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::gossipQuietly,
+                gossipIntervalMillis, gossipIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        long windowIndex = currentWindowIndex();
+        while (true) {
+            ClientWindow window = windowFor(clientId, windowIndex);
+            synchronized (window) {
+                if (window.retired) {
+                    continue;
+                }
+                window.rollTo(windowIndex);
+                if (window.windowIndex != windowIndex) {
+                    // A concurrent request read the clock later and already rolled the window
+                    return false;
+                }
+                long own = window.counts[nodeIndex];
+                if (window.total() >= config.getMaxRequests() || own - window.sentCount >= maxUnsyncedPerClient) {
+                    return false;
+                }
+                window.counts[nodeIndex] = own + 1;
+            }
+            changed.add(clientId);
+            return true;
+        }
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        ClientWindow window = windows.get(clientId);
+        if (window == null) {
+            return config.getMaxRequests();
+        }
+        synchronized (window) {
+            window.rollTo(currentWindowIndex());
+            return (int) Math.max(0, config.getMaxRequests() - window.total());
+        }
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    /**
+     * Clears this node's view of the client. G-counters cannot decrease, so
+     * peers' counts for the current window return with their next gossip.
+     */
+    @Override
+    public void reset(String clientId) {
+        ClientWindow window = windows.remove(clientId);
+        if (window != null) {
+            synchronized (window) {
+                window.retired = true;
+            }
+        }
+        changed.remove(clientId);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        ClientWindow window = windows.get(clientId);
+        if (window == null) {
+            return 0;
+        }
+        long now = clock.currentTimeMillis();
+        synchronized (window) {
+            window.rollTo(now / config.getWindowSizeMillis());
+            if (window.total() < config.getMaxRequests()) {
+                return 0;
+            }
+            return (window.windowIndex + 1) * config.getWindowSizeMillis() - now;
+        }
+    }
+
+    /**
+     * Merged count of the client's current window: this node's exact count
+     * plus the latest count received from each peer.
+     */
+    public long getMergedCount(String clientId) {
+        ClientWindow window = windows.get(clientId);
+        if (window == null) {
+            return 0;
+        }
+        synchronized (window) {
+            window.rollTo(currentWindowIndex());
+            return window.total();
+        }
+    }
+
+    /**
+     * Worst-case admissions beyond the limit per client window while gossip
+     * is delivered, or {@link Long#MAX_VALUE} without a per-round cap.
+     */
+    public long getOverAdmissionBound() {
+        if (maxUnsyncedPerClient == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return (nodeIndexes.size() - 1) * maxUnsyncedPerClient;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getGossipIntervalMillis() {
+        return gossipIntervalMillis;
+    }
+
+    /**
+     * Runs one gossip round: broadcasts this node's counts for clients
+     * changed since the last round, or for every live window on
+     * anti-entropy rounds, and drops windows that have ended.
+     */
+    public synchronized void gossip() {
+        boolean antiEntropy = ++rounds % ANTI_ENTROPY_ROUNDS == 0;
+        long windowIndex = currentWindowIndex();
+        List<String> clientIds = new ArrayList<>();
+        List<long[]> entries = new ArrayList<>();
+
+        Iterator<String> source = antiEntropy ? windows.keySet().iterator() : changed.iterator();
+        while (source.hasNext()) {
+            String clientId = source.next();
+            if (!antiEntropy) {
+                source.remove();
+            }
+            ClientWindow window = windows.get(clientId);
+            if (window == null) {
+                continue;
+            }
+            synchronized (window) {
+                if (window.windowIndex < windowIndex) {
+                    if (antiEntropy) {
+                        // Ended windows no longer affect decisions
+                        windows.remove(clientId, window);
+                        window.retired = true;
+                    }
+                    continue;
+                }
+                long own = window.counts[nodeIndex];
+                if (own == 0) {
+                    continue;
+                }
+                window.sentCount = own;
+                clientIds.add(clientId);
+                entries.add(new long[] {window.windowIndex, own});
+            }
+        }
+        if (antiEntropy) {
+            changed.clear();
+        }
+        if (clientIds.isEmpty()) {
+            return;
+        }
+
+        long[] windowIndexes = new long[entries.size()];
+        long[] counts = new long[entries.size()];
+        for (int i = 0; i < counts.length; i++) {
+            windowIndexes[i] = entries.get(i)[0];
+            counts[i] = entries.get(i)[1];
+        }
+        transport.broadcast(new GossipTransport.GossipMessage(nodeId, clientIds, windowIndexes, counts));
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        transport.unregister(nodeId);
+    }
+
+    private void receive(GossipTransport.GossipMessage message) {
+        Integer sender = nodeIndexes.get(message.getSenderId());
+        if (sender == null || sender == nodeIndex) {
+            return;
+        }
+        long currentWindowIndex = currentWindowIndex();
+        for (int i = 0; i < message.size(); i++) {
+            long windowIndex = message.getWindowIndex(i);
+            if (windowIndex < currentWindowIndex) {
+                continue;
+            }
+            ClientWindow window = windowFor(message.getClientId(i), currentWindowIndex);
+            synchronized (window) {
+                if (window.retired) {
+                    // Ended window was just dropped; the next anti-entropy round resends this count
+                    continue;
+                }
+                window.rollTo(currentWindowIndex);
+                if (window.windowIndex == windowIndex) {
+                    window.counts[sender] = Math.max(window.counts[sender], message.getCount(i));
+                } else if (windowIndex > window.windowIndex) {
+                    // The sender's clock is ahead; rolling now would wipe the current window
+                    window.hold(sender, windowIndex, message.getCount(i));
+                }
+            }
+        }
+    }
+
+    private void gossipQuietly() {
+        try {
+            gossip();
+        } catch (RuntimeException ex) {
+            // Keep gossiping; the next anti-entropy round resends everything
+            System.err.println("Gossip from " + nodeId + " failed: " + ex);
+        }
+    }
+
+    private ClientWindow windowFor(String clientId, long windowIndex) {
+        ClientWindow window = windows.get(clientId);
+        if (window != null) {
+            return window;
+        }
+        return windows.computeIfAbsent(clientId, k -> new ClientWindow(windowIndex, nodeIndexes.size()));
+    }
+
+    private long currentWindowIndex() {
+        return clock.currentTimeMillis() / config.getWindowSizeMillis();
+    }
+}
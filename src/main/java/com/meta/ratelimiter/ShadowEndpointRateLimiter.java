@@ -0,0 +1,271 @@
+package com.meta.ratelimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Runs a candidate limiter in the shadow of the active one: the active
+ * limiter makes every decision, and the candidate is evaluated afterwards
+ * on the same traffic, with its own state, to count where it would have
+ * decided differently.
+ *
+ * The request thread only offers an event to a bounded queue; if the queue
+ * is full the event is dropped and counted. A single worker thread replays
+ * events against the candidate on a {@link VirtualClock} set to each
+ * request's arrival time, so queueing delay does not skew the candidate's
+ * refills or windows, and resolves tiers off the request path.
+ *
+ * Sampling is by client: a sampled client's requests all reach the
+ * candidate, so its per-client state stays exact at any sample rate.
+ */
+public class ShadowEndpointRateLimiter implements EndpointRateLimiter, AutoCloseable {
+    private static final int MAX_BATCH = 1024;
+
+    private static final class Event {
+        private final String clientId;
+        private final String endpoint;
+        private final long timestampMillis;
+        private final boolean allowed;
+        private final boolean reset;
+        private final CountDownLatch flushed;
+
+        private Event(String clientId, String endpoint, long timestampMillis, boolean allowed,
+                      boolean reset, CountDownLatch flushed) {
+            this.clientId = clientId;
+            this.endpoint = endpoint;
+            this.timestampMillis = timestampMillis;
+            this.allowed = allowed;
+            this.reset = reset;
+            this.flushed = flushed;
+        }
+    }
+
+    private static class Series {
+        private final LongAdder evaluated;
+        private final LongAdder shadowDenied;
+        private final LongAdder shadowAllowed;
+
+        private Series(MetricsRegistry registry, String endpoint, ClientTier tier) {
+            String tierLabel = tier.name().toLowerCase();
+            this.evaluated = registry.counter(
+                "ratelimiter_shadow_evaluations_total", "Requests evaluated by the shadow limiter",
+                "endpoint", endpoint, "tier", tierLabel);
+            this.shadowDenied = registry.counter(
+                "ratelimiter_shadow_disagreements_total", "Shadow decisions differing from the active limiter",
+                "endpoint", endpoint, "tier", tierLabel, "shadow", "denied");
+            this.shadowAllowed = registry.counter(
+                "ratelimiter_shadow_disagreements_total", "Shadow decisions differing from the active limiter",
+                "endpoint", endpoint, "tier", tierLabel, "shadow", "allowed");
+        }
+    }
+
+    private final EndpointRateLimiter active;
+    private final EndpointRateLimiter candidate;
+    private final ClientTierResolver tierResolver;
+    private final MetricsRegistry registry;
+    private final int maxEndpoints;
+    private final long sampleThreshold;
+    private final BlockingQueue<Event> queue;
+    private final VirtualClock clock = new VirtualClock(0);
+    private final Map<String, Series[]> seriesByEndpoint = new ConcurrentHashMap<>();
+    private final LongAdder dropped;
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder disagreements = new LongAdder();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public ShadowEndpointRateLimiter(
+        EndpointRateLimiter active,
+        Function<TimeSource, EndpointRateLimiter> candidate,
+        ClientTierResolver tierResolver,
+        double sampleRate,
+        MetricsRegistry registry
+    ) {
+        this(active, candidate, tierResolver, sampleRate, 1 << 14, 256, registry);
+    }
+
+    /**
+     * @param candidate     builds the shadow limiter on the worker's clock,
+     *                      e.g. {@link TraceReplay#configured}
+     * @param sampleRate    fraction of clients shadowed, in [0, 1]
+     * @param queueCapacity events buffered before new ones are dropped
+     * @param maxEndpoints  distinct endpoint labels before "other"
+     */
+    public ShadowEndpointRateLimiter(
+        EndpointRateLimiter active,
+        Function<TimeSource, EndpointRateLimiter> candidate,
+        ClientTierResolver tierResolver,
+        double sampleRate,
+        int queueCapacity,
+        int maxEndpoints,
+        MetricsRegistry registry
+    ) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be in [0, 1]");
+        }
+        this.active = active;
+        this.candidate = candidate.apply(clock);
+        this.tierResolver = tierResolver;
+        this.registry = registry;
+        this.maxEndpoints = maxEndpoints;
+        // Compared against 63 bits of the client hash
+        this.sampleThreshold = sampleRate >= 1 ? Long.MAX_VALUE
+            : sampleRate <= 0 ? -1 : (long) (sampleRate * Long.MAX_VALUE);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dropped = registry.counter(
+            "ratelimiter_shadow_dropped_total", "Shadow events dropped because the queue was full");
+        this.worker = new Thread(this::run, "shadow-limiter");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public boolean allowRequest(String clientId, String endpoint) {
+        boolean allowed = active.allowRequest(clientId, endpoint);
+        shadow(clientId, endpoint, allowed, false);
+        return allowed;
+    }
+
+    @Override
+    public Optional<ConcurrencyPermit> acquire(String clientId, String endpoint) {
+        Optional<ConcurrencyPermit> permit = active.acquire(clientId, endpoint);
+        shadow(clientId, endpoint, permit.isPresent(), false);
+        return permit;
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId, String endpoint) {
+        return active.getRemainingRequests(clientId, endpoint);
+    }
+
+    @Override
+    public int getLimit(String clientId, String endpoint) {
+        return active.getLimit(clientId, endpoint);
+    }
+
+    @Override
+    public void reset(String clientId, String endpoint) {
+        active.reset(clientId, endpoint);
+        shadow(clientId, endpoint, false, true);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId, String endpoint) {
+        return active.getResetTimeMillis(clientId, endpoint);
+    }
+
+    /**
+     * Requests the candidate has evaluated.
+     */
+    public long getEvaluatedCount() {
+        return evaluated.sum();
+    }
+
+    /**
+     * Evaluated requests the candidate decided differently.
+     */
+    public long getDisagreementCount() {
+        return disagreements.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until every event queued before this call has been evaluated.
+     */
+    public void flush() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        queue.put(new Event(null, null, 0, false, false, flushed));
+        flushed.await();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void shadow(String clientId, String endpoint, boolean allowed, boolean reset) {
+        if ((RateLimitKey.mix(clientId.hashCode()) >>> 1) > sampleThreshold) {
+            return;
+        }
+        if (!queue.offer(new Event(clientId, endpoint, System.currentTimeMillis(), allowed, reset, null))) {
+            dropped.increment();
+        }
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (Event event : batch) {
+                try {
+                    evaluate(event);
+                } catch (RuntimeException ex) {
+                    // A failing candidate must not stop the shadow
+                    System.err.println("Shadow evaluation failed: " + ex);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void evaluate(Event event) {
+        if (event.flushed != null) {
+            event.flushed.countDown();
+            return;
+        }
+        clock.set(event.timestampMillis);
+        if (event.reset) {
+            candidate.reset(event.clientId, event.endpoint);
+            return;
+        }
+        boolean shadowAllowed = candidate.allowRequest(event.clientId, event.endpoint);
+        Series series = seriesFor(event.endpoint)[tierResolver.resolveTier(event.clientId).ordinal()];
+        series.evaluated.increment();
+        evaluated.increment();
+        if (shadowAllowed != event.allowed) {
+            (shadowAllowed ? series.shadowAllowed : series.shadowDenied).increment();
+            disagreements.increment();
+        }
+    }
+
+    private Series[] seriesFor(String endpoint) {
+        Series[] series = seriesByEndpoint.get(endpoint);
+        if (series != null) {
+            return series;
+        }
+        String label = seriesByEndpoint.size() < maxEndpoints ? endpoint : InstrumentedEndpointRateLimiter.OVERFLOW_ENDPOINT;
+        return seriesByEndpoint.computeIfAbsent(label, this::newSeries);
+    }
+
+    private Series[] newSeries(String endpoint) {
+        ClientTier[] tiers = ClientTier.values();
+        Series[] series = new Series[tiers.length];
+        for (ClientTier tier : tiers) {
+            series[tier.ordinal()] = new Series(registry, endpoint, tier);
+        }
+        return series;
+    }
+}
@@ -0,0 +1,408 @@
+package com.meta.ratelimiter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket limiter whose state is owned by single-threaded shards
+ * instead of being locked per client.
+ *
+ * Client ids are hash-partitioned onto {@code shards} worker threads. Each
+ * worker owns an unsynchronized open-addressing table of buckets held in
+ * primitive arrays, so no lock, CAS or shared cache line is touched when
+ * deciding. Callers enqueue a request on the owning shard's queue (many
+ * producers, one consumer) and receive the decision through a future.
+ *
+ * A worker drains up to {@code batchSize} requests per pass and parks only
+ * when its queue is empty; producers unpark it only if it is parked, so a
+ * busy shard takes no wakeups at all. Each request is decided at the time
+ * it is dequeued, never at an earlier one.
+ *
+ * The synchronous {@link RateLimiter} methods wait for the shard's answer.
+ */
+public class ShardedRateLimiter implements RateLimiter, AutoCloseable {
+    static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final int ALLOW = 0;
+    private static final int REMAINING = 1;
+    private static final int RESET_TIME = 2;
+    private static final int RESET = 3;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final class Request {
+        private final int op;
+        private final String clientId;
+        private final CompletableFuture<Boolean> decision;
+        private final CompletableFuture<Long> answer;
+
+        private Request(int op, String clientId, CompletableFuture<Boolean> decision, CompletableFuture<Long> answer) {
+            this.op = op;
+            this.clientId = clientId;
+            this.decision = decision;
+            this.answer = answer;
+        }
+
+        private void fail(RuntimeException ex) {
+            if (decision != null) {
+                decision.completeExceptionally(ex);
+            } else {
+                answer.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private final RateLimitConfig config;
+    private final TimeSource clock;
+    private final int batchSize;
+    private final double refillPerMilli;
+    private final Shard[] shards;
+    private volatile boolean closed;
+
+    public ShardedRateLimiter(RateLimitConfig config, int shards) {
+        this(config, shards, DEFAULT_BATCH_SIZE, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param shards    worker threads, typically one per core left to the limiter
+     * @param batchSize most requests a worker decides per pass
+     */
+    public ShardedRateLimiter(RateLimitConfig config, int shards, int batchSize, TimeSource clock) {
+        if (shards <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("shards and batchSize must be positive");
+        }
+        this.config = config;
+        this.clock = clock;
+        this.batchSize = batchSize;
+        this.refillPerMilli = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        for (Shard shard : this.shards) {
+            shard.worker.start();
+        }
+    }
+
+    /**
+     * Enqueues a decision for {@code clientId} without waiting for it.
+     */
+    public CompletableFuture<Boolean> submit(String clientId) {
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        enqueue(new Request(ALLOW, clientId, decision, null));
+        return decision;
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        return await(submit(clientId));
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        return (int) query(REMAINING, clientId);
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    @Override
+    public void reset(String clientId) {
+        query(RESET, clientId);
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        return query(RESET_TIME, clientId);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Requests decided so far, across all shards; updated after each batch.
+     */
+    public long getProcessedCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.processed;
+        }
+        return total;
+    }
+
+    /**
+     * Non-empty drain passes so far, across all shards; requests per batch
+     * is {@code getProcessedCount() / getBatchCount()}.
+     */
+    public long getBatchCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.batches;
+        }
+        return total;
+    }
+
+    /**
+     * Stops the workers. Requests already queued are decided; later ones
+     * fail with {@link RejectedExecutionException}. If the caller is
+     * interrupted it stops waiting for the workers to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.worker);
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.worker.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int shardFor(String clientId) {
+        return (int) ((RateLimitKey.mix(clientId.hashCode()) >>> 1) % shards.length);
+    }
+
+    private long query(int op, String clientId) {
+        CompletableFuture<Long> answer = new CompletableFuture<>();
+        enqueue(new Request(op, clientId, null, answer));
+        return await(answer);
+    }
+
+    private void enqueue(Request request) {
+        if (closed) {
+            throw new RejectedExecutionException("Sharded limiter is closed");
+        }
+        Shard shard = shards[shardFor(request.clientId)];
+        shard.queue.offer(request);
+        if (closed) {
+            // The worker may have made its final pass before our offer
+            shard.rejectPending();
+        } else if (shard.parked) {
+            LockSupport.unpark(shard.worker);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private final class Shard {
+        private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+        private final BucketTable table = new BucketTable();
+        private final Thread worker;
+        private volatile boolean parked;
+        // Written only by the worker
+        private volatile long processed;
+        private volatile long batches;
+
+        private Shard(int index) {
+            this.worker = new Thread(this::run, "ratelimiter-shard-" + index);
+            this.worker.setDaemon(true);
+        }
+
+        private void run() {
+            while (!closed) {
+                if (drain() == 0) {
+                    parked = true;
+                    // Re-check after publishing parked: a producer that missed it has already enqueued
+                    if (queue.isEmpty() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                }
+            }
+            while (drain() > 0) {
+                // Decide everything queued before close
+            }
+        }
+
+        private int drain() {
+            Request request = queue.poll();
+            if (request == null) {
+                return 0;
+            }
+            int count = 0;
+            do {
+                // Per request: a batch can pick up requests made after the clock moved
+                decide(request, clock.currentTimeMillis());
+                count++;
+            } while (count < batchSize && (request = queue.poll()) != null);
+            processed += count;
+            batches++;
+            return count;
+        }
+
+        private void decide(Request request, long now) {
+            try {
+                switch (request.op) {
+                    case ALLOW:
+                        request.decision.complete(table.tryConsume(request.clientId, now));
+                        break;
+                    case REMAINING:
+                        request.answer.complete((long) Math.floor(table.tokens(request.clientId, now)));
+                        break;
+                    case RESET_TIME:
+                        request.answer.complete(millisUntilToken(table.tokens(request.clientId, now)));
+                        break;
+                    case RESET:
+                        table.remove(request.clientId);
+                        request.answer.complete(0L);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation " + request.op);
+                }
+            } catch (RuntimeException ex) {
+                request.fail(ex);
+            }
+        }
+
+        private long millisUntilToken(double available) {
+            return available >= 1.0 ? 0 : (long) ((1.0 - available) / refillPerMilli);
+        }
+
+        private void rejectPending() {
+            Request request;
+            while ((request = queue.poll()) != null) {
+                request.fail(new RejectedExecutionException("Sharded limiter is closed"));
+            }
+        }
+    }
+
+    /**
+     * Linear-probing table of buckets in parallel arrays, touched only by its
+     * shard's worker. Buckets idle long enough to be full are dropped when
+     * the table grows, since they are indistinguishable from new ones.
+     */
+    private final class BucketTable {
+        private String[] clientIds = new String[INITIAL_CAPACITY];
+        private double[] tokens = new double[INITIAL_CAPACITY];
+        private long[] lastRefillMillis = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private boolean tryConsume(String clientId, long now) {
+            int slot = find(clientId);
+            if (slot < 0) {
+                if (size + 1 > clientIds.length / 2) {
+                    grow(now);
+                }
+                slot = insert(clientId, config.getBurstCapacity(), now);
+            }
+            double available = refill(slot, now);
+            lastRefillMillis[slot] = Math.max(lastRefillMillis[slot], now);
+            if (available >= 1.0) {
+                tokens[slot] = available - 1.0;
+                return true;
+            }
+            tokens[slot] = available;
+            return false;
+        }
+
+        private double tokens(String clientId, long now) {
+            int slot = find(clientId);
+            return slot < 0 ? config.getBurstCapacity() : refill(slot, now);
+        }
+
+        private void remove(String clientId) {
+            int slot = find(clientId);
+            if (slot < 0) {
+                return;
+            }
+            // Backward-shift deletion keeps every probe chain unbroken
+            int mask = clientIds.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; clientIds[next] != null; next = (next + 1) & mask) {
+                int home = home(clientIds[next], mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    move(next, hole);
+                    hole = next;
+                }
+            }
+            clientIds[hole] = null;
+            size--;
+        }
+
+        private double refill(int slot, long now) {
+            long elapsed = Math.max(0, now - lastRefillMillis[slot]);
+            return Math.min(config.getBurstCapacity(), tokens[slot] + elapsed * refillPerMilli);
+        }
+
+        private int find(String clientId) {
+            int mask = clientIds.length - 1;
+            for (int slot = home(clientId, mask); clientIds[slot] != null; slot = (slot + 1) & mask) {
+                if (clientIds[slot].equals(clientId)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(String clientId, double initialTokens, long refilledAt) {
+            int mask = clientIds.length - 1;
+            int slot = home(clientId, mask);
+            while (clientIds[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            clientIds[slot] = clientId;
+            tokens[slot] = initialTokens;
+            lastRefillMillis[slot] = refilledAt;
+            size++;
+            return slot;
+        }
+
+        private void grow(long now) {
+            String[] oldIds = clientIds;
+            double[] oldTokens = tokens;
+            long[] oldRefills = lastRefillMillis;
+            int live = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != null && !isFull(oldTokens[i], oldRefills[i], now)) {
+                    live++;
+                }
+            }
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < (live + 1) * 4) {
+                capacity <<= 1;
+            }
+            clientIds = new String[capacity];
+            tokens = new double[capacity];
+            lastRefillMillis = new long[capacity];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != null && !isFull(oldTokens[i], oldRefills[i], now)) {
+                    insert(oldIds[i], oldTokens[i], oldRefills[i]);
+                }
+            }
+        }
+
+        private boolean isFull(double bucketTokens, long refilledAt, long now) {
+            return bucketTokens + Math.max(0, now - refilledAt) * refillPerMilli >= config.getBurstCapacity();
+        }
+
+        private void move(int from, int to) {
+            clientIds[to] = clientIds[from];
+            tokens[to] = tokens[from];
+            lastRefillMillis[to] = lastRefillMillis[from];
+        }
+
+        private int home(String clientId, int mask) {
+            // High bits: the low ones picked the shard and are alike within it
+            return (int) (RateLimitKey.mix(clientId.hashCode()) >>> 32) & mask;
+        }
+    }
+}
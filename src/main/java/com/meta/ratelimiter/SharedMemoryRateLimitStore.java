@@ -0,0 +1,624 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link DistributedRateLimitStore} over a memory-mapped file shared by every
+ * process on the host, so co-located JVMs enforce one exact limit at memory
+ * speed without a network store.
+ *
+ * The file is a header page followed by a fixed number of fixed-width slots
+ * forming an open-addressing hash table indexed by {@link RateLimitKey#hash64()}:
+ *
+ * <pre>
+ *   0  key hash (0 = empty slot)
+ *   8  lock word (0 = free, otherwise the holder's token: acquisition
+ *      time in epoch millis, shifted left 16 bits, plus a random nonce)
+ *  16  expiry (epoch millis)
+ *  24  codec type id (0 = no value), 28 encoded length
+ *  32  value bytes encoded by a {@link StateCodec}
+ * </pre>
+ *
+ * Slots are claimed and locked with {@code VarHandle} CAS on the mapped
+ * segment, which is atomic across processes. A lock held longer than
+ * {@link #LOCK_LEASE_MILLIS} is assumed to belong to a dead process and is
+ * taken over; the lock word doubles as a fencing token, so a stalled holder
+ * that lost its lease finds a different token before writing and fails
+ * instead of overwriting the new holder's update. Keys are identified by their 64-bit hash only; two distinct
+ * keys colliding (probability about n^2 / 2^65) would share state. Slots of
+ * expired keys are reused, so capacity bounds live keys rather than keys
+ * ever seen. Values must fit in the slot; larger values (e.g. long sliding
+ * window logs) fail the operation, which limiters answer via their fallback.
+ */
+public class SharedMemoryRateLimitStore implements DistributedRateLimitStore, AutoCloseable {
+    public static final int DEFAULT_VALUE_BYTES = 32;
+    static final long LOCK_LEASE_MILLIS = 1000;
+
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // Values are encoded big-endian, whatever the slot header's byte order
+    private static final VarHandle VALUE_LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final int MAGIC = 0x524c5348;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 4096;
+    private static final int SLOT_HEADER_BYTES = 32;
+    private static final int HASH_OFFSET = 0;
+    private static final int LOCK_OFFSET = 8;
+    private static final int EXPIRY_OFFSET = 16;
+    private static final int TYPE_OFFSET = 24;
+    private static final int LENGTH_OFFSET = 28;
+    private static final int VALUE_OFFSET = SLOT_HEADER_BYTES;
+    private static final int EMPTY_VALUE = 0;
+    private static final int TOKEN_NONCE_BITS = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int slotBytes;
+    private final int valueBytes;
+    private final long lockLeaseMillis;
+    /** Per-thread buffer values are encoded into before being copied to a slot. */
+    private final ThreadLocal<ByteBuffer> scratch;
+    private final StateCodec<?>[] codecsById = new StateCodec<?>[128];
+    private final Map<Class<?>, StateCodec<Object>> codecsByType = new HashMap<>();
+
+    /**
+     * Opens (or creates) the shared table with the default codecs and slot width.
+     */
+    public SharedMemoryRateLimitStore(Path file, int capacity) throws IOException {
+        this(file, capacity, DEFAULT_VALUE_BYTES, StateCodec.defaults());
+    }
+
+    /**
+     * Opens the shared table at {@code file}, creating it if absent. Every
+     * process must pass the same capacity and value width; a mismatch with
+     * an existing file is rejected.
+     */
+    public SharedMemoryRateLimitStore(
+        Path file,
+        int capacity,
+        int valueBytes,
+        List<StateCodec<?>> codecs
+    ) throws IOException {
+        this(file, capacity, valueBytes, codecs, LOCK_LEASE_MILLIS);
+    }
+
+    @SuppressWarnings("unchecked")
+    SharedMemoryRateLimitStore(
+        Path file,
+        int capacity,
+        int valueBytes,
+        List<StateCodec<?>> codecs,
+        long lockLeaseMillis
+    ) throws IOException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two");
+        }
+        if (valueBytes <= 0) {
+            throw new IllegalArgumentException("Value width must be positive");
+        }
+        for (StateCodec<?> codec : codecs) {
+            codecsById[codec.typeId()] = codec;
+            codecsByType.put(codec.type(), (StateCodec<Object>) codec);
+        }
+        // Whole cache lines per slot so neighbouring slots never share one
+        this.slotBytes = (SLOT_HEADER_BYTES + valueBytes + 63) & ~63;
+        this.valueBytes = slotBytes - SLOT_HEADER_BYTES;
+        this.capacity = capacity;
+        this.lockLeaseMillis = lockLeaseMillis;
+        this.scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(this.valueBytes));
+        long size = HEADER_BYTES + (long) capacity * slotBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Table of " + size + " bytes exceeds one mapping");
+        }
+
+        this.channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock fileLock = null;
+        try {
+            fileLock = channel.lock();
+            // First process to arrive formats the file; later ones validate it
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(16)
+                    .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(capacity).putInt(slotBytes);
+                header.flip();
+                channel.write(header, 0);
+                channel.truncate(size);
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.buffer.order(ByteOrder.nativeOrder());
+            ByteBuffer header = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION
+                || header.getInt(8) != capacity || header.getInt(12) != slotBytes) {
+                throw new IOException("Incompatible shared store layout in " + file);
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        } finally {
+            if (fileLock != null && fileLock.isValid()) {
+                fileLock.release();
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> type) {
+        return get(RateLimitKey.of(key), type);
+    }
+
+    @Override
+    public <T> T get(RateLimitKey key, Class<T> type) {
+        int slot = find(hashOf(key));
+        if (slot < 0) {
+            return null;
+        }
+        long offset = slotOffset(slot);
+        long token = lock(offset);
+        try {
+            if (readLong(offset + HASH_OFFSET) != hashOf(key) || !hasLiveValue(offset, System.currentTimeMillis())) {
+                return null;
+            }
+            return type.cast(decode(offset));
+        } finally {
+            unlock(offset, token);
+        }
+    }
+
+    @Override
+    public <T> void set(String key, T value, long ttlMillis) {
+        set(RateLimitKey.of(key), value, ttlMillis);
+    }
+
+    @Override
+    public <T> void set(RateLimitKey key, T value, long ttlMillis) {
+        long[] token = new long[1];
+        long offset = lockSlotFor(hashOf(key), token);
+        try {
+            long now = System.currentTimeMillis();
+            writeValue(offset, token[0], value, computeExpiry(ttlMillis, now));
+        } finally {
+            unlock(offset, token[0]);
+        }
+    }
+
+    @Override
+    public <T> T compute(
+        String key,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        return compute(RateLimitKey.of(key), ttlMillis, type, updateFunction, initializer);
+    }
+
+    @Override
+    public <T> T compute(
+        RateLimitKey key,
+        long ttlMillis,
+        Class<T> type,
+        Function<T, T> updateFunction,
+        Supplier<T> initializer
+    ) {
+        long[] token = new long[1];
+        long offset = lockSlotFor(hashOf(key), token);
+        try {
+            long now = System.currentTimeMillis();
+            T current = hasLiveValue(offset, now) ? type.cast(decode(offset)) : initializer.get();
+            T updated = updateFunction.apply(current);
+            writeValue(offset, token[0], updated, computeExpiry(ttlMillis, now));
+            return updated;
+        } finally {
+            unlock(offset, token[0]);
+        }
+    }
+
+    @Override
+    public <T> List<T> computeAll(
+        List<String> keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        RateLimitKey[] storeKeys = new RateLimitKey[keys.size()];
+        for (int i = 0; i < storeKeys.length; i++) {
+            storeKeys[i] = RateLimitKey.of(keys.get(i));
+        }
+        return computeAll(storeKeys, ttlMillis, type, updateFunction, initializer);
+    }
+
+    @Override
+    public <T> List<T> computeAll(
+        RateLimitKey[] keys,
+        long ttlMillis,
+        Class<T> type,
+        Function<List<T>, List<T>> updateFunction,
+        Supplier<T> initializer
+    ) {
+        long[] offsets = new long[keys.length];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = claim(hashOf(keys[i]));
+        }
+        // Lock in slot order so concurrent multi-key updates cannot deadlock
+        long[] lockOrder = Arrays.stream(offsets).distinct().sorted().toArray();
+        long[] tokens = new long[lockOrder.length];
+        int locked = 0;
+        try {
+            for (long offset : lockOrder) {
+                tokens[locked] = lock(offset);
+                locked++;
+            }
+            long now = System.currentTimeMillis();
+            List<T> current = new ArrayList<>(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                if (readLong(offsets[i] + HASH_OFFSET) != hashOf(keys[i])) {
+                    throw new IllegalStateException("Slot of " + keys[i] + " was reclaimed concurrently");
+                }
+                current.add(hasLiveValue(offsets[i], now) ? type.cast(decode(offsets[i])) : initializer.get());
+            }
+            List<T> updated = updateFunction.apply(current);
+            if (updated.size() != offsets.length) {
+                throw new IllegalStateException(
+                    "Update returned " + updated.size() + " values for " + offsets.length + " keys");
+            }
+            long expiresAt = computeExpiry(ttlMillis, now);
+            // Check every lease first so a lost one leaves all keys unchanged
+            for (int i = 0; i < lockOrder.length; i++) {
+                checkOwner(lockOrder[i], tokens[i]);
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                writeValue(offsets[i], tokens[Arrays.binarySearch(lockOrder, offsets[i])], updated.get(i), expiresAt);
+            }
+            return updated;
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                unlock(lockOrder[i], tokens[i]);
+            }
+        }
+    }
+
+    @Override
+    public <T> long update(String key, long ttlMillis, StateUpdater<T> updater) {
+        return update(RateLimitKey.of(key), ttlMillis, updater);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> long update(RateLimitKey key, long ttlMillis, StateUpdater<T> updater) {
+        long[] token = new long[1];
+        long offset = lockSlotFor(hashOf(key), token);
+        try {
+            long now = System.currentTimeMillis();
+            T state = hasLiveValue(offset, now) ? (T) decode(offset) : updater.initialState(null, now);
+            long result = updater.apply(state, now);
+            writeValue(offset, token[0], state, computeExpiry(ttlMillis, now));
+            return result;
+        } finally {
+            unlock(offset, token[0]);
+        }
+    }
+
+    @Override
+    public long execute(String key, StoreOperation operation) {
+        return execute(RateLimitKey.of(key), operation);
+    }
+
+    @Override
+    public long execute(RateLimitKey key, StoreOperation operation) {
+        return update(key, operation.getTtlMillis(), operation);
+    }
+
+    @Override
+    public long incrementAndGet(String key, long delta, long ttlMillis) {
+        return incrementAndGet(RateLimitKey.of(key), delta, ttlMillis);
+    }
+
+    /**
+     * Adds to the counter in place; the slot holds it in the
+     * {@link InMemoryDistributedRateLimitStore#COUNTER_CODEC} encoding.
+     */
+    @Override
+    public long incrementAndGet(RateLimitKey key, long delta, long ttlMillis) {
+        int counterType = InMemoryDistributedRateLimitStore.COUNTER_CODEC.typeId();
+        if (codecsById[counterType] == null) {
+            throw new IllegalStateException("Counter codec is not registered");
+        }
+        long[] token = new long[1];
+        long offset = lockSlotFor(hashOf(key), token);
+        try {
+            long now = System.currentTimeMillis();
+            long count = delta;
+            boolean live = hasLiveValue(offset, now);
+            if (live) {
+                if (buffer.getInt((int) (offset + TYPE_OFFSET)) != counterType) {
+                    throw new IllegalStateException("Key does not hold a counter: " + key);
+                }
+                count += (long) VALUE_LONGS.get(buffer, (int) (offset + VALUE_OFFSET));
+            }
+            checkOwner(offset, token[0]);
+            if (!live) {
+                writeLong(offset + EXPIRY_OFFSET, computeExpiry(ttlMillis, now));
+            }
+            VALUE_LONGS.set(buffer, (int) (offset + VALUE_OFFSET), count);
+            buffer.putInt((int) (offset + LENGTH_OFFSET), Long.BYTES);
+            buffer.putInt((int) (offset + TYPE_OFFSET), counterType);
+            return count;
+        } finally {
+            unlock(offset, token[0]);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        remove(RateLimitKey.of(key));
+    }
+
+    @Override
+    public void remove(RateLimitKey key) {
+        int slot = find(hashOf(key));
+        if (slot < 0) {
+            return;
+        }
+        long offset = slotOffset(slot);
+        long token = lock(offset);
+        try {
+            if (readLong(offset + HASH_OFFSET) == hashOf(key)) {
+                checkOwner(offset, token);
+                buffer.putInt((int) (offset + TYPE_OFFSET), EMPTY_VALUE);
+            }
+        } finally {
+            unlock(offset, token);
+        }
+    }
+
+    /**
+     * Drops every value. Key hashes stay claimed, so probe chains of other
+     * processes remain intact; the slots are reused as keys expire.
+     */
+    @Override
+    public void clear() {
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = slotOffset(slot);
+            long token = lock(offset);
+            try {
+                checkOwner(offset, token);
+                buffer.putInt((int) (offset + TYPE_OFFSET), EMPTY_VALUE);
+            } finally {
+                unlock(offset, token);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // ---- slots ----
+
+    private static long hashOf(RateLimitKey key) {
+        long hash = key.hash64();
+        // 0 marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    private long slotOffset(int slot) {
+        return HEADER_BYTES + (long) slot * slotBytes;
+    }
+
+    /**
+     * Slot holding {@code hash}, or -1 if the probe chain ends first.
+     */
+    private int find(long hash) {
+        int mask = capacity - 1;
+        int slot = (int) hash & mask;
+        for (int probe = 0; probe < capacity; probe++, slot = (slot + 1) & mask) {
+            long current = readLong(slotOffset(slot) + HASH_OFFSET);
+            if (current == hash) {
+                return slot;
+            }
+            if (current == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the slot owning {@code hash}, claiming an empty
+     * slot or reclaiming an expired one if the key is absent.
+     */
+    private long claim(long hash) {
+        int mask = capacity - 1;
+        while (true) {
+            long now = System.currentTimeMillis();
+            long reusable = -1;
+            boolean chainEnded = false;
+            int slot = (int) hash & mask;
+            for (int probe = 0; probe < capacity; probe++, slot = (slot + 1) & mask) {
+                long offset = slotOffset(slot);
+                long current = readLong(offset + HASH_OFFSET);
+                if (current == hash) {
+                    return offset;
+                }
+                if (current == 0) {
+                    if (reusable < 0 && LONGS.compareAndSet(buffer, (int) offset + HASH_OFFSET, 0L, hash)) {
+                        return offset;
+                    }
+                    chainEnded = true;
+                    break;
+                }
+                if (reusable < 0 && !hasLiveValue(offset, now)) {
+                    reusable = offset;
+                }
+            }
+            // The key is absent; prefer an expired slot earlier in the chain
+            if (reusable >= 0) {
+                if (reclaim(reusable, hash, now)) {
+                    return reusable;
+                }
+            } else if (!chainEnded) {
+                throw new IllegalStateException("Shared rate limit store is full (" + capacity + " slots)");
+            }
+            // Lost a race for the slot; probe again
+        }
+    }
+
+    private boolean reclaim(long offset, long hash, long now) {
+        long token = lock(offset);
+        try {
+            if (hasLiveValue(offset, now)) {
+                return false;
+            }
+            checkOwner(offset, token);
+            buffer.putInt((int) (offset + TYPE_OFFSET), EMPTY_VALUE);
+            writeLong(offset + HASH_OFFSET, hash);
+            return true;
+        } finally {
+            unlock(offset, token);
+        }
+    }
+
+    /**
+     * Claims and locks the slot owning {@code hash}, returning its offset
+     * and storing the lock token in {@code token[0]}.
+     */
+    private long lockSlotFor(long hash, long[] token) {
+        while (true) {
+            long offset = claim(hash);
+            token[0] = lock(offset);
+            if (readLong(offset + HASH_OFFSET) == hash) {
+                return offset;
+            }
+            // Reclaimed by another key between claim and lock
+            unlock(offset, token[0]);
+        }
+    }
+
+    /**
+     * Spins until the slot lock is taken and returns the token written to
+     * the lock word, which the holder passes to {@link #checkOwner} and
+     * {@link #unlock}.
+     */
+    private long lock(long offset) {
+        int index = (int) (offset + LOCK_OFFSET);
+        int spins = 0;
+        while (true) {
+            long now = System.currentTimeMillis();
+            long token = (now << TOKEN_NONCE_BITS) | ThreadLocalRandom.current().nextInt(1 << TOKEN_NONCE_BITS);
+            long holder = (long) LONGS.getVolatile(buffer, index);
+            if (holder == 0) {
+                if (LONGS.compareAndSet(buffer, index, 0L, token)) {
+                    return token;
+                }
+            } else if (now - (holder >>> TOKEN_NONCE_BITS) > lockLeaseMillis) {
+                // Holder died mid-update; take the lock over
+                if (LONGS.compareAndSet(buffer, index, holder, token)) {
+                    return token;
+                }
+            }
+            if (++spins > 100) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Releases the lock if {@code token} still holds it; a lock taken over
+     * after the lease ran out stays with its new holder.
+     */
+    private void unlock(long offset, long token) {
+        LONGS.compareAndSet(buffer, (int) (offset + LOCK_OFFSET), token, 0L);
+    }
+
+    /**
+     * Fails if the lease behind {@code token} was taken over, so a stalled
+     * holder never overwrites the new holder's update.
+     */
+    private void checkOwner(long offset, long token) {
+        if (readLong(offset + LOCK_OFFSET) != token) {
+            throw new IllegalStateException("Lost the lock lease on shared slot at offset " + offset);
+        }
+    }
+
+    private boolean hasLiveValue(long offset, long now) {
+        return buffer.getInt((int) (offset + TYPE_OFFSET)) != EMPTY_VALUE
+            && readLong(offset + EXPIRY_OFFSET) > now;
+    }
+
+    private long readLong(long offset) {
+        return (long) LONGS.getVolatile(buffer, (int) offset);
+    }
+
+    private void writeLong(long offset, long value) {
+        LONGS.setVolatile(buffer, (int) offset, value);
+    }
+
+    // ---- values ----
+
+    private Object decode(long offset) {
+        int typeId = buffer.getInt((int) (offset + TYPE_OFFSET));
+        StateCodec<?> codec = typeId > 0 && typeId < codecsById.length ? codecsById[typeId] : null;
+        if (codec == null) {
+            throw new IllegalStateException("No codec for stored type id " + typeId);
+        }
+        int length = buffer.getInt((int) (offset + LENGTH_OFFSET));
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        in.position((int) (offset + VALUE_OFFSET)).limit((int) (offset + VALUE_OFFSET + length));
+        return codec.decode(in);
+    }
+
+    /**
+     * Writes {@code value} and its expiry to a slot locked with {@code token}.
+     */
+    private void writeValue(long offset, long token, Object value, long expiresAt) {
+        StateCodec<Object> codec = codecsByType.get(value.getClass());
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec for " + value.getClass().getName());
+        }
+        // Encode off-slot first so a value that does not fit leaves the old one intact
+        ByteBuffer encoded = scratch.get();
+        encoded.clear();
+        codec.encode(value, encoded);
+        checkOwner(offset, token);
+        buffer.put((int) (offset + VALUE_OFFSET), encoded, 0, encoded.position());
+        buffer.putInt((int) (offset + LENGTH_OFFSET), encoded.position());
+        buffer.putInt((int) (offset + TYPE_OFFSET), codec.typeId());
+        writeLong(offset + EXPIRY_OFFSET, expiresAt);
+    }
+
+    private static long computeExpiry(long ttlMillis, long now) {
+        if (ttlMillis <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return now + ttlMillis;
+    }
+}
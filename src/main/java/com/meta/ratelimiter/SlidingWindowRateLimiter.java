@@ -17,6 +17,7 @@ import java.util.List;
 public class SlidingWindowRateLimiter implements RateLimiter {
     private final RateLimitConfig config;
     private final ClientRateLimitStore store;
+    private final KeyCache keys = new KeyCache("");
 
     public SlidingWindowRateLimiter(RateLimitConfig config, ClientRateLimitStore store) {
         this.config = config;
@@ -26,10 +27,10 @@ public class SlidingWindowRateLimiter implements RateLimiter {
     @Override
     public boolean allowRequest(String clientId) {
         ClientRateLimitStore.SlidingWindowState state = 
-            store.getOrCreateSlidingWindowState(clientId);
+            store.getOrCreateSlidingWindowState(keys.keyFor(clientId));
 
         synchronized (state) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = store.getClock().currentTimeMillis();
             long windowStart = currentTime - config.getWindowSizeMillis();
 
             // Remove old timestamps to prevent memory leak
@@ -51,10 +52,10 @@ public class SlidingWindowRateLimiter implements RateLimiter {
     @Override
     public int getRemainingRequests(String clientId) {
         ClientRateLimitStore.SlidingWindowState state = 
-            store.getOrCreateSlidingWindowState(clientId);
+            store.getOrCreateSlidingWindowState(keys.keyFor(clientId));
 
         synchronized (state) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = store.getClock().currentTimeMillis();
             long windowStart = currentTime - config.getWindowSizeMillis();
 
             // Remove old timestamps
@@ -74,20 +75,21 @@ public class SlidingWindowRateLimiter implements RateLimiter {
 
     @Override
     public void reset(String clientId) {
-        store.reset(clientId);
+        store.reset(keys.keyFor(clientId));
+        keys.evict(clientId);
     }
 
     @Override
     public long getResetTimeMillis(String clientId) {
         ClientRateLimitStore.SlidingWindowState state = 
-            store.getOrCreateSlidingWindowState(clientId);
+            store.getOrCreateSlidingWindowState(keys.keyFor(clientId));
 
         synchronized (state) {
             if (state.requestTimestamps.isEmpty()) {
                 return 0;
             }
 
-            long currentTime = System.currentTimeMillis();
+            long currentTime = store.getClock().currentTimeMillis();
             long windowStart = currentTime - config.getWindowSizeMillis();
 
             // Remove old timestamps
@@ -0,0 +1,39 @@
+package com.meta.ratelimiter;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Binary encoding of one store value type for {@link StatePersistence}.
+ *
+ * {@link #encode} may throw {@link java.nio.BufferOverflowException}, in
+ * which case it is retried with a larger buffer.
+ */
+public interface StateCodec<T> {
+    /**
+     * Persistent type tag, 1-127; must never change once files exist.
+     */
+    int typeId();
+
+    Class<T> type();
+
+    void encode(T state, ByteBuffer out);
+
+    T decode(ByteBuffer in);
+
+    /**
+     * Codecs for every value type written by the limiters in this package.
+     */
+    static List<StateCodec<?>> defaults() {
+        return List.of(
+            DistributedTokenBucketRateLimiter.STATE_CODEC,
+            DistributedFixedWindowRateLimiter.STATE_CODEC,
+            DistributedSlidingWindowRateLimiter.STATE_CODEC,
+            HierarchicalRateLimiter.STATE_CODEC,
+            ClientRateLimitStore.TOKEN_BUCKET_CODEC,
+            ClientRateLimitStore.SLIDING_WINDOW_CODEC,
+            StoreOperation.STATE_CODEC,
+            InMemoryDistributedRateLimitStore.COUNTER_CODEC
+        );
+    }
+}
@@ -0,0 +1,181 @@
+package com.meta.ratelimiter;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cursor-paged listing of limiter state across named {@link InspectableStore}s.
+ *
+ * A cursor is a server-side handle on a store's weakly consistent iterator,
+ * so each page costs only its own entries: nothing locks or copies the
+ * whole store, and a scan of millions of entries resumes where it stopped.
+ * Entries present for the whole scan are returned exactly once; entries
+ * added or removed during it may or may not appear.
+ *
+ * At most {@code maxCursors} cursors are open; idle cursors expire after
+ * {@code cursorIdleMillis}, and when the limit is reached the least
+ * recently used one is closed.
+ */
+public class StateInspector {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /** One page of entries plus the cursor for the next, or null when done. */
+    public static final class Page {
+        private final String store;
+        private final List<InspectableStore.StateEntry> entries;
+        private final String nextCursor;
+
+        private Page(String store, List<InspectableStore.StateEntry> entries, String nextCursor) {
+            this.store = store;
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+
+        public String getStore() {
+            return store;
+        }
+
+        public List<InspectableStore.StateEntry> getEntries() {
+            return entries;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    private static final class Cursor {
+        private final String store;
+        private final Iterator<InspectableStore.StateEntry> iterator;
+        private volatile long lastUsedMillis;
+        private volatile long lastUse;
+
+        private Cursor(String store, Iterator<InspectableStore.StateEntry> iterator) {
+            this.store = store;
+            this.iterator = iterator;
+            this.lastUsedMillis = System.currentTimeMillis();
+        }
+    }
+
+    private final Map<String, InspectableStore> stores = new LinkedHashMap<>();
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong uses = new AtomicLong();
+    private final int maxCursors;
+    private final long cursorIdleMillis;
+
+    public StateInspector() {
+        this(64, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    public StateInspector(int maxCursors, long cursorIdleMillis) {
+        this.maxCursors = maxCursors;
+        this.cursorIdleMillis = cursorIdleMillis;
+    }
+
+    /**
+     * Registers a store under {@code name}; the first one is the default.
+     */
+    public synchronized void register(String name, InspectableStore store) {
+        stores.put(name, store);
+    }
+
+    /**
+     * Stops offering {@code name} for new scans; open cursors on it finish.
+     */
+    public synchronized void unregister(String name) {
+        stores.remove(name);
+    }
+
+    public synchronized List<String> getStoreNames() {
+        return new ArrayList<>(stores.keySet());
+    }
+
+    /**
+     * Starts a scan of {@code store} (or the default store if null) over
+     * keys starting with {@code namespace}, or continues the scan of
+     * {@code cursor} if given, and returns up to {@code limit} entries.
+     *
+     * @throws IllegalArgumentException for an unknown store or an unknown
+     *                                  or expired cursor
+     */
+    public Page page(String cursor, String store, String namespace, int limit) {
+        expireIdleCursors();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Cursor scan;
+        if (cursor != null) {
+            scan = cursors.remove(cursor);
+            if (scan == null) {
+                throw new IllegalArgumentException("Unknown or expired cursor " + cursor);
+            }
+        } else {
+            String name = store != null ? store : defaultStoreName();
+            InspectableStore inspectable = storeNamed(name);
+            if (inspectable == null) {
+                throw new IllegalArgumentException("Unknown store " + name);
+            }
+            scan = new Cursor(name, inspectable.inspect(namespace != null ? namespace : ""));
+        }
+
+        // Removed from the map while paging, so concurrent requests cannot share the iterator
+        List<InspectableStore.StateEntry> entries = new ArrayList<>(pageSize);
+        while (entries.size() < pageSize && scan.iterator.hasNext()) {
+            entries.add(scan.iterator.next());
+        }
+        String next = null;
+        if (scan.iterator.hasNext()) {
+            next = newCursorId();
+            scan.lastUsedMillis = System.currentTimeMillis();
+            scan.lastUse = uses.incrementAndGet();
+            evictIfFull();
+            cursors.put(next, scan);
+        }
+        return new Page(scan.store, Collections.unmodifiableList(entries), next);
+    }
+
+    public int getOpenCursors() {
+        return cursors.size();
+    }
+
+    private void expireIdleCursors() {
+        long cutoff = System.currentTimeMillis() - cursorIdleMillis;
+        cursors.values().removeIf(cursor -> cursor.lastUsedMillis < cutoff);
+    }
+
+    private void evictIfFull() {
+        while (cursors.size() >= maxCursors) {
+            String oldest = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+                if (entry.getValue().lastUse < oldestUse) {
+                    oldestUse = entry.getValue().lastUse;
+                    oldest = entry.getKey();
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            cursors.remove(oldest);
+        }
+    }
+
+    private String newCursorId() {
+        return Long.toHexString(random.nextLong() & Long.MAX_VALUE);
+    }
+
+    private synchronized String defaultStoreName() {
+        return stores.isEmpty() ? null : stores.keySet().iterator().next();
+    }
+
+    private synchronized InspectableStore storeNamed(String name) {
+        return name == null ? null : stores.get(name);
+    }
+}
@@ -0,0 +1,619 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshot and journal persistence for a {@link PersistableStore}, so a
+ * restarted node resumes with its limiter state instead of handing every
+ * client a fresh burst.
+ *
+ * The request path only adds the key of each changed entry to a dirty set.
+ * A single background thread appends the current value of every dirty key
+ * to {@code journal-<generation>.bin} each journal interval. Each snapshot
+ * interval it starts a new journal generation, writes the whole store to
+ * {@code snapshot-<generation>.bin} through a memory-mapped file, and
+ * deletes older files. {@link #restore()} maps the latest snapshot and
+ * replays every journal of the same or a later generation, stopping at a
+ * torn or corrupt tail record. Journal records hold full values, so
+ * replaying a change the snapshot already contains is harmless.
+ *
+ * Record payload: namespace, client id (with any per-window suffix kept
+ * apart), expiry, codec type id (0 for a removal) and the codec's encoding.
+ * Snapshot records are length-prefixed; journal records are prefixed with a
+ * length and a CRC32C.
+ */
+public class StatePersistence implements AutoCloseable {
+    public static final long DEFAULT_JOURNAL_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 60_000;
+
+    private static final int SNAPSHOT_MAGIC = 0x524c534e;
+    private static final int JOURNAL_MAGIC = 0x524c4a4e;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_BYTES = 24;
+    private static final int SNAPSHOT_COUNT_OFFSET = 16;
+    private static final int JOURNAL_HEADER_BYTES = 16;
+    private static final int TOMBSTONE = 0;
+    private static final int NUMERIC_CLIENT = 1;
+    private static final int SUFFIXED_CLIENT = 2;
+    private static final long MAP_CHUNK_BYTES = 64L << 20;
+    private static final long READ_WINDOW_BYTES = 1L << 30;
+    private static final int JOURNAL_BATCH_BYTES = 1 << 20;
+    private static final Pattern FILE_NAME = Pattern.compile("(snapshot|journal)-(\\d+)\\.bin");
+
+    private final PersistableStore store;
+    private final Path directory;
+    private final long journalIntervalMillis;
+    private final long snapshotIntervalMillis;
+    private final Map<Class<?>, StateCodec<Object>> codecsByType = new HashMap<>();
+    private final StateCodec<?>[] codecsById = new StateCodec<?>[128];
+    private final Set<RateLimitKey> dirty = ConcurrentHashMap.newKeySet();
+    private final Map<RateLimitKey.Namespace, byte[]> namespaceBytes = new HashMap<>();
+    private final CRC32C checksum = new CRC32C();
+    private final PersistableStore.EntryVisitor journalVisitor = this::appendJournalRecord;
+
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private ByteBuffer journalBatch = ByteBuffer.allocate(JOURNAL_BATCH_BYTES);
+    private byte[] decodeBytes = new byte[256];
+    private byte[] lastNamespaceBytes = new byte[0];
+    private RateLimitKey.Namespace lastNamespace;
+    private FileChannel journal;
+    private long generation = -1;
+    private long skippedEntries;
+    private ScheduledExecutorService scheduler;
+
+    public StatePersistence(PersistableStore store, Path directory) {
+        this(store, directory, StateCodec.defaults(),
+            DEFAULT_JOURNAL_INTERVAL_MILLIS, DEFAULT_SNAPSHOT_INTERVAL_MILLIS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public StatePersistence(
+        PersistableStore store,
+        Path directory,
+        List<StateCodec<?>> codecs,
+        long journalIntervalMillis,
+        long snapshotIntervalMillis
+    ) {
+        if (journalIntervalMillis <= 0 || snapshotIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Intervals must be positive");
+        }
+        for (StateCodec<?> codec : codecs) {
+            int id = codec.typeId();
+            if (id <= TOMBSTONE || id >= codecsById.length || codecsById[id] != null) {
+                throw new IllegalArgumentException("Invalid or duplicate codec type id " + id);
+            }
+            codecsById[id] = codec;
+            codecsByType.put(codec.type(), (StateCodec<Object>) codec);
+        }
+        this.store = store;
+        this.directory = directory;
+        this.journalIntervalMillis = journalIntervalMillis;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+    }
+
+    /**
+     * Loads the latest snapshot and replays the journals written after it.
+     * Call before {@link #start()}; returns the number of records applied.
+     */
+    public synchronized long restore() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> snapshots = generations("snapshot");
+        long snapshotGeneration = snapshots.isEmpty() ? -1 : snapshots.get(snapshots.size() - 1);
+        long applied = 0;
+        if (snapshotGeneration >= 0) {
+            applied += readSnapshot(file("snapshot", snapshotGeneration));
+        }
+        for (long journalGeneration : generations("journal")) {
+            if (journalGeneration >= snapshotGeneration) {
+                applied += replayJournal(file("journal", journalGeneration));
+            }
+        }
+        generation = Math.max(generation, latestGeneration());
+        return applied;
+    }
+
+    /**
+     * Opens a new journal generation, starts tracking changes and schedules
+     * the background journal flushes and snapshots (the first one at once).
+     */
+    public synchronized void start() throws IOException {
+        if (scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        Files.createDirectories(directory);
+        generation = Math.max(generation, latestGeneration()) + 1;
+        openJournal(generation);
+        store.setChangeListener(dirty::add);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(
+            () -> runQuietly(this::flush), journalIntervalMillis, journalIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(
+            () -> runQuietly(this::snapshot), 0, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends the current value of every changed key to the journal and
+     * forces it to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        boolean wrote = false;
+        for (Iterator<RateLimitKey> it = dirty.iterator(); it.hasNext(); ) {
+            RateLimitKey key = it.next();
+            // Clear first: a change racing with the visit re-marks the key
+            it.remove();
+            if (!store.visitEntry(key, journalVisitor)) {
+                appendJournalRecord(key, null, 0);
+            }
+            wrote = true;
+            if (journalBatch.position() >= JOURNAL_BATCH_BYTES) {
+                writeJournalBatch();
+            }
+        }
+        if (wrote) {
+            writeJournalBatch();
+            journal.force(false);
+        }
+    }
+
+    /**
+     * Starts a new journal generation and writes a full snapshot for it,
+     * then deletes the files it supersedes.
+     */
+    public synchronized void snapshot() throws IOException {
+        flush();
+        long next = generation + 1;
+        openJournal(next);
+        generation = next;
+
+        Path temp = directory.resolve("snapshot-" + next + ".tmp");
+        long count;
+        try (MappedWriter writer = new MappedWriter(temp)) {
+            writer.require(SNAPSHOT_HEADER_BYTES)
+                .putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putLong(next).putLong(0);
+            long[] written = new long[1];
+            try {
+                store.forEachEntry((key, value, expiresAtMillis) -> {
+                    if (encodeRecord(key, value, expiresAtMillis)) {
+                        writer.require(4 + scratch.remaining()).putInt(scratch.remaining()).put(scratch);
+                        written[0]++;
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            count = written[0];
+            writer.finish(count);
+        }
+        Files.move(temp, file("snapshot", next),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        deleteBefore(next);
+    }
+
+    /**
+     * Entries skipped because no codec handles their value type.
+     */
+    public synchronized long getSkippedEntries() {
+        return skippedEntries;
+    }
+
+    /**
+     * Stops the background thread and flushes outstanding changes.
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            store.setChangeListener(null);
+            flush();
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private void runQuietly(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException | RuntimeException ex) {
+            // Keep the schedule alive; the next run retries
+            System.err.println("State persistence failed in " + directory + ": " + ex);
+        }
+    }
+
+    // ---- encoding ----
+
+    /**
+     * Encodes a record payload into {@link #scratch} (flipped for reading);
+     * a null value encodes a removal. Returns false if the value has no codec.
+     */
+    private boolean encodeRecord(RateLimitKey key, Object value, long expiresAtMillis) {
+        StateCodec<Object> codec = null;
+        if (value != null) {
+            codec = codecsByType.get(value.getClass());
+            if (codec == null) {
+                skippedEntries++;
+                return false;
+            }
+        }
+        while (true) {
+            scratch.clear();
+            try {
+                writeKey(scratch, key);
+                scratch.putLong(expiresAtMillis);
+                if (codec == null) {
+                    scratch.put((byte) TOMBSTONE);
+                } else {
+                    scratch.put((byte) codec.typeId());
+                    codec.encode(value, scratch);
+                }
+                scratch.flip();
+                return true;
+            } catch (BufferOverflowException ex) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private void writeKey(ByteBuffer out, RateLimitKey key) {
+        byte[] namespace = namespaceBytes.computeIfAbsent(
+            key.getNamespace(), ns -> ns.getName().getBytes(StandardCharsets.UTF_8));
+        out.putInt(namespace.length).put(namespace);
+        if (key.isNumeric()) {
+            out.put((byte) NUMERIC_CLIENT).putLong(key.getNumericClientId());
+        } else if (key.getSuffix() != RateLimitKey.NO_SUFFIX) {
+            // Restored as a suffixed key, so limiters' cached keys match it field by field
+            byte[] clientId = key.getBaseClientId().getBytes(StandardCharsets.UTF_8);
+            out.put((byte) SUFFIXED_CLIENT).putInt(clientId.length).put(clientId).putLong(key.getSuffix());
+        } else {
+            byte[] clientId = key.getClientId().getBytes(StandardCharsets.UTF_8);
+            out.put((byte) 0).putInt(clientId.length).put(clientId);
+        }
+    }
+
+    private void appendJournalRecord(RateLimitKey key, Object value, long expiresAtMillis) {
+        if (!encodeRecord(key, value, expiresAtMillis)) {
+            return;
+        }
+        int length = scratch.remaining();
+        checksum.reset();
+        checksum.update(scratch.array(), scratch.arrayOffset(), length);
+        if (journalBatch.remaining() < 8 + length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(journalBatch.capacity() * 2, journalBatch.position() + 8 + length));
+            journalBatch.flip();
+            grown.put(journalBatch);
+            journalBatch = grown;
+        }
+        journalBatch.putInt(length).putInt((int) checksum.getValue()).put(scratch);
+    }
+
+    private void writeJournalBatch() throws IOException {
+        journalBatch.flip();
+        while (journalBatch.hasRemaining()) {
+            journal.write(journalBatch);
+        }
+        journalBatch.clear();
+    }
+
+    private void openJournal(long journalGeneration) throws IOException {
+        if (journal != null) {
+            journal.force(false);
+            journal.close();
+        }
+        journal = FileChannel.open(file("journal", journalGeneration),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_BYTES)
+            .putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).putLong(journalGeneration);
+        header.flip();
+        while (header.hasRemaining()) {
+            journal.write(header);
+        }
+        journal.force(false);
+    }
+
+    // ---- decoding ----
+
+    private long readSnapshot(Path path) throws IOException {
+        try (MappedReader reader = new MappedReader(path)) {
+            ByteBuffer header = reader.require(SNAPSHOT_HEADER_BYTES);
+            if (header == null || header.getInt() != SNAPSHOT_MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a state snapshot: " + path);
+            }
+            header.getLong();
+            long count = header.getLong();
+            long now = System.currentTimeMillis();
+            long applied = 0;
+            for (long i = 0; i < count; i++) {
+                ByteBuffer in = reader.require(4);
+                if (in == null) {
+                    throw new IOException("Truncated snapshot " + path + " after " + i + " records");
+                }
+                int length = in.getInt();
+                in = reader.require(length);
+                if (in == null) {
+                    throw new IOException("Truncated snapshot " + path + " after " + i + " records");
+                }
+                int end = in.position() + length;
+                if (applyRecord(in, now)) {
+                    applied++;
+                }
+                in.position(end);
+            }
+            return applied;
+        }
+    }
+
+    private long replayJournal(Path path) throws IOException {
+        try (MappedReader reader = new MappedReader(path)) {
+            ByteBuffer header = reader.require(JOURNAL_HEADER_BYTES);
+            if (header == null || header.getInt() != JOURNAL_MAGIC || header.getInt() != FORMAT_VERSION) {
+                // Crashed before the header reached disk
+                return 0;
+            }
+            header.getLong();
+            long now = System.currentTimeMillis();
+            long applied = 0;
+            while (true) {
+                ByteBuffer in = reader.require(8);
+                if (in == null) {
+                    return applied;
+                }
+                int length = in.getInt();
+                int expectedChecksum = in.getInt();
+                if (length <= 0) {
+                    return applied;
+                }
+                in = reader.require(length);
+                if (in == null) {
+                    return applied;
+                }
+                int start = in.position();
+                ByteBuffer record = in.duplicate();
+                record.limit(start + length);
+                checksum.reset();
+                checksum.update(record);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    // Torn tail: everything before it is intact
+                    return applied;
+                }
+                if (applyRecord(in, now)) {
+                    applied++;
+                }
+                in.position(start + length);
+            }
+        }
+    }
+
+    private boolean applyRecord(ByteBuffer in, long now) {
+        RateLimitKey key = readKey(in);
+        long expiresAtMillis = in.getLong();
+        int typeId = in.get();
+        if (typeId == TOMBSTONE || expiresAtMillis <= now) {
+            store.restoreRemoval(key);
+            return typeId == TOMBSTONE;
+        }
+        StateCodec<?> codec = typeId > 0 && typeId < codecsById.length ? codecsById[typeId] : null;
+        if (codec == null) {
+            skippedEntries++;
+            return false;
+        }
+        store.restoreEntry(key, codec.decode(in), expiresAtMillis);
+        return true;
+    }
+
+    private RateLimitKey readKey(ByteBuffer in) {
+        RateLimitKey.Namespace namespace = readNamespace(in, in.getInt());
+        int kind = in.get();
+        if (kind == NUMERIC_CLIENT) {
+            return namespace.key(in.getLong());
+        }
+        int length = in.getInt();
+        String clientId = readUtf8(in, length);
+        return kind == SUFFIXED_CLIENT ? namespace.key(clientId, in.getLong()) : namespace.key(clientId);
+    }
+
+    /**
+     * Consecutive records usually share a namespace, so compare against the
+     * last one before decoding a new string.
+     */
+    private RateLimitKey.Namespace readNamespace(ByteBuffer in, int length) {
+        if (lastNamespace != null && length == lastNamespaceBytes.length) {
+            int start = in.position();
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = in.get(start + i) == lastNamespaceBytes[i];
+            }
+            if (same) {
+                in.position(start + length);
+                return lastNamespace;
+            }
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        lastNamespaceBytes = bytes;
+        lastNamespace = RateLimitKey.Namespace.of(new String(bytes, StandardCharsets.UTF_8));
+        return lastNamespace;
+    }
+
+    private String readUtf8(ByteBuffer in, int length) {
+        if (decodeBytes.length < length) {
+            decodeBytes = new byte[Math.max(length, decodeBytes.length * 2)];
+        }
+        in.get(decodeBytes, 0, length);
+        return new String(decodeBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // ---- files ----
+
+    private Path file(String kind, long fileGeneration) {
+        return directory.resolve(kind + "-" + fileGeneration + ".bin");
+    }
+
+    private List<Long> generations(String kind) throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches() && matcher.group(1).equals(kind)) {
+                    found.add(Long.parseLong(matcher.group(2)));
+                }
+            });
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    private long latestGeneration() throws IOException {
+        long latest = -1;
+        for (long snapshotGeneration : generations("snapshot")) {
+            latest = Math.max(latest, snapshotGeneration);
+        }
+        for (long journalGeneration : generations("journal")) {
+            latest = Math.max(latest, journalGeneration);
+        }
+        return latest;
+    }
+
+    private void deleteBefore(long keepFrom) throws IOException {
+        for (String kind : new String[] {"snapshot", "journal"}) {
+            for (long fileGeneration : generations(kind)) {
+                if (fileGeneration < keepFrom) {
+                    Files.deleteIfExists(file(kind, fileGeneration));
+                }
+            }
+        }
+    }
+
+    /**
+     * Sequential writer over successive mapped windows of a growing file.
+     */
+    private static final class MappedWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        private MappedWriter(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, MAP_CHUNK_BYTES);
+        }
+
+        /**
+         * Returns a buffer with at least {@code bytes} writable.
+         */
+        private ByteBuffer require(int bytes) {
+            if (window.remaining() < bytes) {
+                try {
+                    window.force();
+                    windowStart += window.position();
+                    window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(MAP_CHUNK_BYTES, bytes));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return window;
+        }
+
+        private void finish(long recordCount) throws IOException {
+            window.force();
+            long size = windowStart + window.position();
+            ByteBuffer count = ByteBuffer.allocate(8).putLong(recordCount);
+            count.flip();
+            channel.write(count, SNAPSHOT_COUNT_OFFSET);
+            channel.truncate(size);
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Sequential reader over read-only mapped windows of a file.
+     */
+    private static final class MappedReader implements AutoCloseable {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        private MappedReader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, READ_WINDOW_BYTES));
+        }
+
+        /**
+         * Returns a buffer with at least {@code bytes} readable at its
+         * position, or null if the file ends first.
+         */
+        private ByteBuffer require(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = windowStart + window.position();
+                if (size - position < bytes) {
+                    return null;
+                }
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(size - position, Math.max(READ_WINDOW_BYTES, bytes)));
+            }
+            return window;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.meta.ratelimiter;
+
+/**
+ * Read-only evaluation of a stored state, executed by
+ * {@link DistributedRateLimitStore#read} while the state cannot change.
+ *
+ * Like {@link StateUpdater}, implementations are created once per limiter
+ * and return their result as a primitive. They must not modify the state
+ * or keep a reference to it.
+ */
+public interface StateReader<T> {
+    /**
+     * Evaluates {@code state}, which is null if the key is missing or expired.
+     */
+    long read(T state);
+}
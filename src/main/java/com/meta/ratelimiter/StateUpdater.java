@@ -0,0 +1,23 @@
+package com.meta.ratelimiter;
+
+/**
+ * In-place state transition executed atomically by
+ * {@link DistributedRateLimitStore#update}.
+ *
+ * Implementations are created once per limiter and mutate the stored state
+ * directly, returning the decision as a primitive, so a steady-state call
+ * allocates nothing: no capturing lambdas, no copies, no boxed results.
+ */
+public interface StateUpdater<T> {
+    /**
+     * Returns the state to use when the key is missing or expired.
+     * {@code previous} is the expired state, if any, and may be reset and
+     * returned instead of allocating a new one.
+     */
+    T initialState(T previous, long nowMillis);
+
+    /**
+     * Applies the transition to {@code state} and returns its result.
+     */
+    long apply(T state, long nowMillis);
+}
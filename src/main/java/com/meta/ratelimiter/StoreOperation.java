@@ -0,0 +1,379 @@
+package com.meta.ratelimiter;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Declarative atomic rate limit operation that a store executes in one
+ * round trip, as a Redis script would, instead of running a Java lambda
+ * through {@link DistributedRateLimitStore#compute}.
+ *
+ * An operation is plain data: a {@link Type} plus a limit, window, burst
+ * and cost, with a fixed binary encoding ({@link #encode}). The state it
+ * works on is plain numbers ({@link State}), so a remote backend can keep
+ * it in a hash and reimplement {@link #apply} server-side. {@link #apply}
+ * is the reference semantics that in-process stores run under their entry
+ * lock; operations are immutable and built once per limiter, so executing
+ * one allocates nothing on a hit.
+ *
+ * Results are packed into a long: see {@link #isAllowed},
+ * {@link #getRemaining} and {@link #getRetryAfterMillis}. A cost of 0 only
+ * evaluates the state: it is always allowed and reports when a unit-cost
+ * request would be admitted.
+ */
+public final class StoreOperation implements StateUpdater<StoreOperation.State> {
+    static final int ENCODED_BYTES = 1 + 4 * Long.BYTES;
+    private static final long ALLOWED_BIT = 1L << 63;
+    private static final long MAX_RETRY_AFTER = Integer.MAX_VALUE;
+    private static final int INITIAL_LOG_CAPACITY = 8;
+
+    public enum Type {
+        /** Refills {@code limit} tokens per window up to {@code burst}, then takes {@code cost}. */
+        TOKEN_BUCKET_CONSUME(1),
+        /** Adds {@code cost} to a window starting at the first request if it stays within {@code limit}. */
+        FIXED_WINDOW_INCREMENT(2),
+        /** Trims the timestamp log to the window, then appends {@code cost} entries if within {@code limit}. */
+        SLIDING_LOG_ADD(3),
+        /** Generic cell rate algorithm: one theoretical arrival time, {@code burst} requests of tolerance. */
+        GCRA_UPDATE(4);
+
+        private final int code;
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        /**
+         * Wire code; must never change.
+         */
+        public int getCode() {
+            return code;
+        }
+
+        static Type fromCode(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown store operation code " + code);
+        }
+    }
+
+    /**
+     * Store-side state of an operation. {@code value} holds the token count
+     * (as double bits), the window count or the GCRA theoretical arrival
+     * time in microseconds; {@code timestamp} the last refill or window
+     * start; the sliding log is a ring of request timestamps.
+     */
+    public static final class State {
+        long value;
+        long timestamp;
+        long[] log;
+        int head;
+        int size;
+
+        @Override
+        public String toString() {
+            return log != null ? "count=" + size + (size > 0 ? " oldest=" + log[head] : "")
+                : "value=" + value + " timestamp=" + timestamp;
+        }
+
+        private void add(long timestampMillis, int maxCapacity) {
+            if (size == log.length) {
+                long[] grown = new long[Math.min(maxCapacity, log.length * 2)];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = log[(head + i) % log.length];
+                }
+                log = grown;
+                head = 0;
+            }
+            log[(head + size) % log.length] = timestampMillis;
+            size++;
+        }
+
+        /**
+         * Independent copy, for optimistic updates that must not modify the stored state.
+         */
+        State copy() {
+            State copy = new State();
+            copy.value = value;
+            copy.timestamp = timestamp;
+            if (log != null) {
+                copy.log = log.clone();
+                copy.head = head;
+                copy.size = size;
+            }
+            return copy;
+        }
+
+        private long entry(int index) {
+            return log[(head + index) % log.length];
+        }
+    }
+
+    static final StateCodec<?> STATE_CODEC = new StateCodec<State>() {
+        @Override
+        public int typeId() {
+            return 7;
+        }
+
+        @Override
+        public Class<State> type() {
+            return State.class;
+        }
+
+        @Override
+        public void encode(State state, ByteBuffer out) {
+            out.putLong(state.value).putLong(state.timestamp);
+            out.putInt(state.log == null ? -1 : state.size);
+            for (int i = 0; state.log != null && i < state.size; i++) {
+                out.putLong(state.entry(i));
+            }
+        }
+
+        @Override
+        public State decode(ByteBuffer in) {
+            State state = new State();
+            state.value = in.getLong();
+            state.timestamp = in.getLong();
+            int size = in.getInt();
+            if (size >= 0) {
+                state.log = new long[Math.max(INITIAL_LOG_CAPACITY, size)];
+                for (int i = 0; i < size; i++) {
+                    state.log[i] = in.getLong();
+                }
+                state.size = size;
+            }
+            return state;
+        }
+    };
+
+    private final Type type;
+    private final long limit;
+    private final long windowMillis;
+    private final long burst;
+    private final long cost;
+
+    private StoreOperation(Type type, long limit, long windowMillis, long burst, long cost) {
+        if (limit <= 0 || windowMillis <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("limit, windowMillis and burst must be positive");
+        }
+        if (cost < 0 || cost > burst) {
+            throw new IllegalArgumentException("cost must be between 0 and the burst");
+        }
+        this.type = Objects.requireNonNull(type);
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.burst = burst;
+        this.cost = cost;
+    }
+
+    public static StoreOperation tokenBucketConsume(int maxRequests, long windowMillis, int burst, int cost) {
+        return new StoreOperation(Type.TOKEN_BUCKET_CONSUME, maxRequests, windowMillis, burst, cost);
+    }
+
+    public static StoreOperation fixedWindowIncrement(int limit, long windowMillis, int cost) {
+        return new StoreOperation(Type.FIXED_WINDOW_INCREMENT, limit, windowMillis, limit, cost);
+    }
+
+    public static StoreOperation slidingLogAdd(int limit, long windowMillis, int cost) {
+        return new StoreOperation(Type.SLIDING_LOG_ADD, limit, windowMillis, limit, cost);
+    }
+
+    public static StoreOperation gcraUpdate(int maxRequests, long windowMillis, int burst, int cost) {
+        return new StoreOperation(Type.GCRA_UPDATE, maxRequests, windowMillis, burst, cost);
+    }
+
+    /**
+     * Operation of {@code type} for a limiter configuration.
+     */
+    public static StoreOperation of(Type type, RateLimitConfig config, int cost) {
+        return new StoreOperation(type, config.getMaxRequests(), config.getWindowSizeMillis(),
+            type == Type.TOKEN_BUCKET_CONSUME || type == Type.GCRA_UPDATE
+                ? config.getBurstCapacity() : config.getMaxRequests(),
+            cost);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * TTL for the state: long enough that it never expires before it would
+     * have returned to its initial value.
+     */
+    public long getTtlMillis() {
+        if (type == Type.TOKEN_BUCKET_CONSUME || type == Type.GCRA_UPDATE) {
+            return Math.max(windowMillis, (long) Math.ceil((double) windowMillis * burst / limit));
+        }
+        return windowMillis;
+    }
+
+    public void encode(ByteBuffer out) {
+        out.put((byte) type.code).putLong(limit).putLong(windowMillis).putLong(burst).putLong(cost);
+    }
+
+    public static StoreOperation decode(ByteBuffer in) {
+        Type type = Type.fromCode(in.get());
+        return new StoreOperation(type, in.getLong(), in.getLong(), in.getLong(), in.getLong());
+    }
+
+    @Override
+    public State initialState(State previous, long nowMillis) {
+        State state = previous != null ? previous : new State();
+        state.timestamp = nowMillis;
+        state.head = 0;
+        state.size = 0;
+        switch (type) {
+            case TOKEN_BUCKET_CONSUME:
+                state.value = Double.doubleToRawLongBits(burst);
+                break;
+            case SLIDING_LOG_ADD:
+                state.value = 0;
+                if (state.log == null) {
+                    state.log = new long[(int) Math.min(INITIAL_LOG_CAPACITY, limit)];
+                }
+                break;
+            default:
+                state.value = 0;
+        }
+        return state;
+    }
+
+    @Override
+    public long apply(State state, long nowMillis) {
+        switch (type) {
+            case TOKEN_BUCKET_CONSUME:
+                return consumeTokens(state, nowMillis);
+            case FIXED_WINDOW_INCREMENT:
+                return incrementWindow(state, nowMillis);
+            case SLIDING_LOG_ADD:
+                return addToLog(state, nowMillis);
+            case GCRA_UPDATE:
+                return updateGcra(state, nowMillis);
+            default:
+                throw new IllegalStateException("Unhandled operation " + type);
+        }
+    }
+
+    public static boolean isAllowed(long result) {
+        return (result & ALLOWED_BIT) != 0;
+    }
+
+    public static int getRemaining(long result) {
+        return (int) (result & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Millis until the operation, or a unit-cost request for cost 0, would
+     * be admitted; 0 if it was.
+     */
+    public static long getRetryAfterMillis(long result) {
+        return (result >>> 32) & MAX_RETRY_AFTER;
+    }
+
+    static long pack(boolean allowed, long remaining, long retryAfterMillis) {
+        return (allowed ? ALLOWED_BIT : 0)
+            | Math.min(Math.max(0, retryAfterMillis), MAX_RETRY_AFTER) << 32
+            | Math.min(Math.max(0, remaining), Integer.MAX_VALUE);
+    }
+
+    private long consumeTokens(State state, long nowMillis) {
+        double rate = (double) limit / windowMillis;
+        double tokens = Double.longBitsToDouble(state.value);
+        if (nowMillis > state.timestamp) {
+            tokens = Math.min(burst, tokens + (nowMillis - state.timestamp) * rate);
+            state.timestamp = nowMillis;
+        }
+        boolean allowed = tokens >= cost;
+        if (allowed) {
+            tokens -= cost;
+        }
+        state.value = Double.doubleToRawLongBits(tokens);
+        long needed = Math.max(cost, 1);
+        long retryAfter = allowed && cost > 0 || tokens >= needed ? 0 : (long) Math.ceil((needed - tokens) / rate);
+        return pack(allowed, (long) Math.floor(tokens), retryAfter);
+    }
+
+    private long incrementWindow(State state, long nowMillis) {
+        if (nowMillis - state.timestamp >= windowMillis) {
+            state.timestamp = nowMillis;
+            state.value = 0;
+        }
+        boolean allowed = state.value + cost <= limit;
+        if (allowed) {
+            state.value += cost;
+        }
+        boolean full = state.value + Math.max(cost, 1) > limit;
+        long retryAfter = allowed && cost > 0 || !full ? 0 : state.timestamp + windowMillis - nowMillis;
+        return pack(allowed, limit - state.value, retryAfter);
+    }
+
+    private long addToLog(State state, long nowMillis) {
+        long windowStart = nowMillis - windowMillis;
+        while (state.size > 0 && state.log[state.head] < windowStart) {
+            state.head = (state.head + 1) % state.log.length;
+            state.size--;
+        }
+        boolean allowed = state.size + cost <= limit;
+        if (allowed) {
+            for (int i = 0; i < cost; i++) {
+                state.add(nowMillis, (int) limit);
+            }
+        }
+        long retryAfter = 0;
+        long excess = state.size + Math.max(cost, 1) - limit;
+        if (!(allowed && cost > 0) && excess > 0) {
+            // The excess-th oldest entry must leave the window first
+            retryAfter = state.entry((int) excess - 1) + windowMillis + 1 - nowMillis;
+        }
+        return pack(allowed, limit - state.size, retryAfter);
+    }
+
+    private long updateGcra(State state, long nowMillis) {
+        long nowMicros = nowMillis * 1000;
+        long interval = Math.max(1, windowMillis * 1000 / limit);
+        long tolerance = interval * burst;
+        long arrival = Math.max(state.value, nowMicros);
+        long next = arrival + interval * cost;
+        boolean allowed = next - nowMicros <= tolerance;
+        if (allowed) {
+            state.value = next;
+            arrival = next;
+        }
+        long retryAfterMicros = 0;
+        if (!(allowed && cost > 0)) {
+            retryAfterMicros = arrival + interval * Math.max(cost, 1) - tolerance - nowMicros;
+        }
+        long remaining = (tolerance - (arrival - nowMicros)) / interval;
+        return pack(allowed, remaining, (retryAfterMicros + 999) / 1000);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StoreOperation)) {
+            return false;
+        }
+        StoreOperation other = (StoreOperation) o;
+        return type == other.type && limit == other.limit && windowMillis == other.windowMillis
+            && burst == other.burst && cost == other.cost;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, limit, windowMillis, burst, cost);
+    }
+
+    @Override
+    public String toString() {
+        return type + "(limit=" + limit + ", windowMillis=" + windowMillis + ", burst=" + burst + ", cost=" + cost + ")";
+    }
+}
@@ -0,0 +1,249 @@
+package com.meta.ratelimiter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Global (client-independent) token bucket whose budget is split across
+ * cache-line-padded stripes, so threads on different cores update different
+ * cache lines instead of contending on a single counter or monitor.
+ *
+ * Each thread has a home stripe; when it runs dry the thread borrows from
+ * siblings, and as a last resort gathers fractional tokens from several
+ * stripes. Every stripe is an exact token bucket holding {@code 1/stripes}
+ * of the burst and refill rate, and fixed-point rounding only ever
+ * under-credits, so the stripes together never admit more than
+ * {@code burstCapacity + rate * elapsed} requests: over-admission is zero.
+ * The only error is transient under-admission while concurrent gatherers
+ * hold partial amounts, bounded by {@link #getMaxAdmissionError()}.
+ *
+ * The {@code clientId} arguments of {@link RateLimiter} are ignored.
+ */
+public class StripedGlobalRateLimiter implements RateLimiter {
+    /** Tokens are held as fixed-point micro-tokens. */
+    private static final long SCALE = 1_000_000L;
+
+    private static final VarHandle TOKENS;
+    private static final VarHandle LAST_REFILL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TOKENS = lookup.findVarHandle(StripeFields.class, "tokens", long.class);
+            LAST_REFILL = lookup.findVarHandle(StripeFields.class, "lastRefillNanos", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Superclass fields are laid out first, so the hot fields sit between two
+    // 56-byte pads and never share a cache line with another stripe.
+    @SuppressWarnings("unused")
+    private abstract static class StripeLeftPad {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    private abstract static class StripeFields extends StripeLeftPad {
+        volatile long tokens;
+        volatile long lastRefillNanos;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Stripe extends StripeFields {
+        long p11, p12, p13, p14, p15, p16, p17;
+    }
+
+    private final RateLimitConfig config;
+    private final Stripe[] stripes;
+    private final int mask;
+    private final long stripeCapacity;
+    private final double refillPerNano;
+
+    public StripedGlobalRateLimiter(RateLimitConfig config) {
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedGlobalRateLimiter(RateLimitConfig config, int concurrencyLevel) {
+        this.config = config;
+
+        // Every stripe must be able to hold at least one whole token
+        int stripeCount = Math.max(1, Math.min(concurrencyLevel, config.getBurstCapacity()));
+        stripeCount = Integer.highestOneBit(stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        this.mask = stripeCount - 1;
+        this.stripeCapacity = config.getBurstCapacity() * SCALE / stripeCount;
+        this.refillPerNano = (double) config.getMaxRequests() * SCALE
+            / stripeCount / (config.getWindowSizeMillis() * 1_000_000.0);
+
+        long now = System.nanoTime();
+        for (int i = 0; i < stripeCount; i++) {
+            Stripe stripe = new Stripe();
+            stripe.tokens = stripeCapacity;
+            stripe.lastRefillNanos = now;
+            stripes[i] = stripe;
+        }
+    }
+
+    @Override
+    public boolean allowRequest(String clientId) {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Takes {@code permits} tokens from the home stripe, borrowing from
+     * sibling stripes if the home stripe cannot cover them.
+     */
+    public boolean tryAcquire(int permits) {
+        long amount = permits * SCALE;
+        long now = System.nanoTime();
+        int home = homeStripe();
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[(home + i) & mask];
+            refill(stripe, now);
+            if (tryTake(stripe, amount)) {
+                return true;
+            }
+        }
+        return stripes.length > 1 && gather(home, amount);
+    }
+
+    /**
+     * Collects partial amounts from every stripe; if they do not add up to
+     * {@code amount} the partial amounts are handed back.
+     */
+    private boolean gather(int home, long amount) {
+        long needed = amount;
+        for (int i = 0; i < stripes.length && needed > 0; i++) {
+            needed -= takeUpTo(stripes[(home + i) & mask], needed);
+        }
+        if (needed == 0) {
+            return true;
+        }
+
+        long refund = amount - needed;
+        for (int i = 0; i < stripes.length && refund > 0; i++) {
+            Stripe stripe = stripes[(home + i) & mask];
+            long accepted = Math.min(refund, stripeCapacity - stripe.tokens);
+            if (accepted > 0) {
+                deposit(stripe, accepted);
+                refund -= accepted;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns tokens taken by a request that was later denied elsewhere.
+     */
+    public void release(int permits) {
+        deposit(stripes[homeStripe()], permits * SCALE);
+    }
+
+    @Override
+    public int getRemainingRequests(String clientId) {
+        long now = System.nanoTime();
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            refill(stripe, now);
+            total += stripe.tokens / SCALE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    @Override
+    public int getLimit(String clientId) {
+        return config.getMaxRequests();
+    }
+
+    @Override
+    public void reset(String clientId) {
+        long now = System.nanoTime();
+        for (Stripe stripe : stripes) {
+            stripe.tokens = stripeCapacity;
+            stripe.lastRefillNanos = now;
+        }
+    }
+
+    @Override
+    public long getResetTimeMillis(String clientId) {
+        if (getRemainingRequests(clientId) > 0) {
+            return 0;
+        }
+        // Time until the fullest stripe accumulates one whole token
+        long best = 0;
+        for (Stripe stripe : stripes) {
+            best = Math.max(best, stripe.tokens);
+        }
+        double nanos = (SCALE - best) / refillPerNano;
+        return (long) Math.ceil(nanos / 1_000_000.0);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Upper bound on requests denied although the global bucket would allow
+     * them, reached only when every stripe is held by a concurrent gatherer.
+     */
+    public int getMaxAdmissionError() {
+        return stripes.length;
+    }
+
+    private int homeStripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash >>> 16) & mask;
+    }
+
+    private void refill(Stripe stripe, long now) {
+        long last = stripe.lastRefillNanos;
+        long elapsed = now - last;
+        if (elapsed <= 0) {
+            return;
+        }
+        long add = (long) (elapsed * refillPerNano);
+        if (add == 0) {
+            return;
+        }
+        // Claim the elapsed interval; whoever wins the CAS credits it exactly once
+        if (LAST_REFILL.compareAndSet(stripe, last, now)) {
+            deposit(stripe, add);
+        }
+    }
+
+    private boolean tryTake(Stripe stripe, long amount) {
+        while (true) {
+            long current = stripe.tokens;
+            if (current < amount) {
+                return false;
+            }
+            if (TOKENS.compareAndSet(stripe, current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+    private long takeUpTo(Stripe stripe, long amount) {
+        while (true) {
+            long current = stripe.tokens;
+            long taken = Math.min(current, amount);
+            if (taken <= 0) {
+                return 0;
+            }
+            if (TOKENS.compareAndSet(stripe, current, current - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    private void deposit(Stripe stripe, long amount) {
+        while (true) {
+            long current = stripe.tokens;
+            long updated = Math.min(stripeCapacity, current + amount);
+            if (updated == current || TOKENS.compareAndSet(stripe, current, updated)) {
+                return;
+            }
+        }
+    }
+}
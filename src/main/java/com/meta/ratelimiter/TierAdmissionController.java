@@ -0,0 +1,153 @@
+package com.meta.ratelimiter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Node-level admission control that sheds lower tiers first when this
+ * service is saturated, independently of per-client quotas.
+ *
+ * Saturation is the highest of three ratios, each 1.0 at its target:
+ * requests in flight over {@code maxInFlight}, the smoothed queue delay
+ * over {@code targetQueueDelayNanos}, and process CPU load over
+ * {@code targetCpuLoad}. Each tier has a shedding threshold on that value;
+ * by default FREE is shed from 0.7, PREMIUM from 0.9 and ENTERPRISE never.
+ *
+ * The check reads a counter and two cached values, so shed requests are
+ * rejected before any store call.
+ */
+public class TierAdmissionController {
+    static final long CPU_SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /** Weight of the newest queue delay sample in the moving average. */
+    private static final double QUEUE_DELAY_ALPHA = 0.1;
+
+    private final int maxInFlight;
+    private final long targetQueueDelayNanos;
+    private final double targetCpuLoad;
+    private final DoubleSupplier cpuLoad;
+    private final double[] shedThresholds;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder[] shed;
+    private volatile double queueDelayNanos;
+    private volatile double cpuLoadSample;
+    private final AtomicLong nextCpuSampleNanos = new AtomicLong(System.nanoTime());
+
+    public TierAdmissionController(
+        int maxInFlight,
+        long targetQueueDelayNanos,
+        double targetCpuLoad,
+        MetricsRegistry registry
+    ) {
+        this(maxInFlight, targetQueueDelayNanos, targetCpuLoad, processCpuLoad(), defaultThresholds(), registry);
+    }
+
+    /**
+     * @param cpuLoad        current CPU load in [0, 1], sampled at most every 100ms
+     * @param shedThresholds saturation from which each tier is shed; tiers
+     *                       without an entry are never shed
+     * @param registry       receives {@code ratelimiter_shed_total{tier}} and
+     *                       saturation gauges
+     */
+    public TierAdmissionController(
+        int maxInFlight,
+        long targetQueueDelayNanos,
+        double targetCpuLoad,
+        DoubleSupplier cpuLoad,
+        Map<ClientTier, Double> shedThresholds,
+        MetricsRegistry registry
+    ) {
+        if (maxInFlight <= 0 || targetQueueDelayNanos <= 0 || targetCpuLoad <= 0) {
+            throw new IllegalArgumentException("Saturation targets must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        this.targetQueueDelayNanos = targetQueueDelayNanos;
+        this.targetCpuLoad = targetCpuLoad;
+        this.cpuLoad = cpuLoad;
+        ClientTier[] tiers = ClientTier.values();
+        this.shedThresholds = new double[tiers.length];
+        this.shed = new LongAdder[tiers.length];
+        for (ClientTier tier : tiers) {
+            this.shedThresholds[tier.ordinal()] = shedThresholds.getOrDefault(tier, Double.POSITIVE_INFINITY);
+            this.shed[tier.ordinal()] = registry.counter(
+                "ratelimiter_shed_total", "Requests shed by admission control per tier",
+                "tier", tier.name().toLowerCase());
+        }
+        registry.gauge("ratelimiter_node_saturation", "Node saturation; 1.0 is at target", this::saturation);
+        registry.gauge("ratelimiter_node_in_flight", "Requests in flight on this node", inFlight::get);
+    }
+
+    public static Map<ClientTier, Double> defaultThresholds() {
+        Map<ClientTier, Double> thresholds = new EnumMap<>(ClientTier.class);
+        thresholds.put(ClientTier.FREE, 0.7);
+        thresholds.put(ClientTier.PREMIUM, 0.9);
+        return thresholds;
+    }
+
+    /**
+     * Admits a request of {@code tier} unless the node is saturated for it.
+     * Every admitted request must be followed by {@link #exit()}.
+     */
+    public boolean tryEnter(ClientTier tier) {
+        if (saturation() >= shedThresholds[tier.ordinal()]) {
+            shed[tier.ordinal()].increment();
+            return false;
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    public void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Records how long a request waited before a worker picked it up.
+     */
+    public void recordQueueDelay(long nanos) {
+        // Racy read-modify-write; a lost sample only slows the average slightly
+        queueDelayNanos += QUEUE_DELAY_ALPHA * (Math.max(0, nanos) - queueDelayNanos);
+    }
+
+    /**
+     * Current saturation; 1.0 means some signal is at its target.
+     */
+    public double saturation() {
+        double inFlightRatio = (double) inFlight.get() / maxInFlight;
+        double queueRatio = queueDelayNanos / targetQueueDelayNanos;
+        return Math.max(inFlightRatio, Math.max(queueRatio, sampledCpuLoad() / targetCpuLoad));
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getShedCount(ClientTier tier) {
+        return shed[tier.ordinal()].sum();
+    }
+
+    private double sampledCpuLoad() {
+        long now = System.nanoTime();
+        long next = nextCpuSampleNanos.get();
+        if (now - next >= 0 && nextCpuSampleNanos.compareAndSet(next, now + CPU_SAMPLE_INTERVAL_NANOS)) {
+            cpuLoadSample = Math.max(0, cpuLoad.getAsDouble());
+        }
+        return cpuLoadSample;
+    }
+
+    private static DoubleSupplier processCpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean sunOs = (com.sun.management.OperatingSystemMXBean) os;
+            // Negative when not yet available
+            return sunOs::getProcessCpuLoad;
+        }
+        return () -> 0;
+    }
+}
@@ -0,0 +1,12 @@
+package com.meta.ratelimiter;
+
+/**
+ * Wall-clock time for limiters and stores; replaced by a
+ * {@link VirtualClock} to replay recorded traffic.
+ */
+@FunctionalInterface
+public interface TimeSource {
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    long currentTimeMillis();
+}
@@ -0,0 +1,27 @@
+package com.meta.ratelimiter;
+
+/**
+ * Batch step of {@link TokenBucketTable#refillAndConsume} over
+ * {@link #lanes()} buckets at a time. The Vector API implementation lives
+ * in {@code src/vector/java}, built only with {@code -Pvector}, and is
+ * loaded reflectively.
+ */
+interface TokenBucketKernel {
+    int lanes();
+
+    /**
+     * Refills and charges the {@link #lanes()} buckets named by
+     * {@code slots[offset..]}, which must be distinct.
+     */
+    void refillAndConsume(
+        double[] tokens,
+        long[] lastRefillMillis,
+        int[] slots,
+        int[] costs,
+        boolean[] out,
+        int offset,
+        double burst,
+        double refillPerMilli,
+        long now
+    );
+}
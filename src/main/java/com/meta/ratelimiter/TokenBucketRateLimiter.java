@@ -14,6 +14,7 @@ package com.meta.ratelimiter;
 public class TokenBucketRateLimiter implements RateLimiter {
     private final RateLimitConfig config;
     private final ClientRateLimitStore store;
+    private final KeyCache keys = new KeyCache("");
 
     public TokenBucketRateLimiter(RateLimitConfig config, ClientRateLimitStore store) {
         this.config = config;
@@ -23,11 +24,11 @@ public class TokenBucketRateLimiter implements RateLimiter {
     @Override
     public boolean allowRequest(String clientId) {
         ClientRateLimitStore.TokenBucketState state = 
-            store.getOrCreateTokenBucketState(clientId, config.getBurstCapacity());
+            store.getOrCreateTokenBucketState(keys.keyFor(clientId), config.getBurstCapacity());
 
         // Synchronize on the state object to prevent race conditions
         synchronized (state) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = store.getClock().currentTimeMillis();
             
             // Refill tokens based on time elapsed
             refillTokens(state, currentTime);
@@ -63,10 +64,10 @@ public class TokenBucketRateLimiter implements RateLimiter {
     @Override
     public int getRemainingRequests(String clientId) {
         ClientRateLimitStore.TokenBucketState state = 
-            store.getOrCreateTokenBucketState(clientId, config.getBurstCapacity());
+            store.getOrCreateTokenBucketState(keys.keyFor(clientId), config.getBurstCapacity());
         
         synchronized (state) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = store.getClock().currentTimeMillis();
             refillTokens(state, currentTime);
             
             return (int) Math.floor(state.tokens);
@@ -80,13 +81,14 @@ public class TokenBucketRateLimiter implements RateLimiter {
 
     @Override
     public void reset(String clientId) {
-        store.reset(clientId);
+        store.reset(keys.keyFor(clientId));
+        keys.evict(clientId);
     }
 
     @Override
     public long getResetTimeMillis(String clientId) {
         ClientRateLimitStore.TokenBucketState state = 
-            store.getOrCreateTokenBucketState(clientId, config.getBurstCapacity());
+            store.getOrCreateTokenBucketState(keys.keyFor(clientId), config.getBurstCapacity());
         
         synchronized (state) {
             if (state.tokens >= 1.0) {
@@ -0,0 +1,183 @@
+package com.meta.ratelimiter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Token buckets for one {@link RateLimitConfig} laid out struct-of-arrays:
+ * parallel {@code tokens} and {@code lastRefillMillis} arrays indexed by a
+ * dense slot id, for evaluating thousands of buckets in one batch.
+ *
+ * {@link #refillAndConsume} evaluates a whole batch at one instant. When
+ * built with {@code -Pvector} and run with {@code jdk.incubator.vector} in
+ * the boot layer, it gathers, refills, compares and scatters
+ * {@link TokenBucketKernel#lanes()} buckets per step through the Vector
+ * API kernel; otherwise, or with {@code -Dratelimiter.vector=false}, it
+ * runs the same arithmetic scalar. Both paths give identical results.
+ *
+ * Not thread-safe: a table is owned by one thread, such as a shard worker.
+ */
+public class TokenBucketTable {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String VECTOR_KERNEL = "com.meta.ratelimiter.TokenBucketVectorKernel";
+    // Null when the kernel is not built, the module is absent or it is disabled
+    private static final TokenBucketKernel KERNEL = loadVectorKernel();
+
+    private final double burst;
+    private final double refillPerMilli;
+    private final TimeSource clock;
+    private final boolean vectorized;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private double[] tokens = new double[INITIAL_CAPACITY];
+    private long[] lastRefillMillis = new long[INITIAL_CAPACITY];
+    // Per-slot stamp of the last vector step that used it, to detect repeats
+    private int[] seenInStep = new int[INITIAL_CAPACITY];
+    private int step;
+    private int size;
+
+    public TokenBucketTable(RateLimitConfig config) {
+        this(config, TimeSource.SYSTEM, true);
+    }
+
+    /**
+     * @param vectorized use the Vector API path; ignored when it is unavailable
+     */
+    public TokenBucketTable(RateLimitConfig config, TimeSource clock, boolean vectorized) {
+        this.burst = config.getBurstCapacity();
+        this.refillPerMilli = (double) config.getMaxRequests() / config.getWindowSizeMillis();
+        this.clock = clock;
+        this.vectorized = vectorized && KERNEL != null;
+    }
+
+    /**
+     * Whether batches take the Vector API path.
+     */
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * The client's slot, assigning the next one, with a full bucket, on
+     * first use.
+     */
+    public int slotFor(String clientId) {
+        Integer slot = slots.get(clientId);
+        if (slot != null) {
+            return slot;
+        }
+        if (size == tokens.length) {
+            int capacity = tokens.length * 2;
+            tokens = Arrays.copyOf(tokens, capacity);
+            lastRefillMillis = Arrays.copyOf(lastRefillMillis, capacity);
+            seenInStep = Arrays.copyOf(seenInStep, capacity);
+        }
+        tokens[size] = burst;
+        lastRefillMillis[size] = clock.currentTimeMillis();
+        slots.put(clientId, size);
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tokens in the bucket as of now, without modifying it.
+     */
+    public double getTokens(int slot) {
+        checkSlot(slot);
+        return refilled(slot, clock.currentTimeMillis());
+    }
+
+    /**
+     * Refills the bucket.
+     */
+    public void reset(int slot) {
+        checkSlot(slot);
+        tokens[slot] = burst;
+        lastRefillMillis[slot] = clock.currentTimeMillis();
+    }
+
+    /**
+     * For each {@code i}, refills bucket {@code slots[i]} and charges
+     * {@code costs[i]} tokens if it holds that many, setting {@code out[i]}
+     * to whether it did. Slots may repeat; repeats are charged in order.
+     */
+    public void refillAndConsume(int[] slots, int[] costs, boolean[] out) {
+        int n = slots.length;
+        if (costs.length != n || out.length < n) {
+            throw new IllegalArgumentException("slots, costs and out must have matching lengths");
+        }
+        long now = clock.currentTimeMillis();
+        int i = 0;
+        if (vectorized) {
+            int lanes = KERNEL.lanes();
+            for (int upper = n - n % lanes; i < upper; i += lanes) {
+                if (distinct(slots, i, lanes)) {
+                    KERNEL.refillAndConsume(
+                        tokens, lastRefillMillis, slots, costs, out, i, burst, refillPerMilli, now);
+                } else {
+                    consumeScalar(slots, costs, out, i, i + lanes, now);
+                }
+            }
+        }
+        consumeScalar(slots, costs, out, i, n, now);
+    }
+
+    private void consumeScalar(int[] slots, int[] costs, boolean[] out, int from, int to, long now) {
+        for (int i = from; i < to; i++) {
+            int slot = slots[i];
+            checkSlot(slot);
+            double available = refilled(slot, now);
+            out[i] = available >= costs[i];
+            tokens[slot] = out[i] ? available - costs[i] : available;
+            lastRefillMillis[slot] = Math.max(lastRefillMillis[slot], now);
+        }
+    }
+
+    private double refilled(int slot, long now) {
+        double elapsed = Math.max(0L, now - lastRefillMillis[slot]);
+        return Math.min(tokens[slot] + elapsed * refillPerMilli, burst);
+    }
+
+    /**
+     * Whether {@code slots[from, from + count)} are distinct and valid; a
+     * gather-scatter step would lose all but one update to a repeated slot.
+     */
+    private boolean distinct(int[] slots, int from, int count) {
+        if (++step == 0) {
+            Arrays.fill(seenInStep, 0);
+            step = 1;
+        }
+        for (int i = from; i < from + count; i++) {
+            int slot = slots[i];
+            checkSlot(slot);
+            if (seenInStep[slot] == step) {
+                return false;
+            }
+            seenInStep[slot] = step;
+        }
+        return true;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Unknown slot " + slot + ", table has " + size);
+        }
+    }
+
+    private static TokenBucketKernel loadVectorKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("ratelimiter.vector", "true"))
+            || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            TokenBucketKernel kernel = (TokenBucketKernel) Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor().newInstance();
+            return kernel.lanes() >= 2 ? kernel : null;
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.meta.ratelimiter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader over a recorded request trace of
+ * {@code (timestampMillis, clientId, endpoint)} records. The file is
+ * memory-mapped in windows of up to 1GB, so traces larger than the heap
+ * stream at page-cache speed.
+ *
+ * The format is detected from the first bytes:
+ * <ul>
+ *   <li>binary: the magic {@code RLTRACE1}, then records of a long
+ *       timestamp and the UTF-8 client id and endpoint, each prefixed by an
+ *       unsigned short length (see {@link Writer});</li>
+ *   <li>CSV: lines {@code timestampMillis,clientId,endpoint}; blank lines and
+ *       lines not starting with a digit, such as a header, are skipped.</li>
+ * </ul>
+ *
+ * Client ids and endpoints are decoded lazily and are only valid until the
+ * next call to {@link #next()}; {@link #clientHash()} hashes the raw bytes,
+ * so a partitioned replay skips other partitions' records without decoding.
+ * Not thread-safe.
+ */
+public final class TraceFile implements AutoCloseable {
+    static final byte[] MAGIC = "RLTRACE1".getBytes(StandardCharsets.US_ASCII);
+    static final int MAX_FIELD_BYTES = 0xFFFF;
+    private static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+    private static final int ENDPOINT_CACHE_SLOTS = 256;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final FileChannel channel;
+    private final long size;
+    private final boolean binary;
+    private final long windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int position;
+
+    private long timestampMillis;
+    private int clientOffset;
+    private int clientLength;
+    private int endpointOffset;
+    private int endpointLength;
+    private String clientId;
+    private String endpoint;
+    // Endpoints repeat heavily; decode each distinct one once
+    private final byte[][] endpointBytes = new byte[ENDPOINT_CACHE_SLOTS][];
+    private final String[] endpointStrings = new String[ENDPOINT_CACHE_SLOTS];
+
+    private TraceFile(FileChannel channel, long windowBytes) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowBytes = windowBytes;
+        remap(0, 0);
+        this.binary = startsWithMagic();
+        if (binary) {
+            position = MAGIC.length;
+        }
+    }
+
+    public static TraceFile open(Path path) throws IOException {
+        return open(path, DEFAULT_WINDOW_BYTES);
+    }
+
+    static TraceFile open(Path path, long windowBytes) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new TraceFile(channel, windowBytes);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Advances to the next record; false at the end of the trace.
+     */
+    public boolean next() throws IOException {
+        clientId = null;
+        endpoint = null;
+        return binary ? nextBinary() : nextCsv();
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getClientId() {
+        if (clientId == null) {
+            clientId = decode(clientOffset, clientLength);
+        }
+        return clientId;
+    }
+
+    public String getEndpoint() {
+        if (endpoint == null) {
+            endpoint = cachedEndpoint();
+        }
+        return endpoint;
+    }
+
+    /**
+     * 64-bit hash of the current client id's bytes.
+     */
+    public long clientHash() {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < clientLength; i++) {
+            h = (h ^ (window.get(clientOffset + i) & 0xFF)) * FNV_PRIME;
+        }
+        return RateLimitKey.mix(h);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean nextBinary() throws IOException {
+        long offset = windowStart + position;
+        if (offset >= size) {
+            return false;
+        }
+        ensure(Math.min(10, size - offset));
+        if (window.limit() - position < 10) {
+            throw truncated(offset);
+        }
+        int clientSize = window.getShort(position + 8) & 0xFFFF;
+        ensure(Math.min(12L + clientSize, size - offset));
+        if (window.limit() - position < 12 + clientSize) {
+            throw truncated(offset);
+        }
+        int endpointSize = window.getShort(position + 10 + clientSize) & 0xFFFF;
+        int length = 12 + clientSize + endpointSize;
+        ensure(Math.min(length, size - offset));
+        if (window.limit() - position < length) {
+            throw truncated(offset);
+        }
+
+        // Offsets are taken last: ensure() may have remapped the window
+        timestampMillis = window.getLong(position);
+        clientOffset = position + 10;
+        clientLength = clientSize;
+        endpointOffset = clientOffset + clientSize + 2;
+        endpointLength = endpointSize;
+        position += length;
+        return true;
+    }
+
+    private boolean nextCsv() throws IOException {
+        while (true) {
+            long offset = windowStart + position;
+            if (offset >= size) {
+                return false;
+            }
+            int end = indexOfNewline(position);
+            if (end < 0) {
+                if (windowStart + window.limit() < size) {
+                    // Line crosses the window; remap from its start, larger if it alone fills the window
+                    remap(offset, position == 0 ? window.limit() * 2L : 0);
+                    continue;
+                }
+                end = window.limit();
+            }
+            int lineStart = position;
+            int lineEnd = end > lineStart && window.get(end - 1) == '\r' ? end - 1 : end;
+            position = Math.min(end + 1, window.limit());
+            if (lineEnd == lineStart) {
+                continue;
+            }
+            byte first = window.get(lineStart);
+            if (first < '0' || first > '9') {
+                continue;
+            }
+            parseCsvLine(lineStart, lineEnd, offset);
+            return true;
+        }
+    }
+
+    private void parseCsvLine(int start, int end, long offset) {
+        int firstComma = indexOf(',', start, end);
+        int secondComma = firstComma < 0 ? -1 : indexOf(',', firstComma + 1, end);
+        if (secondComma < 0) {
+            throw new IllegalArgumentException("Malformed trace line at offset " + offset
+                + ": expected timestampMillis,clientId,endpoint");
+        }
+        long timestamp = 0;
+        for (int i = start; i < firstComma; i++) {
+            byte digit = window.get(i);
+            if (digit < '0' || digit > '9') {
+                throw new IllegalArgumentException("Malformed timestamp in trace line at offset " + offset);
+            }
+            timestamp = timestamp * 10 + (digit - '0');
+        }
+        timestampMillis = timestamp;
+        clientOffset = firstComma + 1;
+        clientLength = secondComma - clientOffset;
+        endpointOffset = secondComma + 1;
+        endpointLength = end - endpointOffset;
+    }
+
+    private int indexOfNewline(int from) {
+        return indexOf('\n', from, window.limit());
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (window.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remaps so at least {@code bytes} bytes follow the current position.
+     */
+    private void ensure(long bytes) throws IOException {
+        if (window.limit() - position < bytes) {
+            remap(windowStart + position, bytes);
+        }
+    }
+
+    private void remap(long offset, long minBytes) throws IOException {
+        long length = Math.min(size - offset, Math.max(windowBytes, minBytes));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        windowStart = offset;
+        position = 0;
+    }
+
+    private boolean startsWithMagic() {
+        if (window.limit() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (window.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        window.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String cachedEndpoint() {
+        int h = 0;
+        for (int i = 0; i < endpointLength; i++) {
+            h = 31 * h + window.get(endpointOffset + i);
+        }
+        int slot = (h ^ (h >>> 16)) & (ENDPOINT_CACHE_SLOTS - 1);
+        byte[] cached = endpointBytes[slot];
+        if (cached != null && cached.length == endpointLength && matches(cached, endpointOffset)) {
+            return endpointStrings[slot];
+        }
+        byte[] bytes = new byte[endpointLength];
+        window.get(endpointOffset, bytes);
+        endpointBytes[slot] = bytes;
+        endpointStrings[slot] = new String(bytes, StandardCharsets.UTF_8);
+        return endpointStrings[slot];
+    }
+
+    private boolean matches(byte[] bytes, int offset) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (window.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private IllegalStateException truncated(long offset) {
+        return new IllegalStateException("Truncated trace record at offset " + offset);
+    }
+
+    /**
+     * Writes the binary trace format.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+
+        public Writer(Path path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.write(MAGIC);
+        }
+
+        public void write(long timestampMillis, String clientId, String endpoint) throws IOException {
+            out.writeLong(timestampMillis);
+            writeField(clientId, "client id");
+            writeField(endpoint, "endpoint");
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeField(String value, String name) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_FIELD_BYTES) {
+                throw new IllegalArgumentException(name + " longer than " + MAX_FIELD_BYTES + " bytes");
+            }
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
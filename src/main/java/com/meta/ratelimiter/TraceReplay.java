@@ -0,0 +1,434 @@
+package com.meta.ratelimiter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a recorded {@link TraceFile} against candidate limiters on
+ * virtual time, as fast as the limiters run, to compare algorithms and
+ * limits on production traffic before rolling them out.
+ *
+ * Every candidate sees every record in trace order with its clock set to the
+ * record's timestamp. The first candidate is the baseline: a disagreement
+ * is a record another candidate decides differently.
+ *
+ * With several partitions, records are split by a hash of the client id and
+ * each partition replays on its own thread with its own clock and candidate
+ * instances. That is exact for per-client limits, which includes everything
+ * {@link ConfiguredLimiterFactory} builds, but a limit shared across clients
+ * only sees its partition's share of the traffic.
+ */
+public class TraceReplay {
+    private final Path trace;
+    private final Map<String, Function<TimeSource, EndpointRateLimiter>> candidates;
+    private final int partitions;
+
+    /**
+     * @param candidates limiter factories by name, baseline first; each is
+     *                   called once per partition with that partition's clock
+     */
+    public TraceReplay(Path trace, Map<String, Function<TimeSource, EndpointRateLimiter>> candidates, int partitions) {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("At least one candidate is required");
+        }
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive");
+        }
+        this.trace = trace;
+        this.candidates = new LinkedHashMap<>(candidates);
+        this.partitions = partitions;
+    }
+
+    /**
+     * Candidate running {@code configuration} over a fresh in-memory store.
+     */
+    public static Function<TimeSource, EndpointRateLimiter> configured(
+        LimitConfiguration configuration,
+        ClientTierResolver tierResolver
+    ) {
+        return clock -> new ConfiguredLimiterFactory(
+            new InMemoryDistributedRateLimitStore(clock), tierResolver, clock).build(configuration);
+    }
+
+    /**
+     * Candidate applying one endpoint-agnostic limiter to every record.
+     */
+    public static Function<TimeSource, EndpointRateLimiter> forRateLimiter(Function<TimeSource, RateLimiter> factory) {
+        return clock -> {
+            RateLimiter limiter = factory.apply(clock);
+            return new EndpointRateLimiter() {
+                @Override
+                public boolean allowRequest(String clientId, String endpoint) {
+                    return limiter.allowRequest(clientId);
+                }
+
+                @Override
+                public int getRemainingRequests(String clientId, String endpoint) {
+                    return limiter.getRemainingRequests(clientId);
+                }
+
+                @Override
+                public int getLimit(String clientId, String endpoint) {
+                    return limiter.getLimit(clientId);
+                }
+
+                @Override
+                public void reset(String clientId, String endpoint) {
+                    limiter.reset(clientId);
+                }
+
+                @Override
+                public long getResetTimeMillis(String clientId, String endpoint) {
+                    return limiter.getResetTimeMillis(clientId);
+                }
+            };
+        };
+    }
+
+    public Report run() throws IOException {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        List<Partition> results = new ArrayList<>();
+        if (partitions == 1) {
+            results.add(replay(0));
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(partitions, runnable -> {
+                Thread thread = new Thread(runnable, "trace-replay");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<Partition>> futures = new ArrayList<>();
+                for (int p = 0; p < partitions; p++) {
+                    int partition = p;
+                    futures.add(pool.submit(() -> replay(partition)));
+                }
+                for (Future<Partition> future : futures) {
+                    results.add(await(future));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        // Measured while every partition's limiters are still reachable
+        long heapDelta = usedHeap() - heapBefore;
+
+        List<String> names = new ArrayList<>(candidates.keySet());
+        long records = 0;
+        long[] allowed = new long[names.size()];
+        long[] disagreements = new long[names.size()];
+        Map<String, ClientResult> clients = new HashMap<>();
+        for (Partition partition : results) {
+            records += partition.records;
+            for (int i = 0; i < names.size(); i++) {
+                allowed[i] += partition.allowed[i];
+                disagreements[i] += partition.disagreements[i];
+            }
+            clients.putAll(partition.clients);
+        }
+        List<CandidateResult> candidateResults = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            candidateResults.add(new CandidateResult(names.get(i), allowed[i], records - allowed[i], disagreements[i]));
+        }
+        return new Report(records, wallNanos, heapDelta, candidateResults, clients);
+    }
+
+    private Partition replay(int partition) throws IOException {
+        VirtualClock clock = new VirtualClock(0);
+        List<EndpointRateLimiter> limiters = new ArrayList<>();
+        for (Function<TimeSource, EndpointRateLimiter> factory : candidates.values()) {
+            limiters.add(factory.apply(clock));
+        }
+        Partition result = new Partition(limiters);
+        boolean[] decisions = new boolean[limiters.size()];
+        try (TraceFile file = TraceFile.open(trace)) {
+            while (file.next()) {
+                if (partitions > 1 && Math.floorMod(file.clientHash(), partitions) != partition) {
+                    continue;
+                }
+                clock.set(file.getTimestampMillis());
+                String clientId = file.getClientId();
+                String endpoint = file.getEndpoint();
+                boolean disagreed = false;
+                for (int i = 0; i < decisions.length; i++) {
+                    decisions[i] = limiters.get(i).allowRequest(clientId, endpoint);
+                    if (decisions[i]) {
+                        result.allowed[i]++;
+                    }
+                    if (decisions[i] != decisions[0]) {
+                        result.disagreements[i]++;
+                        disagreed = true;
+                    }
+                }
+                result.records++;
+                result.clients.computeIfAbsent(clientId, id -> new ClientResult(id, decisions.length))
+                    .record(decisions, disagreed);
+            }
+        }
+        return result;
+    }
+
+    private static Partition await(Future<Partition> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during replay", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Replay failed", cause);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class Partition {
+        // Held so the heap measurement includes limiter state
+        private final List<EndpointRateLimiter> limiters;
+        private final long[] allowed;
+        private final long[] disagreements;
+        private final Map<String, ClientResult> clients = new HashMap<>();
+        private long records;
+
+        private Partition(List<EndpointRateLimiter> limiters) {
+            this.limiters = limiters;
+            this.allowed = new long[limiters.size()];
+            this.disagreements = new long[limiters.size()];
+        }
+    }
+
+    /**
+     * Outcome of a replay. Throughput is records per second of wall time
+     * across all candidates; the heap delta is approximate and includes
+     * this report's per-client results.
+     */
+    public static class Report {
+        private final long records;
+        private final long wallNanos;
+        private final long heapDeltaBytes;
+        private final List<CandidateResult> candidates;
+        private final Map<String, ClientResult> clients;
+
+        Report(long records, long wallNanos, long heapDeltaBytes,
+               List<CandidateResult> candidates, Map<String, ClientResult> clients) {
+            this.records = records;
+            this.wallNanos = wallNanos;
+            this.heapDeltaBytes = heapDeltaBytes;
+            this.candidates = Collections.unmodifiableList(candidates);
+            this.clients = Collections.unmodifiableMap(clients);
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public double getThroughputPerSecond() {
+            return records * 1e9 / Math.max(1, wallNanos);
+        }
+
+        public long getHeapDeltaBytes() {
+            return heapDeltaBytes;
+        }
+
+        /**
+         * Per-candidate totals, baseline first.
+         */
+        public List<CandidateResult> getCandidates() {
+            return candidates;
+        }
+
+        public Optional<CandidateResult> getCandidate(String name) {
+            return candidates.stream().filter(c -> c.getName().equals(name)).findFirst();
+        }
+
+        /**
+         * Per-client decisions by client id.
+         */
+        public Map<String, ClientResult> getClients() {
+            return clients;
+        }
+
+        /**
+         * Clients with the most records decided differently from the
+         * baseline by any candidate, most first.
+         */
+        public List<ClientResult> topDeviations(int limit) {
+            return clients.values().stream()
+                .filter(c -> c.getDisagreements() > 0)
+                .sorted(Comparator.comparingLong(ClientResult::getDisagreements).reversed()
+                    .thenComparing(ClientResult::getClientId))
+                .limit(limit)
+                .collect(Collectors.toList());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.ROOT, "%d records in %.1f ms (%.0f records/s), heap +%d KB%n",
+                records, wallNanos / 1e6, getThroughputPerSecond(), heapDeltaBytes / 1024));
+            for (CandidateResult candidate : candidates) {
+                out.append(String.format(Locale.ROOT, "  %-20s allowed=%d denied=%d disagreements=%d (%.2f%%)%n",
+                    candidate.getName(), candidate.getAllowed(), candidate.getDenied(),
+                    candidate.getDisagreements(), 100.0 * candidate.getDisagreements() / Math.max(1, records)));
+            }
+            return out.toString();
+        }
+    }
+
+    public static class CandidateResult {
+        private final String name;
+        private final long allowed;
+        private final long denied;
+        private final long disagreements;
+
+        CandidateResult(String name, long allowed, long denied, long disagreements) {
+            this.name = name;
+            this.allowed = allowed;
+            this.denied = denied;
+            this.disagreements = disagreements;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getAllowed() {
+            return allowed;
+        }
+
+        public long getDenied() {
+            return denied;
+        }
+
+        /**
+         * Records decided differently from the baseline; 0 for the baseline.
+         */
+        public long getDisagreements() {
+            return disagreements;
+        }
+    }
+
+    public static class ClientResult {
+        private final String clientId;
+        private final long[] allowed;
+        private long requests;
+        private long disagreements;
+
+        ClientResult(String clientId, int candidates) {
+            this.clientId = clientId;
+            this.allowed = new long[candidates];
+        }
+
+        private void record(boolean[] decisions, boolean disagreed) {
+            requests++;
+            for (int i = 0; i < decisions.length; i++) {
+                if (decisions[i]) {
+                    allowed[i]++;
+                }
+            }
+            if (disagreed) {
+                disagreements++;
+            }
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Requests the candidate at {@code index}, in candidate order, allowed.
+         */
+        public long getAllowed(int index) {
+            return allowed[index];
+        }
+
+        /**
+         * Records on which at least one candidate disagreed with the baseline.
+         */
+        public long getDisagreements() {
+            return disagreements;
+        }
+    }
+
+    /**
+     * Replays a trace against limit configurations:
+     * {@code TraceReplay <trace> [--partitions N] [config.json ...]}.
+     * Without configurations the default limits are compared across all
+     * strategies. Every client is treated as free tier.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplay <trace> [--partitions N] [config.json ...]");
+            System.exit(2);
+        }
+        int partitions = Runtime.getRuntime().availableProcessors();
+        List<Path> configs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--partitions") && i + 1 < args.length) {
+                partitions = Integer.parseInt(args[++i]);
+            } else {
+                configs.add(Paths.get(args[i]));
+            }
+        }
+
+        ClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        Map<String, Function<TimeSource, EndpointRateLimiter>> candidates = new LinkedHashMap<>();
+        if (configs.isEmpty()) {
+            LimitConfiguration defaults = LimitConfiguration.defaultConfiguration();
+            for (RateLimitStrategy strategy : RateLimitStrategy.values()) {
+                candidates.put(strategy.name().toLowerCase(Locale.ROOT),
+                    configured(defaults.withStrategy(strategy), tierResolver));
+            }
+        } else {
+            for (Path config : configs) {
+                candidates.put(config.getFileName().toString(), configured(LimitConfiguration.load(config), tierResolver));
+            }
+        }
+
+        Report report = new TraceReplay(Paths.get(args[0]), candidates, partitions).run();
+        System.out.print(report);
+        List<ClientResult> deviations = report.topDeviations(10);
+        if (!deviations.isEmpty()) {
+            System.out.println("Top deviating clients:");
+            for (ClientResult client : deviations) {
+                System.out.println("  " + client.getClientId() + " requests=" + client.getRequests()
+                    + " disagreements=" + client.getDisagreements());
+            }
+        }
+    }
+}
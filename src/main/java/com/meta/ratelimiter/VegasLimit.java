@@ -0,0 +1,91 @@
+package com.meta.ratelimiter;
+
+/**
+ * Delay-based concurrency limit modelled on TCP Vegas.
+ *
+ * The lowest observed round-trip time is taken as the no-load latency, and
+ * {@code limit * (1 - minRtt / rtt)} estimates how many requests are queued
+ * at the backend. The limit grows while that queue is small and shrinks once
+ * it exceeds a few requests, so it settles just above the backend's real
+ * concurrency and latency stays near {@code minRtt} under overload. Drops
+ * shrink the limit too.
+ *
+ * Every {@code probeSamples} samples the limit is halved and the no-load
+ * latency re-measured, so a backend that became permanently slower or
+ * faster is not mistaken for a queue.
+ */
+public class VegasLimit implements ConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long probeSamples;
+    private volatile int limit;
+    private double estimatedLimit;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long samples;
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 10_000);
+    }
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit, long probeSamples) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Need 0 < minLimit <= initialLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.probeSamples = probeSamples;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Lowest round-trip time seen since the last probe, or 0 before any sample.
+     */
+    public synchronized long getMinRttNanos() {
+        return minRttNanos == Long.MAX_VALUE ? 0 : minRttNanos;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (probeSamples > 0 && ++samples % probeSamples == 0) {
+            // Drain the queue so the next samples show the backend's no-load latency
+            minRttNanos = Long.MAX_VALUE;
+            setLimit(estimatedLimit / 2);
+            return;
+        }
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+
+        double threshold = Math.max(1, Math.log10(estimatedLimit));
+        if (dropped) {
+            setLimit(estimatedLimit - threshold);
+            return;
+        }
+        if (inFlight * 2 < estimatedLimit) {
+            // Demand, not the backend, is the bottleneck; the sample says nothing about capacity
+            return;
+        }
+        double queued = estimatedLimit * (1 - (double) minRttNanos / rttNanos);
+        // Vegas adjusts once per round trip; spread that step over the window's samples
+        double step = threshold / estimatedLimit;
+        if (queued <= threshold) {
+            setLimit(estimatedLimit + 6 * step);
+        } else if (queued < 3 * threshold) {
+            setLimit(estimatedLimit + step);
+        } else if (queued > 6 * threshold) {
+            setLimit(estimatedLimit - step);
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
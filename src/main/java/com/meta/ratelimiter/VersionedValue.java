@@ -0,0 +1,30 @@
+package com.meta.ratelimiter;
+
+/**
+ * A store value with the version stamp it had when read, for
+ * {@link DistributedRateLimitStore#compareAndSet}.
+ */
+public final class VersionedValue<T> {
+    private final T value;
+    private final long version;
+
+    public VersionedValue(T value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    /**
+     * The stored object itself; treat it as read-only and copy it to
+     * derive a new value.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Positive stamp that changes on every write to the key.
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,32 @@
+package com.meta.ratelimiter;
+
+/**
+ * Manually driven {@link TimeSource}. Time never moves backwards: setting an
+ * earlier time is ignored, so slightly out-of-order traces replay safely.
+ */
+public class VirtualClock implements TimeSource {
+    private volatile long nowMillis;
+
+    public VirtualClock(long startMillis) {
+        this.nowMillis = startMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return nowMillis;
+    }
+
+    /**
+     * Moves the clock to {@code millis} if that is later than now.
+     * Not atomic; a clock is driven by one thread.
+     */
+    public void set(long millis) {
+        if (millis > nowMillis) {
+            nowMillis = millis;
+        }
+    }
+
+    public void advance(long millis) {
+        set(nowMillis + millis);
+    }
+}
@@ -0,0 +1,152 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the adaptive concurrency limiter and its limit algorithms
+ */
+public class AdaptiveConcurrencyLimiterTest {
+    private static final long BASE_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testCapsInFlightRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+            () -> new AimdLimit(2, 1, 10, 0.9, Long.MAX_VALUE), false);
+
+        Optional<ConcurrencyPermit> first = limiter.acquire("a");
+        Optional<ConcurrencyPermit> second = limiter.acquire("b");
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertFalse("Shared limit of 2 reached", limiter.acquire("c").isPresent());
+
+        first.get().ignore();
+        first.get().release();
+        assertEquals("Completing twice must free one slot", 1, limiter.getInFlight("a"));
+        assertTrue(limiter.acquire("c").isPresent());
+    }
+
+    @Test
+    public void testPerClientLimitsAreIndependent() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+            () -> new AimdLimit(1, 1, 10, 0.9, Long.MAX_VALUE), true);
+
+        assertTrue(limiter.acquire("a").isPresent());
+        assertFalse(limiter.acquire("a").isPresent());
+        assertTrue(limiter.acquire("b").isPresent());
+    }
+
+    @Test
+    public void testIdleClientsAreForgotten() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+            () -> new AimdLimit(1, 1, 10, 0.9, Long.MAX_VALUE), true, 0);
+        ConcurrencyPermit busy = limiter.acquire("busy").get();
+
+        for (int i = 0; i < 10_000; i++) {
+            limiter.acquire("client-" + i).get().release();
+        }
+
+        assertTrue("Map grew to " + limiter.getTrackedCount(), limiter.getTrackedCount() < 10);
+        assertEquals("Clients with requests in flight are kept", 1, limiter.getInFlight("busy"));
+        assertFalse(limiter.acquire("busy").isPresent());
+        busy.release();
+        assertEquals(0, limiter.getInFlight("busy"));
+    }
+
+    @Test
+    public void testAimdGrowsUnderLoadAndBacksOffOnDrops() {
+        AimdLimit limit = new AimdLimit(10, 1, 100, 0.5, BASE_RTT_NANOS * 2);
+
+        limit.onSample(BASE_RTT_NANOS, 2, false);
+        assertEquals("Mostly idle limit must not grow", 10, limit.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(BASE_RTT_NANOS, limit.getLimit(), false);
+        }
+        assertEquals(20, limit.getLimit());
+
+        limit.onSample(BASE_RTT_NANOS, 20, true);
+        assertEquals(10, limit.getLimit());
+        limit.onSample(BASE_RTT_NANOS * 3, 10, false);
+        assertEquals("Timeouts count as drops", 5, limit.getLimit());
+    }
+
+    @Test
+    public void testVegasTracksBackendCapacity() {
+        VegasLimit limit = new VegasLimit(5, 1, 1000, 0);
+
+        simulateOverload(limit, 50, 200);
+        assertLimitNear(limit, 50);
+        assertTrue("Latency must stay near the no-load RTT",
+            rttFor(limit.getLimit(), 50) <= BASE_RTT_NANOS * 3 / 2);
+
+        // Backend loses capacity
+        simulateOverload(limit, 20, 200);
+        assertLimitNear(limit, 20);
+
+        // And recovers
+        simulateOverload(limit, 80, 200);
+        assertLimitNear(limit, 80);
+        assertEquals(BASE_RTT_NANOS, limit.getMinRttNanos());
+    }
+
+    @Test
+    public void testEndpointLimiterAppliesConcurrencyBeforeRateLimit() {
+        InMemoryClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        RateLimitConfig config = new RateLimitConfig(10, 60_000, RateLimitStrategy.TOKEN_BUCKET);
+        Map<ClientTier, RateLimiter> tiers = new EnumMap<>(ClientTier.class);
+        for (ClientTier tier : ClientTier.values()) {
+            tiers.put(tier, new TokenBucketRateLimiter(config, new ClientRateLimitStore()));
+        }
+        TieredRateLimiter tiered = new TieredRateLimiter(tierResolver, tiers);
+        AdaptiveConcurrencyLimiter concurrency = new AdaptiveConcurrencyLimiter(
+            () -> new VegasLimit(3, 1, 100), false);
+        MetricsRegistry metrics = new MetricsRegistry();
+        concurrency.registerMetrics(metrics, "/api/search");
+        EndpointTieredRateLimiter limiter = new EndpointTieredRateLimiter(
+            Collections.singletonMap("/api/search", tiered), tiered,
+            Collections.singletonMap("/api/search", concurrency));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.acquire("client", "/api/search").isPresent());
+        }
+        assertFalse(limiter.acquire("client", "/api/search").isPresent());
+        assertEquals("Concurrency rejection must not consume a token",
+            7, limiter.getRemainingRequests("client", "/api/search"));
+        assertTrue("Endpoints without a concurrency limit only rate limit",
+            limiter.acquire("client", "/api/users").isPresent());
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape, scrape.contains("ratelimiter_concurrency_limit{endpoint=\"/api/search\"} 3"));
+        assertTrue(scrape, scrape.contains("ratelimiter_concurrency_in_flight{endpoint=\"/api/search\"} 3"));
+    }
+
+    /**
+     * Unlimited demand against a backend that serves {@code capacity}
+     * requests concurrently and queues the rest.
+     */
+    private static void simulateOverload(ConcurrencyLimit limit, int capacity, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int inFlight = limit.getLimit();
+            long rtt = rttFor(inFlight, capacity);
+            for (int i = 0; i < inFlight; i++) {
+                limit.onSample(rtt, inFlight, false);
+            }
+        }
+    }
+
+    private static long rttFor(int inFlight, int capacity) {
+        return BASE_RTT_NANOS * Math.max(capacity, inFlight) / capacity;
+    }
+
+    private static void assertLimitNear(ConcurrencyLimit limit, int capacity) {
+        assertTrue("Limit " + limit.getLimit() + " for capacity " + capacity,
+            limit.getLimit() >= capacity && limit.getLimit() <= capacity * 3 / 2);
+    }
+}
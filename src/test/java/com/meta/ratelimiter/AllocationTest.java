@@ -0,0 +1,99 @@
+package com.meta.ratelimiter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Guards the steady-state allocation rate of the distributed limiters.
+ *
+ * After warm-up, a million decisions over a fixed set of clients must stay
+ * under {@link #MAX_BYTES_PER_CALL} bytes per call on average; any capturing
+ * lambda, key concatenation or boxed value on the hot path blows this budget.
+ */
+public class AllocationTest {
+    private static final int CLIENTS = 64;
+    private static final int WARMUP_CALLS = 300_000;
+    private static final int MEASURED_CALLS = 1_000_000;
+    private static final double MAX_BYTES_PER_CALL = 1.0;
+
+    private final String[] clientIds = new String[CLIENTS];
+
+    public AllocationTest() {
+        for (int i = 0; i < CLIENTS; i++) {
+            clientIds[i] = "alloc-client-" + i;
+        }
+    }
+
+    @Test
+    public void testTokenBucketHotPathDoesNotAllocate() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        assertAllocationFree(new DistributedTokenBucketRateLimiter(
+            config, new InMemoryDistributedRateLimitStore(), new UnlimitedRateLimiter()));
+    }
+
+    @Test
+    public void testFixedWindowHotPathDoesNotAllocate() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, RateLimitStrategy.FIXED_WINDOW);
+        assertAllocationFree(new DistributedFixedWindowRateLimiter(
+            config, new InMemoryDistributedRateLimitStore(), new UnlimitedRateLimiter()));
+    }
+
+    @Test
+    public void testSlidingWindowHotPathDoesNotAllocate() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, RateLimitStrategy.SLIDING_WINDOW);
+        assertAllocationFree(new DistributedSlidingWindowRateLimiter(
+            config, new InMemoryDistributedRateLimitStore(), new UnlimitedRateLimiter()));
+    }
+
+    @Test
+    public void testEpochWindowHotPathDoesNotAllocate() {
+        RateLimitConfig config = new RateLimitConfig(100, 60_000, RateLimitStrategy.EPOCH_FIXED_WINDOW);
+        assertAllocationFree(new DistributedEpochWindowRateLimiter(
+            config, new InMemoryDistributedRateLimitStore(), new UnlimitedRateLimiter()));
+    }
+
+    @Test
+    public void testHotPathStaysAllocationFreeAfterMoreClientsThanTheKeyCacheHolds() {
+        RateLimitConfig config = new RateLimitConfig(100, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        RateLimiter limiter = new DistributedTokenBucketRateLimiter(
+            config, new InMemoryDistributedRateLimitStore(), new UnlimitedRateLimiter());
+        // One-off clients fill the key cache before the measured working set arrives
+        for (int i = 0; i < KeyCache.DEFAULT_MAX_SIZE * 3 / 2; i++) {
+            limiter.allowRequest("one-off-" + i);
+        }
+        assertAllocationFree(limiter);
+    }
+
+    private void assertAllocationFree(RateLimiter limiter) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        long threadId = Thread.currentThread().getId();
+        int allowed = runCalls(limiter, WARMUP_CALLS);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        allowed += runCalls(limiter, MEASURED_CALLS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("Some requests should be allowed", allowed > 0);
+        double perCall = (double) allocated / MEASURED_CALLS;
+        assertTrue("Allocated " + allocated + " bytes (" + perCall + " per call)", perCall < MAX_BYTES_PER_CALL);
+    }
+
+    private int runCalls(RateLimiter limiter, int calls) {
+        int allowed = 0;
+        for (int i = 0; i < calls; i++) {
+            if (limiter.allowRequest(clientIds[i & (CLIENTS - 1)])) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+}
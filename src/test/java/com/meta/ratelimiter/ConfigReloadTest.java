@@ -0,0 +1,145 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for limit configuration parsing and hot reload
+ */
+public class ConfigReloadTest {
+    private static final String CONFIG =
+        "{\"tiers\": {"
+            + "\"free\": {\"maxRequests\": 5, \"windowMillis\": 60000},"
+            + "\"premium\": {\"maxRequests\": 50, \"windowMillis\": 60000, \"burst\": 80},"
+            + "\"enterprise\": {\"maxRequests\": 500, \"windowMillis\": 60000}},"
+            + "\"endpoints\": {"
+            + "\"/api/search\": {\"tiers\": {\"free\": {\"maxRequests\": 2, \"strategy\": \"sliding_window\"}}},"
+            + "\"/api/users\": {},"
+            + "\"/api/health\": {\"unlimited\": true}}}";
+
+    @Test
+    public void testParseInheritsTierDefaults() {
+        LimitConfiguration configuration = LimitConfiguration.parse(CONFIG);
+
+        RateLimitConfig premium = configuration.getDefaults().getConfigFor(ClientTier.PREMIUM);
+        assertEquals(50, premium.getMaxRequests());
+        assertEquals(80, premium.getBurstCapacity());
+
+        RateLimitConfig searchFree = configuration.getEndpoints().get("/api/search").getConfigFor(ClientTier.FREE);
+        assertEquals(2, searchFree.getMaxRequests());
+        assertEquals("Window inherited from the tier default", 60000, searchFree.getWindowSizeMillis());
+        assertEquals(RateLimitStrategy.SLIDING_WINDOW, searchFree.getStrategy());
+        assertEquals(2, searchFree.getBurstCapacity());
+        assertEquals(50, configuration.getEndpoints().get("/api/search")
+            .getConfigFor(ClientTier.PREMIUM).getMaxRequests());
+        assertTrue(configuration.getUnlimitedEndpoints().contains("/api/health"));
+    }
+
+    @Test
+    public void testInvalidConfigurationsRejected() {
+        String[] invalid = {
+            "not json",
+            "{}",
+            "{\"tiers\": {\"free\": {\"maxRequests\": 5, \"windowMillis\": 1000}}}",
+            CONFIG.replace("\"free\": {\"maxRequests\": 5", "\"gold\": {\"maxRequests\": 5"),
+            CONFIG.replace("\"maxRequests\": 2", "\"maxRequests\": 0"),
+            CONFIG.replace("sliding_window", "leaky_bucket")
+        };
+        for (String json : invalid) {
+            try {
+                LimitConfiguration.parse(json);
+                fail("Accepted " + json);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testReloadKeepsBucketState() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        InMemoryClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        ReloadableEndpointRateLimiter limiter = new ReloadableEndpointRateLimiter(
+            new ConfiguredLimiterFactory(store, tierResolver)::build, LimitConfiguration.parse(CONFIG));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.allowRequest("client", "/api/orders"));
+        }
+        assertFalse(limiter.allowRequest("client", "/api/orders"));
+
+        limiter.apply(LimitConfiguration.parse(CONFIG.replace("\"maxRequests\": 5,", "\"maxRequests\": 10,")));
+
+        assertEquals(10, limiter.getLimit("client", "/api/orders"));
+        assertFalse("Reload must not refill the drained bucket", limiter.allowRequest("client", "/api/orders"));
+        assertEquals(0, limiter.getRemainingRequests("client", "/api/orders"));
+    }
+
+    @Test
+    public void testFallbackStoresExposedByNamespace() {
+        ConfiguredLimiterFactory factory = new ConfiguredLimiterFactory(
+            new InMemoryDistributedRateLimitStore(), new InMemoryClientTierResolver(ClientTier.FREE));
+        factory.build(LimitConfiguration.parse(CONFIG));
+
+        Map<String, InspectableStore> stores = factory.getFallbackStores();
+        assertEquals("One per tier for the defaults, /api/search and /api/users", 9, stores.size());
+        String defaultFree = ConfiguredLimiterFactory.namespaceFor(RateLimitStrategy.TOKEN_BUCKET, null, ClientTier.FREE);
+        assertTrue(stores.get(defaultFree) instanceof ClientRateLimitStore);
+        assertTrue(stores.containsKey(
+            ConfiguredLimiterFactory.namespaceFor(RateLimitStrategy.SLIDING_WINDOW, "/api/search", ClientTier.FREE)));
+
+        factory.build(LimitConfiguration.parse(CONFIG.replace("\"maxRequests\": 2, \"strategy\": \"sliding_window\"",
+            "\"maxRequests\": 2, \"strategy\": \"fixed_window\"")));
+        InspectableStore searchFree = factory.getFallbackStores().get(
+            ConfiguredLimiterFactory.namespaceFor(RateLimitStrategy.FIXED_WINDOW, "/api/search", ClientTier.FREE));
+        assertTrue("Stores follow the latest tree", searchFree instanceof FixedWindowRateLimiter);
+        assertNotSame(stores, factory.getFallbackStores());
+    }
+
+    @Test
+    public void testEndpointsHaveSeparateState() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        InMemoryClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        EndpointRateLimiter limiter = new ConfiguredLimiterFactory(store, tierResolver)
+            .build(LimitConfiguration.defaultConfiguration());
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.allowRequest("client", "/api/search"));
+        }
+        assertFalse(limiter.allowRequest("client", "/api/search"));
+        assertEquals("Search traffic must not drain the users bucket",
+            20, limiter.getRemainingRequests("client", "/api/users"));
+        assertTrue(limiter.allowRequest("client", "/api/health"));
+    }
+
+    @Test
+    public void testWatcherAppliesChangesAndSkipsInvalidFiles() throws Exception {
+        Path dir = Files.createTempDirectory("limit-config");
+        Path file = dir.resolve("limits.json");
+        Files.write(file, CONFIG.getBytes(StandardCharsets.UTF_8));
+        AtomicReference<LimitConfiguration> applied = new AtomicReference<>();
+
+        try (LimitConfigWatcher watcher = new LimitConfigWatcher(file, applied::set)) {
+            Files.write(file, "{\"tiers\": ".getBytes(StandardCharsets.UTF_8));
+            assertFalse(watcher.reload());
+            assertNotNull(watcher.getLastError());
+            assertNull("Invalid file must not be applied", applied.get());
+
+            Files.write(file, CONFIG.replace("\"maxRequests\": 5,", "\"maxRequests\": 7,")
+                .getBytes(StandardCharsets.UTF_8));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (applied.get() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertNotNull("Watcher did not pick up the change", applied.get());
+            assertEquals(7, applied.get().getDefaults().getConfigFor(ClientTier.FREE).getMaxRequests());
+            assertNull(watcher.getLastError());
+        }
+    }
+}
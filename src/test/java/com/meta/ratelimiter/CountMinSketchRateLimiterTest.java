@@ -0,0 +1,109 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the count-min sketch limiter
+ */
+public class CountMinSketchRateLimiterTest {
+    /** Long enough that no test crosses a window boundary. */
+    private static final long LONG_WINDOW = TimeUnit.DAYS.toMillis(10_000);
+
+    @Test
+    public void testLimitsSingleClient() {
+        CountMinSketchRateLimiter limiter = limiter(10, LONG_WINDOW, 0.01, 0.01);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.allowRequest("203.0.113.7"));
+        }
+        assertFalse(limiter.allowRequest("203.0.113.7"));
+        assertEquals(0, limiter.getRemainingRequests("203.0.113.7"));
+        assertTrue(limiter.allowRequest("203.0.113.8"));
+    }
+
+    @Test
+    public void testSizedFromErrorBound() {
+        CountMinSketchRateLimiter limiter = limiter(10, LONG_WINDOW, 0.01, 0.01);
+        assertEquals(272, limiter.getWidth());
+        assertEquals(5, limiter.getDepth());
+        long memory = limiter.getMemoryBytes();
+
+        for (int i = 0; i < 200_000; i++) {
+            limiter.allowRequest("client-" + i);
+        }
+        assertEquals("Memory must not grow with distinct clients", memory, limiter.getMemoryBytes());
+    }
+
+    @Test
+    public void testNeverUnderCountsAndStaysWithinBound() {
+        double epsilon = 0.001;
+        double delta = 0.01;
+        CountMinSketchRateLimiter limiter = limiter(Integer.MAX_VALUE, LONG_WINDOW, epsilon, delta);
+        int clients = 20_000;
+        long total = 0;
+        for (int i = 0; i < clients; i++) {
+            for (int j = 0; j <= i % 5; j++) {
+                assertTrue(limiter.allowRequest("ip-" + i));
+                total++;
+            }
+        }
+
+        int outsideBound = 0;
+        for (int i = 0; i < clients; i++) {
+            long trueCount = i % 5 + 1;
+            long estimate = limiter.getEstimate("ip-" + i);
+            assertTrue("Under-counted ip-" + i, estimate >= trueCount);
+            if (estimate - trueCount > epsilon * total) {
+                outsideBound++;
+            }
+        }
+        assertTrue(outsideBound + " clients over the error bound", outsideBound <= clients * delta);
+    }
+
+    @Test
+    public void testConcurrentRequestsRespectLimit() throws Exception {
+        CountMinSketchRateLimiter limiter = limiter(1000, LONG_WINDOW, 0.01, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.allowRequest("shared-ip")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(1000, allowed.get());
+    }
+
+    @Test
+    public void testWindowsRotate() throws InterruptedException {
+        CountMinSketchRateLimiter limiter = limiter(5, 100, 0.01, 0.01);
+        for (int i = 0; i < 5; i++) {
+            limiter.allowRequest("ip");
+        }
+        assertFalse(limiter.allowRequest("ip"));
+
+        // Two full windows later neither sketch holds the old counts
+        Thread.sleep(250);
+        assertEquals(0, limiter.getEstimate("ip"));
+        assertTrue(limiter.allowRequest("ip"));
+    }
+
+    private static CountMinSketchRateLimiter limiter(int max, long windowMillis, double epsilon, double delta) {
+        return new CountMinSketchRateLimiter(
+            new RateLimitConfig(max, windowMillis, RateLimitStrategy.SLIDING_WINDOW), epsilon, delta);
+    }
+}
@@ -0,0 +1,122 @@
+package com.meta.ratelimiter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the memory-mapped decision event log and its reader
+ */
+public class DecisionEventLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEventsRoundTrip() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        String longId = "client-" + "x".repeat(100);
+        try (DecisionEventLog log = log(dir, 1024, 1 << 20, 4, 1.0)) {
+            assertTrue(log.publish("alice", "/api/search", ClientTier.FREE, true, 1));
+            log.publish("bøb-日本", "/api/users", ClientTier.PREMIUM, false, 3);
+            log.onDecision(longId, "/api/search", ClientTier.ENTERPRISE, true);
+            log.flush();
+            assertEquals(3, log.getWrittenCount());
+        }
+
+        List<DecisionEventReader.DecisionEvent> events = readAll(dir);
+        assertEquals(3, events.size());
+        assertEquals("alice", events.get(0).getClientId());
+        assertEquals("/api/search", events.get(0).getEndpoint());
+        assertTrue(events.get(0).isAllowed());
+        assertTrue(events.get(0).getTimestampMillis() > 0);
+
+        assertEquals("bøb-日本", events.get(1).getClientId());
+        assertEquals(ClientTier.PREMIUM, events.get(1).getTier());
+        assertFalse(events.get(1).isAllowed());
+        assertEquals(3, events.get(1).getCost());
+
+        assertEquals("Long ids are truncated", longId.substring(0, DecisionEventLog.TEXT_BYTES),
+            events.get(2).getClientId());
+    }
+
+    @Test
+    public void testSegmentsRollAndOldOnesAreDeleted() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        long segmentBytes = DecisionEventLog.HEADER_BYTES + 10L * DecisionEventLog.RECORD_BYTES;
+        try (DecisionEventLog log = log(dir, 1024, segmentBytes, 3, 1.0)) {
+            for (int i = 0; i < 95; i++) {
+                log.publish("client-" + i, "/api/search", ClientTier.FREE, true, 1);
+            }
+            log.flush();
+        }
+
+        assertEquals(3, DecisionEventReader.segments(dir).size());
+        List<DecisionEventReader.DecisionEvent> events = readAll(dir);
+        assertEquals("Two full segments plus the partial newest one", 25, events.size());
+        assertEquals("client-70", events.get(0).getClientId());
+        assertEquals("client-94", events.get(24).getClientId());
+    }
+
+    @Test
+    public void testReopenStartsNewSegment() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (DecisionEventLog log = log(dir, 64, 1 << 16, 4, 1.0)) {
+            log.publish("first", "/api/search", ClientTier.FREE, true, 1);
+        }
+        try (DecisionEventLog log = log(dir, 64, 1 << 16, 4, 1.0)) {
+            log.publish("second", "/api/search", ClientTier.FREE, true, 1);
+        }
+        List<DecisionEventReader.DecisionEvent> events = readAll(dir);
+        assertEquals(2, events.size());
+        assertEquals("second", events.get(1).getClientId());
+    }
+
+    @Test
+    public void testFullRingDropsInsteadOfBlocking() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        int published = 200_000;
+        try (DecisionEventLog log = log(dir, 2, 64L << 20, 2, 1.0)) {
+            for (int i = 0; i < published; i++) {
+                log.publish("client", "/api/search", ClientTier.FREE, true, 1);
+            }
+            log.flush();
+            assertTrue(log.getDroppedCount() > 0);
+            assertEquals(published, log.getWrittenCount() + log.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testSamplingRecordsRate() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (DecisionEventLog log = log(dir, 1024, 1 << 20, 4, 0.0)) {
+            for (int i = 0; i < 10; i++) {
+                log.onDecision("client", "/api/search", ClientTier.FREE, i % 2 == 0);
+            }
+            log.flush();
+            assertEquals(5, log.getSampledOutCount());
+        }
+        List<DecisionEventReader.DecisionEvent> events = readAll(dir);
+        assertEquals(5, events.size());
+        for (DecisionEventReader.DecisionEvent event : events) {
+            assertFalse(event.isAllowed());
+            assertEquals(1.0, event.getSampleRate(), 0.0);
+        }
+    }
+
+    private static DecisionEventLog log(Path dir, int slots, long segmentBytes, int segments, double allowedRate)
+        throws Exception {
+        return new DecisionEventLog(dir, slots, segmentBytes, segments, allowedRate, 1.0, new MetricsRegistry());
+    }
+
+    private static List<DecisionEventReader.DecisionEvent> readAll(Path dir) throws Exception {
+        List<DecisionEventReader.DecisionEvent> events = new ArrayList<>();
+        DecisionEventReader.read(dir, events::add);
+        return events;
+    }
+}
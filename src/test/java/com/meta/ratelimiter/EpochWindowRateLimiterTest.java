@@ -0,0 +1,124 @@
+package com.meta.ratelimiter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the store increment primitive and the epoch-aligned fixed window
+ */
+public class EpochWindowRateLimiterTest {
+    private static final long WINDOW = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VirtualClock clock = new VirtualClock(1_000_000);
+    private final InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore(clock);
+
+    @Test
+    public void testIncrementKeepsTtlFromCreation() {
+        assertEquals(1, store.incrementAndGet("counter", 1, 100));
+        clock.advance(60);
+        assertEquals(4, store.incrementAndGet("counter", 3, 100));
+        assertEquals(4, store.get("counter", AtomicLong.class).get());
+
+        clock.advance(40);
+        assertNull(store.get("counter", AtomicLong.class));
+        assertEquals(2, store.incrementAndGet("counter", 2, 100));
+    }
+
+    @Test
+    public void testSharedMemoryIncrement() throws Exception {
+        try (SharedMemoryRateLimitStore shared =
+                 new SharedMemoryRateLimitStore(folder.getRoot().toPath().resolve("counters.shm"), 64)) {
+            assertEquals(1, shared.incrementAndGet("counter", 1, 60_000));
+            assertEquals(6, shared.incrementAndGet(RateLimitKey.of("counter"), 5, 60_000));
+            assertEquals(6, shared.get("counter", AtomicLong.class).get());
+        }
+    }
+
+    @Test
+    public void testWindowsAreEpochAligned() {
+        RateLimiter limiter = limiter(3);
+        clock.advance(700);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.allowRequest("alice"));
+        }
+        assertFalse(limiter.allowRequest("alice"));
+        assertEquals(0, limiter.getRemainingRequests("alice"));
+        // The window ends on the epoch boundary, not WINDOW after the first request
+        assertEquals(300, limiter.getResetTimeMillis("alice"));
+
+        clock.advance(300);
+        assertEquals(3, limiter.getRemainingRequests("alice"));
+        assertEquals(0, limiter.getResetTimeMillis("alice"));
+        assertTrue(limiter.allowRequest("alice"));
+    }
+
+    @Test
+    public void testEachWindowIsItsOwnKey() {
+        RateLimiter limiter = limiter(2);
+        limiter.allowRequest("alice");
+        clock.advance(WINDOW);
+        limiter.allowRequest("alice");
+
+        assertEquals(1, store.get("epoch:alice:1000", AtomicLong.class).get());
+        assertEquals(1, store.get("epoch:alice:1001", AtomicLong.class).get());
+
+        // Kept one window past its end, then gone
+        clock.advance(WINDOW);
+        assertNull(store.get("epoch:alice:1000", AtomicLong.class));
+        assertNotNull(store.get("epoch:alice:1001", AtomicLong.class));
+    }
+
+    @Test
+    public void testExpiredWindowsAreReclaimed() {
+        RateLimiter limiter = limiter(5);
+        int clients = 100;
+        for (int window = 0; window < 1000; window++) {
+            for (int client = 0; client < clients; client++) {
+                limiter.allowRequest("client-" + client);
+            }
+            clock.advance(WINDOW);
+        }
+
+        // Each client has at most its current and previous window live
+        assertTrue("Store holds " + store.entryCount() + " entries", store.entryCount() <= 4 * clients);
+    }
+
+    @Test
+    public void testResetClearsCurrentWindow() {
+        RateLimiter limiter = limiter(1);
+        assertTrue(limiter.allowRequest("alice"));
+        assertFalse(limiter.allowRequest("alice"));
+
+        limiter.reset("alice");
+
+        assertTrue(limiter.allowRequest("alice"));
+    }
+
+    @Test
+    public void testSelectedByConfiguration() {
+        LimitConfiguration configuration = LimitConfiguration.parse("{\"tiers\": {"
+            + "\"free\": {\"maxRequests\": 2, \"windowMillis\": 1000, \"strategy\": \"epoch_fixed_window\"},"
+            + "\"premium\": {\"maxRequests\": 20, \"windowMillis\": 1000},"
+            + "\"enterprise\": {\"maxRequests\": 200, \"windowMillis\": 1000}}}");
+        InMemoryClientTierResolver tiers = new InMemoryClientTierResolver(ClientTier.FREE);
+        EndpointRateLimiter limiter = new ConfiguredLimiterFactory(store, tiers, clock).build(configuration);
+
+        assertTrue(limiter.allowRequest("alice", "/api/search"));
+        assertTrue(limiter.allowRequest("alice", "/api/search"));
+        assertFalse(limiter.allowRequest("alice", "/api/search"));
+        assertEquals(3, store.get("epoch-fixed-window:free:alice:1000", AtomicLong.class).get());
+    }
+
+    private RateLimiter limiter(int limit) {
+        RateLimitConfig config = new RateLimitConfig(limit, WINDOW, RateLimitStrategy.EPOCH_FIXED_WINDOW);
+        return new DistributedEpochWindowRateLimiter(config, store, new UnlimitedRateLimiter(), "epoch:", clock);
+    }
+}
@@ -0,0 +1,100 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the Space-Saving heavy-hitter tracker
+ */
+public class HeavyHitterTrackerTest {
+    private static final long LONG_WINDOW = 3_600_000;
+
+    @Test
+    public void testFindsHeavyHittersAmongNoise() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(4, 32, LONG_WINDOW, 16);
+        for (int i = 0; i < 100_000; i++) {
+            tracker.onDecision("noise-" + i, "/api/search", ClientTier.FREE, true);
+            if (i % 20 == 0) {
+                for (int h = 0; h < 5; h++) {
+                    tracker.onDecision("attacker-" + h, "/api/search", ClientTier.FREE, h % 2 == 0);
+                }
+            }
+        }
+
+        List<HeavyHitterTracker.HeavyHitter> top = tracker.topClients("/api/search", ClientTier.FREE, 5, false);
+        Set<String> ids = new HashSet<>();
+        for (HeavyHitterTracker.HeavyHitter hitter : top) {
+            ids.add(hitter.getClientId());
+            assertTrue("Count never under-estimates", hitter.getCount() >= 5000);
+            assertTrue("True count lies within the error", hitter.getCount() - hitter.getError() <= 5000);
+        }
+        assertEquals(Set.of("attacker-0", "attacker-1", "attacker-2", "attacker-3", "attacker-4"), ids);
+
+        List<HeavyHitterTracker.HeavyHitter> denied = tracker.topClients("/api/search", ClientTier.FREE, 1, true);
+        assertTrue("Odd attackers are denied", Set.of("attacker-1", "attacker-3")
+            .contains(denied.get(0).getClientId()));
+        assertEquals(5000, denied.get(0).getDenied());
+    }
+
+    @Test
+    public void testSeparatesEndpointsAndTiers() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker();
+        tracker.onDecision("a", "/api/search", ClientTier.FREE, true);
+        tracker.onDecision("b", "/api/search", ClientTier.PREMIUM, true);
+        tracker.onDecision("c", "/api/users", ClientTier.FREE, false);
+
+        assertEquals("a", tracker.topClients("/api/search", ClientTier.FREE, 10, false).get(0).getClientId());
+        assertEquals("b", tracker.topClients("/api/search", ClientTier.PREMIUM, 10, false).get(0).getClientId());
+        assertEquals(1, tracker.topClients("/api/users", ClientTier.FREE, 10, true).get(0).getDenied());
+        assertTrue(tracker.topClients("/api/unknown", ClientTier.FREE, 10, false).isEmpty());
+    }
+
+    @Test
+    public void testEndpointCountIsCapped() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(1, 8, LONG_WINDOW, 2);
+        for (int i = 0; i < 10; i++) {
+            tracker.onDecision("client", "/random/" + i, ClientTier.FREE, true);
+        }
+        assertEquals(3, tracker.getEndpoints().size());
+        assertEquals(8, tracker.topClients(InstrumentedEndpointRateLimiter.OVERFLOW_ENDPOINT,
+            ClientTier.FREE, 1, false).get(0).getCount());
+    }
+
+    @Test
+    public void testOldWindowsExpire() throws InterruptedException {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(1, 8, 100, 4);
+        tracker.onDecision("client", "/api/search", ClientTier.FREE, true);
+        assertEquals(1, tracker.topClients("/api/search", ClientTier.FREE, 10, false).size());
+
+        Thread.sleep(250);
+        assertTrue(tracker.topClients("/api/search", ClientTier.FREE, 10, false).isEmpty());
+    }
+
+    @Test
+    public void testFedByInstrumentedLimiter() {
+        InMemoryClientTierResolver resolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        resolver.setTier("vip", ClientTier.ENTERPRISE);
+        RateLimiter unlimited = new UnlimitedRateLimiter();
+        TieredRateLimiter tiered = new TieredRateLimiter(resolver, Map.of(
+            ClientTier.FREE, unlimited, ClientTier.PREMIUM, unlimited, ClientTier.ENTERPRISE, unlimited));
+        HeavyHitterTracker tracker = new HeavyHitterTracker();
+        EndpointRateLimiter limiter = new InstrumentedEndpointRateLimiter(
+            new EndpointTieredRateLimiter(Map.of(), tiered), resolver, new MetricsRegistry(), tracker);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.allowRequest("vip", "/api/users");
+        }
+        limiter.acquire("vip", "/api/users");
+
+        HeavyHitterTracker.HeavyHitter top =
+            tracker.topClients("/api/users", ClientTier.ENTERPRISE, 1, false).get(0);
+        assertEquals("vip", top.getClientId());
+        assertEquals(4, top.getCount());
+    }
+}
@@ -0,0 +1,187 @@
+package com.meta.ratelimiter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for all-or-nothing hierarchical limits.
+ */
+public class HierarchicalRateLimiterTest {
+    private HierarchicalRateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        List<HierarchicalLimit> limits = List.of(
+            HierarchicalLimit.clientGlobal("global", new RateLimitConfig(5, 60_000, RateLimitStrategy.TOKEN_BUCKET)),
+            HierarchicalLimit.perEndpoint("endpoint", new RateLimitConfig(3, 60_000, RateLimitStrategy.TOKEN_BUCKET)),
+            HierarchicalLimit.endpointGroup(
+                "reports",
+                Set.of("/api/reports", "/api/exports"),
+                new RateLimitConfig(2, 60_000, RateLimitStrategy.TOKEN_BUCKET))
+        );
+        EndpointRateLimiter fallback = new HierarchicalRateLimiter(
+            limits, new InMemoryDistributedRateLimitStore(), new AlwaysDenyLimiter());
+        limiter = new HierarchicalRateLimiter(limits, new InMemoryDistributedRateLimitStore(), fallback);
+    }
+
+    @Test
+    public void testEndpointLimitBelowGlobal() {
+        String clientId = "h-client-1";
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.allowRequest(clientId, "/api/users"));
+        }
+        assertFalse(limiter.allowRequest(clientId, "/api/users"));
+    }
+
+    @Test
+    public void testGlobalLimitAcrossEndpoints() {
+        String clientId = "h-client-2";
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.allowRequest(clientId, "/api/users"));
+        }
+        assertTrue(limiter.allowRequest(clientId, "/api/search"));
+        assertTrue(limiter.allowRequest(clientId, "/api/search"));
+        assertFalse("Global budget of 5 is spent", limiter.allowRequest(clientId, "/api/orders"));
+    }
+
+    @Test
+    public void testDeniedRequestDoesNotConsumeOtherLevels() {
+        String clientId = "h-client-3";
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.allowRequest(clientId, "/api/users"));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertFalse(limiter.allowRequest(clientId, "/api/users"));
+        }
+
+        // Only 3 of the 5 global tokens were taken by the allowed requests
+        assertEquals(2, limiter.getRemainingRequests(clientId, "/api/search"));
+        assertTrue(limiter.allowRequest(clientId, "/api/search"));
+        assertTrue(limiter.allowRequest(clientId, "/api/search"));
+    }
+
+    @Test
+    public void testEndpointGroupSharesBudget() {
+        String clientId = "h-client-4";
+        assertTrue(limiter.allowRequest(clientId, "/api/reports"));
+        assertTrue(limiter.allowRequest(clientId, "/api/exports"));
+        assertFalse(limiter.allowRequest(clientId, "/api/reports"));
+        assertTrue("Endpoints outside the group are unaffected", limiter.allowRequest(clientId, "/api/users"));
+        assertEquals(2, limiter.getLimit(clientId, "/api/exports"));
+        assertTrue(limiter.getResetTimeMillis(clientId, "/api/exports") > 0);
+    }
+
+    @Test
+    public void testQueriesDoNotWrite() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        List<HierarchicalLimit> limits = List.of(
+            HierarchicalLimit.clientGlobal("global", new RateLimitConfig(5, 60_000, RateLimitStrategy.TOKEN_BUCKET)),
+            HierarchicalLimit.perEndpoint("endpoint", new RateLimitConfig(3, 60_000, RateLimitStrategy.TOKEN_BUCKET)));
+        HierarchicalRateLimiter queried = new HierarchicalRateLimiter(limits, store, new AlwaysDenyLimiter());
+        RateLimitKey global = RateLimitKey.of("hierarchical:global:", "h-client-7");
+        RateLimitKey endpoint = RateLimitKey.of("hierarchical:endpoint:/api/users:", "h-client-7");
+
+        assertEquals(3, queried.getRemainingRequests("h-client-7", "/api/users"));
+        assertEquals(0, queried.getResetTimeMillis("h-client-7", "/api/users"));
+        assertNull("Queries for unknown clients create no entry", store.get(global, Object.class));
+        assertNull(store.get(endpoint, Object.class));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queried.allowRequest("h-client-7", "/api/users"));
+        }
+        long globalVersion = store.getWithVersion(global, Object.class).getVersion();
+        long endpointVersion = store.getWithVersion(endpoint, Object.class).getVersion();
+        assertEquals(0, queried.getRemainingRequests("h-client-7", "/api/users"));
+        assertTrue(queried.getResetTimeMillis("h-client-7", "/api/users") > 0);
+        assertEquals(2, queried.getRemainingRequests("h-client-7", "/api/search"));
+        assertEquals("Queries do not write", globalVersion, store.getWithVersion(global, Object.class).getVersion());
+        assertEquals(endpointVersion, store.getWithVersion(endpoint, Object.class).getVersion());
+    }
+
+    @Test
+    public void testConcurrentRequestsNeverExceedGlobalLimit() throws InterruptedException {
+        String clientId = "h-client-5";
+        String[] endpoints = {"/a", "/b", "/c", "/d"};
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; t++) {
+            int offset = t;
+            executor.submit(() -> {
+                for (int j = 0; j < 50; j++) {
+                    if (limiter.allowRequest(clientId, endpoints[(offset + j) % endpoints.length])) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(5, allowed.get());
+    }
+
+    @Test
+    public void testFallbackWhenStoreFails() {
+        List<HierarchicalLimit> limits = List.of(
+            HierarchicalLimit.clientGlobal("global", new RateLimitConfig(1, 60_000, RateLimitStrategy.TOKEN_BUCKET)));
+        EndpointRateLimiter fallback = new HierarchicalRateLimiter(
+            limits, new InMemoryDistributedRateLimitStore(), new AlwaysDenyLimiter());
+        HierarchicalRateLimiter failing = new HierarchicalRateLimiter(limits, new FailingStore(), fallback);
+
+        assertTrue(failing.allowRequest("h-client-6", "/api/users"));
+        assertFalse(failing.allowRequest("h-client-6", "/api/users"));
+    }
+
+    private static class AlwaysDenyLimiter implements EndpointRateLimiter {
+        @Override
+        public boolean allowRequest(String clientId, String endpoint) {
+            return false;
+        }
+
+        @Override
+        public int getRemainingRequests(String clientId, String endpoint) {
+            return 0;
+        }
+
+        @Override
+        public int getLimit(String clientId, String endpoint) {
+            return 0;
+        }
+
+        @Override
+        public void reset(String clientId, String endpoint) {
+        }
+
+        @Override
+        public long getResetTimeMillis(String clientId, String endpoint) {
+            return 0;
+        }
+    }
+
+    private static class FailingStore extends InMemoryDistributedRateLimitStore {
+        @Override
+        public <T> List<T> computeAll(
+            RateLimitKey[] keys,
+            long ttlMillis,
+            Class<T> type,
+            java.util.function.Function<List<T>, List<T>> updateFunction,
+            java.util.function.Supplier<T> initializer
+        ) {
+            throw new IllegalStateException("store unavailable");
+        }
+    }
+}
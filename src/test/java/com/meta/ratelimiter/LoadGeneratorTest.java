@@ -0,0 +1,122 @@
+package com.meta.ratelimiter;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the open-loop load generator against a stub HTTP server.
+ */
+public class LoadGeneratorTest {
+    static {
+        // Without it every response waits ~40ms for a delayed ACK between headers and body
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStatusSplitAndThroughput() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        String url = startServer(0, () -> counter.incrementAndGet() % 2 == 0 ? 429 : 200);
+
+        LoadGenerator.Report report = new LoadGenerator(new LoadGenerator.Options()
+            .url(url)
+            .ratePerSecond(200)
+            .durationSeconds(1)
+            .warmupSeconds(0)
+            .connections(4)
+            .distribution("zipf")
+            .endpointWeights(Map.of("/api/search", 1.0, "/api/users", 1.0))
+        ).run();
+
+        assertEquals(0, report.getErrors());
+        assertEquals(200, report.getSent());
+        assertEquals(report.getSent(), report.getCompleted());
+        assertEquals(report.getCompleted(), report.getStatusCount(200) + report.getStatusCount(429));
+        assertTrue(Math.abs(report.getStatusCount(200) - report.getStatusCount(429)) <= 1);
+    }
+
+    @Test
+    public void testWarmupIsNotReported() throws Exception {
+        AtomicInteger served = new AtomicInteger();
+        String url = startServer(0, () -> {
+            served.incrementAndGet();
+            return 200;
+        });
+
+        LoadGenerator.Report report = new LoadGenerator(new LoadGenerator.Options()
+            .url(url)
+            .ratePerSecond(50)
+            .durationSeconds(0)
+            .warmupSeconds(1)
+            .connections(2)
+        ).run();
+
+        assertEquals(50, served.get());
+        assertEquals("Warmup counts neither as sent nor as completed", 0, report.getSent());
+        assertEquals(0, report.getCompleted());
+    }
+
+    @Test
+    public void testLatencyIncludesQueueingDelay() throws Exception {
+        // One connection at 15ms per request serves about 66 req/s; offering 100 req/s queues
+        String url = startServer(15, () -> 200);
+
+        LoadGenerator.Report report = new LoadGenerator(new LoadGenerator.Options()
+            .url(url)
+            .ratePerSecond(100)
+            .durationSeconds(1)
+            .warmupSeconds(0)
+            .connections(1)
+        ).run();
+
+        long serviceP90 = report.getServiceTime().getValueAtPercentile(90);
+        long latencyP90 = report.getLatency().getValueAtPercentile(90);
+        assertTrue("service " + serviceP90 + " latency " + latencyP90, latencyP90 > 5 * serviceP90);
+    }
+
+    private String startServer(long delayMillis, java.util.function.IntSupplier status) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/check-limit", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(status.getAsInt(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/check-limit";
+    }
+}
@@ -0,0 +1,133 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for latency histograms, instrumenting decorators and Prometheus output.
+ */
+public class MetricsTest {
+
+    @Test
+    public void testBucketBoundsContainValues() {
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 1_000, 123_456, 9_876_543_210L};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("Upper bound of " + value, LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue("Lower bound of " + value, LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.recordNanos(i * 1_000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.getCount());
+        long p99 = snapshot.getValueAtPercentile(99);
+        assertTrue("p99 " + p99, p99 >= 9_900_000 && p99 <= 9_900_000 * 1.125);
+    }
+
+    @Test
+    public void testConcurrentRecordingIsMerged() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch latch = new CountDownLatch(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.recordNanos(500);
+                }
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(80_000, histogram.snapshot().getCount());
+        assertEquals(80_000L * 500, histogram.snapshot().getSumNanos());
+    }
+
+    @Test
+    public void testEndpointDecisionsExportedPerEndpointAndTier() {
+        MetricsRegistry registry = new MetricsRegistry();
+        InMemoryClientTierResolver resolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        resolver.setTier("premium-client", ClientTier.PREMIUM);
+        RateLimitConfig config = new RateLimitConfig(1, 60_000, RateLimitStrategy.FIXED_WINDOW);
+        TieredRateLimiter tiered = new TieredRateLimiter(resolver, Map.of(
+            ClientTier.FREE, new FixedWindowRateLimiter(config),
+            ClientTier.PREMIUM, new FixedWindowRateLimiter(config),
+            ClientTier.ENTERPRISE, new FixedWindowRateLimiter(config)
+        ));
+        EndpointRateLimiter limiter = new InstrumentedEndpointRateLimiter(
+            new EndpointTieredRateLimiter(Map.of(), tiered), resolver, registry);
+
+        limiter.allowRequest("free-client", "/api/search");
+        limiter.allowRequest("free-client", "/api/search");
+        limiter.allowRequest("premium-client", "/api/users");
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("# TYPE ratelimiter_decisions_total counter"));
+        assertTrue(scrape.contains(
+            "ratelimiter_decisions_total{endpoint=\"/api/search\",tier=\"free\",result=\"allowed\"} 1"));
+        assertTrue(scrape.contains(
+            "ratelimiter_decisions_total{endpoint=\"/api/search\",tier=\"free\",result=\"denied\"} 1"));
+        assertTrue(scrape.contains(
+            "ratelimiter_decisions_total{endpoint=\"/api/users\",tier=\"premium\",result=\"allowed\"} 1"));
+        assertTrue(scrape.contains(
+            "ratelimiter_decision_seconds_count{endpoint=\"/api/search\",tier=\"free\"} 2"));
+        assertTrue(scrape.contains(
+            "ratelimiter_decision_seconds_bucket{endpoint=\"/api/search\",tier=\"free\",le=\"+Inf\"} 2"));
+    }
+
+    @Test
+    public void testEndpointLabelCardinalityIsCapped() {
+        MetricsRegistry registry = new MetricsRegistry();
+        InMemoryClientTierResolver resolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        RateLimiter unlimited = new UnlimitedRateLimiter();
+        TieredRateLimiter tiered = new TieredRateLimiter(resolver, Map.of(
+            ClientTier.FREE, unlimited, ClientTier.PREMIUM, unlimited, ClientTier.ENTERPRISE, unlimited));
+        EndpointRateLimiter limiter = new InstrumentedEndpointRateLimiter(
+            new EndpointTieredRateLimiter(Map.of(), tiered), resolver, registry, 2);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.allowRequest("client", "/random/" + i);
+        }
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("endpoint=\"other\""));
+        assertFalse(scrape.contains("/random/9"));
+    }
+
+    @Test
+    public void testStoreOperationsRecorded() {
+        MetricsRegistry registry = new MetricsRegistry();
+        DistributedRateLimitStore store = new InstrumentedDistributedRateLimitStore(
+            new InMemoryDistributedRateLimitStore(), registry, "test");
+        RateLimitConfig config = new RateLimitConfig(5, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        RateLimiter limiter = new InstrumentedRateLimiter(
+            new DistributedTokenBucketRateLimiter(config, store, new UnlimitedRateLimiter()), registry, "tb");
+
+        limiter.allowRequest("client");
+        limiter.allowRequest("client");
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains(
+            "ratelimiter_store_operation_seconds_count{store=\"test\",operation=\"update\"} 2"));
+        assertTrue(scrape.contains(
+            "ratelimiter_limiter_decisions_total{limiter=\"tb\",result=\"allowed\"} 2"));
+    }
+}
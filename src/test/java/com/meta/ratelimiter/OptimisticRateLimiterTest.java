@@ -0,0 +1,143 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for versioned store access and optimistic-retry limiters
+ */
+public class OptimisticRateLimiterTest {
+    private final VirtualClock clock = new VirtualClock(1_000_000);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    @Test
+    public void testCompareAndSetChecksVersion() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore(clock);
+        assertNull(store.getWithVersion("key", String.class));
+        assertFalse("Key is missing", store.compareAndSet("key", 5, "a", 1000));
+        assertTrue(store.compareAndSet("key", 0, "a", 1000));
+        assertFalse("Already created", store.compareAndSet("key", 0, "b", 1000));
+
+        VersionedValue<String> first = store.getWithVersion("key", String.class);
+        assertEquals("a", first.getValue());
+        assertTrue(store.compareAndSet("key", first.getVersion(), "b", 1000));
+        assertFalse("Stale version", store.compareAndSet("key", first.getVersion(), "c", 1000));
+
+        long beforeSet = store.getWithVersion("key", String.class).getVersion();
+        store.set("key", "d", 1000);
+        assertNotEquals("Every write changes the version",
+            beforeSet, store.getWithVersion("key", String.class).getVersion());
+
+        clock.advance(1000);
+        assertNull("Expired", store.getWithVersion("key", String.class));
+        assertTrue("Expired counts as missing", store.compareAndSet("key", 0, "e", 1000));
+
+        long beforeRemove = store.getWithVersion("key", String.class).getVersion();
+        store.remove("key");
+        assertTrue(store.compareAndSet("key", 0, "f", 1000));
+        assertNotEquals("A recreated key never reuses a version",
+            beforeRemove, store.getWithVersion("key", String.class).getVersion());
+    }
+
+    @Test
+    public void testDenialsDoNotWrite() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore(clock);
+        OptimisticRateLimiter limiter = limiter(store, StoreOperation.Type.TOKEN_BUCKET_CONSUME, 5, 16);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.allowRequest("alice"));
+        }
+        long version = store.getWithVersion(RateLimitKey.of("optimistic:", "alice"), StoreOperation.State.class)
+            .getVersion();
+        for (int i = 0; i < 10; i++) {
+            assertFalse(limiter.allowRequest("alice"));
+        }
+        assertEquals(0, limiter.getRemainingRequests("alice"));
+        assertEquals(version, store.getWithVersion(RateLimitKey.of("optimistic:", "alice"),
+            StoreOperation.State.class).getVersion());
+        assertEquals(15, limiter.getDecisionCount());
+        assertEquals(5, limiter.getCasSuccessCount());
+        assertEquals(0, limiter.getRetryCount());
+
+        clock.advance(12000);
+        assertEquals("One token per 12s", 1, limiter.getRemainingRequests("alice"));
+        assertTrue(limiter.allowRequest("alice"));
+    }
+
+    @Test
+    public void testHotKeyContentionAdmitsExactlyTheLimit() throws Exception {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore(clock);
+        OptimisticRateLimiter optimistic = limiter(store, StoreOperation.Type.FIXED_WINDOW_INCREMENT, 2000, 10_000);
+        OperationRateLimiter locked = new OperationRateLimiter(
+            new RateLimitConfig(2000, 60000, RateLimitStrategy.FIXED_WINDOW),
+            StoreOperation.Type.FIXED_WINDOW_INCREMENT, store, denyAll(), "locked:");
+
+        assertEquals(2000, hammer(optimistic, 8, 500));
+        assertEquals("Locked path admits the same", 2000, hammer(locked, 8, 500));
+        assertEquals(0, optimistic.getCasFailureCount() - optimistic.getRetryCount());
+        assertTrue(metrics.scrape().contains("ratelimiter_cas_total{limiter=\"optimistic:\",result=\"success\"} 2000"));
+    }
+
+    @Test
+    public void testUnsupportedStoreUsesFallback() {
+        DistributedRateLimitStore unversioned = new InstrumentedDistributedRateLimitStore(
+            new InMemoryDistributedRateLimitStore(), metrics, "test") {
+            @Override
+            public <T> VersionedValue<T> getWithVersion(RateLimitKey key, Class<T> type) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        OptimisticRateLimiter limiter = new OptimisticRateLimiter(
+            new RateLimitConfig(1, 1000, RateLimitStrategy.TOKEN_BUCKET), StoreOperation.Type.GCRA_UPDATE,
+            unversioned, new UnlimitedRateLimiter(), "fallback:", metrics);
+        assertTrue(limiter.allowRequest("alice"));
+        assertTrue(limiter.allowRequest("alice"));
+    }
+
+    private OptimisticRateLimiter limiter(
+        DistributedRateLimitStore store, StoreOperation.Type type, int limit, int maxRetries) {
+        return new OptimisticRateLimiter(new RateLimitConfig(limit, 60000, RateLimitStrategy.TOKEN_BUCKET),
+            type, store, denyAll(), "optimistic:", maxRetries, 100_000, clock, metrics);
+    }
+
+    private static RateLimiter denyAll() {
+        return new UnlimitedRateLimiter() {
+            @Override
+            public boolean allowRequest(String clientId) {
+                return false;
+            }
+        };
+    }
+
+    private static int hammer(RateLimiter limiter, int threads, int requestsPerThread) throws Exception {
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < requestsPerThread; i++) {
+                    if (limiter.allowRequest("hot")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return allowed.get();
+    }
+}
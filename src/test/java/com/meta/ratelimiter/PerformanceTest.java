@@ -2,8 +2,6 @@ package com.meta.ratelimiter;
 
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -27,7 +25,7 @@ public class PerformanceTest {
         ExecutorService executor = Executors.newFixedThreadPool(Math.min(200, concurrentClients));
         CountDownLatch latch = new CountDownLatch(concurrentClients);
         AtomicInteger completed = new AtomicInteger(0);
-        List<Long> latencies = new CopyOnWriteArrayList<>();
+        LatencyHistogram latencies = new LatencyHistogram();
 
         long startWall = System.nanoTime();
         for (int i = 0; i < concurrentClients; i++) {
@@ -37,7 +35,7 @@ public class PerformanceTest {
                     long start = System.nanoTime();
                     rateLimiter.allowRequest(clientId);
                     long duration = System.nanoTime() - start;
-                    latencies.add(duration);
+                    latencies.recordNanos(duration);
                     completed.incrementAndGet();
                 }
                 latch.countDown();
@@ -54,8 +52,9 @@ public class PerformanceTest {
         double elapsedSeconds = totalElapsedNs / 1_000_000_000.0;
         double throughput = totalRequests / elapsedSeconds;
 
-        long p95LatencyNs = percentile(latencies, 95);
-        long p99LatencyNs = percentile(latencies, 99);
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        long p95LatencyNs = snapshot.getValueAtPercentile(95);
+        long p99LatencyNs = snapshot.getValueAtPercentile(99);
 
         System.out.println("Throughput req/s: " + throughput);
         System.out.println("P95 latency ms: " + (p95LatencyNs / 1_000_000.0));
@@ -64,15 +63,4 @@ public class PerformanceTest {
         assertTrue("Throughput should be >= 10k req/s", throughput >= 10_000);
         assertTrue("P95 latency should be < 1ms", (p95LatencyNs / 1_000_000.0) < 1.0);
     }
-
-    private long percentile(List<Long> values, int percentile) {
-        if (values.isEmpty()) {
-            return 0;
-        }
-        List<Long> sorted = new ArrayList<>(values);
-        sorted.sort(Long::compareTo);
-        int index = (int) Math.ceil((percentile / 100.0) * sorted.size()) - 1;
-        index = Math.max(0, Math.min(index, sorted.size() - 1));
-        return sorted.get(index);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RateLimitKey and its use as a native store key
+ */
+public class RateLimitKeyTest {
+
+    @Test
+    public void testNamespacesAreInterned() {
+        RateLimitKey.Namespace first = RateLimitKey.Namespace.of("token-bucket:");
+        RateLimitKey.Namespace second = RateLimitKey.Namespace.of("token-bucket:");
+
+        assertSame(first, second);
+        assertEquals(first.getId(), second.getId());
+        assertNotEquals(first.getId(), RateLimitKey.Namespace.of("fixed-window:").getId());
+    }
+
+    @Test
+    public void testStructuredAndStringFormsAreEqual() {
+        RateLimitKey structured = RateLimitKey.of("token-bucket:endpoint:premium:", "client-1");
+        RateLimitKey plain = RateLimitKey.of("token-bucket:endpoint:premium:client-1");
+
+        assertEquals(structured, plain);
+        assertEquals(structured.hash64(), plain.hash64());
+        assertEquals(structured.hashCode(), plain.hashCode());
+        assertEquals("token-bucket:endpoint:premium:client-1", structured.toString());
+    }
+
+    @Test
+    public void testNumericClientIds() {
+        RateLimitKey numeric = RateLimitKey.of("tb:", 42L);
+        RateLimitKey text = RateLimitKey.of("tb:", "42");
+
+        assertTrue(numeric.isNumeric());
+        assertEquals(42L, numeric.getNumericClientId());
+        assertEquals(numeric, text);
+        assertEquals(numeric.hash64(), text.hash64());
+        assertEquals(RateLimitKey.of("tb:", -7L), RateLimitKey.of("tb:-7"));
+        assertEquals(RateLimitKey.of("tb:", Long.MIN_VALUE), RateLimitKey.of("tb:" + Long.MIN_VALUE));
+        assertNotEquals(RateLimitKey.of("tb:", 42L), RateLimitKey.of("tb:", 24L));
+    }
+
+    @Test
+    public void testSuffixedKeysMatchTheirStringForm() {
+        RateLimitKey suffixed = RateLimitKey.Namespace.of("epoch:").key("alice", 1000);
+        RateLimitKey plain = RateLimitKey.of("epoch:alice:1000");
+
+        assertEquals(plain, suffixed);
+        assertEquals(suffixed, plain);
+        assertEquals(plain.hash64(), suffixed.hash64());
+        RateLimitKey sameNamespace = RateLimitKey.of("epoch:", "alice:1000");
+        assertEquals("Keys in one namespace compare by their logical id", sameNamespace, suffixed);
+        assertEquals(suffixed, sameNamespace);
+        assertEquals("alice:1000", suffixed.getClientId());
+        assertEquals("epoch:alice:1000", suffixed.toString());
+        assertFalse(suffixed.isNumeric());
+        assertNotEquals(RateLimitKey.of("epoch:", "alice"), suffixed);
+        assertNotEquals(RateLimitKey.Namespace.of("epoch:").key("alice", 1001), suffixed);
+    }
+
+    @Test
+    public void testDistinctKeysDiffer() {
+        assertNotEquals(RateLimitKey.of("a:", "x"), RateLimitKey.of("b:", "x"));
+        assertNotEquals(RateLimitKey.of("a:", "x"), RateLimitKey.of("a:", "y"));
+        assertNotEquals(RateLimitKey.of("a:", "x").hash64(), RateLimitKey.of("a:", "y").hash64());
+    }
+
+    @Test
+    public void testStoreSharesEntryAcrossKeyForms() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        store.set(RateLimitKey.of("tb:", 7L), "state", 10_000);
+
+        assertEquals("state", store.get("tb:7", String.class));
+        assertEquals("state", store.get(RateLimitKey.of("tb:", "7"), String.class));
+
+        store.remove("tb:7");
+        assertNull(store.get(RateLimitKey.of("tb:", 7L), String.class));
+    }
+
+    @Test
+    public void testLocalStoreAcceptsKeys() {
+        ClientRateLimitStore store = new ClientRateLimitStore();
+        ClientRateLimitStore.TokenBucketState state =
+            store.getOrCreateTokenBucketState(RateLimitKey.of("", 99L), 5.0);
+
+        assertSame(state, store.getOrCreateTokenBucketState("99", 1.0));
+        store.reset(RateLimitKey.of("", 99L));
+        assertNotSame(state, store.getOrCreateTokenBucketState("99", 1.0));
+    }
+}
@@ -0,0 +1,88 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for remaining and reset queries that never write to the store
+ */
+public class ReadOnlyQueryTest {
+    private static final long WINDOW = 1000;
+
+    private final VirtualClock clock = new VirtualClock(1_000_000);
+    private final InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore(clock);
+
+    @Test
+    public void testTokenBucketQueriesDoNotWrite() {
+        RateLimitConfig config = new RateLimitConfig(4, WINDOW, RateLimitStrategy.TOKEN_BUCKET);
+        RateLimiter limiter = new DistributedTokenBucketRateLimiter(
+            config, store, new UnlimitedRateLimiter(), "tb:", clock);
+        assertQueriesAreReadOnly(limiter, "tb:", 4, 250);
+    }
+
+    @Test
+    public void testFixedWindowQueriesDoNotWrite() {
+        RateLimitConfig config = new RateLimitConfig(4, WINDOW, RateLimitStrategy.FIXED_WINDOW);
+        RateLimiter limiter = new DistributedFixedWindowRateLimiter(
+            config, store, new UnlimitedRateLimiter(), "fw:", clock);
+        assertQueriesAreReadOnly(limiter, "fw:", 4, WINDOW);
+    }
+
+    @Test
+    public void testSlidingWindowQueriesDoNotWrite() {
+        RateLimitConfig config = new RateLimitConfig(4, WINDOW, RateLimitStrategy.SLIDING_WINDOW);
+        RateLimiter limiter = new DistributedSlidingWindowRateLimiter(
+            config, store, new UnlimitedRateLimiter(), "sw:", clock);
+        assertQueriesAreReadOnly(limiter, "sw:", 4, WINDOW);
+    }
+
+    @Test
+    public void testOperationLimiterQueriesDoNotWrite() {
+        RateLimitConfig config = new RateLimitConfig(4, WINDOW, RateLimitStrategy.FIXED_WINDOW);
+        RateLimiter limiter = new OperationRateLimiter(
+            config, StoreOperation.Type.FIXED_WINDOW_INCREMENT, store, new UnlimitedRateLimiter(), "op:", clock);
+        assertQueriesAreReadOnly(limiter, "op:", 4, WINDOW);
+    }
+
+    @Test
+    public void testSlidingWindowCountsOnlyLiveTimestamps() {
+        RateLimitConfig config = new RateLimitConfig(3, WINDOW, RateLimitStrategy.SLIDING_WINDOW);
+        RateLimiter limiter = new DistributedSlidingWindowRateLimiter(
+            config, store, new UnlimitedRateLimiter(), "sw:", clock);
+        limiter.allowRequest("alice");
+        clock.advance(400);
+        limiter.allowRequest("alice");
+        limiter.allowRequest("alice");
+
+        assertEquals(0, limiter.getRemainingRequests("alice"));
+        assertEquals(600, limiter.getResetTimeMillis("alice"));
+        clock.advance(601);
+        assertEquals("First request left the window", 1, limiter.getRemainingRequests("alice"));
+        assertEquals(399, limiter.getResetTimeMillis("alice"));
+    }
+
+    private void assertQueriesAreReadOnly(RateLimiter limiter, String namespace, int limit, long resetAfter) {
+        RateLimitKey key = RateLimitKey.of(namespace, "alice");
+
+        assertEquals(limit, limiter.getRemainingRequests("alice"));
+        assertEquals(0, limiter.getResetTimeMillis("alice"));
+        assertNull("Queries for unknown clients create no entry", store.get(key, Object.class));
+
+        for (int i = 0; i < limit; i++) {
+            assertTrue(limiter.allowRequest("alice"));
+        }
+        long version = store.getWithVersion(key, Object.class).getVersion();
+        assertEquals(0, limiter.getRemainingRequests("alice"));
+        assertEquals(resetAfter, limiter.getResetTimeMillis("alice"));
+        assertEquals("Queries do not write", version, store.getWithVersion(key, Object.class).getVersion());
+
+        // Polling right up to the end of the TTL must not keep the entry alive
+        clock.advance(WINDOW - 1);
+        limiter.getRemainingRequests("alice");
+        limiter.getResetTimeMillis("alice");
+        clock.advance(1);
+        assertNull("TTL was not refreshed", store.getWithVersion(key, Object.class));
+        assertEquals(limit, limiter.getRemainingRequests("alice"));
+    }
+}
@@ -0,0 +1,181 @@
+package com.meta.ratelimiter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ReplicatedRateLimiter over the in-process gossip network
+ */
+public class ReplicatedRateLimiterTest {
+    private static final RateLimitConfig CONFIG =
+        new RateLimitConfig(100, 3_600_000, RateLimitStrategy.FIXED_WINDOW);
+    private static final List<String> NODES = Arrays.asList("a", "b", "c", "d");
+
+    private final List<ReplicatedRateLimiter> nodes = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (ReplicatedRateLimiter node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void testGossipMergesCounts() {
+        InProcessGossipNetwork network = new InProcessGossipNetwork();
+        ReplicatedRateLimiter a = node("a", network, 0, Long.MAX_VALUE);
+        ReplicatedRateLimiter b = node("b", network, 0, Long.MAX_VALUE);
+
+        for (int i = 0; i < 40; i++) {
+            assertTrue(a.allowRequest("client"));
+        }
+        assertEquals("B has not heard from A yet", 100, b.getRemainingRequests("client"));
+
+        a.gossip();
+        assertEquals(40, b.getMergedCount("client"));
+        assertEquals(60, b.getRemainingRequests("client"));
+    }
+
+    @Test
+    public void testConvergedNodesEnforceSharedLimit() {
+        InProcessGossipNetwork network = new InProcessGossipNetwork();
+        ReplicatedRateLimiter a = node("a", network, 0, Long.MAX_VALUE);
+        ReplicatedRateLimiter b = node("b", network, 0, Long.MAX_VALUE);
+
+        for (int i = 0; i < 70; i++) {
+            a.allowRequest("client");
+        }
+        a.gossip();
+
+        int allowedOnB = 0;
+        for (int i = 0; i < 100; i++) {
+            if (b.allowRequest("client")) {
+                allowedOnB++;
+            }
+        }
+        assertEquals(30, allowedOnB);
+
+        b.gossip();
+        assertFalse(a.allowRequest("client"));
+    }
+
+    @Test
+    public void testUnsyncedCapBoundsOverAdmission() {
+        InProcessGossipNetwork network = new InProcessGossipNetwork();
+        List<ReplicatedRateLimiter> cluster = new ArrayList<>();
+        for (String id : NODES) {
+            cluster.add(node(id, network, 0, 5));
+        }
+
+        int admitted = 0;
+        for (int round = 0; round < 100; round++) {
+            for (ReplicatedRateLimiter node : cluster) {
+                for (int i = 0; i < 10; i++) {
+                    if (node.allowRequest("client")) {
+                        admitted++;
+                    }
+                }
+            }
+            for (ReplicatedRateLimiter node : cluster) {
+                node.gossip();
+            }
+        }
+
+        long bound = cluster.get(0).getOverAdmissionBound();
+        assertEquals(15, bound);
+        assertTrue("Admitted " + admitted, admitted >= 100 && admitted <= 100 + bound);
+    }
+
+    @Test
+    public void testAntiEntropyRepairsLostMessages() {
+        InProcessGossipNetwork network = new InProcessGossipNetwork(1.0);
+        ReplicatedRateLimiter a = node("a", network, 0, Long.MAX_VALUE);
+        ReplicatedRateLimiter b = node("b", network, 0, Long.MAX_VALUE);
+
+        for (int i = 0; i < 25; i++) {
+            a.allowRequest("client");
+        }
+        a.gossip();
+        assertTrue(network.getDroppedCount() > 0);
+        assertEquals(0, b.getMergedCount("client"));
+
+        network.setLossProbability(0.0);
+        for (int round = 1; round < ReplicatedRateLimiter.ANTI_ENTROPY_ROUNDS; round++) {
+            a.gossip();
+        }
+        assertEquals("Anti-entropy round resends all counts", 25, b.getMergedCount("client"));
+    }
+
+    @Test
+    public void testDuplicateDeliveryIsIdempotent() {
+        InProcessGossipNetwork network = new InProcessGossipNetwork();
+        ReplicatedRateLimiter b = node("b", network, 0, Long.MAX_VALUE);
+        long window = System.currentTimeMillis() / CONFIG.getWindowSizeMillis();
+        GossipTransport.GossipMessage message = new GossipTransport.GossipMessage(
+            "a", Arrays.asList("client"), new long[] {window}, new long[] {30});
+        GossipTransport.GossipMessage stale = new GossipTransport.GossipMessage(
+            "a", Arrays.asList("client"), new long[] {window}, new long[] {10});
+
+        network.broadcast(message);
+        network.broadcast(message);
+        network.broadcast(stale);
+
+        assertEquals(30, b.getMergedCount("client"));
+    }
+
+    @Test
+    public void testPeerClockAheadDoesNotWipeCurrentWindow() {
+        InProcessGossipNetwork network = new InProcessGossipNetwork();
+        VirtualClock clock = new VirtualClock(10 * CONFIG.getWindowSizeMillis());
+        ReplicatedRateLimiter b = new ReplicatedRateLimiter(CONFIG, "b", NODES, network, 0, Long.MAX_VALUE, clock);
+        nodes.add(b);
+        long window = clock.currentTimeMillis() / CONFIG.getWindowSizeMillis();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(b.allowRequest("client"));
+        }
+        // Node a's clock has already moved into the next window and admitted a full one there
+        network.broadcast(new GossipTransport.GossipMessage(
+            "a", Arrays.asList("client"), new long[] {window + 1}, new long[] {100}));
+
+        assertEquals("Current window keeps its counts", 10, b.getMergedCount("client"));
+        assertTrue(b.allowRequest("client"));
+        assertEquals(89, b.getRemainingRequests("client"));
+
+        clock.advance(CONFIG.getWindowSizeMillis());
+        assertEquals("Held counts apply once the local clock catches up", 100, b.getMergedCount("client"));
+        assertFalse(b.allowRequest("client"));
+    }
+
+    @Test
+    public void testBackgroundGossipConverges() throws InterruptedException {
+        InProcessGossipNetwork network = new InProcessGossipNetwork();
+        ReplicatedRateLimiter a = node("a", network, 10, Long.MAX_VALUE);
+        ReplicatedRateLimiter b = node("b", network, 10, Long.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            a.allowRequest("client");
+            b.allowRequest("client");
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while ((a.getMergedCount("client") != 20 || b.getMergedCount("client") != 20)
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, a.getMergedCount("client"));
+        assertEquals(20, b.getMergedCount("client"));
+    }
+
+    private ReplicatedRateLimiter node(String id, GossipTransport network, long interval, long maxUnsynced) {
+        ReplicatedRateLimiter node = new ReplicatedRateLimiter(CONFIG, id, NODES, network, interval, maxUnsynced);
+        nodes.add(node);
+        return node;
+    }
+}
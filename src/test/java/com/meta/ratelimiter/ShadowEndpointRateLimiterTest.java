@@ -0,0 +1,101 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for shadow evaluation of candidate limits
+ */
+public class ShadowEndpointRateLimiterTest {
+    private final InMemoryClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    @Test
+    public void testShadowCountsDisagreementsWithoutChangingDecisions() throws Exception {
+        try (ShadowEndpointRateLimiter limiter = new ShadowEndpointRateLimiter(
+            fixedWindow(10).apply(TimeSource.SYSTEM), fixedWindow(5), tierResolver, 1.0, metrics)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue("Active limiter decides", limiter.allowRequest("alice", "/api/search"));
+            }
+            assertFalse(limiter.allowRequest("alice", "/api/search"));
+            limiter.flush();
+
+            assertEquals(11, limiter.getEvaluatedCount());
+            assertEquals("Candidate denies requests 6-10", 5, limiter.getDisagreementCount());
+            assertEquals(0, limiter.getDroppedCount());
+            String scrape = metrics.scrape();
+            assertTrue(scrape.contains(
+                "ratelimiter_shadow_disagreements_total{endpoint=\"/api/search\",tier=\"free\",shadow=\"denied\"} 5"));
+            assertTrue(scrape.contains(
+                "ratelimiter_shadow_evaluations_total{endpoint=\"/api/search\",tier=\"free\"} 11"));
+        }
+    }
+
+    @Test
+    public void testResetReachesCandidate() throws Exception {
+        try (ShadowEndpointRateLimiter limiter = new ShadowEndpointRateLimiter(
+            fixedWindow(10).apply(TimeSource.SYSTEM), fixedWindow(1), tierResolver, 1.0, metrics)) {
+            limiter.allowRequest("alice", "/api/search");
+            limiter.reset("alice", "/api/search");
+            limiter.allowRequest("alice", "/api/search");
+            limiter.flush();
+
+            assertEquals(2, limiter.getEvaluatedCount());
+            assertEquals(0, limiter.getDisagreementCount());
+        }
+    }
+
+    @Test
+    public void testSamplingKeepsWholeClients() throws Exception {
+        try (ShadowEndpointRateLimiter limiter = new ShadowEndpointRateLimiter(
+            fixedWindow(100).apply(TimeSource.SYSTEM), fixedWindow(2), tierResolver, 0.5, metrics)) {
+            for (int client = 0; client < 400; client++) {
+                for (int i = 0; i < 3; i++) {
+                    limiter.allowRequest("client-" + client, "/api/users");
+                }
+            }
+            limiter.flush();
+
+            long evaluated = limiter.getEvaluatedCount();
+            assertEquals("Sampled clients are shadowed completely", 0, evaluated % 3);
+            assertTrue("About half the clients sampled: " + evaluated, evaluated > 400 && evaluated < 800);
+            assertEquals("Exactly the third request of each sampled client", evaluated / 3,
+                limiter.getDisagreementCount());
+        }
+    }
+
+    @Test
+    public void testFullQueueDropsInsteadOfBlocking() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<TimeSource, EndpointRateLimiter> blocking = TraceReplay.forRateLimiter(clock -> new UnlimitedRateLimiter() {
+            @Override
+            public boolean allowRequest(String clientId) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        });
+        try (ShadowEndpointRateLimiter limiter = new ShadowEndpointRateLimiter(
+            fixedWindow(100).apply(TimeSource.SYSTEM), blocking, tierResolver, 1.0, 2, 16, metrics)) {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(limiter.allowRequest("alice", "/api/search"));
+            }
+            assertTrue("Events beyond the queue are dropped", limiter.getDroppedCount() >= 17);
+            release.countDown();
+            limiter.flush();
+            assertEquals(20, limiter.getEvaluatedCount() + limiter.getDroppedCount());
+        }
+    }
+
+    private static Function<TimeSource, EndpointRateLimiter> fixedWindow(int limit) {
+        return TraceReplay.forRateLimiter(clock -> new FixedWindowRateLimiter(
+            new RateLimitConfig(limit, 60000, RateLimitStrategy.FIXED_WINDOW), clock));
+    }
+}
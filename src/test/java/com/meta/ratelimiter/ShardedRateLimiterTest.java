@@ -0,0 +1,144 @@
+package com.meta.ratelimiter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ShardedRateLimiter
+ */
+public class ShardedRateLimiterTest {
+    private final VirtualClock clock = new VirtualClock(1_000_000);
+    private ShardedRateLimiter limiter;
+
+    @After
+    public void tearDown() throws Exception {
+        if (limiter != null) {
+            limiter.close();
+        }
+    }
+
+    @Test
+    public void testTokenBucketSemantics() {
+        limiter = new ShardedRateLimiter(new RateLimitConfig(10, 1000, RateLimitStrategy.TOKEN_BUCKET, 5), 4, 16, clock);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.allowRequest("alice"));
+        }
+        assertFalse(limiter.allowRequest("alice"));
+        assertEquals(0, limiter.getRemainingRequests("alice"));
+        assertEquals(100, limiter.getResetTimeMillis("alice"));
+        assertEquals(5, limiter.getRemainingRequests("bob"));
+
+        clock.advance(250);
+        assertEquals(2, limiter.getRemainingRequests("alice"));
+        assertTrue(limiter.allowRequest("alice"));
+
+        limiter.reset("alice");
+        assertEquals(5, limiter.getRemainingRequests("alice"));
+    }
+
+    @Test
+    public void testConcurrentCallersNeverOverAdmit() throws Exception {
+        limiter = new ShardedRateLimiter(new RateLimitConfig(100, 60_000, RateLimitStrategy.TOKEN_BUCKET), 4, 32, clock);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            done.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.allowRequest("hot-client")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : done) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // Counts are published after each batch; closing waits for the last one
+        limiter.close();
+
+        // Frozen clock: exactly the burst, with no locks on the bucket
+        assertEquals(100, allowed.get());
+        assertEquals(threads * 500, limiter.getProcessedCount());
+    }
+
+    @Test
+    public void testAsyncSubmissionsAreBatched() throws Exception {
+        limiter = new ShardedRateLimiter(new RateLimitConfig(1, 60_000, RateLimitStrategy.TOKEN_BUCKET), 2, 64, clock);
+        List<CompletableFuture<Boolean>> decisions = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            decisions.add(limiter.submit("client-" + (i % 1000)));
+        }
+        int allowed = 0;
+        for (CompletableFuture<Boolean> decision : decisions) {
+            allowed += decision.join() ? 1 : 0;
+        }
+
+        limiter.close();
+
+        assertEquals(1000, allowed);
+        assertEquals(10_000, limiter.getProcessedCount());
+        assertTrue(limiter.getBatchCount() <= limiter.getProcessedCount());
+    }
+
+    @Test
+    public void testTableKeepsClientsAcrossGrowthAndRemoval() {
+        limiter = new ShardedRateLimiter(new RateLimitConfig(1, 60_000, RateLimitStrategy.TOKEN_BUCKET), 1, 64, clock);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(limiter.allowRequest("client-" + i));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            limiter.reset("client-" + i);
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("client-" + i, i % 2 == 0, limiter.allowRequest("client-" + i));
+        }
+    }
+
+    @Test
+    public void testShardsSpreadClients() {
+        limiter = new ShardedRateLimiter(RateLimitConfig.getDefault(), 4);
+        int[] perShard = new int[4];
+        for (int i = 0; i < 4000; i++) {
+            perShard[limiter.shardFor("client-" + i)]++;
+        }
+        for (int count : perShard) {
+            assertTrue("shard load " + count, count > 800 && count < 1200);
+        }
+    }
+
+    @Test
+    public void testRejectsAfterClose() throws Exception {
+        limiter = new ShardedRateLimiter(RateLimitConfig.getDefault(), 2);
+        CompletableFuture<Boolean> queued = limiter.submit("alice");
+        limiter.close();
+
+        assertTrue(queued.join());
+        try {
+            limiter.allowRequest("alice");
+            fail("Expected rejection after close");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+    }
+}
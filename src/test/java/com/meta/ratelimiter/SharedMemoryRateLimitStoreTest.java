@@ -0,0 +1,229 @@
+package com.meta.ratelimiter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SharedMemoryRateLimitStore
+ */
+public class SharedMemoryRateLimitStoreTest {
+    private static final RateLimitConfig CONFIG =
+        new RateLimitConfig(100, 3_600_000, RateLimitStrategy.TOKEN_BUCKET);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private final List<SharedMemoryRateLimitStore> opened = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("limits.shm");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (SharedMemoryRateLimitStore store : opened) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testMappingsShareOneLimit() throws Exception {
+        RateLimiter first = limiter(open(1024));
+        RateLimiter second = limiter(open(1024));
+
+        int allowed = 0;
+        for (int i = 0; i < 150; i++) {
+            if ((i % 2 == 0 ? first : second).allowRequest("shared-client")) {
+                allowed++;
+            }
+        }
+
+        assertEquals("Both mappings should draw from one bucket", 100, allowed);
+    }
+
+    @Test
+    public void testConcurrentAccessIsExact() throws Exception {
+        RateLimiter[] limiters = {limiter(open(1024)), limiter(open(1024))};
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            RateLimiter limiter = limiters[t % 2];
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 100; i++) {
+                    if (limiter.allowRequest("hot-client")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(100, allowed.get());
+    }
+
+    @Test
+    public void testSeparateProcessSharesLimit() throws Exception {
+        open(1024);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            SharedMemoryRateLimitStoreTest.class.getName(), file.toString(), "60")
+            .inheritIO()
+            .start();
+        assertTrue(child.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, child.exitValue());
+
+        assertEquals(40, limiter(open(1024)).getRemainingRequests("process-client"));
+    }
+
+    @Test
+    public void testRemoveAndExpiry() throws Exception {
+        SharedMemoryRateLimitStore store = open(64);
+        RateLimiter limiter = limiter(store);
+        while (limiter.allowRequest("client")) {
+            // drain
+        }
+
+        limiter.reset("client");
+        assertTrue(limiter.allowRequest("client"));
+
+        RateLimitConfig shortWindow = new RateLimitConfig(1, 50, RateLimitStrategy.FIXED_WINDOW);
+        RateLimiter fixedWindow = new DistributedFixedWindowRateLimiter(
+            shortWindow, store, new UnlimitedRateLimiter(), "fw:");
+        assertTrue(fixedWindow.allowRequest("client"));
+        assertFalse(fixedWindow.allowRequest("client"));
+        Thread.sleep(80);
+        assertTrue("Expired window should restart", fixedWindow.allowRequest("client"));
+    }
+
+    @Test
+    public void testExpiredSlotsAreReused() throws Exception {
+        SharedMemoryRateLimitStore store = open(8);
+        for (int i = 0; i < 8; i++) {
+            store.set(RateLimitKey.of("k:", i), new ClientRateLimitStore.TokenBucketState(1.0, 0), 20);
+        }
+        Thread.sleep(40);
+
+        RateLimiter limiter = limiter(store);
+        assertTrue("Expired slots should be reclaimed", limiter.allowRequest("new-client"));
+        assertNull(store.get(RateLimitKey.of("k:", 3), ClientRateLimitStore.TokenBucketState.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFullTableRejectsNewKeys() throws Exception {
+        SharedMemoryRateLimitStore store = open(4);
+        RateLimiter limiter = limiter(store);
+        for (int i = 0; i < 4; i++) {
+            limiter.allowRequest("client-" + i);
+        }
+        store.update(RateLimitKey.of("token-bucket:", "overflow"), 3_600_000,
+            new StateUpdater<ClientRateLimitStore.TokenBucketState>() {
+                @Override
+                public ClientRateLimitStore.TokenBucketState initialState(
+                    ClientRateLimitStore.TokenBucketState previous, long nowMillis) {
+                    return new ClientRateLimitStore.TokenBucketState(1, nowMillis);
+                }
+
+                @Override
+                public long apply(ClientRateLimitStore.TokenBucketState state, long nowMillis) {
+                    return 1;
+                }
+            });
+    }
+
+    @Test
+    public void testStalledHolderCannotWriteAfterTakeover() throws Exception {
+        SharedMemoryRateLimitStore stalled = open(64, 50);
+        SharedMemoryRateLimitStore other = open(64, 50);
+        RateLimitKey key = RateLimitKey.of("lease:", "client");
+        CountDownLatch holding = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> takeover = executor.submit(() -> {
+                holding.await();
+                // Spins until the stalled holder's 50 ms lease runs out
+                other.set(key, new AtomicLong(7), 60_000);
+                return null;
+            });
+            try {
+                stalled.compute(key, 60_000, AtomicLong.class, current -> {
+                    holding.countDown();
+                    try {
+                        takeover.get(5, TimeUnit.SECONDS);
+                    } catch (Exception ex) {
+                        throw new AssertionError(ex);
+                    }
+                    return new AtomicLong(1);
+                }, AtomicLong::new);
+                fail("Expected the stalled write to be fenced off");
+            } catch (IllegalStateException expected) {
+                // lease was taken over
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals("The new holder's value survives", 7, other.get(key, AtomicLong.class).get());
+        assertEquals(8, stalled.incrementAndGet(key, 1, 60_000));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testLayoutMismatchIsRejected() throws Exception {
+        open(1024);
+        open(2048);
+    }
+
+    /**
+     * Child process entry point: consumes the given number of tokens.
+     */
+    public static void main(String[] args) throws Exception {
+        try (SharedMemoryRateLimitStore store = new SharedMemoryRateLimitStore(Path.of(args[0]), 1024)) {
+            RateLimiter limiter = limiter(store);
+            for (int i = 0; i < Integer.parseInt(args[1]); i++) {
+                if (!limiter.allowRequest("process-client")) {
+                    System.exit(2);
+                }
+            }
+        }
+    }
+
+    private SharedMemoryRateLimitStore open(int capacity) throws Exception {
+        return open(capacity, SharedMemoryRateLimitStore.LOCK_LEASE_MILLIS);
+    }
+
+    private SharedMemoryRateLimitStore open(int capacity, long lockLeaseMillis) throws Exception {
+        SharedMemoryRateLimitStore store = new SharedMemoryRateLimitStore(
+            file, capacity, SharedMemoryRateLimitStore.DEFAULT_VALUE_BYTES, StateCodec.defaults(), lockLeaseMillis);
+        opened.add(store);
+        return store;
+    }
+
+    private static RateLimiter limiter(DistributedRateLimitStore store) {
+        return new DistributedTokenBucketRateLimiter(CONFIG, store, new UnlimitedRateLimiter());
+    }
+}
@@ -0,0 +1,134 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for cursor-paged state introspection
+ */
+public class StateInspectorTest {
+    @Test
+    public void testPagesVisitEveryEntryOnce() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        for (int i = 0; i < 2500; i++) {
+            store.set("token-bucket:free:client-" + i, "value-" + i, 60_000);
+        }
+        StateInspector inspector = new StateInspector();
+        inspector.register("distributed", store);
+
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            StateInspector.Page page = inspector.page(cursor, null, null, 1000);
+            assertEquals("distributed", page.getStore());
+            for (InspectableStore.StateEntry entry : page.getEntries()) {
+                assertTrue("Duplicate " + entry.getKey(), seen.add(entry.getKey()));
+                assertTrue(entry.getExpiresAtMillis() > System.currentTimeMillis());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2500, seen.size());
+        assertEquals(3, pages);
+        assertEquals("Finished scans release their cursor", 0, inspector.getOpenCursors());
+    }
+
+    @Test
+    public void testScanToleratesConcurrentChanges() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        for (int i = 0; i < 1000; i++) {
+            store.set("stable:" + i, i, 0);
+            store.set("churn:" + i, i, 0);
+        }
+        StateInspector inspector = new StateInspector();
+        inspector.register("distributed", store);
+
+        Set<String> seen = new HashSet<>();
+        StateInspector.Page page = inspector.page(null, null, "", 100);
+        int round = 0;
+        while (true) {
+            for (InspectableStore.StateEntry entry : page.getEntries()) {
+                seen.add(entry.getKey());
+            }
+            if (page.getNextCursor() == null) {
+                break;
+            }
+            // Mutate between pages
+            store.remove("churn:" + round);
+            store.set("added:" + round, round, 0);
+            round++;
+            page = inspector.page(page.getNextCursor(), null, null, 100);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue("Entries present for the whole scan are listed", seen.contains("stable:" + i));
+        }
+    }
+
+    @Test
+    public void testNamespaceFilterAndStateDescriptions() {
+        InMemoryDistributedRateLimitStore distributed = new InMemoryDistributedRateLimitStore();
+        RateLimitConfig config = new RateLimitConfig(10, 60_000, RateLimitStrategy.TOKEN_BUCKET);
+        RateLimiter limiter = new DistributedTokenBucketRateLimiter(
+            config, distributed, new UnlimitedRateLimiter(), "token-bucket:free:");
+        limiter.allowRequest("alice");
+        distributed.set("other:bob", "x", 0);
+
+        ClientRateLimitStore local = new ClientRateLimitStore();
+        new TokenBucketRateLimiter(config, local).allowRequest("carol");
+        FixedWindowRateLimiter fixed = new FixedWindowRateLimiter(
+            new RateLimitConfig(10, 60_000, RateLimitStrategy.FIXED_WINDOW));
+        fixed.allowRequest("dave");
+        fixed.allowRequest("dave");
+
+        StateInspector inspector = new StateInspector();
+        inspector.register("distributed", distributed);
+        inspector.register("local", local);
+        inspector.register("fixed", fixed);
+
+        StateInspector.Page page = inspector.page(null, null, "token-bucket:", 10);
+        assertEquals(1, page.getEntries().size());
+        assertEquals("token-bucket:free:alice", page.getEntries().get(0).getKey());
+        assertTrue(page.getEntries().get(0).getState(), page.getEntries().get(0).getState().startsWith("tokens=9.0"));
+
+        assertTrue(inspector.page(null, "local", "", 10).getEntries().get(0).getState().startsWith("tokens="));
+        assertTrue(inspector.page(null, "fixed", "dave", 10).getEntries().get(0).getState().startsWith("count=2"));
+    }
+
+    @Test
+    public void testCursorsAreBoundedAndExpire() {
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        for (int i = 0; i < 10; i++) {
+            store.set("key:" + i, i, 0);
+        }
+        StateInspector inspector = new StateInspector(2, 60_000);
+        inspector.register("distributed", store);
+
+        String first = inspector.page(null, null, null, 1).getNextCursor();
+        inspector.page(null, null, null, 1);
+        inspector.page(null, null, null, 1);
+        assertEquals(2, inspector.getOpenCursors());
+        try {
+            inspector.page(first, null, null, 1);
+            fail("Least recently used cursor should have been closed");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            inspector.page(null, "missing", null, 1);
+            fail("Unknown store accepted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+
+        String open = inspector.page(null, null, null, 1).getNextCursor();
+        inspector.unregister("distributed");
+        assertTrue(inspector.getStoreNames().isEmpty());
+        assertEquals("Open cursors finish their scan", 1, inspector.page(open, null, null, 1).getEntries().size());
+    }
+}
@@ -0,0 +1,186 @@
+package com.meta.ratelimiter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for snapshot and journal persistence
+ */
+public class StatePersistenceTest {
+    private static final RateLimitConfig CONFIG =
+        new RateLimitConfig(5, 3_600_000, RateLimitStrategy.TOKEN_BUCKET);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSnapshotRestoresExhaustedBucket() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        RateLimiter limiter = limiter(store);
+        exhaust(limiter, "client-1");
+
+        StatePersistence persistence = persistence(store, dir);
+        persistence.snapshot();
+        persistence.close();
+
+        InMemoryDistributedRateLimitStore restored = new InMemoryDistributedRateLimitStore();
+        assertEquals(1, persistence(restored, dir).restore());
+        assertFalse("Restored bucket should still be empty", limiter(restored).allowRequest("client-1"));
+        assertTrue(limiter(restored).allowRequest("client-2"));
+    }
+
+    @Test
+    public void testJournalReplaysChangesAfterSnapshot() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        RateLimiter limiter = limiter(store);
+        limiter.allowRequest("client-1");
+
+        StatePersistence persistence = persistence(store, dir);
+        persistence.start();
+        persistence.snapshot();
+        exhaust(limiter, "client-1");
+        exhaust(limiter, "client-2");
+        limiter.reset("client-3");
+        persistence.flush();
+
+        InMemoryDistributedRateLimitStore restored = new InMemoryDistributedRateLimitStore();
+        persistence(restored, dir).restore();
+        assertFalse(limiter(restored).allowRequest("client-1"));
+        assertFalse(limiter(restored).allowRequest("client-2"));
+        persistence.close();
+    }
+
+    @Test
+    public void testRemovalIsJournaled() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        RateLimiter limiter = limiter(store);
+        exhaust(limiter, "client-1");
+
+        StatePersistence persistence = persistence(store, dir);
+        persistence.start();
+        persistence.snapshot();
+        limiter.reset("client-1");
+        persistence.close();
+
+        InMemoryDistributedRateLimitStore restored = new InMemoryDistributedRateLimitStore();
+        persistence(restored, dir).restore();
+        assertTrue("Reset should survive restart", limiter(restored).allowRequest("client-1"));
+    }
+
+    @Test
+    public void testTornJournalTailIsIgnored() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        RateLimiter limiter = limiter(store);
+
+        StatePersistence persistence = persistence(store, dir);
+        persistence.start();
+        persistence.snapshot();
+        exhaust(limiter, "client-1");
+        persistence.close();
+
+        for (Path journal : files(dir, "journal-")) {
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+            }
+        }
+
+        InMemoryDistributedRateLimitStore restored = new InMemoryDistributedRateLimitStore();
+        persistence(restored, dir).restore();
+        assertFalse(limiter(restored).allowRequest("client-1"));
+    }
+
+    @Test
+    public void testSnapshotRestoresEpochWindowCounters() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore();
+        RateLimiter limiter = epochLimiter(store);
+        exhaust(limiter, "client-1");
+        assertEquals(0, limiter.getRemainingRequests("client-1"));
+
+        StatePersistence persistence = persistence(store, dir);
+        persistence.snapshot();
+        persistence.close();
+
+        InMemoryDistributedRateLimitStore restored = new InMemoryDistributedRateLimitStore();
+        assertEquals(1, persistence(restored, dir).restore());
+        RateLimiter reloaded = epochLimiter(restored);
+        assertEquals("Restored window should still be spent", 0, reloaded.getRemainingRequests("client-1"));
+        assertFalse(reloaded.allowRequest("client-1"));
+        assertEquals(1, restored.entryCount());
+    }
+
+    @Test
+    public void testSnapshotDeletesSupersededFiles() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        StatePersistence persistence = persistence(new InMemoryDistributedRateLimitStore(), dir);
+        persistence.start();
+        persistence.snapshot();
+        persistence.snapshot();
+        persistence.close();
+
+        assertEquals(1, files(dir, "snapshot-").size());
+        assertEquals(1, files(dir, "journal-").size());
+    }
+
+    @Test
+    public void testLocalStoreRoundTrip() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        ClientRateLimitStore store = new ClientRateLimitStore();
+        RateLimiter tokenBucket = new TokenBucketRateLimiter(CONFIG, store);
+        RateLimiter slidingWindow = new SlidingWindowRateLimiter(
+            new RateLimitConfig(3, 3_600_000, RateLimitStrategy.SLIDING_WINDOW), store);
+        exhaust(tokenBucket, "local-1");
+        slidingWindow.allowRequest("local-2");
+
+        StatePersistence persistence = persistence(store, dir);
+        persistence.snapshot();
+        persistence.close();
+
+        ClientRateLimitStore restored = new ClientRateLimitStore();
+        persistence(restored, dir).restore();
+        assertFalse(new TokenBucketRateLimiter(CONFIG, restored).allowRequest("local-1"));
+        assertEquals(1, restored.getOrCreateSlidingWindowState("local-2").requestTimestamps.size());
+    }
+
+    private static StatePersistence persistence(PersistableStore store, Path dir) {
+        return new StatePersistence(store, dir, StateCodec.defaults(), 3_600_000, 3_600_000);
+    }
+
+    private static RateLimiter limiter(DistributedRateLimitStore store) {
+        return new DistributedTokenBucketRateLimiter(CONFIG, store, new UnlimitedRateLimiter(), "persist:");
+    }
+
+    private static RateLimiter epochLimiter(DistributedRateLimitStore store) {
+        RateLimitConfig config = new RateLimitConfig(5, 3_600_000, RateLimitStrategy.EPOCH_FIXED_WINDOW);
+        return new DistributedEpochWindowRateLimiter(config, store, new UnlimitedRateLimiter());
+    }
+
+    private static void exhaust(RateLimiter limiter, String clientId) {
+        while (limiter.allowRequest(clientId)) {
+            // drain the bucket
+        }
+    }
+
+    private static java.util.List<Path> files(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix))
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for declarative store operations and their reference semantics
+ */
+public class StoreOperationTest {
+    private final VirtualClock clock = new VirtualClock(1_000_000);
+    private final InMemoryDistributedRateLimitStore store = new InMemoryDistributedRateLimitStore(clock);
+
+    @Test
+    public void testTokenBucketConsume() {
+        StoreOperation consume = StoreOperation.tokenBucketConsume(10, 1000, 5, 1);
+        for (int i = 0; i < 5; i++) {
+            long result = store.execute("tb", consume);
+            assertTrue(StoreOperation.isAllowed(result));
+            assertEquals(4 - i, StoreOperation.getRemaining(result));
+        }
+        long denied = store.execute("tb", consume);
+        assertFalse(StoreOperation.isAllowed(denied));
+        assertEquals("One token refills in 100ms", 100, StoreOperation.getRetryAfterMillis(denied));
+
+        clock.advance(100);
+        assertTrue(StoreOperation.isAllowed(store.execute("tb", consume)));
+        assertFalse(StoreOperation.isAllowed(store.execute("tb", consume)));
+    }
+
+    @Test
+    public void testFixedWindowIncrement() {
+        StoreOperation increment = StoreOperation.fixedWindowIncrement(3, 1000, 2);
+        assertTrue(StoreOperation.isAllowed(store.execute("fw", increment)));
+        long denied = store.execute("fw", increment);
+        assertFalse("2 + 2 exceeds 3", StoreOperation.isAllowed(denied));
+        assertEquals(1, StoreOperation.getRemaining(denied));
+        assertEquals(1000, StoreOperation.getRetryAfterMillis(denied));
+
+        long peek = store.execute("fw", StoreOperation.fixedWindowIncrement(3, 1000, 0));
+        assertTrue(StoreOperation.isAllowed(peek));
+        assertEquals("A unit request still fits", 0, StoreOperation.getRetryAfterMillis(peek));
+
+        clock.advance(1000);
+        long rolled = store.execute("fw", increment);
+        assertTrue(StoreOperation.isAllowed(rolled));
+        assertEquals(1, StoreOperation.getRemaining(rolled));
+    }
+
+    @Test
+    public void testSlidingLogAdd() {
+        StoreOperation add = StoreOperation.slidingLogAdd(3, 1000, 1);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(StoreOperation.isAllowed(store.execute("sl", add)));
+            clock.advance(100);
+        }
+        long denied = store.execute("sl", add);
+        assertFalse(StoreOperation.isAllowed(denied));
+        assertEquals("Oldest entry leaves the window", 701, StoreOperation.getRetryAfterMillis(denied));
+
+        clock.advance(701);
+        long allowed = store.execute("sl", add);
+        assertTrue(StoreOperation.isAllowed(allowed));
+        assertEquals(0, StoreOperation.getRemaining(allowed));
+    }
+
+    @Test
+    public void testGcraSpacesRequestsAfterBurst() {
+        // 10 per second: one emission every 100ms, burst of 3
+        StoreOperation update = StoreOperation.gcraUpdate(10, 1000, 3, 1);
+        for (int i = 0; i < 3; i++) {
+            long result = store.execute("gcra", update);
+            assertTrue(StoreOperation.isAllowed(result));
+            assertEquals(2 - i, StoreOperation.getRemaining(result));
+        }
+        long denied = store.execute("gcra", update);
+        assertFalse(StoreOperation.isAllowed(denied));
+        assertEquals(100, StoreOperation.getRetryAfterMillis(denied));
+
+        clock.advance(99);
+        assertFalse(StoreOperation.isAllowed(store.execute("gcra", update)));
+        clock.advance(1);
+        assertTrue(StoreOperation.isAllowed(store.execute("gcra", update)));
+        assertFalse(StoreOperation.isAllowed(store.execute("gcra", update)));
+
+        clock.advance(1000);
+        assertEquals("Fully recovered", 3,
+            StoreOperation.getRemaining(store.execute("gcra", StoreOperation.gcraUpdate(10, 1000, 3, 0))));
+    }
+
+    @Test
+    public void testOperationsEncodeAsPlainData() {
+        StoreOperation[] operations = {
+            StoreOperation.tokenBucketConsume(10, 1000, 20, 2),
+            StoreOperation.fixedWindowIncrement(5, 60000, 1),
+            StoreOperation.slidingLogAdd(7, 1000, 0),
+            StoreOperation.gcraUpdate(100, 1000, 10, 1)
+        };
+        for (StoreOperation operation : operations) {
+            ByteBuffer buffer = ByteBuffer.allocate(StoreOperation.ENCODED_BYTES);
+            operation.encode(buffer);
+            assertFalse(buffer.hasRemaining());
+            buffer.flip();
+            assertEquals(operation, StoreOperation.decode(buffer));
+        }
+        try {
+            StoreOperation.tokenBucketConsume(10, 1000, 5, 6);
+            fail("Cost above the burst can never be admitted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPackedResult() {
+        long result = StoreOperation.pack(true, 42, 1500);
+        assertTrue(StoreOperation.isAllowed(result));
+        assertEquals(42, StoreOperation.getRemaining(result));
+        assertEquals(1500, StoreOperation.getRetryAfterMillis(result));
+
+        long clamped = StoreOperation.pack(false, -3, Long.MAX_VALUE);
+        assertFalse(StoreOperation.isAllowed(clamped));
+        assertEquals(0, StoreOperation.getRemaining(clamped));
+        assertEquals(Integer.MAX_VALUE, StoreOperation.getRetryAfterMillis(clamped));
+    }
+
+    @Test
+    public void testOperationRateLimiterAndPersistence() throws Exception {
+        RateLimitConfig config = new RateLimitConfig(2, 1000, RateLimitStrategy.FIXED_WINDOW);
+        OperationRateLimiter limiter = new OperationRateLimiter(
+            config, StoreOperation.Type.GCRA_UPDATE, store, new UnlimitedRateLimiter(), "gcra:", clock);
+        assertTrue(limiter.allowRequest("alice"));
+        assertTrue(limiter.allowRequest("alice"));
+        assertFalse(limiter.allowRequest("alice"));
+        assertEquals(0, limiter.getRemainingRequests("alice"));
+        assertEquals(500, limiter.getResetTimeMillis("alice"));
+
+        @SuppressWarnings("unchecked")
+        StateCodec<StoreOperation.State> codec = (StateCodec<StoreOperation.State>) StoreOperation.STATE_CODEC;
+        assertTrue(StateCodec.defaults().contains(codec));
+        StoreOperation.State state = store.get(RateLimitKey.of("gcra:", "alice"), StoreOperation.State.class);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        codec.encode(state, buffer);
+        buffer.flip();
+        assertEquals(state.toString(), codec.decode(buffer).toString());
+
+        limiter.reset("alice");
+        assertTrue(limiter.allowRequest("alice"));
+    }
+}
@@ -0,0 +1,103 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for striped global limits.
+ */
+public class StripedGlobalRateLimiterTest {
+
+    @Test
+    public void testSingleThreadBorrowsWholeBudget() {
+        RateLimitConfig config = new RateLimitConfig(100, 3_600_000, RateLimitStrategy.TOKEN_BUCKET);
+        StripedGlobalRateLimiter limiter = new StripedGlobalRateLimiter(config, 8);
+
+        assertEquals(8, limiter.getStripeCount());
+        for (int i = 0; i < 100; i++) {
+            assertTrue("Request " + i + " should borrow from sibling stripes", limiter.allowRequest("any"));
+        }
+        assertFalse(limiter.allowRequest("any"));
+        assertTrue(limiter.getResetTimeMillis("any") > 0);
+    }
+
+    @Test
+    public void testStripeCountCappedByBurst() {
+        RateLimitConfig config = new RateLimitConfig(3, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        StripedGlobalRateLimiter limiter = new StripedGlobalRateLimiter(config, 64);
+
+        assertEquals(2, limiter.getStripeCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsNeverExceedBudget() throws InterruptedException {
+        RateLimitConfig config = new RateLimitConfig(1000, 3_600_000, RateLimitStrategy.TOKEN_BUCKET);
+        StripedGlobalRateLimiter limiter = new StripedGlobalRateLimiter(config, 16);
+
+        int numThreads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 200; j++) {
+                    if (limiter.allowRequest("any")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue("Allowed " + allowed.get(), allowed.get() <= 1000);
+        assertTrue("Allowed " + allowed.get(), allowed.get() >= 1000 - limiter.getMaxAdmissionError());
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        RateLimitConfig config = new RateLimitConfig(10, 1000, RateLimitStrategy.TOKEN_BUCKET);
+        StripedGlobalRateLimiter limiter = new StripedGlobalRateLimiter(config, 1);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.allowRequest("any"));
+        }
+        assertFalse(limiter.allowRequest("any"));
+
+        Thread.sleep(150);
+
+        assertTrue(limiter.allowRequest("any"));
+    }
+
+    @Test
+    public void testDeniedClientReleasesGlobalToken() {
+        RateLimitConfig perClient = new RateLimitConfig(1, 60_000, RateLimitStrategy.FIXED_WINDOW);
+        StripedGlobalRateLimiter global = new StripedGlobalRateLimiter(
+            new RateLimitConfig(2, 60_000, RateLimitStrategy.TOKEN_BUCKET), 1);
+        InMemoryClientTierResolver resolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        TieredRateLimiter tiered = new TieredRateLimiter(resolver, Map.of(
+            ClientTier.FREE, new FixedWindowRateLimiter(perClient),
+            ClientTier.PREMIUM, new FixedWindowRateLimiter(perClient),
+            ClientTier.ENTERPRISE, new FixedWindowRateLimiter(perClient)
+        ));
+        EndpointRateLimiter limiter = new GlobalLimitEndpointRateLimiter(
+            new EndpointTieredRateLimiter(Map.of(), tiered),
+            Map.of("/api/search", global)
+        );
+
+        assertTrue(limiter.allowRequest("a", "/api/search"));
+        assertFalse("Per-client limit denies", limiter.allowRequest("a", "/api/search"));
+        assertTrue("Global token was released", limiter.allowRequest("b", "/api/search"));
+        assertFalse("Global budget is spent", limiter.allowRequest("c", "/api/search"));
+        assertTrue("Other endpoints have no global limit", limiter.allowRequest("c", "/api/users"));
+    }
+}
@@ -0,0 +1,132 @@
+package com.meta.ratelimiter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for tier-priority load shedding
+ */
+public class TierAdmissionControllerTest {
+    private static final long TARGET_QUEUE_DELAY = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void testShedsFreeThenPremiumByInFlight() {
+        TierAdmissionController controller = controller(10, 0);
+
+        for (int i = 0; i < 7; i++) {
+            assertTrue(controller.tryEnter(ClientTier.ENTERPRISE));
+        }
+        assertFalse("FREE shed at 70% saturation", controller.tryEnter(ClientTier.FREE));
+        assertTrue(controller.tryEnter(ClientTier.PREMIUM));
+        assertTrue(controller.tryEnter(ClientTier.PREMIUM));
+        assertFalse("PREMIUM shed at 90% saturation", controller.tryEnter(ClientTier.PREMIUM));
+        for (int i = 0; i < 5; i++) {
+            assertTrue("ENTERPRISE is never shed", controller.tryEnter(ClientTier.ENTERPRISE));
+        }
+        assertEquals(14, controller.getInFlight());
+
+        for (int i = 0; i < 14; i++) {
+            controller.exit();
+        }
+        assertTrue(controller.tryEnter(ClientTier.FREE));
+        assertEquals(1, controller.getShedCount(ClientTier.FREE));
+        assertEquals(1, controller.getShedCount(ClientTier.PREMIUM));
+    }
+
+    @Test
+    public void testQueueDelayAndCpuDriveSaturation() {
+        TierAdmissionController controller = controller(100, 0);
+        for (int i = 0; i < 100; i++) {
+            controller.recordQueueDelay(TARGET_QUEUE_DELAY);
+        }
+        assertFalse(controller.tryEnter(ClientTier.FREE));
+        assertTrue(controller.tryEnter(ClientTier.ENTERPRISE));
+        for (int i = 0; i < 100; i++) {
+            controller.recordQueueDelay(0);
+        }
+        assertTrue("Saturation recovers as queue delay falls", controller.tryEnter(ClientTier.FREE));
+
+        TierAdmissionController busyCpu = controller(100, 0.8);
+        assertEquals(1.0, busyCpu.saturation(), 1e-9);
+        assertFalse(busyCpu.tryEnter(ClientTier.PREMIUM));
+        assertTrue(busyCpu.tryEnter(ClientTier.ENTERPRISE));
+    }
+
+    @Test
+    public void testShedCountsExported() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        TierAdmissionController controller = new TierAdmissionController(
+            1, TARGET_QUEUE_DELAY, 0.8, () -> 0, TierAdmissionController.defaultThresholds(), metrics);
+        assertTrue(controller.tryEnter(ClientTier.FREE));
+        assertFalse(controller.tryEnter(ClientTier.FREE));
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape, scrape.contains("ratelimiter_shed_total{tier=\"free\"} 1"));
+        assertTrue(scrape, scrape.contains("ratelimiter_node_in_flight 1"));
+    }
+
+    @Test
+    public void testEnterpriseLatencyProtectedFromFreeSpike() throws Exception {
+        // A node with 4 workers serving 2ms requests; admission counts queued and running requests
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        ExecutorService flood = Executors.newFixedThreadPool(8);
+        TierAdmissionController controller = controller(16, 0);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            for (int i = 0; i < 8; i++) {
+                flood.submit(() -> {
+                    while (running.get()) {
+                        if (controller.tryEnter(ClientTier.FREE)) {
+                            workers.submit(() -> serve(controller));
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                });
+            }
+            Thread.sleep(50);
+
+            List<Long> latencies = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                long start = System.nanoTime();
+                assertTrue(controller.tryEnter(ClientTier.ENTERPRISE));
+                Future<?> result = workers.submit(() -> serve(controller));
+                result.get();
+                latencies.add(System.nanoTime() - start);
+            }
+            Collections.sort(latencies);
+            long p99Millis = TimeUnit.NANOSECONDS.toMillis(latencies.get(98));
+            assertTrue("ENTERPRISE p99 " + p99Millis + "ms", p99Millis < 100);
+            assertTrue(controller.getShedCount(ClientTier.FREE) > 0);
+        } finally {
+            running.set(false);
+            flood.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private static void serve(TierAdmissionController controller) {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            controller.exit();
+        }
+    }
+
+    private static TierAdmissionController controller(int maxInFlight, double cpuLoad) {
+        return new TierAdmissionController(maxInFlight, TARGET_QUEUE_DELAY, 0.8, () -> cpuLoad,
+            TierAdmissionController.defaultThresholds(), new MetricsRegistry());
+    }
+}
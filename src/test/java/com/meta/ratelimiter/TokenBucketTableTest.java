@@ -0,0 +1,100 @@
+package com.meta.ratelimiter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TokenBucketTable's batch evaluation, scalar and vectorized
+ */
+public class TokenBucketTableTest {
+    private static final RateLimitConfig CONFIG = new RateLimitConfig(10, 1000, RateLimitStrategy.TOKEN_BUCKET, 5);
+
+    private final VirtualClock clock = new VirtualClock(1_000_000);
+
+    @Test
+    public void testBatchRefillAndConsume() {
+        TokenBucketTable table = new TokenBucketTable(CONFIG, clock, true);
+        int alice = table.slotFor("alice");
+        int bob = table.slotFor("bob");
+        assertEquals(alice, table.slotFor("alice"));
+        assertEquals(2, table.size());
+
+        boolean[] out = new boolean[2];
+        table.refillAndConsume(new int[] {alice, bob}, new int[] {5, 6}, out);
+        assertTrue(out[0]);
+        assertFalse(out[1]);
+        assertEquals(0.0, table.getTokens(alice), 1e-9);
+        assertEquals(5.0, table.getTokens(bob), 1e-9);
+
+        clock.advance(250);
+        assertEquals(2.5, table.getTokens(alice), 1e-9);
+        table.reset(alice);
+        assertEquals(5.0, table.getTokens(alice), 1e-9);
+    }
+
+    @Test
+    public void testRepeatedSlotsAreChargedInOrder() {
+        TokenBucketTable table = new TokenBucketTable(CONFIG, clock, true);
+        int alice = table.slotFor("alice");
+        int[] slots = new int[8];
+        Arrays.fill(slots, alice);
+        int[] costs = new int[8];
+        Arrays.fill(costs, 1);
+        boolean[] out = new boolean[8];
+
+        table.refillAndConsume(slots, costs, out);
+
+        assertArrayEquals(new boolean[] {true, true, true, true, true, false, false, false}, out);
+        assertEquals(0.0, table.getTokens(alice), 1e-9);
+    }
+
+    @Test
+    public void testVectorizedMatchesScalar() {
+        TokenBucketTable vector = new TokenBucketTable(CONFIG, clock, true);
+        TokenBucketTable scalar = new TokenBucketTable(CONFIG, clock, false);
+        assertFalse(scalar.isVectorized());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(vector.slotFor("client-" + i), scalar.slotFor("client-" + i));
+        }
+
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(300);
+            int[] slots = new int[n];
+            int[] costs = new int[n];
+            for (int i = 0; i < n; i++) {
+                // A narrow range in some rounds, so batches repeat slots
+                slots[i] = random.nextInt(round % 2 == 0 ? 1000 : 16);
+                costs[i] = random.nextInt(3);
+            }
+            boolean[] vectorOut = new boolean[n];
+            boolean[] scalarOut = new boolean[n];
+            vector.refillAndConsume(slots, costs, vectorOut);
+            scalar.refillAndConsume(slots, costs, scalarOut);
+            assertArrayEquals("round " + round, scalarOut, vectorOut);
+            clock.advance(random.nextInt(50));
+        }
+        for (int slot = 0; slot < 1000; slot++) {
+            assertEquals(scalar.getTokens(slot), vector.getTokens(slot), 0.0);
+        }
+    }
+
+    @Test
+    public void testVectorKernelLoadsWithTheVectorProfile() {
+        // Only the vector profile puts the module in the test JVM's boot layer
+        Assume.assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        assertTrue(new TokenBucketTable(CONFIG, clock, true).isVectorized());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRejectsUnknownSlot() {
+        TokenBucketTable table = new TokenBucketTable(CONFIG, clock, true);
+        table.slotFor("alice");
+        table.refillAndConsume(new int[] {0, 1}, new int[] {1, 1}, new boolean[2]);
+    }
+}
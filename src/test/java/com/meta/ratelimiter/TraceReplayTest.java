@@ -0,0 +1,164 @@
+package com.meta.ratelimiter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for trace files and virtual-time trace replay
+ */
+public class TraceReplayTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBinaryAndCsvTracesRoundTrip() throws Exception {
+        Path binary = folder.newFile("trace.bin").toPath();
+        StringBuilder csv = new StringBuilder("timestamp,clientId,endpoint\r\n");
+        try (TraceFile.Writer writer = new TraceFile.Writer(binary)) {
+            for (int i = 0; i < 200; i++) {
+                String clientId = i % 7 == 0 ? "klient-日本-" + i : "client-" + i;
+                String endpoint = "/api/" + (i % 3);
+                writer.write(1000L + i, clientId, endpoint);
+                csv.append(1000L + i).append(',').append(clientId).append(',').append(endpoint).append("\r\n");
+                if (i % 50 == 0) {
+                    csv.append("\n");
+                }
+            }
+        }
+        Path text = folder.newFile("trace.csv").toPath();
+        Files.write(text, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        // Tiny windows force records and lines across mapping boundaries
+        List<String> fromBinary = readAll(TraceFile.open(binary, 64));
+        List<String> fromCsv = readAll(TraceFile.open(text, 64));
+
+        assertEquals(200, fromBinary.size());
+        assertEquals(fromBinary, fromCsv);
+        assertEquals(fromBinary, readAll(TraceFile.open(binary)));
+        assertEquals("1007,klient-日本-7,/api/1", fromBinary.get(7));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTruncatedBinaryTraceRejected() throws Exception {
+        Path binary = folder.newFile("trace.bin").toPath();
+        try (TraceFile.Writer writer = new TraceFile.Writer(binary)) {
+            writer.write(1, "alice", "/api/search");
+        }
+        byte[] bytes = Files.readAllBytes(binary);
+        Files.write(binary, java.util.Arrays.copyOf(bytes, bytes.length - 3));
+        readAll(TraceFile.open(binary));
+    }
+
+    @Test
+    public void testReplayRunsOnTraceTime() throws Exception {
+        // 20 requests one second apart in trace time, replayed in microseconds
+        Path trace = folder.newFile("trace.bin").toPath();
+        try (TraceFile.Writer writer = new TraceFile.Writer(trace)) {
+            for (int i = 0; i < 20; i++) {
+                writer.write(i < 10 ? 0 : 1000, "alice", "/api/search");
+            }
+        }
+        Map<String, Function<TimeSource, EndpointRateLimiter>> candidates = new LinkedHashMap<>();
+        candidates.put("token-bucket", TraceReplay.forRateLimiter(clock -> new TokenBucketRateLimiter(
+            new RateLimitConfig(10, 1000, RateLimitStrategy.TOKEN_BUCKET), new ClientRateLimitStore(clock))));
+        candidates.put("fixed-window", TraceReplay.forRateLimiter(clock -> new FixedWindowRateLimiter(
+            new RateLimitConfig(10, 1000, RateLimitStrategy.FIXED_WINDOW), clock)));
+
+        TraceReplay.Report report = new TraceReplay(trace, candidates, 1).run();
+
+        assertEquals(20, report.getRecords());
+        assertEquals("Bucket refills over one trace second", 20, report.getCandidates().get(0).getAllowed());
+        assertEquals(20, report.getCandidate("fixed-window").get().getAllowed());
+        assertEquals(0, report.getCandidate("fixed-window").get().getDisagreements());
+        assertTrue(report.getThroughputPerSecond() > 0);
+    }
+
+    @Test
+    public void testDisagreementsReportedPerClient() throws Exception {
+        Path trace = folder.newFile("trace.csv").toPath();
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            csv.append(i).append(",heavy,/api/search\n");
+        }
+        for (int i = 0; i < 3; i++) {
+            csv.append(i).append(",light,/api/search\n");
+        }
+        Files.write(trace, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Function<TimeSource, EndpointRateLimiter>> candidates = new LinkedHashMap<>();
+        candidates.put("ten", TraceReplay.forRateLimiter(clock -> new FixedWindowRateLimiter(
+            new RateLimitConfig(10, 60000, RateLimitStrategy.FIXED_WINDOW), clock)));
+        candidates.put("five", TraceReplay.forRateLimiter(clock -> new FixedWindowRateLimiter(
+            new RateLimitConfig(5, 60000, RateLimitStrategy.FIXED_WINDOW), clock)));
+
+        TraceReplay.Report report = new TraceReplay(trace, candidates, 1).run();
+
+        assertEquals(0, report.getCandidate("ten").get().getDisagreements());
+        assertEquals(5, report.getCandidate("five").get().getDisagreements());
+        assertEquals(8, report.getCandidate("five").get().getDenied() + 3);
+
+        TraceReplay.ClientResult heavy = report.getClients().get("heavy");
+        assertEquals(10, heavy.getRequests());
+        assertEquals(10, heavy.getAllowed(0));
+        assertEquals(5, heavy.getAllowed(1));
+        assertEquals(0, report.getClients().get("light").getDisagreements());
+        assertEquals(1, report.topDeviations(10).size());
+        assertEquals("heavy", report.topDeviations(10).get(0).getClientId());
+    }
+
+    @Test
+    public void testPartitionedReplayMatchesSequential() throws Exception {
+        Path trace = folder.newFile("trace.bin").toPath();
+        try (TraceFile.Writer writer = new TraceFile.Writer(trace)) {
+            for (int i = 0; i < 20000; i++) {
+                writer.write(i / 10, "client-" + (i % 97), i % 4 == 0 ? "/api/search" : "/api/orders");
+            }
+        }
+        ClientTierResolver tierResolver = new InMemoryClientTierResolver(ClientTier.FREE);
+        LimitConfiguration configuration = LimitConfiguration.defaultConfiguration();
+        Map<String, Function<TimeSource, EndpointRateLimiter>> candidates = new LinkedHashMap<>();
+        for (RateLimitStrategy strategy : RateLimitStrategy.values()) {
+            candidates.put(strategy.name(), TraceReplay.configured(configuration.withStrategy(strategy), tierResolver));
+        }
+
+        TraceReplay.Report sequential = new TraceReplay(trace, candidates, 1).run();
+        TraceReplay.Report partitioned = new TraceReplay(trace, candidates, 4).run();
+
+        assertEquals(20000, partitioned.getRecords());
+        assertEquals(97, partitioned.getClients().size());
+        for (int i = 0; i < candidates.size(); i++) {
+            assertEquals(sequential.getCandidates().get(i).getAllowed(), partitioned.getCandidates().get(i).getAllowed());
+            assertEquals(sequential.getCandidates().get(i).getDisagreements(),
+                partitioned.getCandidates().get(i).getDisagreements());
+        }
+        assertTrue("Clients over their limit are denied",
+            sequential.getCandidates().get(0).getDenied() > 0);
+        for (TraceReplay.ClientResult client : sequential.getClients().values()) {
+            TraceReplay.ClientResult other = partitioned.getClients().get(client.getClientId());
+            assertEquals(client.getAllowed(0), other.getAllowed(0));
+            assertEquals(client.getDisagreements(), other.getDisagreements());
+        }
+    }
+
+    private static List<String> readAll(TraceFile file) throws Exception {
+        List<String> records = new ArrayList<>();
+        try (TraceFile trace = file) {
+            while (trace.next()) {
+                records.add(trace.getTimestampMillis() + "," + trace.getClientId() + "," + trace.getEndpoint());
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,57 @@
+package com.meta.ratelimiter;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API lanes of {@link TokenBucketTable#refillAndConsume}. Compiled
+ * only with {@code -Pvector}, and only loaded when
+ * {@code jdk.incubator.vector} is in the boot layer
+ * ({@code --add-modules jdk.incubator.vector}).
+ */
+final class TokenBucketVectorKernel implements TokenBucketKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+
+    TokenBucketVectorKernel() {
+    }
+
+    @Override
+    public int lanes() {
+        return DOUBLES.length();
+    }
+
+    @Override
+    public void refillAndConsume(
+        double[] tokens,
+        long[] lastRefillMillis,
+        int[] slots,
+        int[] costs,
+        boolean[] out,
+        int offset,
+        double burst,
+        double refillPerMilli,
+        long now
+    ) {
+        DoubleVector current = DoubleVector.fromArray(DOUBLES, tokens, 0, slots, offset);
+        LongVector refilledAt = LongVector.fromArray(LONGS, lastRefillMillis, 0, slots, offset);
+        LongVector nowLanes = LongVector.broadcast(LONGS, now);
+        DoubleVector elapsed = (DoubleVector) nowLanes.sub(refilledAt).max(0L)
+            .convertShape(VectorOperators.L2D, DOUBLES, 0);
+        DoubleVector available = current.add(elapsed.mul(refillPerMilli)).min(burst);
+        DoubleVector cost = (DoubleVector) IntVector.fromArray(INTS, costs, offset)
+            .convertShape(VectorOperators.I2D, DOUBLES, 0);
+        VectorMask<Double> allowed = available.compare(VectorOperators.GE, cost);
+
+        available.sub(cost, allowed).intoArray(tokens, 0, slots, offset);
+        nowLanes.max(refilledAt).intoArray(lastRefillMillis, 0, slots, offset);
+        allowed.intoArray(out, offset);
+    }
+}